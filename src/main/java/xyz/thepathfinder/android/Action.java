@@ -60,6 +60,21 @@ public class Action {
         logger.info("Done constructing action: " + this.toString());
     }
 
+    /**
+     * Constructs an Action at a location.
+     *
+     * @param status    type of the action.
+     * @param latitude  the action occurs at.
+     * @param longitude the action occurs at.
+     * @param commodity associated with the action, <tt>null</tt> for a start action.
+     */
+    protected Action(ActionStatus status, double latitude, double longitude, Commodity commodity) {
+        this.status = status;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.commodity = commodity;
+    }
+
     /**
      * Returns the status of an action in the form a JSON object.
      *
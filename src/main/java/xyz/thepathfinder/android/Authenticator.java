@@ -46,6 +46,12 @@ public class Authenticator extends Listenable<AuthenticationListener, JsonObject
      */
     private final PathfinderServices services;
 
+    /**
+     * The web socket connection being authenticated, <tt>null</tt> if this authenticator only
+     * reports the combined result of the authenticators of several shards.
+     */
+    private final Connection connection;
+
     /**
      * Creates an authenticator responsible for authenticating the user.
      *
@@ -55,10 +61,24 @@ public class Authenticator extends Listenable<AuthenticationListener, JsonObject
      * @param services                a pathfinder services object.
      */
     protected Authenticator(String applicationIdentifier, String userCredential, String authenticationServerURL, PathfinderServices services) {
+        this(applicationIdentifier, userCredential, authenticationServerURL, services, services.getConnection());
+    }
+
+    /**
+     * Creates an authenticator responsible for authenticating the user on one connection.
+     *
+     * @param applicationIdentifier   for the current application.
+     * @param userCredential          JWT as a String.
+     * @param authenticationServerURL URL of the server that authenticates the user.
+     * @param services                a pathfinder services object.
+     * @param connection              to authenticate.
+     */
+    protected Authenticator(String applicationIdentifier, String userCredential, String authenticationServerURL, PathfinderServices services, Connection connection) {
         this.applicationIdentifier = applicationIdentifier;
         this.userCredential = userCredential;
         this.authenticationServerURL = authenticationServerURL;
         this.services = services;
+        this.connection = connection;
     }
 
     /**
@@ -107,7 +127,7 @@ public class Authenticator extends Listenable<AuthenticationListener, JsonObject
                             JsonObject json = new JsonObject();
                             json.addProperty("message", "Authenticate");
                             json.addProperty("value", email);
-                            Authenticator.this.services.getConnection().sendAuthenticationMessage(json.toString());
+                            Authenticator.this.connection.sendAuthenticationMessage(json.toString());
                         } else {
                             Authenticator.this.authenticationFailed("JWT does not contain email");
                         }
@@ -129,13 +149,22 @@ public class Authenticator extends Listenable<AuthenticationListener, JsonObject
      *
      * @param reason of why the authentication sequence failed.
      */
-    private void authenticationFailed(String reason) {
+    protected void authenticationFailed(String reason) {
         logger.error(reason);
         for (AuthenticationListener listener : Authenticator.this.getListeners()) {
             listener.authenticationFailed(reason);
         }
     }
 
+    /**
+     * Tells the listeners that the authentication sequence succeeded.
+     */
+    protected void authenticationSuccessful() {
+        for (AuthenticationListener listener : this.getListeners()) {
+            listener.authenticationSuccessful();
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -149,10 +178,8 @@ public class Authenticator extends Listenable<AuthenticationListener, JsonObject
 
         if (reason.equals("Authenticated")) {
             logger.info("User authenticated successfully, switching to model message handler.");
-            for (AuthenticationListener listener : this.getListeners()) {
-                listener.authenticationSuccessful();
-            }
-            this.services.getConnection().setMessageHandler(new ModelMessageHandler(this.services));
+            this.authenticationSuccessful();
+            this.connection.setMessageHandler(new ModelMessageHandler(this.services));
 
             return false;
         }
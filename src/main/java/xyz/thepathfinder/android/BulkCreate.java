@@ -0,0 +1,207 @@
+package xyz.thepathfinder.android;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the creation of a group of models requested together, see
+ * {@link Cluster#createTransports(List, BulkCreateListener)} and
+ * {@link Cluster#createCommodities(List, BulkCreateListener)}. Listeners are notified as each
+ * model is created or fails to be created, and once when every model is done. A create fails
+ * when the Pathfinder server replies with an error or no reply arrives before the request
+ * timeout, see {@link Pathfinder#setRequestTimeout(long, TimeUnit)}. A listener added once the
+ * bulk create is complete is notified of the completion immediately.
+ *
+ * @param <T> Type of the models being created.
+ * @author David Robinson
+ */
+public class BulkCreate<T extends Model> extends Listenable<BulkCreateListener<T>, T> {
+
+    /**
+     * Logs actions performed by the class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(BulkCreate.class);
+
+    /**
+     * Models being created, in the order they were requested.
+     */
+    private final List<T> models;
+
+    /**
+     * Models that failed to be created, in the order they failed.
+     */
+    private final List<T> failed;
+
+    /**
+     * Number of models that are neither created nor failed yet.
+     */
+    private int remaining;
+
+    /**
+     * Constructs a bulk create of the specified models.
+     *
+     * @param models to be created.
+     */
+    protected BulkCreate(List<T> models) {
+        this.models = Collections.unmodifiableList(new ArrayList<T>(models));
+        this.failed = new ArrayList<T>();
+        this.remaining = models.size();
+    }
+
+    /**
+     * Adds a listener to the bulk create. If every model is already done the listener's
+     * {@link BulkCreateListener#completed(List)} is invoked immediately.
+     *
+     * @param listener to add.
+     */
+    @Override
+    public void addListener(BulkCreateListener<T> listener) {
+        boolean complete;
+        synchronized (this) {
+            super.addListener(listener);
+            complete = this.remaining == 0;
+        }
+
+        if (complete) {
+            listener.completed(this.models);
+        }
+    }
+
+    /**
+     * Returns the models being created, in the order they were requested. The models
+     * are connected once they are created.
+     *
+     * @return an unmodifiable list of models.
+     */
+    public List<T> getModels() {
+        return this.models;
+    }
+
+    /**
+     * Returns the models that failed to be created.
+     *
+     * @return the failed models, in the order they failed.
+     */
+    public synchronized List<T> getFailedModels() {
+        return new ArrayList<T>(this.failed);
+    }
+
+    /**
+     * Returns the number of models that are neither created nor failed yet.
+     *
+     * @return the number of models remaining.
+     */
+    public synchronized int getRemainingCount() {
+        return this.remaining;
+    }
+
+    /**
+     * Returns <tt>true</tt> if every model was created or failed to be created.
+     *
+     * @return <tt>true</tt> if complete, <tt>false</tt> otherwise.
+     */
+    public synchronized boolean isComplete() {
+        return this.remaining == 0;
+    }
+
+    /**
+     * Waits until every model is created or failed to be created, or the timeout elapses.
+     *
+     * @param timeout maximum time to wait.
+     * @param unit    of the timeout.
+     * @return <tt>true</tt> if the bulk create is complete, <tt>false</tt> if the timeout elapsed.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public synchronized boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (this.remaining > 0) {
+            long wait = deadline - System.nanoTime();
+            if (wait <= 0) {
+                return false;
+            }
+
+            TimeUnit.NANOSECONDS.timedWait(this, wait);
+        }
+
+        return true;
+    }
+
+    /**
+     * Records the creation of one of the models and notifies the listeners.
+     *
+     * @param reason the type of message received, <tt>"Created"</tt>.
+     * @param model  that was created.
+     * @return <tt>true</tt> if the model was part of this bulk create, <tt>false</tt> otherwise.
+     */
+    @Override
+    protected boolean notifyUpdate(String reason, T model) {
+        if (!"Created".equals(reason)) {
+            return false;
+        }
+
+        return this.finish(model, null);
+    }
+
+    /**
+     * Records that one of the models failed to be created and notifies the listeners.
+     *
+     * @param model  that failed to be created.
+     * @param reason the create failed.
+     * @return <tt>true</tt> if the model was part of this bulk create, <tt>false</tt> otherwise.
+     */
+    protected boolean notifyFailed(T model, String reason) {
+        return this.finish(model, reason);
+    }
+
+    /**
+     * Counts one of the models as done and notifies the listeners.
+     *
+     * @param model  that is done.
+     * @param reason the create failed, <tt>null</tt> if the model was created.
+     * @return <tt>true</tt> if the model was part of this bulk create, <tt>false</tt> otherwise.
+     */
+    private boolean finish(T model, String reason) {
+        boolean completed;
+        List<BulkCreateListener<T>> listeners;
+        synchronized (this) {
+            if (this.remaining == 0) {
+                return false;
+            }
+
+            this.remaining--;
+            if (reason != null) {
+                this.failed.add(model);
+            }
+
+            completed = this.remaining == 0;
+            if (completed) {
+                this.notifyAll();
+            }
+
+            // taken with the count, so a listener added from now on is notified by addListener
+            listeners = new ArrayList<BulkCreateListener<T>>(this.getListeners());
+        }
+
+        for (BulkCreateListener<T> listener : listeners) {
+            if (reason == null) {
+                listener.created(model);
+            } else {
+                listener.failed(model, reason);
+            }
+        }
+
+        if (completed) {
+            logger.info("Bulk create of " + this.models.size() + " models completed, " + this.failed.size() + " failed");
+            for (BulkCreateListener<T> listener : listeners) {
+                listener.completed(this.models);
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,40 @@
+package xyz.thepathfinder.android;
+
+import java.util.List;
+
+/**
+ * The <tt>BulkCreateListener</tt> gives developers access to notifications about the
+ * progress of a {@link BulkCreate}.
+ *
+ * @param <T> Type of the models being created.
+ * @author David Robinson
+ */
+public abstract class BulkCreateListener<T extends Model> implements Listener {
+
+    /**
+     * Invoked when one of the models was created.
+     *
+     * @param model created, with updated fields.
+     */
+    public void created(T model) {
+    }
+
+    /**
+     * Invoked when one of the models failed to be created, because the Pathfinder server
+     * replied with an error or no reply arrived in time.
+     *
+     * @param model  that failed to be created.
+     * @param reason the create failed.
+     */
+    public void failed(T model, String reason) {
+    }
+
+    /**
+     * Invoked once every model was created or failed to be created, see
+     * {@link BulkCreate#getFailedModels()}.
+     *
+     * @param models of the bulk create, in the order they were requested.
+     */
+    public void completed(List<T> models) {
+    }
+}
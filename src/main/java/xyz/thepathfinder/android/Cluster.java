@@ -9,9 +9,12 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <p>
@@ -39,25 +42,17 @@ public class Cluster extends SubscribableCrudModel<Cluster, ClusterListener> {
     private static final Logger logger = LoggerFactory.getLogger(Cluster.class);
 
     /**
-     * Maps a path in the form of a string to the commodities directly under this cluster
+     * The commodities, sub-clusters, transports and routes of this cluster. The snapshot is
+     * immutable, changes publish a new snapshot so it may be read from any thread. Writers
+     * synchronize on this cluster.
      */
-    private Map<String, Commodity> commodities;
+    private volatile ClusterSnapshot snapshot;
 
     /**
-     * Maps a path in the form of a string to the sub-clusters directly under this cluster
+     * Thread applying a server update to this cluster's members, <tt>null</tt> if none is. The
+     * members the update adds are published together once the update is applied.
      */
-    private Map<String, Cluster> subclusters;
-
-    /**
-     * Maps a path in the form of a string to the transports directly under this cluster
-     */
-    private Map<String, Transport> transports;
-
-    /**
-     * List of routes for this cluster. The routes object is an immutable list.
-     * The object should always be reassigned, never mutated.
-     */
-    private List<Route> routes;
+    private volatile Thread memberUpdater;
 
     /**
      * Constructor for a cluster object. This should called by {@link #getInstance(String, PathfinderServices)}.
@@ -85,10 +80,7 @@ public class Cluster extends SubscribableCrudModel<Cluster, ClusterListener> {
             this.getServices().getRegistry().registerModel(this);
         }
 
-        this.transports = new HashMap<String, Transport>();
-        this.commodities = new HashMap<String, Commodity>();
-        this.subclusters = new HashMap<String, Cluster>();
-        this.routes = new ArrayList<Route>();
+        this.snapshot = ClusterSnapshot.empty(this);
 
         logger.info("Done constructing cluster by path: " + this);
     }
@@ -188,13 +180,61 @@ public class Cluster extends SubscribableCrudModel<Cluster, ClusterListener> {
         return commodity;
     }
 
+    /**
+     * Creates a group of commodities under this cluster on the Pathfinder server. Unlike
+     * {@link #createCommodity(double, double, double, double, CommodityStatus, JsonObject)} the
+     * commodities are sent to the server immediately, the create requests are pipelined in one
+     * batch instead of waiting for each reply. The returned object reports as the commodities
+     * are created and when all of them are.
+     *
+     * @param commodities the values of the commodities to create.
+     * @return the bulk create tracking the commodities.
+     */
+    public BulkCreate<Commodity> createCommodities(List<CommoditySpec> commodities) {
+        return this.createCommodities(commodities, null);
+    }
+
+    /**
+     * Creates a group of commodities under this cluster on the Pathfinder server, see
+     * {@link #createCommodities(List)}. The listener is added before the create requests are
+     * sent, so it is notified of every reply.
+     *
+     * @param commodities the values of the commodities to create.
+     * @param listener    to notify of the progress, may be <tt>null</tt>.
+     * @return the bulk create tracking the commodities.
+     */
+    public BulkCreate<Commodity> createCommodities(List<CommoditySpec> commodities, BulkCreateListener<Commodity> listener) {
+        if (!this.isConnected()) {
+            logger.warn("Attempting to create commodities on an unconnected cluster, requests will fail if " + this.getPathName() + " is not found.");
+        }
+
+        List<Commodity> created = new ArrayList<Commodity>(commodities.size());
+        for (CommoditySpec spec : commodities) {
+            Commodity commodity = Commodity.getInstance((String) null, this.getServices());
+            commodity.initCommodity(spec.getStartLatitude(), spec.getStartLongitude(), spec.getEndLatitude(), spec.getEndLongitude(), spec.getStatus(), spec.getMetadata(), this.getPathName());
+            created.add(commodity);
+        }
+
+        BulkCreate<Commodity> bulk = new BulkCreate<Commodity>(created);
+        if (listener != null) {
+            bulk.addListener(listener);
+        }
+
+        this.sendCreates(bulk);
+        return bulk;
+    }
+
     /**
      * Adds a commodity to this cluster's list of available commodities.
      *
      * @param commodity to be added.
      */
-    protected void addCommodity(Commodity commodity) {
-        this.commodities.put(commodity.getPathName(), commodity);
+    protected synchronized void addCommodity(Commodity commodity) {
+        if (this.memberUpdater == Thread.currentThread()) {
+            return;
+        }
+
+        this.snapshot = this.snapshot.withCommodity(commodity);
     }
 
     /**
@@ -214,7 +254,7 @@ public class Cluster extends SubscribableCrudModel<Cluster, ClusterListener> {
      * @return A commodity associated with that path if one exists, <tt>null</tt> if it doesn't exist.
      */
     public Commodity getCommodity(String path) {
-        return this.commodities.get(path);
+        return this.snapshot.getCommodity(path);
     }
 
     /**
@@ -223,7 +263,7 @@ public class Cluster extends SubscribableCrudModel<Cluster, ClusterListener> {
      * @return A collection of commodities.
      */
     public Collection<Commodity> getCommodities() {
-        return Collections.<Commodity>unmodifiableCollection(this.commodities.values());
+        return this.snapshot.getCommodities();
     }
 
     /**
@@ -231,10 +271,12 @@ public class Cluster extends SubscribableCrudModel<Cluster, ClusterListener> {
      *
      * @param commodities an iterable collection of commodities
      */
-    private void setCommodities(Iterable<Commodity> commodities) {
+    private synchronized void setCommodities(Iterable<Commodity> commodities) {
+        Map<String, Commodity> commodityMap = new HashMap<String, Commodity>(this.snapshot.getCommoditiesMap());
         for (Commodity commodity : commodities) {
-            this.commodities.put(commodity.getPathName(), commodity);
+            commodityMap.put(commodity.getPathName(), commodity);
         }
+        this.snapshot = this.snapshot.withMembers(null, commodityMap, null);
     }
 
     /**
@@ -242,8 +284,8 @@ public class Cluster extends SubscribableCrudModel<Cluster, ClusterListener> {
      *
      * @param commodities a map of commodities
      */
-    private void setCommodities(Map<String, Commodity> commodities) {
-        this.commodities = commodities;
+    private synchronized void setCommodities(Map<String, Commodity> commodities) {
+        this.snapshot = this.snapshot.withMembers(null, commodities, null);
     }
 
     /**
@@ -252,7 +294,7 @@ public class Cluster extends SubscribableCrudModel<Cluster, ClusterListener> {
      * @return A map of commodities.
      */
     public Map<String, Commodity> getCommoditiesMap() {
-        return Collections.<String, Commodity>unmodifiableMap(this.commodities);
+        return this.snapshot.getCommoditiesMap();
     }
 
     /**
@@ -276,7 +318,7 @@ public class Cluster extends SubscribableCrudModel<Cluster, ClusterListener> {
      * @return A subcluster associated with the provided path if exists, <tt>null</tt> if it doesn't exist.
      */
     public Cluster getSubcluster(String path) {
-        return this.subclusters.get(path);
+        return this.snapshot.getSubcluster(path);
     }
 
     /**
@@ -285,7 +327,20 @@ public class Cluster extends SubscribableCrudModel<Cluster, ClusterListener> {
      * @return An immutable collection of clusters.
      */
     public Collection<Cluster> getSubclusters() {
-        return Collections.<Cluster>unmodifiableCollection(this.subclusters.values());
+        return this.snapshot.getSubclusters();
+    }
+
+    /**
+     * Adds a subcluster to this cluster's list of direct subclusters.
+     *
+     * @param cluster to be added.
+     */
+    protected synchronized void addSubcluster(Cluster cluster) {
+        if (this.memberUpdater == Thread.currentThread()) {
+            return;
+        }
+
+        this.snapshot = this.snapshot.withSubcluster(cluster);
     }
 
     /**
@@ -293,10 +348,12 @@ public class Cluster extends SubscribableCrudModel<Cluster, ClusterListener> {
      *
      * @param subclusters an iterable collection of clusters
      */
-    private void setSubclusters(Iterable<Cluster> subclusters) {
+    private synchronized void setSubclusters(Iterable<Cluster> subclusters) {
+        Map<String, Cluster> clusterMap = new HashMap<String, Cluster>(this.snapshot.getSubclustersMap());
         for (Cluster cluster : subclusters) {
-            this.subclusters.put(cluster.getPathName(), cluster);
+            clusterMap.put(cluster.getPathName(), cluster);
         }
+        this.snapshot = this.snapshot.withMembers(null, null, clusterMap);
     }
 
     /**
@@ -304,8 +361,8 @@ public class Cluster extends SubscribableCrudModel<Cluster, ClusterListener> {
      *
      * @param subclusters a map of clusters
      */
-    private void setSubclusters(Map<String, Cluster> subclusters) {
-        this.subclusters = subclusters;
+    private synchronized void setSubclusters(Map<String, Cluster> subclusters) {
+        this.snapshot = this.snapshot.withMembers(null, null, subclusters);
     }
 
     /**
@@ -314,7 +371,7 @@ public class Cluster extends SubscribableCrudModel<Cluster, ClusterListener> {
      * @return An immutable map of clusters.
      */
     public Map<String, Cluster> getSubclustersMap() {
-        return Collections.<String, Cluster>unmodifiableMap(this.subclusters);
+        return this.snapshot.getSubclustersMap();
     }
 
     /**
@@ -322,8 +379,12 @@ public class Cluster extends SubscribableCrudModel<Cluster, ClusterListener> {
      *
      * @param transport to be added.
      */
-    protected void addTransport(Transport transport) {
-        this.transports.put(transport.getPathName(), transport);
+    protected synchronized void addTransport(Transport transport) {
+        if (this.memberUpdater == Thread.currentThread()) {
+            return;
+        }
+
+        this.snapshot = this.snapshot.withTransport(transport);
     }
 
     /**
@@ -346,6 +407,88 @@ public class Cluster extends SubscribableCrudModel<Cluster, ClusterListener> {
         return transport;
     }
 
+    /**
+     * Creates a group of transports under this cluster on the Pathfinder server. Unlike
+     * {@link #createTransport(double, double, TransportStatus, JsonObject)} the transports are
+     * sent to the server immediately, the create requests are pipelined in one batch instead
+     * of waiting for each reply. The returned object reports as the transports are created
+     * and when all of them are.
+     *
+     * @param transports the values of the transports to create.
+     * @return the bulk create tracking the transports.
+     */
+    public BulkCreate<Transport> createTransports(List<TransportSpec> transports) {
+        return this.createTransports(transports, null);
+    }
+
+    /**
+     * Creates a group of transports under this cluster on the Pathfinder server, see
+     * {@link #createTransports(List)}. The listener is added before the create requests are
+     * sent, so it is notified of every reply.
+     *
+     * @param transports the values of the transports to create.
+     * @param listener   to notify of the progress, may be <tt>null</tt>.
+     * @return the bulk create tracking the transports.
+     */
+    public BulkCreate<Transport> createTransports(List<TransportSpec> transports, BulkCreateListener<Transport> listener) {
+        if (!this.isConnected()) {
+            logger.warn("Attempting to create transports on an unconnected cluster, requests will fail if " + this.getPathName() + " is not found.");
+        }
+
+        List<Transport> created = new ArrayList<Transport>(transports.size());
+        for (TransportSpec spec : transports) {
+            Transport transport = Transport.getInstance((String) null, this.getServices());
+            transport.initTransport(spec.getLatitude(), spec.getLongitude(), spec.getStatus(), spec.getMetadata(), this.getPathName());
+            created.add(transport);
+        }
+
+        BulkCreate<Transport> bulk = new BulkCreate<Transport>(created);
+        if (listener != null) {
+            bulk.addListener(listener);
+        }
+
+        this.sendCreates(bulk);
+        return bulk;
+    }
+
+    /**
+     * Sends the create requests of a bulk create's models in one outbound batch. Each request
+     * is tracked, so the bulk create counts the model as done once the server replies or the
+     * request times out.
+     *
+     * @param bulk create of the models.
+     * @param <T>  type of the models.
+     * @param <E>  type of the models' listeners.
+     */
+    private <T extends SubscribableCrudModel<T, E>, E extends ModelListener<T>> void sendCreates(final BulkCreate<T> bulk) {
+        List<T> models = bulk.getModels();
+        logger.info("Creating " + models.size() + " models in " + this.getPathName());
+        for (final T model : models) {
+            model.trackRequest("Created", 1).addListener(new ModelFutureListener<T>() {
+                @Override
+                public void completed(T created) {
+                    bulk.notifyUpdate("Created", created);
+                }
+
+                @Override
+                public void failed(String reason) {
+                    bulk.notifyFailed(model, reason);
+                }
+            });
+        }
+
+        boolean completed = false;
+        OutboundBatch.begin();
+        try {
+            for (T model : models) {
+                model.create();
+            }
+            completed = true;
+        } finally {
+            OutboundBatch.end(completed);
+        }
+    }
+
     /**
      * Returns a transport directly under this cluster by its path.
      *
@@ -353,7 +496,7 @@ public class Cluster extends SubscribableCrudModel<Cluster, ClusterListener> {
      * @return A transport associated with the provided path if exists, <tt>null</tt> if it doesn't exist.
      */
     public Transport getTransport(String path) {
-        return this.transports.get(path);
+        return this.snapshot.getTransport(path);
     }
 
     /**
@@ -362,7 +505,7 @@ public class Cluster extends SubscribableCrudModel<Cluster, ClusterListener> {
      * @return A collection of transports.
      */
     public Collection<Transport> getTransports() {
-        return Collections.<Transport>unmodifiableCollection(this.transports.values());
+        return this.snapshot.getTransports();
     }
 
     /**
@@ -370,10 +513,12 @@ public class Cluster extends SubscribableCrudModel<Cluster, ClusterListener> {
      *
      * @param transports an iterable collection of transports
      */
-    private void setTransports(Iterable<Transport> transports) {
+    private synchronized void setTransports(Iterable<Transport> transports) {
+        Map<String, Transport> transportMap = new HashMap<String, Transport>(this.snapshot.getTransportsMap());
         for (Transport transport : transports) {
-            this.transports.put(transport.getPathName(), transport);
+            transportMap.put(transport.getPathName(), transport);
         }
+        this.snapshot = this.snapshot.withMembers(transportMap, null, null);
     }
 
     /**
@@ -381,8 +526,8 @@ public class Cluster extends SubscribableCrudModel<Cluster, ClusterListener> {
      *
      * @param transports a map of transports
      */
-    private void setTransports(Map<String, Transport> transports) {
-        this.transports = transports;
+    private synchronized void setTransports(Map<String, Transport> transports) {
+        this.snapshot = this.snapshot.withMembers(transports, null, null);
     }
 
     /**
@@ -391,7 +536,146 @@ public class Cluster extends SubscribableCrudModel<Cluster, ClusterListener> {
      * @return A map of transports.
      */
     public Map<String, Transport> getTransportsMap() {
-        return Collections.<String, Transport>unmodifiableMap(this.transports);
+        return this.snapshot.getTransportsMap();
+    }
+
+    /**
+     * Returns every model of the specified type that is known below this cluster, at any depth.
+     * Unlike {@link #getSubclusters()}, {@link #getTransports()} and {@link #getCommodities()}
+     * this includes models in nested subclusters and models that have been retrieved by path
+     * without their cluster being connected. The models may be cast to the class matching
+     * <tt>type</tt>.
+     *
+     * @param type of the models to return, if <tt>null</tt> models of every type are returned.
+     * @return a list of the models under this cluster.
+     */
+    public List<Model> descendants(ModelType type) {
+        return this.getServices().getRegistry().getDescendants(this.getPath(), type);
+    }
+
+    /**
+     * Runs an aggregation over this cluster and every cluster below it. The aggregator visits
+     * each cluster once and the partial results are combined. Wide subcluster trees are
+     * traversed in parallel with fork/join, so the aggregator must be safe to call from
+     * multiple threads. Each cluster's members are read from a single published snapshot, so
+     * the aggregation may run while updates are being received.
+     *
+     * @param aggregator to run over the subtree.
+     * @param <R>        type of the result.
+     * @return the combined result for this cluster's subtree.
+     */
+    public <R> R aggregate(ClusterAggregator<R> aggregator) {
+        return ForkJoinSupport.getPool().invoke(new ClusterAggregationTask<R>(this, aggregator));
+    }
+
+    /**
+     * Counts the transports in this cluster and every cluster below it by their status.
+     *
+     * @return a map from status to the number of transports with that status.
+     */
+    public Map<TransportStatus, Integer> countTransportsByStatus() {
+        return this.aggregate(new ClusterAggregator<Map<TransportStatus, Integer>>() {
+            @Override
+            public Map<TransportStatus, Integer> visit(Cluster cluster) {
+                Map<TransportStatus, Integer> counts = new EnumMap<TransportStatus, Integer>(TransportStatus.class);
+                for (Transport transport : cluster.getTransports()) {
+                    Integer count = counts.get(transport.getStatus());
+                    counts.put(transport.getStatus(), count == null ? 1 : count + 1);
+                }
+                return counts;
+            }
+
+            @Override
+            public Map<TransportStatus, Integer> combine(Map<TransportStatus, Integer> left, Map<TransportStatus, Integer> right) {
+                for (Map.Entry<TransportStatus, Integer> entry : right.entrySet()) {
+                    Integer count = left.get(entry.getKey());
+                    left.put(entry.getKey(), count == null ? entry.getValue() : count + entry.getValue());
+                }
+                return left;
+            }
+        });
+    }
+
+    /**
+     * Counts the commodities in this cluster and every cluster below it by their status.
+     *
+     * @return a map from status to the number of commodities with that status.
+     */
+    public Map<CommodityStatus, Integer> countCommoditiesByStatus() {
+        return this.aggregate(new ClusterAggregator<Map<CommodityStatus, Integer>>() {
+            @Override
+            public Map<CommodityStatus, Integer> visit(Cluster cluster) {
+                Map<CommodityStatus, Integer> counts = new EnumMap<CommodityStatus, Integer>(CommodityStatus.class);
+                for (Commodity commodity : cluster.getCommodities()) {
+                    Integer count = counts.get(commodity.getStatus());
+                    counts.put(commodity.getStatus(), count == null ? 1 : count + 1);
+                }
+                return counts;
+            }
+
+            @Override
+            public Map<CommodityStatus, Integer> combine(Map<CommodityStatus, Integer> left, Map<CommodityStatus, Integer> right) {
+                for (Map.Entry<CommodityStatus, Integer> entry : right.entrySet()) {
+                    Integer count = left.get(entry.getKey());
+                    left.put(entry.getKey(), count == null ? entry.getValue() : count + entry.getValue());
+                }
+                return left;
+            }
+        });
+    }
+
+    /**
+     * Returns the transports in this cluster and every cluster below it accepted by the filter.
+     *
+     * @param filter to test the transports with.
+     * @return a list of the accepted transports.
+     */
+    public List<Transport> findTransports(final ModelFilter<Transport> filter) {
+        return this.aggregate(new ClusterAggregator<List<Transport>>() {
+            @Override
+            public List<Transport> visit(Cluster cluster) {
+                List<Transport> matches = new ArrayList<Transport>();
+                for (Transport transport : cluster.getTransports()) {
+                    if (filter.accept(transport)) {
+                        matches.add(transport);
+                    }
+                }
+                return matches;
+            }
+
+            @Override
+            public List<Transport> combine(List<Transport> left, List<Transport> right) {
+                left.addAll(right);
+                return left;
+            }
+        });
+    }
+
+    /**
+     * Returns the commodities in this cluster and every cluster below it accepted by the filter.
+     *
+     * @param filter to test the commodities with.
+     * @return a list of the accepted commodities.
+     */
+    public List<Commodity> findCommodities(final ModelFilter<Commodity> filter) {
+        return this.aggregate(new ClusterAggregator<List<Commodity>>() {
+            @Override
+            public List<Commodity> visit(Cluster cluster) {
+                List<Commodity> matches = new ArrayList<Commodity>();
+                for (Commodity commodity : cluster.getCommodities()) {
+                    if (filter.accept(commodity)) {
+                        matches.add(commodity);
+                    }
+                }
+                return matches;
+            }
+
+            @Override
+            public List<Commodity> combine(List<Commodity> left, List<Commodity> right) {
+                left.addAll(right);
+                return left;
+            }
+        });
     }
 
     /**
@@ -400,7 +684,7 @@ public class Cluster extends SubscribableCrudModel<Cluster, ClusterListener> {
      * @return A collection of routes.
      */
     public Collection<Route> getRoutes() {
-        return Collections.<Route>unmodifiableCollection(this.routes);
+        return this.snapshot.getRoutes();
     }
 
     /**
@@ -408,8 +692,8 @@ public class Cluster extends SubscribableCrudModel<Cluster, ClusterListener> {
      *
      * @param routes a list of routes for this cluster
      */
-    private void setRoutes(List<Route> routes) {
-        this.routes = routes;
+    private synchronized void setRoutes(List<Route> routes) {
+        this.snapshot = this.snapshot.withRoutes(routes);
     }
 
     /**
@@ -441,195 +725,186 @@ public class Cluster extends SubscribableCrudModel<Cluster, ClusterListener> {
 
         prevCommodities = this.getCommoditiesMap();
         Map<String, Commodity> commodityMap = new HashMap<String, Commodity>();
-        if (json.has("commodities")) {
-            JsonArray commodities = json.getAsJsonArray("commodities");
-
-            for (JsonElement commodityJson : commodities) {
-                String path = this.getSubmodelPath((JsonObject) commodityJson);
-                Commodity commodity = Commodity.getInstance(path, this.getServices());
-
-                if (commodity.notifyUpdate(null, (JsonObject) commodityJson)) {
-                    logger.info("Finished notifyUpdate in Cluster of commodity");
-                    updatedCommodities.add(commodity);
-                }
-
-                commodityMap.put(commodity.getPathName(), commodity);
-            }
-        }
-        logger.info("Finished has commodities");
-
         prevTransports = this.getTransportsMap();
         Map<String, Transport> transportMap = new HashMap<String, Transport>();
-        if (json.has("transports")) {
-            JsonArray transports = json.getAsJsonArray("transports");
+        prevSubclusters = this.getSubclustersMap();
+        Map<String, Cluster> clusterMap = new HashMap<String, Cluster>();
 
-            for (JsonElement transportJson : transports) {
-                String path = this.getSubmodelPath((JsonObject) transportJson);
-                Transport transport = Transport.getInstance(path, this.getServices());
+        // children add themselves to this cluster when they are updated, their addition is published with the others
+        this.memberUpdater = Thread.currentThread();
+        try {
+            if (json.has("commodities")) {
+                JsonArray commodities = json.getAsJsonArray("commodities");
 
-                if (transport.notifyUpdate(null, (JsonObject) transportJson)) {
-                    updatedTransports.add(transport);
-                }
+                for (JsonElement commodityJson : commodities) {
+                    String path = this.getSubmodelPath((JsonObject) commodityJson);
+                    Commodity commodity = Commodity.getInstance(path, this.getServices());
 
-                transportMap.put(transport.getPathName(), transport);
-            }
-        }
+                    if (commodity.notifyUpdate(null, (JsonObject) commodityJson)) {
+                        logger.info("Finished notifyUpdate in Cluster of commodity");
+                        updatedCommodities.add(commodity);
+                    }
 
-        prevSubclusters = this.getSubclustersMap();
-        Map<String, Cluster> clusterMap = new HashMap<String, Cluster>();
-        if (json.has("subclusters")) {
-            JsonArray clusters = json.getAsJsonArray("subclusters");
-            logger.info("Cluster's subclusters : " + clusters.toString());
-            for (JsonElement clusterJson : clusters) {
-                String path = this.getSubmodelPath((JsonObject) clusterJson);
-                Cluster cluster = Cluster.getInstance(path, this.getServices());
-
-                if (cluster.notifyUpdate(null, (JsonObject) clusterJson)) {
-                    updatedClusters.add(cluster);
+                    commodityMap.put(commodity.getPathName(), commodity);
                 }
-
-                clusterMap.put(cluster.getPathName(), cluster);
             }
-        }
+            logger.info("Finished has commodities");
 
-        this.setCommodities(commodityMap);
-        this.setSubclusters(clusterMap);
-        this.setTransports(transportMap);
+            if (json.has("transports")) {
+                JsonArray transports = json.getAsJsonArray("transports");
 
-        List<ClusterListener> listeners = this.getListeners();
+                for (JsonElement transportJson : transports) {
+                    String path = this.getSubmodelPath((JsonObject) transportJson);
+                    Transport transport = Transport.getInstance(path, this.getServices());
 
-        for (String path : clusterMap.keySet()) {
-            if (!prevSubclusters.containsKey(path)) {
-                Cluster cluster = clusterMap.get(path);
-                logger.info("Cluster " + this.getPathName() + " subcluster added: " + cluster.getPathName());
+                    if (transport.notifyUpdate(null, (JsonObject) transportJson)) {
+                        updatedTransports.add(transport);
+                    }
 
-                for (ClusterListener listener : listeners) {
-                    listener.subclusterAdded(cluster);
+                    transportMap.put(transport.getPathName(), transport);
                 }
             }
-            updated = true;
-        }
 
-        for (String path : commodityMap.keySet()) {
-            if (!prevCommodities.containsKey(path)) {
-                Commodity commodity = commodityMap.get(path);
-                logger.info("Cluster " + this.getPathName() + " commodity added: " + commodity.getPathName());
+            if (json.has("subclusters")) {
+                JsonArray clusters = json.getAsJsonArray("subclusters");
+                logger.info("Cluster's subclusters : " + clusters.toString());
+                for (JsonElement clusterJson : clusters) {
+                    String path = this.getSubmodelPath((JsonObject) clusterJson);
+                    Cluster cluster = Cluster.getInstance(path, this.getServices());
+
+                    if (cluster.notifyUpdate(null, (JsonObject) clusterJson)) {
+                        updatedClusters.add(cluster);
+                    }
 
-                for (ClusterListener listener : listeners) {
-                    listener.commodityAdded(commodity);
+                    clusterMap.put(cluster.getPathName(), cluster);
                 }
             }
-            updated = true;
+        } finally {
+            this.memberUpdater = null;
         }
 
-        for (String path : transportMap.keySet()) {
-            if (!prevTransports.containsKey(path)) {
-                Transport transport = transportMap.get(path);
-                logger.info("Cluster " + this.getPathName() + " transport added: " + transport.getPathName());
+        this.setMembers(transportMap, commodityMap, clusterMap);
 
-                for (ClusterListener listener : listeners) {
-                    listener.transportAdded(transport);
+        ClusterNotificationBatch.begin();
+        try {
+            ClusterNotificationBatch.Notifications notifications = ClusterNotificationBatch.get(this);
+
+            for (String path : clusterMap.keySet()) {
+                if (!prevSubclusters.containsKey(path)) {
+                    notifications.subclusterAdded(clusterMap.get(path));
                 }
+                updated = true;
             }
-            updated = true;
-        }
 
-        for (String path : prevCommodities.keySet()) {
-            if (!commodityMap.containsKey(path)) {
-                Commodity commodity = prevCommodities.get(path);
-                logger.info("Cluster " + this.getPathName() + " commodity removed: " + commodity.getPathName());
-
-                for (ClusterListener listener : listeners) {
-                    listener.commodityRemoved(commodity);
+            for (String path : commodityMap.keySet()) {
+                if (!prevCommodities.containsKey(path)) {
+                    notifications.commodityAdded(commodityMap.get(path));
                 }
+                updated = true;
             }
-            updated = true;
-        }
 
-        for (String path : prevSubclusters.keySet()) {
-            if (!clusterMap.containsKey(path)) {
-                Cluster cluster = prevSubclusters.get(path);
-                logger.info("Cluster " + this.getPathName() + " subcluster removed: " + cluster.getPathName());
-
-                for (ClusterListener listener : listeners) {
-                    listener.subclusterRemoved(cluster);
+            for (String path : transportMap.keySet()) {
+                if (!prevTransports.containsKey(path)) {
+                    notifications.transportAdded(transportMap.get(path));
                 }
+                updated = true;
             }
-            updated = true;
-        }
-
-        for (String path : prevTransports.keySet()) {
-            if (!transportMap.containsKey(path)) {
-                Transport transport = prevTransports.get(path);
-                logger.info("Cluster " + this.getPathName() + " transport removed: " + transport.getPathName());
 
-                for (ClusterListener listener : listeners) {
-                    listener.transportRemoved(transport);
+            for (String path : prevCommodities.keySet()) {
+                if (!commodityMap.containsKey(path)) {
+                    notifications.commodityRemoved(prevCommodities.get(path));
                 }
+                updated = true;
             }
-            updated = true;
-        }
 
-        for (Cluster cluster : updatedClusters) {
-            logger.info("Cluster " + this.getPathName() + " subcluster updated: " + cluster.getPathName());
-            for (ClusterListener listener : listeners) {
-                listener.subclusterUpdated(cluster);
+            for (String path : prevSubclusters.keySet()) {
+                if (!clusterMap.containsKey(path)) {
+                    notifications.subclusterRemoved(prevSubclusters.get(path));
+                }
+                updated = true;
             }
-            updated = true;
-        }
 
-        for (Commodity commodity : updatedCommodities) {
-            logger.info("Cluster " + this.getPathName() + " commodity updated: " + commodity.getPathName());
-            for (ClusterListener listener : listeners) {
-                listener.commodityUpdated(commodity);
+            for (String path : prevTransports.keySet()) {
+                if (!transportMap.containsKey(path)) {
+                    notifications.transportRemoved(prevTransports.get(path));
+                }
+                updated = true;
             }
-            updated = true;
-        }
 
-        for (Transport transport : updatedTransports) {
-            logger.info("Cluster " + this.getPathName() + " transport updated: " + transport.getPathName());
-            for (ClusterListener listener : listeners) {
-                listener.transportUpdated(transport);
+            for (Cluster cluster : updatedClusters) {
+                notifications.subclusterUpdated(cluster);
+                updated = true;
             }
-            updated = true;
-        }
 
-        if (!updatedCommodities.isEmpty()) {
-            logger.info("Cluster " + this.getPathName() + " commodities updated " + this.getCommodities());
-            for (ClusterListener listener : listeners) {
-                listener.commoditiesUpdated(this.getCommodities());
+            for (Commodity commodity : updatedCommodities) {
+                notifications.commodityUpdated(commodity);
+                updated = true;
             }
-        }
 
-        if (!updatedClusters.isEmpty()) {
-            logger.info("Cluster " + this.getPathName() + " subclusters updated " + this.getSubclusters());
-            for (ClusterListener listener : listeners) {
-                listener.subclustersUpdated(this.getSubclusters());
+            for (Transport transport : updatedTransports) {
+                notifications.transportUpdated(transport);
+                updated = true;
             }
-        }
 
-        if (!updatedTransports.isEmpty()) {
-            logger.info("Cluster " + this.getPathName() + " transports updated " + this.getTransports());
-            for (ClusterListener listener : listeners) {
-                listener.transportsUpdated(this.getTransports());
+            this.evictStaleModels(prevCommodities.values(), commodityMap);
+            this.evictStaleModels(prevSubclusters.values(), clusterMap);
+            this.evictStaleModels(prevTransports.values(), transportMap);
+
+            Cluster parentCluster = updated ? this.getRegisteredParentCluster() : null;
+            if (parentCluster != null) {
+                logger.info("Cluster " + this.getPathName() + " calling parent cluster's update");
+                ClusterNotificationBatch.get(parentCluster).subclusterUpdated(this);
             }
+        } finally {
+            ClusterNotificationBatch.end();
         }
 
-        Path parentPath = this.getParentPath();
+        return updated;
+    }
+
+    /**
+     * Sets this cluster's transports, commodities and sub-clusters in one snapshot, so no
+     * reader sees some of them updated and others not.
+     *
+     * @param transports  a map of transports.
+     * @param commodities a map of commodities.
+     * @param subclusters a map of clusters.
+     */
+    private synchronized void setMembers(Map<String, Transport> transports, Map<String, Commodity> commodities, Map<String, Cluster> subclusters) {
+        this.snapshot = this.snapshot.withMembers(transports, commodities, subclusters);
+    }
 
-        if (updated && this.getServices().getRegistry().isModelRegistered(parentPath)) {
-            Cluster parentCluster = Cluster.getInstance(parentPath.getPathName(), this.getServices());
+    /**
+     * Returns the current snapshot of this cluster's transports, commodities, sub-clusters and
+     * routes. The snapshot is immutable and obtained in constant time, the maps returned by
+     * {@link #getTransportsMap()}, {@link #getCommoditiesMap()} and {@link #getSubclustersMap()}
+     * are views of the current snapshot as well.
+     *
+     * @return the current snapshot.
+     */
+    public ClusterSnapshot getSnapshot() {
+        return this.snapshot;
+    }
 
-            Collection<Cluster> clusters = parentCluster.getSubclusters();
-            List<ClusterListener> clusterListeners = parentCluster.getListeners();
-            logger.info("Cluster " + this.getPathName() + " calling parent cluster's update");
-            for (ClusterListener listener : clusterListeners) {
-                listener.subclusterUpdated(this);
-                listener.subclustersUpdated(clusters);
+    /**
+     * Removes models restored from a snapshot from the registry when the server's view of
+     * this cluster no longer contains them. Evicting a subcluster also evicts every model below it.
+     *
+     * @param previous models that were members of this cluster before the update.
+     * @param current  members of this cluster after the update, keyed by path.
+     */
+    private void evictStaleModels(Collection<? extends Model> previous, Map<String, ? extends Model> current) {
+        ModelRegistry registry = this.getServices().getRegistry();
+
+        for (Model model : previous) {
+            if (model.isStale() && !current.containsKey(model.getPathName())) {
+                logger.info("Cluster " + this.getPathName() + " evicting stale model: " + model.getPathName());
+                if (model.getModelType() == ModelType.CLUSTER) {
+                    registry.unregisterDescendants(model.getPath());
+                }
+                registry.unregisterModel(model.getPath());
             }
         }
-
-        return updated;
     }
 
     /**
@@ -645,6 +920,72 @@ public class Cluster extends SubscribableCrudModel<Cluster, ClusterListener> {
             routes.add(new Route((JsonObject) route, services));
         }
 
+        for (Route previous : this.getRoutes()) {
+            Transport transport = previous.getTransport();
+            if (previous.isProvisional() && transport.getRoute() == previous) {
+                transport.setRoute(null);
+            }
+        }
+
+        this.publishRoutes(routes);
+    }
+
+    /**
+     * Plans provisional routes for this cluster on the device, for use while the pathfinder
+     * server can't be reached. Every online transport of this cluster is routed to pick up and
+     * drop off the cluster's waiting commodities, one commodity at a time. The routes are set as
+     * the cluster's and transports' routes and the listeners are notified as if the cluster was
+     * routed. They are replaced as soon as the server routes the cluster again, see
+     * {@link Route#isProvisional()}.
+     * <p>
+     * A greedy insertion seed is refined with local search on the fork/join pool until the
+     * routes stop improving or the time budget runs out. Every waiting commodity is routed
+     * even if the budget runs out.
+     * </p>
+     *
+     * @param timeout budget for improving the routes.
+     * @param unit    of the timeout.
+     * @return the provisional routes, one per online transport.
+     */
+    public List<Route> planLocalRoutes(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        List<Transport> transports = new ArrayList<Transport>();
+        for (Transport transport : this.getTransports()) {
+            if (transport.getStatus() == TransportStatus.ONLINE) {
+                transports.add(transport);
+            }
+        }
+
+        List<Commodity> commodities = new ArrayList<Commodity>();
+        for (Commodity commodity : this.getCommodities()) {
+            if (commodity.getStatus() == CommodityStatus.WAITING) {
+                commodities.add(commodity);
+            }
+        }
+
+        Comparator<Model> byPath = new Comparator<Model>() {
+            @Override
+            public int compare(Model left, Model right) {
+                return left.getPathName().compareTo(right.getPathName());
+            }
+        };
+        Collections.sort(transports, byPath);
+        Collections.sort(commodities, byPath);
+
+        logger.info("Cluster planning local routes: " + this.getPathName());
+        List<Route> routes = new LocalRoutePlanner(transports, commodities).plan(deadline);
+        this.publishRoutes(routes);
+
+        return new ArrayList<Route>(routes);
+    }
+
+    /**
+     * Sets this cluster's routes and the routes of their transports, and notifies the listeners.
+     *
+     * @param routes the new routes of this cluster.
+     */
+    private void publishRoutes(List<Route> routes) {
         this.setRoutes(routes);
 
         for (Route route : this.getRoutes()) {
@@ -688,6 +1029,109 @@ public class Cluster extends SubscribableCrudModel<Cluster, ClusterListener> {
         return this.toJson().toString();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected ClusterListener createEventListener(final ModelEventPublisher publisher) {
+        return new ClusterListener() {
+            @Override
+            public void connected(Cluster model) {
+                publisher.publish(ModelEventType.CONNECTED, model);
+            }
+
+            @Override
+            public void created(Cluster model) {
+                publisher.publish(ModelEventType.CREATED, model);
+            }
+
+            @Override
+            public void updated(Cluster model) {
+                publisher.publish(ModelEventType.UPDATED, model);
+            }
+
+            @Override
+            public void deleted(Cluster model) {
+                publisher.publish(ModelEventType.DELETED, model);
+            }
+
+            @Override
+            public void error(String error) {
+                publisher.publish(new ModelEvent(ModelEventType.ERROR, Cluster.this, error));
+            }
+
+            @Override
+            public void subscribed(Cluster model) {
+                publisher.publish(ModelEventType.SUBSCRIBED, model);
+            }
+
+            @Override
+            public void unsubscribed(Cluster model) {
+                publisher.publish(ModelEventType.UNSUBSCRIBED, model);
+            }
+
+            @Override
+            public void routeSubscribed(Cluster model) {
+                publisher.publish(ModelEventType.ROUTE_SUBSCRIBED, model);
+            }
+
+            @Override
+            public void routeUnsubscribed(Cluster model) {
+                publisher.publish(ModelEventType.ROUTE_UNSUBSCRIBED, model);
+            }
+
+            @Override
+            public void routed(List<Route> routes) {
+                publisher.publish(ModelEventType.ROUTED, Cluster.this);
+            }
+
+            @Override
+            public void transportAdded(Transport transport) {
+                publisher.publish(ModelEventType.ADDED, transport);
+            }
+
+            @Override
+            public void transportRemoved(Transport transport) {
+                publisher.publish(ModelEventType.REMOVED, transport);
+            }
+
+            @Override
+            public void transportUpdated(Transport transport) {
+                publisher.publish(ModelEventType.UPDATED, transport);
+            }
+
+            @Override
+            public void commodityAdded(Commodity commodity) {
+                publisher.publish(ModelEventType.ADDED, commodity);
+            }
+
+            @Override
+            public void commodityRemoved(Commodity commodity) {
+                publisher.publish(ModelEventType.REMOVED, commodity);
+            }
+
+            @Override
+            public void commodityUpdated(Commodity commodity) {
+                publisher.publish(ModelEventType.UPDATED, commodity);
+            }
+
+            @Override
+            public void subclusterAdded(Cluster cluster) {
+                publisher.publish(ModelEventType.ADDED, cluster);
+            }
+
+            @Override
+            public void subclusterRemoved(Cluster cluster) {
+                publisher.publish(ModelEventType.REMOVED, cluster);
+            }
+
+            @Override
+            public void subclusterUpdated(Cluster cluster) {
+                publisher.publish(ModelEventType.UPDATED, cluster);
+            }
+        };
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,73 @@
+package xyz.thepathfinder.android;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork/join task that runs a {@link ClusterAggregator} over a cluster's subtree. The
+ * cluster is visited in the current thread, all of its subclusters but the last are
+ * forked and the last one is computed in place.
+ *
+ * @param <R> type of the result.
+ * @author David Robinson
+ */
+class ClusterAggregationTask<R> extends RecursiveTask<R> {
+
+    /**
+     * Version of the serialized form of the task.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Root of the subtree to aggregate.
+     */
+    private final Cluster cluster;
+
+    /**
+     * Aggregation to run.
+     */
+    private final ClusterAggregator<R> aggregator;
+
+    /**
+     * Constructs a task aggregating the subtree of a cluster.
+     *
+     * @param cluster    root of the subtree.
+     * @param aggregator aggregation to run.
+     */
+    protected ClusterAggregationTask(Cluster cluster, ClusterAggregator<R> aggregator) {
+        this.cluster = cluster;
+        this.aggregator = aggregator;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected R compute() {
+        R result = this.aggregator.visit(this.cluster);
+
+        Collection<Cluster> subclusters = this.cluster.getSubclusters();
+        List<ClusterAggregationTask<R>> forked = new ArrayList<ClusterAggregationTask<R>>(subclusters.size());
+        Iterator<Cluster> iterator = subclusters.iterator();
+
+        while (iterator.hasNext()) {
+            ClusterAggregationTask<R> task = new ClusterAggregationTask<R>(iterator.next(), this.aggregator);
+
+            if (iterator.hasNext()) {
+                task.fork();
+                forked.add(task);
+            } else {
+                result = this.aggregator.combine(result, task.compute());
+            }
+        }
+
+        for (int k = forked.size() - 1; k >= 0; k--) {
+            result = this.aggregator.combine(result, forked.get(k).join());
+        }
+
+        return result;
+    }
+}
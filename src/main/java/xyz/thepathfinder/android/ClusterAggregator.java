@@ -0,0 +1,31 @@
+package xyz.thepathfinder.android;
+
+/**
+ * An aggregation run over a {@link Cluster} and all of its nested subclusters with
+ * {@link Cluster#aggregate(ClusterAggregator)}. Each cluster in the subtree is visited
+ * once, possibly on different threads, and the partial results are combined pairwise.
+ *
+ * @param <R> type of the result.
+ * @author David Robinson
+ * @see Cluster
+ */
+public abstract class ClusterAggregator<R> {
+
+    /**
+     * Returns the partial result for a single cluster. Only the cluster's direct
+     * members should be considered, its subclusters are visited separately.
+     *
+     * @param cluster to visit.
+     * @return the partial result of the cluster.
+     */
+    public abstract R visit(Cluster cluster);
+
+    /**
+     * Combines two partial results. The left result may be modified and returned.
+     *
+     * @param left  partial result.
+     * @param right partial result.
+     * @return the combined result.
+     */
+    public abstract R combine(R left, R right);
+}
@@ -0,0 +1,354 @@
+package xyz.thepathfinder.android;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * Collects the notifications sent to {@link ClusterListener}s while a message is processed and
+ * sends each cluster's notifications once, when the outermost scope ends. A cluster update with
+ * n transports otherwise calls <tt>transportsUpdated</tt> n + 1 times, once for every transport
+ * and once for the cluster itself.
+ * </p>
+ * <p>
+ * Scopes are opened with {@link #begin()} and closed with {@link #end()}, they nest and are kept
+ * per thread. Notifications added outside of a scope are sent when the scope that adds them ends.
+ * </p>
+ *
+ * @author David Robinson
+ */
+class ClusterNotificationBatch {
+
+    /**
+     * Logs actions performed by the class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ClusterNotificationBatch.class);
+
+    /**
+     * The open batch of each thread.
+     */
+    private static final ThreadLocal<ClusterNotificationBatch> batches = new ThreadLocal<ClusterNotificationBatch>();
+
+    /**
+     * Number of open scopes.
+     */
+    private int depth;
+
+    /**
+     * Notifications of each cluster, in the order the clusters were first notified.
+     */
+    private final Map<Cluster, Notifications> notifications;
+
+    /**
+     * Order the clusters were first notified in.
+     */
+    private final List<Cluster> clusters;
+
+    /**
+     * Constructs an empty batch.
+     */
+    private ClusterNotificationBatch() {
+        this.depth = 0;
+        this.notifications = new IdentityHashMap<Cluster, Notifications>();
+        this.clusters = new ArrayList<Cluster>();
+    }
+
+    /**
+     * Opens a scope on the current thread.
+     */
+    protected static void begin() {
+        ClusterNotificationBatch batch = ClusterNotificationBatch.batches.get();
+        if (batch == null) {
+            batch = new ClusterNotificationBatch();
+            ClusterNotificationBatch.batches.set(batch);
+        }
+
+        batch.depth++;
+    }
+
+    /**
+     * Closes a scope on the current thread. When the outermost scope is closed the collected
+     * notifications are sent to the cluster listeners.
+     */
+    protected static void end() {
+        ClusterNotificationBatch batch = ClusterNotificationBatch.batches.get();
+        if (batch == null) {
+            logger.error("Illegal State Exception: notification batch ended without beginning");
+            throw new IllegalStateException("Notification batch ended without beginning");
+        }
+
+        batch.depth--;
+        if (batch.depth == 0) {
+            ClusterNotificationBatch.batches.remove();
+            batch.flush();
+        }
+    }
+
+    /**
+     * Returns the notifications collected for a cluster in the open batch. A scope must be open.
+     *
+     * @param cluster to notify.
+     * @return the cluster's notifications.
+     */
+    protected static Notifications get(Cluster cluster) {
+        ClusterNotificationBatch batch = ClusterNotificationBatch.batches.get();
+        if (batch == null) {
+            logger.error("Illegal State Exception: no notification batch is open");
+            throw new IllegalStateException("No notification batch is open");
+        }
+
+        Notifications clusterNotifications = batch.notifications.get(cluster);
+        if (clusterNotifications == null) {
+            clusterNotifications = new Notifications();
+            batch.notifications.put(cluster, clusterNotifications);
+            batch.clusters.add(cluster);
+        }
+
+        return clusterNotifications;
+    }
+
+    /**
+     * Sends the collected notifications, cluster by cluster.
+     */
+    private void flush() {
+        for (Cluster cluster : this.clusters) {
+            this.notifications.get(cluster).flush(cluster);
+        }
+    }
+
+    /**
+     * The notifications collected for one cluster. Each model is notified at most once per kind of
+     * notification, and the collection notifications are sent once with the cluster's members at
+     * the time the batch ends.
+     */
+    protected static class Notifications {
+
+        /**
+         * Subclusters added to the cluster.
+         */
+        private final Set<Cluster> addedSubclusters = new LinkedHashSet<Cluster>();
+
+        /**
+         * Commodities added to the cluster.
+         */
+        private final Set<Commodity> addedCommodities = new LinkedHashSet<Commodity>();
+
+        /**
+         * Transports added to the cluster.
+         */
+        private final Set<Transport> addedTransports = new LinkedHashSet<Transport>();
+
+        /**
+         * Commodities removed from the cluster.
+         */
+        private final Set<Commodity> removedCommodities = new LinkedHashSet<Commodity>();
+
+        /**
+         * Subclusters removed from the cluster.
+         */
+        private final Set<Cluster> removedSubclusters = new LinkedHashSet<Cluster>();
+
+        /**
+         * Transports removed from the cluster.
+         */
+        private final Set<Transport> removedTransports = new LinkedHashSet<Transport>();
+
+        /**
+         * Subclusters of the cluster that were updated.
+         */
+        private final Set<Cluster> updatedSubclusters = new LinkedHashSet<Cluster>();
+
+        /**
+         * Commodities of the cluster that were updated.
+         */
+        private final Set<Commodity> updatedCommodities = new LinkedHashSet<Commodity>();
+
+        /**
+         * Transports of the cluster that were updated.
+         */
+        private final Set<Transport> updatedTransports = new LinkedHashSet<Transport>();
+
+        /**
+         * Records that a subcluster was added.
+         *
+         * @param cluster that was added.
+         */
+        protected void subclusterAdded(Cluster cluster) {
+            this.addedSubclusters.add(cluster);
+        }
+
+        /**
+         * Records that a commodity was added.
+         *
+         * @param commodity that was added.
+         */
+        protected void commodityAdded(Commodity commodity) {
+            this.addedCommodities.add(commodity);
+        }
+
+        /**
+         * Records that a transport was added.
+         *
+         * @param transport that was added.
+         */
+        protected void transportAdded(Transport transport) {
+            this.addedTransports.add(transport);
+        }
+
+        /**
+         * Records that a commodity was removed.
+         *
+         * @param commodity that was removed.
+         */
+        protected void commodityRemoved(Commodity commodity) {
+            this.removedCommodities.add(commodity);
+        }
+
+        /**
+         * Records that a subcluster was removed.
+         *
+         * @param cluster that was removed.
+         */
+        protected void subclusterRemoved(Cluster cluster) {
+            this.removedSubclusters.add(cluster);
+        }
+
+        /**
+         * Records that a transport was removed.
+         *
+         * @param transport that was removed.
+         */
+        protected void transportRemoved(Transport transport) {
+            this.removedTransports.add(transport);
+        }
+
+        /**
+         * Records that a subcluster was updated, the cluster's subclusters are updated as well.
+         *
+         * @param cluster that was updated.
+         */
+        protected void subclusterUpdated(Cluster cluster) {
+            this.updatedSubclusters.add(cluster);
+        }
+
+        /**
+         * Records that a commodity was updated, the cluster's commodities are updated as well.
+         *
+         * @param commodity that was updated.
+         */
+        protected void commodityUpdated(Commodity commodity) {
+            this.updatedCommodities.add(commodity);
+        }
+
+        /**
+         * Records that a transport was updated, the cluster's transports are updated as well.
+         *
+         * @param transport that was updated.
+         */
+        protected void transportUpdated(Transport transport) {
+            this.updatedTransports.add(transport);
+        }
+
+        /**
+         * Sends the notifications to the cluster's listeners, in the order a cluster
+         * update sends them.
+         *
+         * @param cluster to notify.
+         */
+        private void flush(Cluster cluster) {
+            List<ClusterListener> listeners = cluster.getListeners();
+            String name = cluster.getPathName();
+
+            for (Cluster subcluster : this.addedSubclusters) {
+                logger.info("Cluster " + name + " subcluster added: " + subcluster.getPathName());
+                for (ClusterListener listener : listeners) {
+                    listener.subclusterAdded(subcluster);
+                }
+            }
+
+            for (Commodity commodity : this.addedCommodities) {
+                logger.info("Cluster " + name + " commodity added: " + commodity.getPathName());
+                for (ClusterListener listener : listeners) {
+                    listener.commodityAdded(commodity);
+                }
+            }
+
+            for (Transport transport : this.addedTransports) {
+                logger.info("Cluster " + name + " transport added: " + transport.getPathName());
+                for (ClusterListener listener : listeners) {
+                    listener.transportAdded(transport);
+                }
+            }
+
+            for (Commodity commodity : this.removedCommodities) {
+                logger.info("Cluster " + name + " commodity removed: " + commodity.getPathName());
+                for (ClusterListener listener : listeners) {
+                    listener.commodityRemoved(commodity);
+                }
+            }
+
+            for (Cluster subcluster : this.removedSubclusters) {
+                logger.info("Cluster " + name + " subcluster removed: " + subcluster.getPathName());
+                for (ClusterListener listener : listeners) {
+                    listener.subclusterRemoved(subcluster);
+                }
+            }
+
+            for (Transport transport : this.removedTransports) {
+                logger.info("Cluster " + name + " transport removed: " + transport.getPathName());
+                for (ClusterListener listener : listeners) {
+                    listener.transportRemoved(transport);
+                }
+            }
+
+            for (Cluster subcluster : this.updatedSubclusters) {
+                logger.info("Cluster " + name + " subcluster updated: " + subcluster.getPathName());
+                for (ClusterListener listener : listeners) {
+                    listener.subclusterUpdated(subcluster);
+                }
+            }
+
+            for (Commodity commodity : this.updatedCommodities) {
+                logger.info("Cluster " + name + " commodity updated: " + commodity.getPathName());
+                for (ClusterListener listener : listeners) {
+                    listener.commodityUpdated(commodity);
+                }
+            }
+
+            for (Transport transport : this.updatedTransports) {
+                logger.info("Cluster " + name + " transport updated: " + transport.getPathName());
+                for (ClusterListener listener : listeners) {
+                    listener.transportUpdated(transport);
+                }
+            }
+
+            if (!this.updatedCommodities.isEmpty()) {
+                logger.info("Cluster " + name + " commodities updated");
+                for (ClusterListener listener : listeners) {
+                    listener.commoditiesUpdated(cluster.getCommodities());
+                }
+            }
+
+            if (!this.updatedSubclusters.isEmpty()) {
+                logger.info("Cluster " + name + " subclusters updated");
+                for (ClusterListener listener : listeners) {
+                    listener.subclustersUpdated(cluster.getSubclusters());
+                }
+            }
+
+            if (!this.updatedTransports.isEmpty()) {
+                logger.info("Cluster " + name + " transports updated");
+                for (ClusterListener listener : listeners) {
+                    listener.transportsUpdated(cluster.getTransports());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package xyz.thepathfinder.android;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * An immutable view of a {@link Cluster}'s members and routes at one point in time. A cluster
+ * publishes a new snapshot every time its transports, commodities, subclusters or routes change,
+ * so obtaining the current snapshot with {@link Cluster#getSnapshot()} takes constant time and
+ * the snapshot stays consistent however long it is read, from any thread. Snapshots share the
+ * parts that did not change with the snapshot they were derived from, and the members are held in
+ * {@link MemberMap}s so adding one member doesn't copy the others.
+ * </p>
+ * <p>
+ * The snapshot holds the cluster's membership, the member models themselves are live objects.
+ * </p>
+ *
+ * @author David Robinson
+ * @see Cluster
+ */
+public class ClusterSnapshot {
+
+    /**
+     * The cluster.
+     */
+    private final Cluster cluster;
+
+    /**
+     * Number of snapshots the cluster published before this one.
+     */
+    private final long version;
+
+    /**
+     * Transports directly under the cluster, keyed by path.
+     */
+    private final MemberMap<Transport> transports;
+
+    /**
+     * Commodities directly under the cluster, keyed by path.
+     */
+    private final MemberMap<Commodity> commodities;
+
+    /**
+     * Subclusters directly under the cluster, keyed by path.
+     */
+    private final MemberMap<Cluster> subclusters;
+
+    /**
+     * Routes of the cluster.
+     */
+    private final List<Route> routes;
+
+    /**
+     * Constructs a snapshot. The maps and list must not be modified afterwards.
+     *
+     * @param cluster     the snapshot is of.
+     * @param version     of the snapshot.
+     * @param transports  directly under the cluster.
+     * @param commodities directly under the cluster.
+     * @param subclusters directly under the cluster.
+     * @param routes      of the cluster.
+     */
+    protected ClusterSnapshot(Cluster cluster, long version, MemberMap<Transport> transports, MemberMap<Commodity> commodities,
+                              MemberMap<Cluster> subclusters, List<Route> routes) {
+        this.cluster = cluster;
+        this.version = version;
+        this.transports = transports;
+        this.commodities = commodities;
+        this.subclusters = subclusters;
+        this.routes = routes;
+    }
+
+    /**
+     * Returns an empty snapshot of a cluster.
+     *
+     * @param cluster the snapshot is of.
+     * @return the empty snapshot.
+     */
+    protected static ClusterSnapshot empty(Cluster cluster) {
+        return new ClusterSnapshot(cluster, 0, MemberMap.<Transport>empty(), MemberMap.<Commodity>empty(),
+                MemberMap.<Cluster>empty(), Collections.<Route>emptyList());
+    }
+
+    /**
+     * Returns the next snapshot with the specified members. The maps are copied unless they are
+     * {@link MemberMap}s, a <tt>null</tt> map keeps the members of this snapshot.
+     *
+     * @param transports  directly under the cluster, may be <tt>null</tt>.
+     * @param commodities directly under the cluster, may be <tt>null</tt>.
+     * @param subclusters directly under the cluster, may be <tt>null</tt>.
+     * @return the next snapshot.
+     */
+    protected ClusterSnapshot withMembers(Map<String, Transport> transports, Map<String, Commodity> commodities, Map<String, Cluster> subclusters) {
+        return new ClusterSnapshot(this.cluster, this.version + 1,
+                transports == null ? this.transports : MemberMap.copyOf(transports),
+                commodities == null ? this.commodities : MemberMap.copyOf(commodities),
+                subclusters == null ? this.subclusters : MemberMap.copyOf(subclusters),
+                this.routes);
+    }
+
+    /**
+     * Returns the next snapshot with a transport added. The other members are shared with this snapshot.
+     *
+     * @param transport to add.
+     * @return the next snapshot.
+     */
+    protected ClusterSnapshot withTransport(Transport transport) {
+        return new ClusterSnapshot(this.cluster, this.version + 1, this.transports.plus(transport.getPathName(), transport),
+                this.commodities, this.subclusters, this.routes);
+    }
+
+    /**
+     * Returns the next snapshot with a commodity added. The other members are shared with this snapshot.
+     *
+     * @param commodity to add.
+     * @return the next snapshot.
+     */
+    protected ClusterSnapshot withCommodity(Commodity commodity) {
+        return new ClusterSnapshot(this.cluster, this.version + 1, this.transports,
+                this.commodities.plus(commodity.getPathName(), commodity), this.subclusters, this.routes);
+    }
+
+    /**
+     * Returns the next snapshot with a subcluster added. The other members are shared with this snapshot.
+     *
+     * @param subcluster to add.
+     * @return the next snapshot.
+     */
+    protected ClusterSnapshot withSubcluster(Cluster subcluster) {
+        return new ClusterSnapshot(this.cluster, this.version + 1, this.transports, this.commodities,
+                this.subclusters.plus(subcluster.getPathName(), subcluster), this.routes);
+    }
+
+    /**
+     * Returns the next snapshot with the specified routes. The list must not be modified afterwards.
+     *
+     * @param routes of the cluster.
+     * @return the next snapshot.
+     */
+    protected ClusterSnapshot withRoutes(List<Route> routes) {
+        return new ClusterSnapshot(this.cluster, this.version + 1, this.transports, this.commodities, this.subclusters,
+                Collections.unmodifiableList(routes));
+    }
+
+    /**
+     * Returns the cluster the snapshot is of.
+     *
+     * @return the cluster.
+     */
+    public Cluster getCluster() {
+        return this.cluster;
+    }
+
+    /**
+     * Returns the version of the snapshot. Each snapshot the cluster publishes has a higher
+     * version than the previous one, so two snapshots with the same version are the same.
+     *
+     * @return the version.
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Returns an immutable map of the cluster's transports. The key is the path of the transport.
+     *
+     * @return A map of transports.
+     */
+    public Map<String, Transport> getTransportsMap() {
+        return this.transports;
+    }
+
+    /**
+     * Returns an immutable collection of the cluster's transports.
+     *
+     * @return A collection of transports.
+     */
+    public Collection<Transport> getTransports() {
+        return this.transports.values();
+    }
+
+    /**
+     * Returns a transport directly under the cluster by its path.
+     *
+     * @param path of the transport.
+     * @return the transport, <tt>null</tt> if it isn't in the snapshot.
+     */
+    public Transport getTransport(String path) {
+        return this.transports.get(path);
+    }
+
+    /**
+     * Returns an immutable map of the cluster's commodities. The key is the path of the commodity.
+     *
+     * @return A map of commodities.
+     */
+    public Map<String, Commodity> getCommoditiesMap() {
+        return this.commodities;
+    }
+
+    /**
+     * Returns an immutable collection of the cluster's commodities.
+     *
+     * @return A collection of commodities.
+     */
+    public Collection<Commodity> getCommodities() {
+        return this.commodities.values();
+    }
+
+    /**
+     * Returns a commodity directly under the cluster by its path.
+     *
+     * @param path of the commodity.
+     * @return the commodity, <tt>null</tt> if it isn't in the snapshot.
+     */
+    public Commodity getCommodity(String path) {
+        return this.commodities.get(path);
+    }
+
+    /**
+     * Returns an immutable map of the cluster's direct subclusters. The key is the path of the subcluster.
+     *
+     * @return A map of clusters.
+     */
+    public Map<String, Cluster> getSubclustersMap() {
+        return this.subclusters;
+    }
+
+    /**
+     * Returns an immutable collection of the cluster's direct subclusters.
+     *
+     * @return A collection of clusters.
+     */
+    public Collection<Cluster> getSubclusters() {
+        return this.subclusters.values();
+    }
+
+    /**
+     * Returns a subcluster directly under the cluster by its path.
+     *
+     * @param path of the subcluster.
+     * @return the subcluster, <tt>null</tt> if it isn't in the snapshot.
+     */
+    public Cluster getSubcluster(String path) {
+        return this.subclusters.get(path);
+    }
+
+    /**
+     * Returns an immutable list of the cluster's routes.
+     *
+     * @return A list of routes.
+     */
+    public List<Route> getRoutes() {
+        return this.routes;
+    }
+}
@@ -4,7 +4,6 @@ import com.google.gson.JsonObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Collection;
 import java.util.List;
 
 /**
@@ -60,13 +59,19 @@ public class Commodity extends SubscribableCrudModel<Commodity, CommodityListene
     /**
      * The metadata of this commodity.
      */
-    private JsonObject metadata;
+    private ModelMetadata metadata;
 
     /**
      * The transport caring the commodity.
      */
     private Long transportId;
 
+    /**
+     * The transport carrying the commodity last resolved, <tt>null</tt> if not resolved yet.
+     * Cleared when the transport id changes.
+     */
+    private volatile Transport transport;
+
     /**
      * The route of this commodity.
      */
@@ -105,7 +110,7 @@ public class Commodity extends SubscribableCrudModel<Commodity, CommodityListene
         this.endLatitude = 0;
         this.endLongitude = 0;
         this.status = CommodityStatus.INACTIVE;
-        this.metadata = new JsonObject();
+        this.metadata = new ModelMetadata(null);
         this.transportId = null;
         this.route = null;
         this.createCluster = null;
@@ -140,11 +145,7 @@ public class Commodity extends SubscribableCrudModel<Commodity, CommodityListene
             this.status = status;
         }
 
-        if (metadata == null) {
-            this.metadata = new JsonObject();
-        } else {
-            this.metadata = metadata;
-        }
+        this.metadata = new ModelMetadata(metadata);
 
         this.transportId = transportId;
 
@@ -286,7 +287,7 @@ public class Commodity extends SubscribableCrudModel<Commodity, CommodityListene
         this.endLatitude = endLatitude;
         this.endLongitude = endLongitude;
         this.status = status;
-        this.metadata = metadata;
+        this.metadata = new ModelMetadata(metadata);
         this.createCluster = cluster;
     }
 
@@ -438,21 +439,19 @@ public class Commodity extends SubscribableCrudModel<Commodity, CommodityListene
      * @return The metadata of the commodity.
      */
     public JsonObject getMetadata() {
-        return this.metadata;
+        return this.metadata.getJson();
     }
 
     /**
      * Sets the metadata field to a new JSON object. If null it is set to
-     * an empty JSON object.
+     * an empty JSON object. The current metadata is kept if the new metadata
+     * has the same content.
      *
      * @param metadata the JSON object to change to.
+     * @return <tt>true</tt> if the metadata changed, <tt>false</tt> otherwise.
      */
-    private void setMetadata(JsonObject metadata) {
-        if (metadata == null) {
-            this.metadata = new JsonObject();
-        } else {
-            this.metadata = metadata;
-        }
+    private boolean setMetadata(JsonObject metadata) {
+        return this.metadata.received(metadata);
     }
 
     /**
@@ -495,7 +494,26 @@ public class Commodity extends SubscribableCrudModel<Commodity, CommodityListene
             return null;
         }
 
-        return Transport.getInstance(this.getParentPath().getPathName() + transportId, this.getServices());
+        Transport transport = this.transport;
+        if (transport == null || !transport.isRegistered()) {
+            transport = Transport.getInstance(this.getParentPath().getPathName() + "/" + transportId, this.getServices());
+            this.transport = transport;
+        }
+
+        return transport;
+    }
+
+    /**
+     * Links the commodity to the transport carrying it, so {@link #getTransport()} doesn't
+     * have to look it up. Ignored unless the transport has the commodity's transport id.
+     *
+     * @param transport carrying the commodity.
+     */
+    protected void setTransport(Transport transport) {
+        Long transportId = this.getTransportId();
+        if (transportId != null && !transport.isPathUnknown() && transportId == transport.getId()) {
+            this.transport = transport;
+        }
     }
 
     /**
@@ -503,7 +521,7 @@ public class Commodity extends SubscribableCrudModel<Commodity, CommodityListene
      *
      * @return a transport id if being carried, null otherwise.
      */
-    private Long getTransportId() {
+    protected Long getTransportId() {
         return this.transportId;
     }
 
@@ -513,6 +531,9 @@ public class Commodity extends SubscribableCrudModel<Commodity, CommodityListene
      * @param transportId of the transport carrying the commodity, null if not being carried.
      */
     private void setTransportId(Long transportId) {
+        if (transportId == null ? this.transportId != null : !transportId.equals(this.transportId)) {
+            this.transport = null;
+        }
         this.transportId = transportId;
     }
 
@@ -551,6 +572,85 @@ public class Commodity extends SubscribableCrudModel<Commodity, CommodityListene
      * @param transportId    The id of the transport that picked up the commodity.
      */
     public void update(Double startLatitude, Double startLongitude, Double endLatitude, Double endLongitude, CommodityStatus status, JsonObject metadata, Long transportId) {
+        if (metadata == null && this.canSendFrame()) {
+            this.sendFrame(this.getUpdateFrame(startLatitude, startLongitude, endLatitude, endLongitude, status, transportId), MessagePriority.STATE);
+        } else {
+            super.update(this.getUpdateValue(startLatitude, startLongitude, endLatitude, endLongitude, status, metadata, transportId));
+        }
+    }
+
+    /**
+     * Sends update requests to the Pathfinder server and returns a future that completes once
+     * the server confirms the update. If a parameter is null it will not be updated.
+     *
+     * @param startLatitude  The start latitude to change to.
+     * @param startLongitude The start longitude to change to.
+     * @param endLatitude    The end latitude to change to.
+     * @param endLongitude   The end longitude to change to.
+     * @param status         The status to change to.
+     * @param metadata       The metadata to change to.
+     * @param transportId    The id of the transport that picked up the commodity.
+     * @return the future of the request.
+     */
+    public ModelFuture<Commodity> updateAsync(Double startLatitude, Double startLongitude, Double endLatitude, Double endLongitude, CommodityStatus status, JsonObject metadata, Long transportId) {
+        return super.updateAsync(this.getUpdateValue(startLatitude, startLongitude, endLatitude, endLongitude, status, metadata, transportId));
+    }
+
+    /**
+     * Returns an update request without metadata encoded by a {@link FrameWriter}. If a parameter
+     * is null it is left out.
+     *
+     * @param startLatitude  The start latitude to change to.
+     * @param startLongitude The start longitude to change to.
+     * @param endLatitude    The end latitude to change to.
+     * @param endLongitude   The end longitude to change to.
+     * @param status         The status to change to.
+     * @param transportId    The id of the transport that picked up the commodity.
+     * @return the update request.
+     */
+    private String getUpdateFrame(Double startLatitude, Double startLongitude, Double endLatitude, Double endLongitude, CommodityStatus status, Long transportId) {
+        FrameWriter writer = FrameWriter.begin("Update", this);
+
+        if (startLatitude != null) {
+            writer.field("startLatitude", startLatitude);
+        }
+
+        if (startLongitude != null) {
+            writer.field("startLongitude", startLongitude);
+        }
+
+        if (endLatitude != null) {
+            writer.field("endLatitude", endLatitude);
+        }
+
+        if (endLongitude != null) {
+            writer.field("endLongitude", endLongitude);
+        }
+
+        if (status != null) {
+            writer.field("status", status.toString());
+        }
+
+        if (transportId != null) {
+            writer.field("transportId", (long) transportId);
+        }
+
+        return writer.end();
+    }
+
+    /**
+     * Returns the value of an update request. If a parameter is null it is left out.
+     *
+     * @param startLatitude  The start latitude to change to.
+     * @param startLongitude The start longitude to change to.
+     * @param endLatitude    The end latitude to change to.
+     * @param endLongitude   The end longitude to change to.
+     * @param status         The status to change to.
+     * @param metadata       The metadata to change to.
+     * @param transportId    The id of the transport that picked up the commodity.
+     * @return the value of the update request.
+     */
+    private JsonObject getUpdateValue(Double startLatitude, Double startLongitude, Double endLatitude, Double endLongitude, CommodityStatus status, JsonObject metadata, Long transportId) {
         JsonObject value = new JsonObject();
 
         if (startLatitude != null) {
@@ -574,14 +674,14 @@ public class Commodity extends SubscribableCrudModel<Commodity, CommodityListene
         }
 
         if (metadata != null) {
-            value.add("metadata", metadata);
+            this.metadata.addUpdate(value, metadata, this.getServices());
         }
 
         if (transportId != null) {
             value.addProperty("transportId", transportId);
         }
 
-        super.update(value);
+        return value;
     }
 
     /**
@@ -594,7 +694,7 @@ public class Commodity extends SubscribableCrudModel<Commodity, CommodityListene
         double prevEndLatitude;
         double prevEndLongitude;
         CommodityStatus prevStatus;
-        JsonObject prevMetadata;
+        boolean metadataUpdated = false;
         Long prevTransportId;
 
         boolean updated = false;
@@ -624,9 +724,11 @@ public class Commodity extends SubscribableCrudModel<Commodity, CommodityListene
             this.setStatus(Commodity.getStatus(json.get("status").getAsString()));
         }
 
-        prevMetadata = this.getMetadata();
         if (json.has("metadata")) {
-            this.setMetadata(json.get("metadata").getAsJsonObject());
+            metadataUpdated = this.setMetadata(json.get("metadata").getAsJsonObject());
+        }
+        if (json.has("metadataPatch")) {
+            metadataUpdated |= this.setMetadata(ModelMetadata.applyPatch(this.getMetadata(), json.getAsJsonObject("metadataPatch")));
         }
 
         prevTransportId = this.getTransportId();
@@ -662,7 +764,7 @@ public class Commodity extends SubscribableCrudModel<Commodity, CommodityListene
             updated = true;
         }
 
-        if (!this.getMetadata().equals(prevMetadata)) {
+        if (metadataUpdated) {
             logger.info("Commodity " + this.getPathName() + " metadata updated: " + this.getMetadata());
             for (CommodityListener listener : listeners) {
                 listener.metadataUpdated(this.getMetadata());
@@ -679,9 +781,8 @@ public class Commodity extends SubscribableCrudModel<Commodity, CommodityListene
             updated = true;
         }
 
-        Path parentPath = this.getParentPath();
-        if (updated && this.getServices().getRegistry().isModelRegistered(parentPath)) {
-            Cluster parentCluster = Cluster.getInstance(parentPath.getPathName(), this.getServices());
+        Cluster parentCluster = updated ? this.getRegisteredParentCluster() : null;
+        if (parentCluster != null) {
 
             boolean added = !parentCluster.getCommoditiesMap().containsKey(this.getPathName());
 
@@ -689,18 +790,18 @@ public class Commodity extends SubscribableCrudModel<Commodity, CommodityListene
                 parentCluster.addCommodity(this);
             }
 
-            Collection<Commodity> commodities = parentCluster.getCommodities();
-
             logger.info("Commodity " + this.getPathName() + " calling parent cluster's update");
 
-            List<ClusterListener> clusterListeners = parentCluster.getListeners();
-            for (ClusterListener listener : clusterListeners) {
+            ClusterNotificationBatch.begin();
+            try {
+                ClusterNotificationBatch.Notifications notifications = ClusterNotificationBatch.get(parentCluster);
                 if (added) {
-                    listener.commodityAdded(this);
+                    notifications.commodityAdded(this);
                 }
 
-                listener.commodityUpdated(this);
-                listener.commoditiesUpdated(commodities);
+                notifications.commodityUpdated(this);
+            } finally {
+                ClusterNotificationBatch.end();
             }
         }
 
@@ -754,6 +855,64 @@ public class Commodity extends SubscribableCrudModel<Commodity, CommodityListene
         return this.toJson().toString();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected CommodityListener createEventListener(final ModelEventPublisher publisher) {
+        return new CommodityListener() {
+            @Override
+            public void connected(Commodity model) {
+                publisher.publish(ModelEventType.CONNECTED, model);
+            }
+
+            @Override
+            public void created(Commodity model) {
+                publisher.publish(ModelEventType.CREATED, model);
+            }
+
+            @Override
+            public void updated(Commodity model) {
+                publisher.publish(ModelEventType.UPDATED, model);
+            }
+
+            @Override
+            public void deleted(Commodity model) {
+                publisher.publish(ModelEventType.DELETED, model);
+            }
+
+            @Override
+            public void error(String error) {
+                publisher.publish(new ModelEvent(ModelEventType.ERROR, Commodity.this, error));
+            }
+
+            @Override
+            public void subscribed(Commodity model) {
+                publisher.publish(ModelEventType.SUBSCRIBED, model);
+            }
+
+            @Override
+            public void unsubscribed(Commodity model) {
+                publisher.publish(ModelEventType.UNSUBSCRIBED, model);
+            }
+
+            @Override
+            public void routeSubscribed(Commodity model) {
+                publisher.publish(ModelEventType.ROUTE_SUBSCRIBED, model);
+            }
+
+            @Override
+            public void routeUnsubscribed(Commodity model) {
+                publisher.publish(ModelEventType.ROUTE_UNSUBSCRIBED, model);
+            }
+
+            @Override
+            public void routed(Route route) {
+                publisher.publish(ModelEventType.ROUTED, Commodity.this);
+            }
+        };
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,114 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonObject;
+
+/**
+ * The values of a commodity to be created by {@link Cluster#createCommodities(java.util.List)}.
+ *
+ * @author David Robinson
+ */
+public class CommoditySpec {
+
+    /**
+     * Latitude of the commodity's pick up location.
+     */
+    private final double startLatitude;
+
+    /**
+     * Longitude of the commodity's pick up location.
+     */
+    private final double startLongitude;
+
+    /**
+     * Latitude of the commodity's drop off location.
+     */
+    private final double endLatitude;
+
+    /**
+     * Longitude of the commodity's drop off location.
+     */
+    private final double endLongitude;
+
+    /**
+     * Status of the commodity.
+     */
+    private final CommodityStatus status;
+
+    /**
+     * Metadata of the commodity.
+     */
+    private final JsonObject metadata;
+
+    /**
+     * Constructs the values of a commodity.
+     *
+     * @param startLatitude  of the commodity's pick up location.
+     * @param startLongitude of the commodity's pick up location.
+     * @param endLatitude    of the commodity's drop off location.
+     * @param endLongitude   of the commodity's drop off location.
+     * @param status         of the commodity, {@link CommodityStatus#INACTIVE} if <tt>null</tt>.
+     * @param metadata       of the commodity, may be <tt>null</tt>.
+     */
+    public CommoditySpec(double startLatitude, double startLongitude, double endLatitude, double endLongitude, CommodityStatus status, JsonObject metadata) {
+        this.startLatitude = startLatitude;
+        this.startLongitude = startLongitude;
+        this.endLatitude = endLatitude;
+        this.endLongitude = endLongitude;
+        this.status = status == null ? CommodityStatus.INACTIVE : status;
+        this.metadata = metadata;
+    }
+
+    /**
+     * Returns the latitude of the commodity's pick up location.
+     *
+     * @return the start latitude.
+     */
+    public double getStartLatitude() {
+        return this.startLatitude;
+    }
+
+    /**
+     * Returns the longitude of the commodity's pick up location.
+     *
+     * @return the start longitude.
+     */
+    public double getStartLongitude() {
+        return this.startLongitude;
+    }
+
+    /**
+     * Returns the latitude of the commodity's drop off location.
+     *
+     * @return the end latitude.
+     */
+    public double getEndLatitude() {
+        return this.endLatitude;
+    }
+
+    /**
+     * Returns the longitude of the commodity's drop off location.
+     *
+     * @return the end longitude.
+     */
+    public double getEndLongitude() {
+        return this.endLongitude;
+    }
+
+    /**
+     * Returns the status of the commodity.
+     *
+     * @return the status.
+     */
+    public CommodityStatus getStatus() {
+        return this.status;
+    }
+
+    /**
+     * Returns the metadata of the commodity.
+     *
+     * @return the metadata, may be <tt>null</tt>.
+     */
+    public JsonObject getMetadata() {
+        return this.metadata;
+    }
+}
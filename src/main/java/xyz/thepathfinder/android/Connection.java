@@ -6,14 +6,27 @@ import org.slf4j.LoggerFactory;
 import javax.websocket.CloseReason;
 import javax.websocket.Endpoint;
 import javax.websocket.EndpointConfig;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
 import javax.websocket.Session;
 import java.io.IOException;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Controls access the web socket connection with the Pathfinder sever.
  * To gain access to the connection use {@link PathfinderServices#getConnection()}.
+ * Messages are queued by {@link MessagePriority} while the connection is down or the
+ * maximum number of messages are in flight, and the highest priority messages are sent first.
+ * A queued update of a model takes in the model's later updates, and the queue is bounded
+ * by the size of its messages. While open, a {@link Heartbeat} pings the server to measure
+ * the round trip time and to notice a dead connection. Journaled messages stay in the journal
+ * until a pong to a ping sent after them confirms the server received them, and the written
+ * but unconfirmed messages are sent again when the connection is lost.
  *
  * @author David Robinson
  */
@@ -24,6 +37,31 @@ class Connection extends Endpoint {
      */
     private static final Logger logger = LoggerFactory.getLogger(Connection.class);
 
+    /**
+     * Default maximum number of messages handed to the web socket that it hasn't sent yet.
+     */
+    protected static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+    /**
+     * Default largest size of the queued messages, the sum of the lengths of their text.
+     */
+    protected static final long DEFAULT_MAX_QUEUED_BYTES = 1024 * 1024;
+
+    /**
+     * Default time between heartbeat pings, in milliseconds.
+     */
+    protected static final long DEFAULT_HEARTBEAT_INTERVAL = 15000;
+
+    /**
+     * Default number of unanswered heartbeat pings in a row after which the connection is lost.
+     */
+    protected static final int DEFAULT_MAX_MISSED_PONGS = 2;
+
+    /**
+     * Weight of a new round trip time in the smoothed round trip time, as in RFC 6298.
+     */
+    private static final double ROUND_TRIP_TIME_GAIN = 0.125;
+
     /**
      * The web socket session used to send messages through the web socket.
      */
@@ -40,9 +78,92 @@ class Connection extends Endpoint {
     private MessageHandler messageHandler;
 
     /**
-     * Stores messages while the connection is down.
+     * Stores messages while the connection is down or too many messages are in flight.
+     */
+    private OutboundQueue messageQueue;
+
+    /**
+     * Number of messages handed to the web socket that it hasn't sent yet.
+     */
+    private int inFlightCount;
+
+    /**
+     * Maximum number of messages in flight, later messages are queued.
+     */
+    private int maxInFlight;
+
+    /**
+     * Largest size of the queued messages, <tt>0</tt> if unbounded.
+     */
+    private long maxQueuedBytes;
+
+    /**
+     * Whether the queued messages are being sent, so sends completing on the sending thread
+     * don't send them again.
+     */
+    private boolean draining;
+
+    /**
+     * Journals outbound messages until they are sent, <tt>null</tt> if journaling is disabled.
      */
-    private Queue<String> messageQueue;
+    private OutboundJournal journal;
+
+    /**
+     * Journaled messages written to the web socket that the server hasn't confirmed yet,
+     * in the order they were written.
+     */
+    private final List<OutboundMessage> unconfirmed;
+
+    /**
+     * Requests waiting for a reply, a model's updates aren't merged while it waits for an
+     * update reply. <tt>null</tt> if not set.
+     */
+    private RequestTracker requests;
+
+    /**
+     * Registry used to find the model a queued update is about, <tt>null</tt> if not set.
+     */
+    private ModelRegistry registry;
+
+    /**
+     * The message handler that authenticates the connection, set again when reconnecting.
+     */
+    private MessageHandler authenticationHandler;
+
+    /**
+     * Time between heartbeat pings, in milliseconds, <tt>0</tt> if disabled.
+     */
+    private long heartbeatInterval;
+
+    /**
+     * Number of unanswered heartbeat pings in a row after which the connection is lost.
+     */
+    private int maxMissedPongs;
+
+    /**
+     * Heartbeat of the open session, <tt>null</tt> if none.
+     */
+    private Heartbeat heartbeat;
+
+    /**
+     * Session declared lost, it isn't used to send messages even if it is still open.
+     */
+    private volatile Session lostSession;
+
+    /**
+     * Round trip times measured by the heartbeat.
+     */
+    private final LatencyHistogram roundTripTimes;
+
+    /**
+     * Smoothed round trip time in nanoseconds, <tt>-1</tt> if not measured yet.
+     */
+    private volatile long roundTripTime;
+
+    /**
+     * Listeners notified when the connection is lost.
+     */
+    private final List<ConnectionListener> connectionListeners;
 
     /**
      * Constructs a connection object that controls access to the web socket connection
@@ -50,7 +171,18 @@ class Connection extends Endpoint {
      */
     protected Connection() {
         this.sentMessageCount = 0L;
-        this.messageQueue = new LinkedList<>();
+        this.messageQueue = new OutboundQueue();
+        this.inFlightCount = 0;
+        this.maxInFlight = Connection.DEFAULT_MAX_IN_FLIGHT;
+        this.draining = false;
+        this.maxQueuedBytes = Connection.DEFAULT_MAX_QUEUED_BYTES;
+        this.messageQueue.setMaxBytes(this.maxQueuedBytes);
+        this.heartbeatInterval = Connection.DEFAULT_HEARTBEAT_INTERVAL;
+        this.maxMissedPongs = Connection.DEFAULT_MAX_MISSED_PONGS;
+        this.roundTripTimes = new LatencyHistogram();
+        this.roundTripTime = -1;
+        this.connectionListeners = new CopyOnWriteArrayList<ConnectionListener>();
+        this.unconfirmed = new ArrayList<OutboundMessage>();
     }
 
     /**
@@ -60,21 +192,182 @@ class Connection extends Endpoint {
      *
      * @param messageHandler to receive the web socket messages.
      */
-    protected void setMessageHandler(MessageHandler messageHandler) {
-        if (this.session != null) {
+    protected synchronized void setMessageHandler(MessageHandler messageHandler) {
+        if (this.isConnected()) {
             this.session.removeMessageHandler(this.messageHandler);
             this.session.addMessageHandler(messageHandler);
         }
         this.messageHandler = messageHandler;
+        if (messageHandler instanceof AuthenticationMessageHandler) {
+            this.authenticationHandler = messageHandler;
+        }
 
         if (this.session != null && !(this.messageHandler instanceof AuthenticationMessageHandler)) {
-            logger.info("Sending stored messages");
-            for (String message : this.messageQueue) {
-                this.send(message);
+            this.sendStoredMessages();
+        }
+    }
+
+    /**
+     * Sets the message handler that authenticated the connection again, so the connection is
+     * authenticated when it is opened again. Does nothing if the connection was never authenticated
+     * by an {@link AuthenticationMessageHandler}.
+     */
+    protected synchronized void resetAuthentication() {
+        if (this.authenticationHandler != null && this.messageHandler != this.authenticationHandler) {
+            this.setMessageHandler(this.authenticationHandler);
+        }
+    }
+
+    /**
+     * Sets the journal that stores outbound messages until they are sent. The messages left
+     * unsent in the journal by a previous run are queued ahead of any stored messages.
+     *
+     * @param journal   to store outbound messages in, it must already be open.
+     * @param recovered messages left unsent by a previous run, already in the journal.
+     */
+    protected synchronized void setJournal(OutboundJournal journal, List<OutboundMessage> recovered) {
+        this.journal = journal;
+
+        OutboundQueue queue = new OutboundQueue();
+        queue.setMaxBytes(this.maxQueuedBytes);
+        for (OutboundMessage message : recovered) {
+            this.offer(queue, message);
+        }
+        for (OutboundMessage message : this.messageQueue.drain()) {
+            journal.append(message);
+            this.offer(queue, message);
+        }
+        this.messageQueue = queue;
+
+        if (!recovered.isEmpty()) {
+            logger.info("Recovered " + recovered.size() + " unsent messages from the journal");
+        }
+
+        if (this.isConnected() && !(this.messageHandler instanceof AuthenticationMessageHandler)) {
+            this.sendStoredMessages();
+        }
+    }
+
+    /**
+     * Removes and returns the messages stored while the connection is down.
+     *
+     * @return the stored messages, in order.
+     */
+    protected synchronized List<OutboundMessage> takeStoredMessages() {
+        return this.messageQueue.drain();
+    }
+
+    /**
+     * Stores messages to be sent when the connection opens, after any messages already stored.
+     *
+     * @param messages to store, in order.
+     */
+    protected synchronized void storeMessages(List<OutboundMessage> messages) {
+        for (OutboundMessage message : messages) {
+            this.offer(this.messageQueue, message);
+        }
+    }
+
+    /**
+     * Sets the tracker of the requests waiting for a reply. A model's updates aren't merged
+     * in the queue while it waits for an update reply, so each request gets its reply.
+     *
+     * @param requests waiting for a reply.
+     * @param registry to find the model of a queued update in.
+     */
+    protected synchronized void setRequestTracker(RequestTracker requests, ModelRegistry registry) {
+        this.requests = requests;
+        this.registry = registry;
+    }
+
+    /**
+     * Adds a message to a queue. An update is merged into the model's queued update unless
+     * the model waits for an update reply. The journaled messages the queue discards are
+     * acknowledged since they will never be sent.
+     *
+     * @param queue   to add the message to.
+     * @param message to add.
+     */
+    private void offer(OutboundQueue queue, OutboundMessage message) {
+        String key = message.getKey();
+        boolean mergeUpdate = key != null && queue.hasStateMessage(key) && !this.isUpdatePending(message);
+        queue.offer(message, mergeUpdate);
+        this.acknowledgeDiscarded(queue);
+    }
+
+    /**
+     * Returns if the model a message is about waits for an update reply. The model is found
+     * in the registry by its path, so only its own requests are checked.
+     *
+     * @param message about the model.
+     * @return <tt>true</tt> if the model has a pending update request, <tt>false</tt> otherwise.
+     */
+    private boolean isUpdatePending(OutboundMessage message) {
+        ModelType modelType = message.getModelType();
+        if (this.requests == null || this.registry == null || modelType == null) {
+            return false;
+        }
+
+        Model model = this.registry.getModel(new Path(message.getKey(), modelType));
+        return model != null && this.requests.isPending(model, "Updated");
+    }
+
+    /**
+     * Acknowledges the journaled messages a queue discarded, they will never be sent.
+     *
+     * @param queue that discarded the messages.
+     */
+    private void acknowledgeDiscarded(OutboundQueue queue) {
+        for (OutboundMessage discarded : queue.takeDiscarded()) {
+            if (this.journal != null && discarded.getSequence() >= 0) {
+                this.journal.acknowledge(discarded);
             }
+        }
+    }
 
-            logger.info("End sending stored messages");
-            this.messageQueue.clear();
+    /**
+     * Returns the journal that stores outbound messages until they are sent.
+     *
+     * @return the journal, <tt>null</tt> if journaling is disabled.
+     */
+    protected OutboundJournal getJournal() {
+        return this.journal;
+    }
+
+    /**
+     * Sends the messages stored while the connection was down.
+     */
+    private void sendStoredMessages() {
+        logger.info("Sending " + this.messageQueue.size() + " stored messages");
+        this.sendQueuedMessages();
+        logger.info("End sending stored messages");
+    }
+
+    /**
+     * Returns if queued messages can be sent, the web socket must be open and authenticated.
+     *
+     * @return <tt>true</tt> if messages can be sent, <tt>false</tt> otherwise.
+     */
+    private boolean isReady() {
+        return this.isConnected() && !(this.messageHandler instanceof AuthenticationMessageHandler);
+    }
+
+    /**
+     * Sends queued messages, highest priority first, until the queue is empty or the
+     * maximum number of messages are in flight.
+     */
+    private synchronized void sendQueuedMessages() {
+        if (this.draining) {
+            return;
+        }
+
+        this.draining = true;
+        try {
+            while (this.inFlightCount < this.maxInFlight && !this.messageQueue.isEmpty() && this.isReady()) {
+                this.send(this.messageQueue.poll());
+            }
+        } finally {
+            this.draining = false;
         }
     }
 
@@ -83,10 +376,134 @@ class Connection extends Endpoint {
      *
      * @param message to be send.
      */
-    private void send(String message) {
-        logger.info("Sending json to Pathfinder: " + message);
-        this.session.getAsyncRemote().sendText(message);
+    private synchronized void send(final OutboundMessage message) {
+        if (logger.isInfoEnabled()) {
+            logger.info("Sending json to Pathfinder: " + message.getText());
+        }
+        final OutboundJournal journal = this.journal;
+        final Session session = this.session;
+        final boolean confirmed = this.heartbeat != null;
+
+        this.inFlightCount++;
         this.sentMessageCount++;
+        session.getAsyncRemote().sendText(message.getText(), new SendHandler() {
+            @Override
+            public void onResult(SendResult result) {
+                if (journal != null && message.getSequence() >= 0) {
+                    if (!result.isOK()) {
+                        logger.error("Failed to send journaled message: " + result.getException());
+                        Connection.this.written(session, message, false);
+                    } else if (confirmed) {
+                        Connection.this.written(session, message, true);
+                    } else {
+                        Connection.acknowledge(journal, message);
+                    }
+                }
+
+                Connection.this.sent(session);
+            }
+        });
+    }
+
+    /**
+     * Acknowledges a journaled message and the messages merged into it.
+     *
+     * @param journal the message is in.
+     * @param message to acknowledge.
+     */
+    private static void acknowledge(OutboundJournal journal, OutboundMessage message) {
+        journal.acknowledge(message);
+        for (OutboundMessage merged : message.getMerged()) {
+            journal.acknowledge(merged);
+        }
+    }
+
+    /**
+     * Called when the web socket finished writing a journaled message. The message waits for
+     * a heartbeat pong to confirm it, a failed write is never confirmed and is sent again when
+     * the connection is lost. A message written to a session that is already lost or replaced
+     * is queued again.
+     *
+     * @param session the message was written to.
+     * @param message that was written.
+     * @param ok      whether the write succeeded.
+     */
+    private synchronized void written(Session session, OutboundMessage message, boolean ok) {
+        if (session != this.session || session == this.lostSession) {
+            this.offer(this.messageQueue, message);
+            return;
+        }
+
+        message.setWrittenTime(ok ? System.nanoTime() : Long.MAX_VALUE);
+        this.unconfirmed.add(message);
+    }
+
+    /**
+     * Called by the heartbeat when the server answered a ping. The messages written before the
+     * ping was sent were received by the server, since it answers pings in order, so they are
+     * acknowledged in the journal.
+     *
+     * @param session  the pong was received on.
+     * @param pingTime time the ping was sent, from {@link System#nanoTime()}.
+     */
+    protected synchronized void confirmDelivery(Session session, long pingTime) {
+        if (session != this.session || this.journal == null) {
+            return;
+        }
+
+        Iterator<OutboundMessage> iterator = this.unconfirmed.iterator();
+        while (iterator.hasNext()) {
+            OutboundMessage message = iterator.next();
+            if (message.getWrittenTime() - pingTime <= 0) {
+                Connection.acknowledge(this.journal, message);
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Queues the unconfirmed messages again ahead of the queued messages, the server may not
+     * have received them before the connection was lost.
+     */
+    private synchronized void requeueUnconfirmed() {
+        if (this.unconfirmed.isEmpty()) {
+            return;
+        }
+
+        OutboundQueue queue = new OutboundQueue();
+        queue.setMaxBytes(this.maxQueuedBytes);
+        for (OutboundMessage message : this.unconfirmed) {
+            this.offer(queue, message);
+        }
+        for (OutboundMessage message : this.messageQueue.drain()) {
+            this.offer(queue, message);
+        }
+
+        logger.info("Sending " + this.unconfirmed.size() + " unconfirmed messages again");
+        this.unconfirmed.clear();
+        this.messageQueue = queue;
+    }
+
+    /**
+     * Returns the number of journaled messages written to the web socket that the server
+     * hasn't confirmed yet.
+     *
+     * @return the number of unconfirmed messages.
+     */
+    protected synchronized int getUnconfirmedMessageCount() {
+        return this.unconfirmed.size();
+    }
+
+    /**
+     * Called when the web socket finished sending a message, it sends more queued messages.
+     *
+     * @param session the message was sent through.
+     */
+    private synchronized void sent(Session session) {
+        if (session == this.session) {
+            this.inFlightCount--;
+            this.sendQueuedMessages();
+        }
     }
 
     /**
@@ -96,40 +513,163 @@ class Connection extends Endpoint {
      * @param message to be sent.
      */
     public void sendMessage(String message) {
-        if (this.isConnected() && !(this.messageHandler instanceof AuthenticationMessageHandler)) {
-            this.send(message);
-        } else {
+        this.sendMessage(message, null, MessagePriority.of(message));
+    }
+
+    /**
+     * Sends a text message about a model through the web socket to the Pathfinder server
+     * if connected. It will save the message in a queue if not connected or the maximum
+     * number of messages are in flight. The message is journaled until it is sent if a
+     * journal is set.
+     *
+     * @param message  to be sent.
+     * @param key      path of the model the message is about, <tt>null</tt> if unknown.
+     * @param priority class of the message.
+     */
+    protected synchronized void sendMessage(String message, String key, MessagePriority priority) {
+        OutboundMessage outbound = new OutboundMessage(message, key, priority);
+        if (this.journal != null) {
+            this.journal.append(outbound);
+        }
+
+        if (!this.isReady()) {
             logger.warn("Attempting to send message while websocket is not open. Storing message until connection opens: " + message);
-            this.messageQueue.add(message);
         }
+
+        this.offer(this.messageQueue, outbound);
+        this.sendQueuedMessages();
     }
 
     /**
-     * Sends an authentication messages that bypasses the message queue.
+     * Sends several messages through the web socket connection to the Pathfinder server in one
+     * flush if connected. It will save the messages in the queue if not connected.
+     *
+     * @param messages to be sent, in order.
+     */
+    protected synchronized void sendMessages(List<OutboundMessage> messages) {
+        for (OutboundMessage message : messages) {
+            if (this.journal != null) {
+                this.journal.append(message);
+            }
+            this.offer(this.messageQueue, message);
+        }
+
+        if (this.isReady()) {
+            RemoteEndpoint.Async remote = this.session.getAsyncRemote();
+            boolean batching = false;
+            try {
+                remote.setBatchingAllowed(true);
+                batching = true;
+            } catch (IOException e) {
+                logger.warn("Web socket batching unavailable, sending messages individually: " + e.getMessage());
+            }
+
+            this.sendQueuedMessages();
+
+            if (batching) {
+                try {
+                    remote.flushBatch();
+                    remote.setBatchingAllowed(false);
+                } catch (IOException e) {
+                    logger.error("Could not flush message batch: " + e.getMessage());
+                }
+            }
+        } else {
+            logger.warn("Attempting to send " + messages.size() + " messages while websocket is not open. Storing messages until connection opens");
+        }
+    }
+
+    /**
+     * Sends an authentication messages that bypasses the message queue and the limit of
+     * messages in flight.
      *
      * @param message to send to the pathfinder server.
      */
     protected void sendAuthenticationMessage(String message) {
-        this.send(message);
+        this.send(new OutboundMessage(message, null, MessagePriority.CONTROL));
+    }
+
+    /**
+     * Sets the maximum number of messages handed to the web socket that it hasn't sent yet.
+     * Later messages are queued, so a burst of low priority messages can't delay a high
+     * priority message by more than this many messages. Defaults to {@link #DEFAULT_MAX_IN_FLIGHT}.
+     *
+     * @param maxInFlight maximum number of messages in flight, at least one.
+     * @throws IllegalArgumentException if the maximum is less than one.
+     */
+    protected synchronized void setMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            logger.error("Illegal Argument Exception: maximum messages in flight must be positive: " + maxInFlight);
+            throw new IllegalArgumentException("Maximum messages in flight must be positive: " + maxInFlight);
+        }
+
+        this.maxInFlight = maxInFlight;
+        this.sendQueuedMessages();
+    }
+
+    /**
+     * Sets the largest size of the queued messages, the sum of the lengths of their text.
+     * Once over it queued location updates are dropped, oldest first, so the messages sent when
+     * the connection opens stay few. State changes, subscriptions and authentication are never
+     * dropped. Defaults to {@link #DEFAULT_MAX_QUEUED_BYTES}.
+     *
+     * @param maxQueuedBytes largest size of the queued messages, <tt>0</tt> if unbounded.
+     * @throws IllegalArgumentException if the size is negative.
+     */
+    protected synchronized void setMaxQueuedBytes(long maxQueuedBytes) {
+        if (maxQueuedBytes < 0) {
+            logger.error("Illegal Argument Exception: maximum queued bytes must not be negative: " + maxQueuedBytes);
+            throw new IllegalArgumentException("Maximum queued bytes must not be negative: " + maxQueuedBytes);
+        }
+
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.messageQueue.setMaxBytes(maxQueuedBytes);
+        this.acknowledgeDiscarded(this.messageQueue);
+    }
+
+    /**
+     * Returns the number of messages waiting to be sent.
+     *
+     * @return the number of queued messages.
+     */
+    protected synchronized int getQueuedMessageCount() {
+        return this.messageQueue.size();
+    }
+
+    /**
+     * Returns the number of updates that replaced or were merged into a queued update of the
+     * same model instead of being sent.
+     *
+     * @return the number of conflated messages.
+     */
+    protected synchronized long getConflatedMessageCount() {
+        return this.messageQueue.getConflatedCount();
+    }
+
+    /**
+     * Returns the number of queued location updates dropped because the queue was over its size.
+     *
+     * @return the number of dropped messages.
+     */
+    protected synchronized long getDroppedMessageCount() {
+        return this.messageQueue.getDroppedCount();
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void onOpen(Session session, EndpointConfig config) {
+    public synchronized void onOpen(Session session, EndpointConfig config) {
         logger.info("Pathfinder connection opened");
         this.session = session;
+        this.lostSession = null;
+        this.inFlightCount = 0;
+        this.requeueUnconfirmed();
         this.session.addMessageHandler(this.messageHandler);
+        this.startHeartbeat();
 
         if (!(this.messageHandler instanceof AuthenticationMessageHandler)) {
-            logger.info("Sending stored messages");
-            for (String message : this.messageQueue) {
-                this.send(message);
-            }
-
-            logger.info("End sending stored messages");
-            this.messageQueue.clear();
+            this.sendStoredMessages();
         }
     }
 
@@ -139,7 +679,19 @@ class Connection extends Endpoint {
     @Override
     public void onClose(Session session, CloseReason closeReason) {
         logger.info("Pathfinder connection closed: " + closeReason);
-        this.session = session;
+        synchronized (this) {
+            if (this.session != null && session != this.session) {
+                return;
+            }
+
+            this.session = session;
+            this.stopHeartbeat();
+            this.requeueUnconfirmed();
+        }
+
+        if (closeReason.getCloseCode() != CloseReason.CloseCodes.NORMAL_CLOSURE) {
+            this.lost(session, "Connection closed: " + closeReason);
+        }
     }
 
     /**
@@ -156,7 +708,8 @@ class Connection extends Endpoint {
      * @return <tt>true</tt> if the web socket is connected, <tt>false</tt> otherwise.
      */
     public boolean isConnected() {
-        return this.session != null && this.session.isOpen();
+        Session session = this.session;
+        return session != null && session.isOpen() && session != this.lostSession;
     }
 
     /**
@@ -184,6 +737,162 @@ class Connection extends Endpoint {
      * @throws IOException if the web socket failed to close properly.
      */
     public void close(CloseReason reason) throws IOException {
-        this.session.close(reason);
+        Session session;
+        synchronized (this) {
+            this.stopHeartbeat();
+            session = this.session;
+        }
+
+        session.close(reason);
+    }
+
+    /**
+     * Sets how often the heartbeat pings the Pathfinder server and how many pings in a row
+     * may go unanswered before the connection is lost. Applies to the open session immediately.
+     * Defaults to {@link #DEFAULT_HEARTBEAT_INTERVAL} and {@link #DEFAULT_MAX_MISSED_PONGS}.
+     *
+     * @param interval       time between pings, <tt>0</tt> disables the heartbeat.
+     * @param unit           of the interval.
+     * @param maxMissedPongs number of unanswered pings after which the connection is lost, at least one.
+     * @throws IllegalArgumentException if the interval is negative or the number of pings less than one.
+     */
+    protected synchronized void setHeartbeat(long interval, TimeUnit unit, int maxMissedPongs) {
+        if (interval < 0 || maxMissedPongs < 1) {
+            logger.error("Illegal Argument Exception: invalid heartbeat of " + interval + " " + unit + " and " + maxMissedPongs + " missed pongs");
+            throw new IllegalArgumentException("Invalid heartbeat of " + interval + " " + unit + " and " + maxMissedPongs + " missed pongs");
+        }
+
+        this.heartbeatInterval = unit.toMillis(interval);
+        this.maxMissedPongs = maxMissedPongs;
+        if (this.heartbeat != null) {
+            this.startHeartbeat();
+        }
+    }
+
+    /**
+     * Starts the heartbeat of the open session, replacing the current heartbeat.
+     */
+    private synchronized void startHeartbeat() {
+        this.stopHeartbeat();
+        if (this.heartbeatInterval > 0 && this.session != null) {
+            this.heartbeat = new Heartbeat(this, this.session, TimeUnit.MILLISECONDS.toNanos(this.heartbeatInterval), this.maxMissedPongs);
+            this.heartbeat.start();
+        }
+    }
+
+    /**
+     * Stops the heartbeat of the session, if any.
+     */
+    private synchronized void stopHeartbeat() {
+        if (this.heartbeat != null) {
+            this.heartbeat.stop();
+            this.heartbeat = null;
+        }
+    }
+
+    /**
+     * Returns the heartbeat of the open session.
+     *
+     * @return the heartbeat, <tt>null</tt> if none.
+     */
+    protected synchronized Heartbeat getHeartbeat() {
+        return this.heartbeat;
+    }
+
+    /**
+     * Called by the heartbeat when the server didn't answer its pings. The session is closed,
+     * and the connection is lost.
+     *
+     * @param session whose peer is dead.
+     * @param reason  the peer is dead.
+     */
+    protected void peerDead(Session session, String reason) {
+        if (!this.lost(session, reason)) {
+            return;
+        }
+
+        try {
+            session.close(new CloseReason(CloseReason.CloseCodes.GOING_AWAY, "Heartbeat timeout"));
+        } catch (IOException e) {
+            logger.warn("Could not close dead session: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Declares a session lost, messages are queued from now on, and notifies the listeners
+     * once per session.
+     *
+     * @param session that was lost.
+     * @param reason  the session was lost.
+     * @return <tt>true</tt> if the session was declared lost, <tt>false</tt> if it was already lost or replaced.
+     */
+    private boolean lost(Session session, String reason) {
+        synchronized (this) {
+            if (session != this.session || session == this.lostSession) {
+                return false;
+            }
+
+            this.lostSession = session;
+            this.stopHeartbeat();
+            this.requeueUnconfirmed();
+        }
+
+        logger.warn("Pathfinder connection lost: " + reason);
+        for (ConnectionListener listener : this.connectionListeners) {
+            listener.connectionLost(reason);
+        }
+
+        return true;
+    }
+
+    /**
+     * Records a round trip time measured by the heartbeat.
+     *
+     * @param roundTripTime in nanoseconds.
+     */
+    protected void recordRoundTripTime(long roundTripTime) {
+        this.roundTripTimes.record(roundTripTime, TimeUnit.NANOSECONDS);
+
+        long smoothed = this.roundTripTime;
+        this.roundTripTime = smoothed < 0 ? roundTripTime
+                : smoothed + Math.round((roundTripTime - smoothed) * Connection.ROUND_TRIP_TIME_GAIN);
+    }
+
+    /**
+     * Returns the smoothed round trip time to the Pathfinder server, measured by the heartbeat.
+     *
+     * @param unit to return the round trip time in.
+     * @return the round trip time, <tt>-1</tt> if not measured yet.
+     */
+    protected long getRoundTripTime(TimeUnit unit) {
+        long roundTripTime = this.roundTripTime;
+        return roundTripTime < 0 ? -1 : unit.convert(roundTripTime, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the round trip times measured by the heartbeat.
+     *
+     * @return the round trip times.
+     */
+    protected LatencyHistogram getRoundTripTimes() {
+        return this.roundTripTimes;
+    }
+
+    /**
+     * Adds a listener notified when the connection is lost.
+     *
+     * @param listener to add.
+     */
+    protected void addConnectionListener(ConnectionListener listener) {
+        this.connectionListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener notified when the connection is lost.
+     *
+     * @param listener to remove.
+     */
+    protected void removeConnectionListener(ConnectionListener listener) {
+        this.connectionListeners.remove(listener);
     }
 }
@@ -0,0 +1,23 @@
+package xyz.thepathfinder.android;
+
+/**
+ * The <tt>ConnectionListener</tt> interface gives developers access to notifications
+ * about the web socket connection to the Pathfinder server, such as when the connection
+ * is lost.
+ *
+ * @author David Robinson
+ * @see Pathfinder#addConnectionListener(ConnectionListener)
+ */
+public abstract class ConnectionListener implements Listener {
+
+    /**
+     * Invoked when a connection to the Pathfinder server is lost, because the server didn't
+     * answer the heartbeat or the connection closed unexpectedly. Messages sent from now on
+     * are queued until the connection is open and authenticated again. Subscriptions are not
+     * kept by the server across connections, they must be made again after reconnecting.
+     *
+     * @param reason the connection was lost.
+     */
+    public void connectionLost(String reason) {
+    }
+}
@@ -0,0 +1,35 @@
+package xyz.thepathfinder.android;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Holds the fork/join pool shared by the parallel computations of the SDK.
+ *
+ * @author David Robinson
+ */
+class ForkJoinSupport {
+
+    /**
+     * Pool shared by every Pathfinder object, created when first used.
+     */
+    private static ForkJoinPool pool;
+
+    /**
+     * Prevents construction, the class only has static members.
+     */
+    private ForkJoinSupport() {
+    }
+
+    /**
+     * Returns the shared fork/join pool. The pool's parallelism matches the number of
+     * available processors.
+     *
+     * @return the fork/join pool.
+     */
+    protected static synchronized ForkJoinPool getPool() {
+        if (ForkJoinSupport.pool == null) {
+            ForkJoinSupport.pool = new ForkJoinPool();
+        }
+        return ForkJoinSupport.pool;
+    }
+}
@@ -0,0 +1,206 @@
+package xyz.thepathfinder.android;
+
+/**
+ * Encodes the messages models send most often, such as location updates, directly into a
+ * reusable per thread buffer instead of building a {@link com.google.gson.JsonObject} tree and
+ * serializing it. The only object allocated per message is the resulting string. The output is
+ * the same as the tree's {@link com.google.gson.JsonObject#toString()}, with the header fields of
+ * {@link SubscribableModel#getMessageHeader(String)} followed by the value's fields.
+ * <pre><code>   String frame = FrameWriter.begin("Update", transport)
+ *           .field("latitude", latitude)
+ *           .field("longitude", longitude)
+ *           .end();</code></pre>
+ *
+ * @author David Robinson
+ */
+class FrameWriter {
+
+    /**
+     * Initial capacity of a thread's buffer.
+     */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Largest buffer kept between messages, larger buffers are released after use.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 16384;
+
+    /**
+     * Hex digits used to escape control characters.
+     */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * The writer of each thread.
+     */
+    private static final ThreadLocal<FrameWriter> writers = new ThreadLocal<FrameWriter>() {
+        @Override
+        protected FrameWriter initialValue() {
+            return new FrameWriter();
+        }
+    };
+
+    /**
+     * Buffer the message is encoded into.
+     */
+    private StringBuilder buffer;
+
+    /**
+     * Whether a field has been written to the value.
+     */
+    private boolean hasField;
+
+    /**
+     * Constructs a writer with an empty buffer.
+     */
+    private FrameWriter() {
+        this.buffer = new StringBuilder(FrameWriter.INITIAL_CAPACITY);
+    }
+
+    /**
+     * Starts encoding a message about a model on the current thread's writer. The model's
+     * path must be known.
+     *
+     * @param type  of the message, for example <tt>"Update"</tt>.
+     * @param model the message is about.
+     * @return the current thread's writer.
+     */
+    protected static FrameWriter begin(String type, Model<?, ?> model) {
+        FrameWriter writer = FrameWriter.writers.get();
+        StringBuilder buffer = writer.buffer;
+        buffer.setLength(0);
+        writer.hasField = false;
+
+        buffer.append("{\"message\":");
+        FrameWriter.appendString(buffer, type);
+        buffer.append(",\"id\":");
+        if (model.getModelType() == ModelType.CLUSTER) {
+            FrameWriter.appendString(buffer, model.getPathName());
+        } else {
+            buffer.append(model.getId());
+        }
+        buffer.append(",\"model\":");
+        FrameWriter.appendString(buffer, model.getModelType().toString());
+        buffer.append(",\"value\":{");
+
+        return writer;
+    }
+
+    /**
+     * Writes a number field of the value.
+     *
+     * @param name  of the field.
+     * @param value of the field.
+     * @return this writer.
+     */
+    protected FrameWriter field(String name, double value) {
+        this.appendName(name);
+        this.buffer.append(value);
+        return this;
+    }
+
+    /**
+     * Writes an integer field of the value.
+     *
+     * @param name  of the field.
+     * @param value of the field.
+     * @return this writer.
+     */
+    protected FrameWriter field(String name, long value) {
+        this.appendName(name);
+        this.buffer.append(value);
+        return this;
+    }
+
+    /**
+     * Writes a string field of the value.
+     *
+     * @param name  of the field.
+     * @param value of the field.
+     * @return this writer.
+     */
+    protected FrameWriter field(String name, String value) {
+        this.appendName(name);
+        FrameWriter.appendString(this.buffer, value);
+        return this;
+    }
+
+    /**
+     * Finishes the message and returns it. The buffer is reused by the next message encoded
+     * on this thread.
+     *
+     * @return the message as a JSON string.
+     */
+    protected String end() {
+        this.buffer.append("}}");
+        String frame = this.buffer.toString();
+
+        if (this.buffer.capacity() > FrameWriter.MAX_RETAINED_CAPACITY) {
+            this.buffer = new StringBuilder(FrameWriter.INITIAL_CAPACITY);
+        }
+
+        return frame;
+    }
+
+    /**
+     * Writes the name of a field of the value, preceded by a comma if it isn't the first.
+     *
+     * @param name of the field.
+     */
+    private void appendName(String name) {
+        if (this.hasField) {
+            this.buffer.append(',');
+        }
+        this.hasField = true;
+
+        FrameWriter.appendString(this.buffer, name);
+        this.buffer.append(':');
+    }
+
+    /**
+     * Writes a quoted JSON string, escaping the characters Gson escapes.
+     *
+     * @param buffer to write to.
+     * @param string to write.
+     */
+    private static void appendString(StringBuilder buffer, String string) {
+        buffer.append('"');
+        for (int k = 0; k < string.length(); k++) {
+            char c = string.charAt(k);
+            switch (c) {
+                case '"':
+                    buffer.append("\\\"");
+                    break;
+                case '\\':
+                    buffer.append("\\\\");
+                    break;
+                case '\t':
+                    buffer.append("\\t");
+                    break;
+                case '\b':
+                    buffer.append("\\b");
+                    break;
+                case '\n':
+                    buffer.append("\\n");
+                    break;
+                case '\r':
+                    buffer.append("\\r");
+                    break;
+                case '\f':
+                    buffer.append("\\f");
+                    break;
+                default:
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        buffer.append("\\u")
+                                .append(FrameWriter.HEX_DIGITS[c >> 12 & 0xf])
+                                .append(FrameWriter.HEX_DIGITS[c >> 8 & 0xf])
+                                .append(FrameWriter.HEX_DIGITS[c >> 4 & 0xf])
+                                .append(FrameWriter.HEX_DIGITS[c & 0xf]);
+                    } else {
+                        buffer.append(c);
+                    }
+            }
+        }
+        buffer.append('"');
+    }
+}
@@ -0,0 +1,71 @@
+package xyz.thepathfinder.android;
+
+/**
+ * Geographic calculations on latitude and longitude coordinates in degrees.
+ *
+ * @author David Robinson
+ */
+public final class GeoMath {
+
+    /**
+     * Mean radius of the Earth, in meters.
+     */
+    public static final double EARTH_RADIUS = 6371008.8;
+
+    /**
+     * The class is only accessed statically.
+     */
+    private GeoMath() {
+    }
+
+    /**
+     * Returns the great circle distance between two coordinates, using the haversine formula.
+     *
+     * @param startLatitude  of the first coordinate.
+     * @param startLongitude of the first coordinate.
+     * @param endLatitude    of the second coordinate.
+     * @param endLongitude   of the second coordinate.
+     * @return the distance in meters.
+     */
+    public static double distance(double startLatitude, double startLongitude, double endLatitude, double endLongitude) {
+        double latitudeDelta = Math.toRadians(endLatitude - startLatitude);
+        double longitudeDelta = Math.toRadians(endLongitude - startLongitude);
+
+        double latitudeSine = Math.sin(latitudeDelta / 2);
+        double longitudeSine = Math.sin(longitudeDelta / 2);
+        double a = latitudeSine * latitudeSine +
+                Math.cos(Math.toRadians(startLatitude)) * Math.cos(Math.toRadians(endLatitude)) * longitudeSine * longitudeSine;
+
+        return 2 * GeoMath.EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Returns the distance from a coordinate to the closest point of the segment between two
+     * coordinates. The segment is projected onto a plane tangent at its midpoint, which is
+     * accurate for the segment lengths of a route.
+     *
+     * @param latitude       of the coordinate.
+     * @param longitude      of the coordinate.
+     * @param startLatitude  of the start of the segment.
+     * @param startLongitude of the start of the segment.
+     * @param endLatitude    of the end of the segment.
+     * @param endLongitude   of the end of the segment.
+     * @return the distance in meters.
+     */
+    public static double distanceToSegment(double latitude, double longitude, double startLatitude, double startLongitude,
+                                           double endLatitude, double endLongitude) {
+        double scale = Math.cos(Math.toRadians((startLatitude + endLatitude) / 2));
+
+        double segmentX = (endLongitude - startLongitude) * scale;
+        double segmentY = endLatitude - startLatitude;
+        double pointX = (longitude - startLongitude) * scale;
+        double pointY = latitude - startLatitude;
+
+        double lengthSquared = segmentX * segmentX + segmentY * segmentY;
+        double fraction = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, (pointX * segmentX + pointY * segmentY) / lengthSquared));
+
+        double closestLatitude = startLatitude + fraction * segmentY;
+        double closestLongitude = startLongitude + fraction * (endLongitude - startLongitude);
+        return GeoMath.distance(latitude, longitude, closestLatitude, closestLongitude);
+    }
+}
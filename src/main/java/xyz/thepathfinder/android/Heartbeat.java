@@ -0,0 +1,204 @@
+package xyz.thepathfinder.android;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.websocket.MessageHandler;
+import javax.websocket.PongMessage;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends web socket ping frames through a session on an interval and measures the round trip
+ * time of the pong frames the peer answers with. Each ping carries the time it was sent, so
+ * a pong doesn't need to be matched to its ping. The peer is declared dead once the specified
+ * number of pings in a row go unanswered, which is reported to the {@link Connection}. A web
+ * socket whose peer has gone away, as when a mobile network drops, is otherwise only noticed
+ * once the operating system times out the underlying TCP connection.
+ *
+ * @author David Robinson
+ */
+class Heartbeat implements Runnable, MessageHandler.Whole<PongMessage> {
+
+    /**
+     * Logs actions performed by the class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(Heartbeat.class);
+
+    /**
+     * Size of a ping's payload, the time it was sent.
+     */
+    private static final int PAYLOAD_SIZE = 8;
+
+    /**
+     * Connection whose session is watched.
+     */
+    private final Connection connection;
+
+    /**
+     * Session the pings are sent through.
+     */
+    private final Session session;
+
+    /**
+     * Time between pings, in nanoseconds.
+     */
+    private final long interval;
+
+    /**
+     * Number of unanswered pings in a row after which the peer is dead.
+     */
+    private final int maxMissedPongs;
+
+    /**
+     * Number of pings sent since the last pong.
+     */
+    private int missedPongs;
+
+    /**
+     * Whether the peer was declared dead.
+     */
+    private boolean dead;
+
+    /**
+     * Task sending the pings, <tt>null</tt> if not started.
+     */
+    private volatile ScheduledFuture<?> task;
+
+    /**
+     * Constructs a heartbeat for a session, it must be started to send pings.
+     *
+     * @param connection     whose session is watched.
+     * @param session        to send the pings through.
+     * @param interval       time between pings, in nanoseconds.
+     * @param maxMissedPongs number of unanswered pings in a row after which the peer is dead.
+     */
+    protected Heartbeat(Connection connection, Session session, long interval, int maxMissedPongs) {
+        this.connection = connection;
+        this.session = session;
+        this.interval = interval;
+        this.maxMissedPongs = maxMissedPongs;
+        this.missedPongs = 0;
+        this.dead = false;
+    }
+
+    /**
+     * Starts sending pings on the shared timer, the first after one interval.
+     */
+    protected void start() {
+        this.session.addMessageHandler(this);
+        this.task = PathfinderRuntime.getScheduler().scheduleAtFixedRate(this, this.interval, this.interval, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops sending pings.
+     */
+    protected void stop() {
+        ScheduledFuture<?> task = this.task;
+        if (task != null) {
+            task.cancel(false);
+        }
+
+        try {
+            this.session.removeMessageHandler(this);
+        } catch (IllegalStateException e) {
+            logger.debug("Could not remove pong handler from closed session: " + e.getMessage());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+        this.tick(System.nanoTime());
+    }
+
+    /**
+     * Sends a ping, or declares the peer dead if too many pings in a row went unanswered.
+     *
+     * @param now the current time, from {@link System#nanoTime()}.
+     */
+    protected void tick(long now) {
+        String reason = null;
+        synchronized (this) {
+            if (this.dead) {
+                return;
+            }
+
+            if (this.missedPongs >= this.maxMissedPongs) {
+                this.dead = true;
+                reason = "No pong for " + this.missedPongs + " pings in " +
+                        TimeUnit.NANOSECONDS.toMillis(this.missedPongs * this.interval) + " ms";
+            } else {
+                this.missedPongs++;
+            }
+        }
+
+        if (reason != null) {
+            this.stop();
+            this.connection.peerDead(this.session, reason);
+            return;
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(Heartbeat.PAYLOAD_SIZE);
+        payload.putLong(0, now);
+        try {
+            this.session.getAsyncRemote().sendPing(payload);
+        } catch (IOException e) {
+            logger.warn("Could not send ping: " + e.getMessage());
+        } catch (IllegalStateException e) {
+            logger.warn("Could not send ping: " + e.getMessage());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onMessage(PongMessage message) {
+        this.pong(message.getApplicationData(), System.nanoTime());
+    }
+
+    /**
+     * Records the round trip time of a pong and confirms the messages written before its ping.
+     * A pong that doesn't carry a ping's time is ignored.
+     *
+     * @param payload of the pong.
+     * @param now     the current time, from {@link System#nanoTime()}.
+     */
+    protected void pong(ByteBuffer payload, long now) {
+        if (payload == null || payload.remaining() != Heartbeat.PAYLOAD_SIZE) {
+            logger.debug("Ignoring unsolicited pong");
+            return;
+        }
+
+        long roundTripTime = now - payload.getLong(payload.position());
+        if (roundTripTime < 0) {
+            logger.debug("Ignoring pong from the future");
+            return;
+        }
+
+        synchronized (this) {
+            if (this.dead) {
+                return;
+            }
+            this.missedPongs = 0;
+        }
+
+        this.connection.recordRoundTripTime(roundTripTime);
+        this.connection.confirmDelivery(this.session, now - roundTripTime);
+    }
+
+    /**
+     * Returns the number of pings sent since the last pong.
+     *
+     * @return the number of missed pongs.
+     */
+    protected synchronized int getMissedPongs() {
+        return this.missedPongs;
+    }
+}
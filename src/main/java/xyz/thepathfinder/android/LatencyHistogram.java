@@ -0,0 +1,159 @@
+package xyz.thepathfinder.android;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records a distribution of latencies in buckets of exponentially growing width. Bucket
+ * <tt>k</tt> holds latencies from <tt>2^(k-1)</tt> up to, but not including, <tt>2^k</tt>
+ * nanoseconds and bucket <tt>0</tt> holds latencies of zero, so
+ * recording a latency takes constant time and space and percentiles are accurate to within
+ * a factor of two.
+ *
+ * @author David Robinson
+ */
+public class LatencyHistogram {
+
+    /**
+     * Number of buckets, zero and one per bit of a non-negative <tt>long</tt>.
+     */
+    private static final int BUCKET_COUNT = 64;
+
+    /**
+     * Number of latencies in each bucket.
+     */
+    private final long[] buckets;
+
+    /**
+     * Number of latencies recorded.
+     */
+    private long count;
+
+    /**
+     * Sum of the latencies recorded, in nanoseconds.
+     */
+    private long sum;
+
+    /**
+     * Largest latency recorded, in nanoseconds.
+     */
+    private long max;
+
+    /**
+     * Constructs an empty histogram.
+     */
+    public LatencyHistogram() {
+        this.buckets = new long[LatencyHistogram.BUCKET_COUNT];
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param latency to record.
+     * @param unit    of the latency.
+     */
+    public synchronized void record(long latency, TimeUnit unit) {
+        long nanos = Math.max(0, unit.toNanos(latency));
+        this.buckets[LatencyHistogram.BUCKET_COUNT - Long.numberOfLeadingZeros(nanos)]++;
+        this.count++;
+        this.sum += nanos;
+        this.max = Math.max(this.max, nanos);
+    }
+
+    /**
+     * Returns the number of latencies recorded.
+     *
+     * @return the number of latencies.
+     */
+    public synchronized long getCount() {
+        return this.count;
+    }
+
+    /**
+     * Returns the mean of the latencies recorded.
+     *
+     * @param unit to return the mean in.
+     * @return the mean latency, <tt>0</tt> if none were recorded.
+     */
+    public synchronized long getMean(TimeUnit unit) {
+        return this.count == 0 ? 0 : unit.convert(this.sum / this.count, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the largest latency recorded.
+     *
+     * @param unit to return the latency in.
+     * @return the largest latency, <tt>0</tt> if none were recorded.
+     */
+    public synchronized long getMax(TimeUnit unit) {
+        return unit.convert(this.max, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns an upper bound of the latency below which the specified fraction of the
+     * latencies fall. The bound is at most twice the actual percentile.
+     *
+     * @param fraction of the latencies, between <tt>0</tt> and <tt>1</tt>.
+     * @param unit     to return the latency in.
+     * @return the percentile's upper bound, <tt>0</tt> if none were recorded.
+     */
+    public synchronized long getPercentile(double fraction, TimeUnit unit) {
+        if (this.count == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(Math.max(0, Math.min(1, fraction)) * this.count);
+        long seen = 0;
+        for (int k = 0; k < LatencyHistogram.BUCKET_COUNT; k++) {
+            seen += this.buckets[k];
+            if (seen >= Math.max(1, rank)) {
+                long bound = k == LatencyHistogram.BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1L << k);
+                return unit.convert(Math.min(bound, this.max), TimeUnit.NANOSECONDS);
+            }
+        }
+
+        return unit.convert(this.max, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Adds the latencies recorded by another histogram to this histogram.
+     *
+     * @param other histogram whose latencies are added.
+     */
+    protected void add(LatencyHistogram other) {
+        LatencyHistogram copy = other.copy();
+        synchronized (this) {
+            for (int k = 0; k < LatencyHistogram.BUCKET_COUNT; k++) {
+                this.buckets[k] += copy.buckets[k];
+            }
+            this.count += copy.count;
+            this.sum += copy.sum;
+            this.max = Math.max(this.max, copy.max);
+        }
+    }
+
+    /**
+     * Returns a copy of this histogram.
+     *
+     * @return a histogram with the same latencies.
+     */
+    public synchronized LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram();
+        System.arraycopy(this.buckets, 0, copy.buckets, 0, LatencyHistogram.BUCKET_COUNT);
+        copy.count = this.count;
+        copy.sum = this.sum;
+        copy.max = this.max;
+        return copy;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "count: " + this.getCount() +
+                ", mean: " + this.getMean(TimeUnit.MICROSECONDS) + "us" +
+                ", p50: " + this.getPercentile(0.5, TimeUnit.MICROSECONDS) + "us" +
+                ", p99: " + this.getPercentile(0.99, TimeUnit.MICROSECONDS) + "us" +
+                ", max: " + this.getMax(TimeUnit.MICROSECONDS) + "us";
+    }
+}
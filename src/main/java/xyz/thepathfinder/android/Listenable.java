@@ -1,8 +1,8 @@
 package xyz.thepathfinder.android;
 
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Allows objects to listen for notifications.
@@ -14,7 +14,8 @@ import java.util.List;
 public abstract class Listenable<E extends Listener, T> {
 
     /**
-     * The list of listeners
+     * The list of listeners. Copied on write so listeners may add or remove listeners,
+     * including themselves, while being notified.
      */
     private List<E> listeners;
 
@@ -22,7 +23,7 @@ public abstract class Listenable<E extends Listener, T> {
      * Creates a listenable object.
      */
     public Listenable() {
-        this.listeners = new LinkedList<E>();
+        this.listeners = new CopyOnWriteArrayList<E>();
     }
 
     /**
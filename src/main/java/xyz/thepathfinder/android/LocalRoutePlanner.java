@@ -0,0 +1,463 @@
+package xyz.thepathfinder.android;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Plans provisional routes on the device when the pathfinder server can't be reached.
+ * Every commodity is a job, picked up and then dropped off before the transport's next job.
+ * A greedy insertion seed assigns each job to the position that gives the shortest resulting
+ * route, which keeps the routes balanced. Each route is then improved independently with
+ * or-opt and 2-opt moves, the routes in parallel with fork/join, until no move shortens a
+ * route or the time budget runs out.
+ *
+ * @author David Robinson
+ */
+class LocalRoutePlanner {
+
+    /**
+     * Logs actions performed by the class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(LocalRoutePlanner.class);
+
+    /**
+     * Longest run of consecutive jobs moved by an or-opt move.
+     */
+    private static final int MAX_SEGMENT_LENGTH = 3;
+
+    /**
+     * Smallest decrease in meters that counts as an improvement.
+     */
+    private static final double EPSILON = 1e-6;
+
+    /**
+     * Transports to route.
+     */
+    private final List<Transport> transports;
+
+    /**
+     * Commodities to pick up and drop off.
+     */
+    private final List<Commodity> commodities;
+
+    /**
+     * Jobs of each transport in the order they are performed.
+     */
+    private final int[][] plan;
+
+    /**
+     * Number of jobs of each transport.
+     */
+    private final int[] planSizes;
+
+    /**
+     * Constructs a planner.
+     *
+     * @param transports  to route.
+     * @param commodities to pick up and drop off.
+     */
+    protected LocalRoutePlanner(List<Transport> transports, List<Commodity> commodities) {
+        this.transports = new ArrayList<Transport>(transports);
+        this.commodities = new ArrayList<Commodity>(commodities);
+        this.plan = new int[this.transports.size()][];
+        this.planSizes = new int[this.transports.size()];
+    }
+
+    /**
+     * Plans the routes. The greedy seed is always completed so every commodity is routed, the
+     * deadline only cuts the local search short.
+     *
+     * @param deadline value of {@link System#nanoTime()} after which the search stops.
+     * @return one provisional route per transport.
+     */
+    protected List<Route> plan(long deadline) {
+        long start = System.nanoTime();
+
+        if (!this.transports.isEmpty()) {
+            this.seed();
+            double seeded = this.getTotalDistance();
+
+            ForkJoinSupport.getPool().invoke(new ImproveTask(0, this.transports.size(), deadline));
+            logger.info("Planned local routes for " + this.transports.size() + " transports and " +
+                    this.commodities.size() + " commodities in " + (System.nanoTime() - start) / 1000000 +
+                    " ms, distance " + Math.round(seeded) + " m improved to " + Math.round(this.getTotalDistance()) + " m");
+        }
+
+        List<Route> routes = new ArrayList<Route>(this.transports.size());
+        for (int t = 0; t < this.transports.size(); t++) {
+            routes.add(this.toRoute(t));
+        }
+
+        return routes;
+    }
+
+    /**
+     * Returns the total length of the planned routes.
+     *
+     * @return the distance in meters.
+     */
+    protected double getTotalDistance() {
+        double distance = 0;
+        for (int t = 0; t < this.transports.size(); t++) {
+            distance += this.getRouteDistance(t);
+        }
+        return distance;
+    }
+
+    /**
+     * Assigns every job with greedy insertion. Each job goes to the transport and position
+     * that result in the shortest route, ties going to the smallest increase.
+     */
+    private void seed() {
+        int transportCount = this.transports.size();
+        double[] lengths = new double[transportCount];
+        // links[t][i] is the distance to the pick up of the i-th job of transport t
+        double[][] links = new double[transportCount][];
+
+        for (int t = 0; t < transportCount; t++) {
+            this.plan[t] = new int[8];
+            links[t] = new double[8];
+        }
+
+        for (int job = 0; job < this.commodities.size(); job++) {
+            Commodity commodity = this.commodities.get(job);
+            double inner = this.getJobDistance(job);
+            int bestTransport = -1;
+            int bestPosition = -1;
+            double bestLength = Double.MAX_VALUE;
+            double bestDelta = Double.MAX_VALUE;
+
+            for (int t = 0; t < transportCount; t++) {
+                int size = this.planSizes[t];
+                double latitude = this.transports.get(t).getLatitude();
+                double longitude = this.transports.get(t).getLongitude();
+
+                for (int position = 0; position <= size; position++) {
+                    if (position > 0) {
+                        Commodity previous = this.commodities.get(this.plan[t][position - 1]);
+                        latitude = previous.getEndLatitude();
+                        longitude = previous.getEndLongitude();
+                    }
+
+                    double delta = GeoMath.distance(latitude, longitude, commodity.getStartLatitude(), commodity.getStartLongitude()) + inner;
+                    if (position < size) {
+                        Commodity next = this.commodities.get(this.plan[t][position]);
+                        delta += GeoMath.distance(commodity.getEndLatitude(), commodity.getEndLongitude(), next.getStartLatitude(), next.getStartLongitude()) - links[t][position];
+                    }
+
+                    double length = lengths[t] + delta;
+                    if (length < bestLength || (length == bestLength && delta < bestDelta)) {
+                        bestTransport = t;
+                        bestPosition = position;
+                        bestLength = length;
+                        bestDelta = delta;
+                    }
+                }
+            }
+
+            this.insert(bestTransport, bestPosition, job, links);
+            lengths[bestTransport] = bestLength;
+        }
+    }
+
+    /**
+     * Inserts a job into a transport's plan and updates the links around it.
+     *
+     * @param transport index of the transport.
+     * @param position  to insert the job at.
+     * @param job       index of the job.
+     * @param links     distance to the pick up of each planned job.
+     */
+    private void insert(int transport, int position, int job, double[][] links) {
+        int size = this.planSizes[transport];
+        if (size == this.plan[transport].length) {
+            int[] jobs = new int[size * 2];
+            double[] distances = new double[size * 2];
+            System.arraycopy(this.plan[transport], 0, jobs, 0, size);
+            System.arraycopy(links[transport], 0, distances, 0, size);
+            this.plan[transport] = jobs;
+            links[transport] = distances;
+        }
+
+        int[] jobs = this.plan[transport];
+        double[] distances = links[transport];
+        System.arraycopy(jobs, position, jobs, position + 1, size - position);
+        System.arraycopy(distances, position, distances, position + 1, size - position);
+        jobs[position] = job;
+        this.planSizes[transport] = size + 1;
+
+        distances[position] = this.getLinkDistance(transport, position == 0 ? -1 : jobs[position - 1], job);
+        if (position < size) {
+            distances[position + 1] = this.getLinkDistance(transport, job, jobs[position + 1]);
+        }
+    }
+
+    /**
+     * Improves a transport's plan with or-opt and 2-opt moves until neither shortens it or
+     * the deadline passes.
+     *
+     * @param transport index of the transport.
+     * @param deadline  value of {@link System#nanoTime()} after which the search stops.
+     */
+    private void improve(int transport, long deadline) {
+        int size = this.planSizes[transport];
+        if (size < 2) {
+            return;
+        }
+
+        // The distances between the transport's jobs, local index size is the transport itself
+        int[] jobs = this.plan[transport];
+        double[][] links = new double[size + 1][size];
+        int[] sequence = new int[size];
+        for (int from = 0; from <= size; from++) {
+            for (int to = 0; to < size; to++) {
+                links[from][to] = this.getLinkDistance(transport, from == size ? -1 : jobs[from], jobs[to]);
+            }
+            if (from < size) {
+                sequence[from] = from;
+            }
+        }
+
+        boolean improved = true;
+        while (improved && System.nanoTime() < deadline) {
+            improved = LocalRoutePlanner.orOpt(sequence, links) || LocalRoutePlanner.twoOpt(sequence, links);
+        }
+
+        int[] ordered = new int[size];
+        for (int k = 0; k < size; k++) {
+            ordered[k] = jobs[sequence[k]];
+        }
+        this.plan[transport] = ordered;
+    }
+
+    /**
+     * Applies the first or-opt move that shortens the route: a run of up to
+     * {@link #MAX_SEGMENT_LENGTH} consecutive jobs is moved to another position.
+     *
+     * @param sequence local indices of the jobs in route order.
+     * @param links    distances between the jobs.
+     * @return <tt>true</tt> if a move was applied.
+     */
+    private static boolean orOpt(int[] sequence, double[][] links) {
+        int size = sequence.length;
+        int origin = size;
+
+        for (int length = 1; length <= LocalRoutePlanner.MAX_SEGMENT_LENGTH && length < size; length++) {
+            for (int i = 0; i + length <= size; i++) {
+                int first = sequence[i];
+                int last = sequence[i + length - 1];
+                int previous = i == 0 ? origin : sequence[i - 1];
+                int next = i + length < size ? sequence[i + length] : -1;
+
+                double removed = links[previous][first] + (next < 0 ? 0 : links[last][next] - links[previous][next]);
+
+                // Positions in the route without the segment, after the job at index j
+                for (int j = -1; j < size; j++) {
+                    if (j >= i - 1 && j < i + length) {
+                        continue;
+                    }
+
+                    int before = j < 0 ? origin : sequence[j];
+                    int after = j + 1 < size ? sequence[j + 1] : -1;
+
+                    double added = links[before][first] + (after < 0 ? 0 : links[last][after] - links[before][after]);
+                    if (added < removed - LocalRoutePlanner.EPSILON) {
+                        LocalRoutePlanner.moveSegment(sequence, i, length, j);
+                        return true;
+                    }
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Moves a run of jobs so it follows the job at another index.
+     *
+     * @param sequence local indices of the jobs in route order.
+     * @param start    index of the first job of the run.
+     * @param length   number of jobs in the run.
+     * @param after    index of the job the run is moved after, <tt>-1</tt> for the front.
+     */
+    private static void moveSegment(int[] sequence, int start, int length, int after) {
+        int[] segment = new int[length];
+        System.arraycopy(sequence, start, segment, 0, length);
+
+        if (after < start) {
+            System.arraycopy(sequence, after + 1, sequence, after + 1 + length, start - after - 1);
+            System.arraycopy(segment, 0, sequence, after + 1, length);
+        } else {
+            System.arraycopy(sequence, start + length, sequence, start, after - start - length + 1);
+            System.arraycopy(segment, 0, sequence, after - length + 1, length);
+        }
+    }
+
+    /**
+     * Applies the first 2-opt move that shortens the route: the order of a run of jobs is
+     * reversed. The distances aren't symmetric, so the links inside the run are summed in
+     * both directions as the run grows.
+     *
+     * @param sequence local indices of the jobs in route order.
+     * @param links    distances between the jobs.
+     * @return <tt>true</tt> if a move was applied.
+     */
+    private static boolean twoOpt(int[] sequence, double[][] links) {
+        int size = sequence.length;
+
+        for (int i = 0; i < size - 1; i++) {
+            int previous = i == 0 ? size : sequence[i - 1];
+            double forward = 0;
+            double backward = 0;
+
+            for (int j = i + 1; j < size; j++) {
+                forward += links[sequence[j - 1]][sequence[j]];
+                backward += links[sequence[j]][sequence[j - 1]];
+
+                double before = links[previous][sequence[i]] + forward;
+                double after = links[previous][sequence[j]] + backward;
+                if (j + 1 < size) {
+                    before += links[sequence[j]][sequence[j + 1]];
+                    after += links[sequence[i]][sequence[j + 1]];
+                }
+
+                if (after < before - LocalRoutePlanner.EPSILON) {
+                    for (int low = i, high = j; low < high; low++, high--) {
+                        int swap = sequence[low];
+                        sequence[low] = sequence[high];
+                        sequence[high] = swap;
+                    }
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the length of a transport's planned route.
+     *
+     * @param transport index of the transport.
+     * @return the distance in meters.
+     */
+    private double getRouteDistance(int transport) {
+        double distance = 0;
+        int previous = -1;
+
+        for (int k = 0; k < this.planSizes[transport]; k++) {
+            int job = this.plan[transport][k];
+            distance += this.getLinkDistance(transport, previous, job) + this.getJobDistance(job);
+            previous = job;
+        }
+
+        return distance;
+    }
+
+    /**
+     * Returns the distance from the end of one job to the pick up of another.
+     *
+     * @param transport index of the transport performing the jobs.
+     * @param from      index of the earlier job, <tt>-1</tt> for the transport's location.
+     * @param to        index of the later job.
+     * @return the distance in meters.
+     */
+    private double getLinkDistance(int transport, int from, int to) {
+        Commodity next = this.commodities.get(to);
+        if (from < 0) {
+            Transport origin = this.transports.get(transport);
+            return GeoMath.distance(origin.getLatitude(), origin.getLongitude(), next.getStartLatitude(), next.getStartLongitude());
+        }
+
+        Commodity previous = this.commodities.get(from);
+        return GeoMath.distance(previous.getEndLatitude(), previous.getEndLongitude(), next.getStartLatitude(), next.getStartLongitude());
+    }
+
+    /**
+     * Returns the distance from a job's pick up to its drop off.
+     *
+     * @param job index of the job.
+     * @return the distance in meters.
+     */
+    private double getJobDistance(int job) {
+        Commodity commodity = this.commodities.get(job);
+        return GeoMath.distance(commodity.getStartLatitude(), commodity.getStartLongitude(), commodity.getEndLatitude(), commodity.getEndLongitude());
+    }
+
+    /**
+     * Builds the provisional route of a transport from its plan.
+     *
+     * @param transport index of the transport.
+     * @return the route.
+     */
+    private Route toRoute(int transport) {
+        Transport model = this.transports.get(transport);
+        List<Action> actions = new ArrayList<Action>(this.planSizes[transport] * 2 + 1);
+        actions.add(new Action(ActionStatus.START, model.getLatitude(), model.getLongitude(), null));
+
+        for (int k = 0; k < this.planSizes[transport]; k++) {
+            Commodity commodity = this.commodities.get(this.plan[transport][k]);
+            actions.add(new Action(ActionStatus.PICK_UP, commodity.getStartLatitude(), commodity.getStartLongitude(), commodity));
+            actions.add(new Action(ActionStatus.DROP_OFF, commodity.getEndLatitude(), commodity.getEndLongitude(), commodity));
+        }
+
+        return new Route(model, actions);
+    }
+
+    /**
+     * Fork/join task that improves the plans of a range of transports.
+     */
+    private class ImproveTask extends RecursiveAction {
+
+        /**
+         * Version of the serialized form of the task.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Index of the first transport.
+         */
+        private final int from;
+
+        /**
+         * Index after the last transport.
+         */
+        private final int to;
+
+        /**
+         * Value of {@link System#nanoTime()} after which the search stops.
+         */
+        private final long deadline;
+
+        /**
+         * Constructs a task improving the plans of a range of transports.
+         *
+         * @param from     index of the first transport.
+         * @param to       index after the last transport.
+         * @param deadline value of {@link System#nanoTime()} after which the search stops.
+         */
+        private ImproveTask(int from, int to, long deadline) {
+            this.from = from;
+            this.to = to;
+            this.deadline = deadline;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void compute() {
+            if (this.to - this.from == 1) {
+                LocalRoutePlanner.this.improve(this.from, this.deadline);
+                return;
+            }
+
+            int middle = (this.from + this.to) >>> 1;
+            RecursiveAction.invokeAll(new ImproveTask(this.from, middle, this.deadline), new ImproveTask(middle, this.to, this.deadline));
+        }
+    }
+}
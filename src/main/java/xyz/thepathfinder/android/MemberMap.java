@@ -0,0 +1,513 @@
+package xyz.thepathfinder.android;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * <p>
+ * An immutable map of a cluster's members keyed by path, see {@link ClusterSnapshot}. Adding or
+ * removing a member returns a new map that shares all but the changed path through the map with
+ * this one, so it takes time logarithmic in the number of members instead of copying them. A bulk
+ * create that adds its models to a cluster one reply at a time therefore doesn't copy the
+ * cluster's members once per model.
+ * </p>
+ * <p>
+ * The map is a hash array mapped trie: each node holds up to 32 entries or child nodes, indexed by
+ * five bits of the key's hash. Keys whose hashes are equal are kept in a list at the bottom level.
+ * The map is safe to read from any thread.
+ * </p>
+ *
+ * @param <V> type of the members.
+ * @author David Robinson
+ */
+final class MemberMap<V> extends AbstractMap<String, V> {
+
+    /**
+     * Number of hash bits used by each level of the trie.
+     */
+    private static final int BITS = 5;
+
+    /**
+     * Mask of the hash bits used by each level of the trie.
+     */
+    private static final int MASK = (1 << MemberMap.BITS) - 1;
+
+    /**
+     * Deepest level of the trie, it holds keys whose hashes are equal in a list.
+     */
+    private static final int MAX_DEPTH = (Integer.SIZE + MemberMap.BITS - 1) / MemberMap.BITS;
+
+    /**
+     * The map without members.
+     */
+    private static final MemberMap<Object> EMPTY = new MemberMap<Object>(Node.EMPTY, 0);
+
+    /**
+     * Root node of the trie.
+     */
+    private final Node root;
+
+    /**
+     * Number of members.
+     */
+    private final int size;
+
+    /**
+     * Constructs a map.
+     *
+     * @param root node of the trie.
+     * @param size number of members.
+     */
+    private MemberMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns the map without members.
+     *
+     * @param <V> type of the members.
+     * @return the empty map.
+     */
+    @SuppressWarnings("unchecked")
+    protected static <V> MemberMap<V> empty() {
+        return (MemberMap<V>) MemberMap.EMPTY;
+    }
+
+    /**
+     * Returns a map with the members of the specified map. A member map is returned as it is.
+     *
+     * @param members to put in the map.
+     * @param <V>     type of the members.
+     * @return the map of the members.
+     */
+    @SuppressWarnings("unchecked")
+    protected static <V> MemberMap<V> copyOf(Map<String, ? extends V> members) {
+        if (members instanceof MemberMap) {
+            return (MemberMap<V>) members;
+        }
+
+        MemberMap<V> map = MemberMap.empty();
+        for (Map.Entry<String, ? extends V> member : members.entrySet()) {
+            map = map.plus(member.getKey(), member.getValue());
+        }
+
+        return map;
+    }
+
+    /**
+     * Returns a map with the specified member added, or replaced if the path is already in this map.
+     *
+     * @param path   of the member.
+     * @param member to add.
+     * @return the new map, this map if it already maps the path to the member.
+     */
+    protected MemberMap<V> plus(String path, V member) {
+        boolean[] added = new boolean[1];
+        Node root = this.root.plus(MemberMap.hash(path), 0, new SimpleImmutableEntry<String, V>(path, member), added);
+        return root == this.root ? this : new MemberMap<V>(root, added[0] ? this.size + 1 : this.size);
+    }
+
+    /**
+     * Returns a map without the member at the specified path.
+     *
+     * @param path of the member.
+     * @return the new map, this map if the path isn't in it.
+     */
+    protected MemberMap<V> minus(String path) {
+        Node root = this.root.minus(MemberMap.hash(path), 0, path);
+        return root == this.root ? this : new MemberMap<V>(root == null ? Node.EMPTY : root, this.size - 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Map.Entry<String, V> entry = key instanceof String ? (Map.Entry<String, V>) this.root.find(MemberMap.hash((String) key), 0, (String) key) : null;
+        return entry == null ? null : entry.getValue();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && this.root.find(MemberMap.hash((String) key), 0, (String) key) != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Map.Entry<String, V>> entrySet() {
+        return new AbstractSet<Map.Entry<String, V>>() {
+            @Override
+            public Iterator<Map.Entry<String, V>> iterator() {
+                return new EntryIterator<V>(MemberMap.this.root);
+            }
+
+            @Override
+            public int size() {
+                return MemberMap.this.size;
+            }
+        };
+    }
+
+    /**
+     * Returns the hash of a path, with the high bits spread into the bits used by the first levels.
+     *
+     * @param path to hash.
+     * @return the hash.
+     */
+    private static int hash(String path) {
+        int hash = path.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * A node of the trie. Its slots hold entries and child nodes, one slot per bit set in the
+     * bitmap in bit order. At the deepest level the bitmap is unused and the slots are a list of
+     * entries whose keys have the same hash. Nodes are never modified once constructed.
+     */
+    private static final class Node {
+
+        /**
+         * The node without entries.
+         */
+        private static final Node EMPTY = new Node(0, new Object[0]);
+
+        /**
+         * Bits of the hash indices that have a slot.
+         */
+        private final int bitmap;
+
+        /**
+         * Entries and child nodes.
+         */
+        private final Object[] slots;
+
+        /**
+         * Constructs a node.
+         *
+         * @param bitmap of the hash indices that have a slot.
+         * @param slots  entries and child nodes.
+         */
+        private Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        /**
+         * Returns the entry of a key below this node.
+         *
+         * @param hash  of the key.
+         * @param depth of this node.
+         * @param key   to find.
+         * @return the entry, <tt>null</tt> if the key isn't below this node.
+         */
+        private Map.Entry<?, ?> find(int hash, int depth, String key) {
+            if (depth == MemberMap.MAX_DEPTH) {
+                int index = this.indexOf(key);
+                return index < 0 ? null : (Map.Entry<?, ?>) this.slots[index];
+            }
+
+            int bit = Node.bit(hash, depth);
+            if ((this.bitmap & bit) == 0) {
+                return null;
+            }
+
+            Object slot = this.slots[this.slotIndex(bit)];
+            if (slot instanceof Node) {
+                return ((Node) slot).find(hash, depth + 1, key);
+            }
+
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) slot;
+            return key.equals(entry.getKey()) ? entry : null;
+        }
+
+        /**
+         * Returns a node with an entry added below this node.
+         *
+         * @param hash  of the entry's key.
+         * @param depth of this node.
+         * @param entry to add.
+         * @param added set to <tt>true</tt> if the key wasn't below this node.
+         * @return the new node, this node if it already holds the entry's key and value.
+         */
+        private Node plus(int hash, int depth, Map.Entry<String, ?> entry, boolean[] added) {
+            if (depth == MemberMap.MAX_DEPTH) {
+                int index = this.indexOf(entry.getKey());
+                if (index < 0) {
+                    added[0] = true;
+                    return new Node(0, Node.insert(this.slots, this.slots.length, entry));
+                }
+
+                return Node.sameValue(this.slots[index], entry) ? this : new Node(0, Node.replace(this.slots, index, entry));
+            }
+
+            int bit = Node.bit(hash, depth);
+            int index = this.slotIndex(bit);
+            if ((this.bitmap & bit) == 0) {
+                added[0] = true;
+                return new Node(this.bitmap | bit, Node.insert(this.slots, index, entry));
+            }
+
+            Object slot = this.slots[index];
+            Object replacement;
+            if (slot instanceof Node) {
+                replacement = ((Node) slot).plus(hash, depth + 1, entry, added);
+            } else if (entry.getKey().equals(((Map.Entry<?, ?>) slot).getKey())) {
+                replacement = Node.sameValue(slot, entry) ? slot : entry;
+            } else {
+                @SuppressWarnings("unchecked")
+                Map.Entry<String, ?> existing = (Map.Entry<String, ?>) slot;
+                replacement = Node.EMPTY.plus(MemberMap.hash(existing.getKey()), depth + 1, existing, new boolean[1])
+                        .plus(hash, depth + 1, entry, added);
+            }
+
+            return replacement == slot ? this : new Node(this.bitmap, Node.replace(this.slots, index, replacement));
+        }
+
+        /**
+         * Returns a node without the entry of a key below this node.
+         *
+         * @param hash  of the key.
+         * @param depth of this node.
+         * @param key   to remove.
+         * @return the new node, this node if the key isn't below it, <tt>null</tt> if the node is left empty.
+         */
+        private Node minus(int hash, int depth, String key) {
+            if (depth == MemberMap.MAX_DEPTH) {
+                int index = this.indexOf(key);
+                if (index < 0) {
+                    return this;
+                }
+
+                return this.slots.length == 1 ? null : new Node(0, Node.remove(this.slots, index));
+            }
+
+            int bit = Node.bit(hash, depth);
+            if ((this.bitmap & bit) == 0) {
+                return this;
+            }
+
+            int index = this.slotIndex(bit);
+            Object slot = this.slots[index];
+            if (slot instanceof Node) {
+                Node child = ((Node) slot).minus(hash, depth + 1, key);
+                if (child == slot) {
+                    return this;
+                } else if (child != null) {
+                    return new Node(this.bitmap, Node.replace(this.slots, index, child));
+                }
+            } else if (!key.equals(((Map.Entry<?, ?>) slot).getKey())) {
+                return this;
+            }
+
+            return this.bitmap == bit ? null : new Node(this.bitmap & ~bit, Node.remove(this.slots, index));
+        }
+
+        /**
+         * Returns the slot of a key in a node at the deepest level.
+         *
+         * @param key to find.
+         * @return the slot's index, <tt>-1</tt> if the key isn't in the node.
+         */
+        private int indexOf(String key) {
+            for (int k = 0; k < this.slots.length; k++) {
+                if (key.equals(((Map.Entry<?, ?>) this.slots[k]).getKey())) {
+                    return k;
+                }
+            }
+
+            return -1;
+        }
+
+        /**
+         * Returns the index of the slot of a bit in the bitmap.
+         *
+         * @param bit of the slot.
+         * @return the slot's index.
+         */
+        private int slotIndex(int bit) {
+            return Integer.bitCount(this.bitmap & (bit - 1));
+        }
+
+        /**
+         * Returns the bitmap bit of a hash at a level of the trie.
+         *
+         * @param hash  of a key.
+         * @param depth of the level.
+         * @return the bit.
+         */
+        private static int bit(int hash, int depth) {
+            return 1 << ((hash >>> (depth * MemberMap.BITS)) & MemberMap.MASK);
+        }
+
+        /**
+         * Returns if an entry already holds the value of another entry of the same key.
+         *
+         * @param slot  holding the entry.
+         * @param entry to compare with.
+         * @return <tt>true</tt> if the values are the same object, <tt>false</tt> otherwise.
+         */
+        private static boolean sameValue(Object slot, Map.Entry<String, ?> entry) {
+            return ((Map.Entry<?, ?>) slot).getValue() == entry.getValue();
+        }
+
+        /**
+         * Returns a copy of slots with a slot inserted.
+         *
+         * @param slots to copy.
+         * @param index to insert at.
+         * @param slot  to insert.
+         * @return the new slots.
+         */
+        private static Object[] insert(Object[] slots, int index, Object slot) {
+            Object[] copy = new Object[slots.length + 1];
+            System.arraycopy(slots, 0, copy, 0, index);
+            copy[index] = slot;
+            System.arraycopy(slots, index, copy, index + 1, slots.length - index);
+            return copy;
+        }
+
+        /**
+         * Returns a copy of slots with a slot replaced.
+         *
+         * @param slots to copy.
+         * @param index of the slot to replace.
+         * @param slot  to put instead.
+         * @return the new slots.
+         */
+        private static Object[] replace(Object[] slots, int index, Object slot) {
+            Object[] copy = slots.clone();
+            copy[index] = slot;
+            return copy;
+        }
+
+        /**
+         * Returns a copy of slots with a slot removed.
+         *
+         * @param slots to copy.
+         * @param index of the slot to remove.
+         * @return the new slots.
+         */
+        private static Object[] remove(Object[] slots, int index) {
+            Object[] copy = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, copy, 0, index);
+            System.arraycopy(slots, index + 1, copy, index, slots.length - index - 1);
+            return copy;
+        }
+    }
+
+    /**
+     * Iterates over the entries of a trie, depth first.
+     *
+     * @param <V> type of the members.
+     */
+    private static final class EntryIterator<V> implements Iterator<Map.Entry<String, V>> {
+
+        /**
+         * Slots of the nodes on the path to the next entry, from the root down.
+         */
+        private final Object[][] slots;
+
+        /**
+         * Index of the next slot to visit in each node on the path.
+         */
+        private final int[] positions;
+
+        /**
+         * Level of the node being visited, <tt>-1</tt> once every entry was visited.
+         */
+        private int depth;
+
+        /**
+         * The next entry, <tt>null</tt> if there are no more entries.
+         */
+        private Map.Entry<String, V> next;
+
+        /**
+         * Constructs an iterator.
+         *
+         * @param root node of the trie.
+         */
+        private EntryIterator(Node root) {
+            this.slots = new Object[MemberMap.MAX_DEPTH + 1][];
+            this.positions = new int[MemberMap.MAX_DEPTH + 1];
+            this.slots[0] = root.slots;
+            this.depth = 0;
+            this.advance();
+        }
+
+        /**
+         * Finds the next entry.
+         */
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            this.next = null;
+            while (this.depth >= 0) {
+                if (this.positions[this.depth] == this.slots[this.depth].length) {
+                    this.depth--;
+                    continue;
+                }
+
+                Object slot = this.slots[this.depth][this.positions[this.depth]++];
+                if (slot instanceof Node) {
+                    this.depth++;
+                    this.slots[this.depth] = ((Node) slot).slots;
+                    this.positions[this.depth] = 0;
+                } else {
+                    this.next = (Map.Entry<String, V>) slot;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean hasNext() {
+            return this.next != null;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Map.Entry<String, V> next() {
+            if (this.next == null) {
+                throw new NoSuchElementException();
+            }
+
+            Map.Entry<String, V> entry = this.next;
+            this.advance();
+            return entry;
+        }
+
+        /**
+         * Entries can't be removed, the map is immutable.
+         *
+         * @throws UnsupportedOperationException always.
+         */
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Member maps are immutable");
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds the messages a model sends before its path is known, until they can be sent in one
+ * flush. An update is merged into the model's previous update if only subscriptions were sent
+ * in between, and a subscription that repeats the model's last subscription of the same kind
+ * is dropped. The backlog isn't thread safe.
+ *
+ * @author David Robinson
+ */
+class MessageBacklog {
+
+    /**
+     * Messages saved to be sent later, in order.
+     */
+    private final List<JsonObject> messages;
+
+    /**
+     * Number of messages that were merged into or dropped in favour of an earlier message.
+     */
+    private int mergedCount;
+
+    /**
+     * Constructs an empty backlog.
+     */
+    protected MessageBacklog() {
+        this.messages = new ArrayList<JsonObject>();
+        this.mergedCount = 0;
+    }
+
+    /**
+     * Adds a message to the backlog.
+     *
+     * @param json            message to add.
+     * @param mergeUpdates    whether an update may be merged into an earlier update.
+     * @param mergeSubscribes whether a repeated subscription may be dropped.
+     */
+    protected void add(JsonObject json, boolean mergeUpdates, boolean mergeSubscribes) {
+        String type = MessageBacklog.getType(json);
+
+        if ("Update".equals(type) && json.has("value") && mergeUpdates) {
+            JsonObject previous = this.getPreviousUpdate();
+            if (previous != null) {
+                OutboundBatch.mergeValues(previous.getAsJsonObject("value"), json.getAsJsonObject("value"));
+                this.mergedCount++;
+                return;
+            }
+        } else if (MessageBacklog.getFamily(type) != null && mergeSubscribes) {
+            JsonObject previous = this.getPreviousSubscription(MessageBacklog.getFamily(type));
+            if (previous != null && previous.equals(json)) {
+                this.mergedCount++;
+                return;
+            }
+        }
+
+        this.messages.add(json);
+    }
+
+    /**
+     * Returns the last update in the backlog if only subscriptions were added after it.
+     *
+     * @return the update, <tt>null</tt> if none.
+     */
+    private JsonObject getPreviousUpdate() {
+        for (int k = this.messages.size() - 1; k >= 0; k--) {
+            JsonObject message = this.messages.get(k);
+            String type = MessageBacklog.getType(message);
+            if ("Update".equals(type) && message.has("value")) {
+                return message;
+            } else if (MessageBacklog.getFamily(type) == null) {
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the last subscription of a kind in the backlog.
+     *
+     * @param family kind of the subscription, see {@link #getFamily(String)}.
+     * @return the subscription, <tt>null</tt> if none.
+     */
+    private JsonObject getPreviousSubscription(String family) {
+        for (int k = this.messages.size() - 1; k >= 0; k--) {
+            JsonObject message = this.messages.get(k);
+            if (family.equals(MessageBacklog.getFamily(MessageBacklog.getType(message)))) {
+                return message;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the type of a message.
+     *
+     * @param json the message.
+     * @return the type, <tt>null</tt> if the message has none.
+     */
+    private static String getType(JsonObject json) {
+        JsonElement type = json.get("message");
+        return type == null ? null : type.getAsString();
+    }
+
+    /**
+     * Returns the kind of subscription a message type belongs to. A subscription and the
+     * matching unsubscription are the same kind, so only the latest of them matters.
+     *
+     * @param type of the message.
+     * @return <tt>"Subscribe"</tt> or <tt>"RouteSubscribe"</tt>, <tt>null</tt> if the type isn't a subscription.
+     */
+    private static String getFamily(String type) {
+        if ("Subscribe".equals(type) || "Unsubscribe".equals(type)) {
+            return "Subscribe";
+        } else if ("RouteSubscribe".equals(type) || "RouteUnsubscribe".equals(type)) {
+            return "RouteSubscribe";
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the messages in the backlog, in order.
+     *
+     * @return the messages.
+     */
+    protected List<JsonObject> getMessages() {
+        return this.messages;
+    }
+
+    /**
+     * Returns the number of messages that were merged into or dropped in favour of an earlier message.
+     *
+     * @return the number of merged messages.
+     */
+    protected int getMergedCount() {
+        return this.mergedCount;
+    }
+}
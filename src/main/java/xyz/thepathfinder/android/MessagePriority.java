@@ -0,0 +1,104 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.util.Map;
+
+/**
+ * An enum for the priority classes of messages sent to the Pathfinder server. When messages
+ * are queued, because the connection is down or too many messages are in flight, the messages
+ * of a higher priority class are sent first. Messages of the same class are sent in order.
+ * Declared from the highest priority to the lowest.
+ *
+ * @author David Robinson
+ * @see Connection
+ */
+enum MessagePriority {
+
+    /**
+     * Authentication and other messages that control the connection.
+     */
+    CONTROL,
+
+    /**
+     * Messages that change the state of a model, such as creating, deleting or updating
+     * the status of a model.
+     */
+    STATE,
+
+    /**
+     * Subscriptions to models and their routes, and reads.
+     */
+    SUBSCRIPTION,
+
+    /**
+     * Updates of a model's location only. A queued location update of a model is replaced
+     * by the model's next location update, so only the latest location is sent.
+     */
+    TELEMETRY;
+
+    /**
+     * Returns the priority class of a message.
+     *
+     * @param json the message.
+     * @return the priority class.
+     */
+    protected static MessagePriority of(JsonObject json) {
+        JsonElement type = json.get("message");
+        if (type == null || "Authenticate".equals(type.getAsString())) {
+            return MessagePriority.CONTROL;
+        }
+
+        switch (type.getAsString()) {
+            case "Subscribe":
+            case "Unsubscribe":
+            case "RouteSubscribe":
+            case "RouteUnsubscribe":
+            case "Read":
+                return MessagePriority.SUBSCRIPTION;
+            case "Update":
+                return MessagePriority.isLocation(json.get("value")) ? MessagePriority.TELEMETRY : MessagePriority.STATE;
+            default:
+                return MessagePriority.STATE;
+        }
+    }
+
+    /**
+     * Returns the priority class of a message, parsing it first. A message that can't be
+     * parsed is a {@link #STATE} message.
+     *
+     * @param text the message as a JSON string.
+     * @return the priority class.
+     */
+    protected static MessagePriority of(String text) {
+        try {
+            JsonElement json = new JsonParser().parse(text);
+            return json.isJsonObject() ? MessagePriority.of(json.getAsJsonObject()) : MessagePriority.STATE;
+        } catch (JsonParseException e) {
+            return MessagePriority.STATE;
+        }
+    }
+
+    /**
+     * Returns whether an update value only sets a location.
+     *
+     * @param value of the update.
+     * @return <tt>true</tt> if the value only has latitude and longitude fields, <tt>false</tt> otherwise.
+     */
+    private static boolean isLocation(JsonElement value) {
+        if (value == null || !value.isJsonObject() || value.getAsJsonObject().entrySet().isEmpty()) {
+            return false;
+        }
+
+        for (Map.Entry<String, JsonElement> field : value.getAsJsonObject().entrySet()) {
+            if (!"latitude".equals(field.getKey()) && !"longitude".equals(field.getKey())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -4,9 +4,8 @@ import com.google.gson.JsonObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Queue;
 
 /**
  * Basic class for dealing with models from the Pathfinder server.
@@ -38,10 +37,27 @@ public abstract class Model<T extends Model<T, E>, E extends ModelListener<T>> e
      */
     private boolean isConnected;
 
+    /**
+     * Whether the model's fields were restored from a {@link SnapshotStore} and have not
+     * been confirmed by the Pathfinder server since.
+     */
+    private volatile boolean isStale;
+
     /**
      * Messages saved to be sent later, after the model's path is fully defined.
      */
-    private Queue<JsonObject> messageBacklog;
+    private MessageBacklog messageBacklog;
+
+    /**
+     * Whether the model is in the {@link ModelRegistry}. Links to a model are only followed
+     * while it is registered, so a link to a removed model is resolved again.
+     */
+    private volatile boolean isRegistered;
+
+    /**
+     * The parent cluster last resolved, <tt>null</tt> if not resolved yet.
+     */
+    private volatile Cluster parentCluster;
 
     /**
      * Creates a basic object that all pathfinder models should use.
@@ -56,7 +72,7 @@ public abstract class Model<T extends Model<T, E>, E extends ModelListener<T>> e
         this.isConnected = false;
 
         if (path == null) {
-            this.messageBacklog = new LinkedList<JsonObject>();
+            this.messageBacklog = new MessageBacklog();
         }
     }
 
@@ -88,6 +104,16 @@ public abstract class Model<T extends Model<T, E>, E extends ModelListener<T>> e
         return this.path.getPathName();
     }
 
+    /**
+     * Returns the identifier the Pathfinder server gave the model, its name as a number.
+     *
+     * @return the identifier of the model.
+     * @throws NumberFormatException if the name isn't an identifier.
+     */
+    protected int getId() {
+        return this.path.getId();
+    }
+
     /**
      * Set the path of the model. This method may not be called after the path becomes known.
      *
@@ -100,12 +126,18 @@ public abstract class Model<T extends Model<T, E>, E extends ModelListener<T>> e
             this.path.setPathName(path);
             this.getServices().getRegistry().registerModel(this);
 
-            logger.info("Flushing " + this.getPathName() + "'s message backlog");
-            for (JsonObject json : this.messageBacklog) {
-                json.addProperty("id", Integer.parseInt(this.getName()));
-                this.getServices().getConnection().sendMessage(json.toString());
+            List<JsonObject> backlog = this.messageBacklog.getMessages();
+            logger.info("Flushing " + this.getPathName() + "'s message backlog of " + backlog.size() + " messages, "
+                    + this.messageBacklog.getMergedCount() + " merged");
+            if (!backlog.isEmpty()) {
+                int id = this.getId();
+                List<OutboundMessage> messages = new ArrayList<OutboundMessage>(backlog.size());
+                for (JsonObject json : backlog) {
+                    json.addProperty("id", id);
+                    messages.add(new OutboundMessage(json.toString(), path, this.getPriority(json)));
+                }
+                this.getServices().getConnection(path, this.getModelType()).sendMessages(messages);
             }
-            logger.info("End flushing backlog");
             this.messageBacklog = null;
         } else {
             logger.error("Illegal State Exception: The path of a model may not be set after becoming known");
@@ -150,8 +182,56 @@ public abstract class Model<T extends Model<T, E>, E extends ModelListener<T>> e
      * @return the parent cluster of this model. If the default cluster it returns <tt>null</tt>.
      */
     public Cluster getParentCluster() {
+        Cluster parentCluster = this.getRegisteredParentCluster();
+        if (parentCluster == null) {
+            Path parentPath = this.getParentPath();
+            if (parentPath == null) {
+                return null;
+            }
+            parentCluster = Cluster.getInstance(parentPath.getPathName(), services);
+        }
+
+        return parentCluster;
+    }
+
+    /**
+     * Returns the parent cluster of this model if it is registered. The parent is looked up
+     * in the registry once and then followed directly until it is removed from the registry.
+     *
+     * @return the parent cluster, <tt>null</tt> if it isn't registered or this model has no parent.
+     */
+    protected Cluster getRegisteredParentCluster() {
+        Cluster parentCluster = this.parentCluster;
+        if (parentCluster != null && parentCluster.isRegistered()) {
+            return parentCluster;
+        }
+
         Path parentPath = this.getParentPath();
-        return Cluster.getInstance(parentPath.getPathName(), services);
+        if (parentPath == null) {
+            return null;
+        }
+
+        parentCluster = (Cluster) this.services.getRegistry().getModel(parentPath);
+        this.parentCluster = parentCluster;
+        return parentCluster;
+    }
+
+    /**
+     * Returns if the model is in the {@link ModelRegistry}.
+     *
+     * @return <tt>true</tt> if the model is registered, <tt>false</tt> otherwise.
+     */
+    protected boolean isRegistered() {
+        return this.isRegistered;
+    }
+
+    /**
+     * Sets if the model is in the {@link ModelRegistry}, called by the registry.
+     *
+     * @param registered whether the model is registered.
+     */
+    protected void setRegistered(boolean registered) {
+        this.isRegistered = registered;
     }
 
     /**
@@ -190,6 +270,26 @@ public abstract class Model<T extends Model<T, E>, E extends ModelListener<T>> e
         this.isConnected = connected;
     }
 
+    /**
+     * Returns if the model's fields were restored from a {@link SnapshotStore} and have not yet
+     * been refreshed by the Pathfinder server. Stale models are shown to give the application
+     * something to display while connecting, they may no longer exist on the server.
+     *
+     * @return <tt>true</tt> if the model is stale, <tt>false</tt> otherwise.
+     */
+    public boolean isStale() {
+        return this.isStale;
+    }
+
+    /**
+     * Sets if the model's fields were restored from a snapshot and not yet refreshed.
+     *
+     * @param stale whether the model is stale.
+     */
+    protected void setStale(boolean stale) {
+        this.isStale = stale;
+    }
+
     /**
      * Invokes the model unspecific notifications.
      *
@@ -323,22 +423,149 @@ public abstract class Model<T extends Model<T, E>, E extends ModelListener<T>> e
         if (!this.isPathUnknown()) {
             this.setConnected(true);
         }
-        return this.updateType(reason, json);
+        this.setStale(false);
+
+        ClusterNotificationBatch.begin();
+        try {
+            return this.updateType(reason, json);
+        } finally {
+            ClusterNotificationBatch.end();
+        }
     }
 
     /**
      * Sends a json message through the web socket connection if connected. Otherwise, it stores the message.
+     * If a {@link Pathfinder#batch(Runnable)} scope is open the message is added to the batch instead.
      *
      * @param json message to be sent.
      */
     protected void sendMessage(JsonObject json) {
-        if (!this.isPathUnknown()) {
-            this.getServices().getConnection().sendMessage(json.toString());
+        OutboundBatch batch = OutboundBatch.current();
+        if (batch != null && !this.isPathUnknown()) {
+            batch.add(this, json, this.getPathName(), this.getServices().getConnection(this.getPathName(), this.getModelType()));
+        } else if (!this.isPathUnknown()) {
+            this.getServices().getConnection(this.getPathName(), this.getModelType()).sendMessage(json.toString(), this.getPathName(), this.getPriority(json));
         } else {
-            this.messageBacklog.offer(json);
+            RequestTracker requests = this.getServices().getRequests();
+            this.messageBacklog.add(json, !requests.isPending(this, "Updated"), !requests.isPending(this, "Subscribed"));
         }
     }
 
+    /**
+     * Returns if a message can be sent as a frame encoded by a {@link FrameWriter}, which
+     * requires the path to be known and no {@link Pathfinder#batch(Runnable)} scope to be open.
+     *
+     * @return <tt>true</tt> if {@link #sendFrame(String, MessagePriority)} may be used, <tt>false</tt> otherwise.
+     */
+    protected boolean canSendFrame() {
+        return !this.isPathUnknown() && OutboundBatch.current() == null;
+    }
+
+    /**
+     * Sends a message encoded by a {@link FrameWriter} through the web socket connection if
+     * connected. Otherwise, it stores the message. Must only be called if {@link #canSendFrame()}.
+     *
+     * @param frame    message to be sent.
+     * @param priority class of the message.
+     */
+    protected void sendFrame(String frame, MessagePriority priority) {
+        this.getServices().getConnection(this.getPathName(), this.getModelType()).sendMessage(frame, this.getPathName(), this.getPriority(priority));
+    }
+
+    /**
+     * Returns the priority class of a message this model sends. A location update is sent as
+     * a state change while the model has requests waiting for a reply, so it can't be replaced
+     * by a later update and leave its request without a reply.
+     *
+     * @param json message to be sent.
+     * @return the priority class.
+     */
+    protected MessagePriority getPriority(JsonObject json) {
+        return this.getPriority(MessagePriority.of(json));
+    }
+
+    /**
+     * Returns the priority class of a message of the specified class this model sends, a
+     * location update is sent as a state change while the model has requests waiting for a reply.
+     *
+     * @param priority class of the message.
+     * @return the priority class to send the message with.
+     */
+    protected MessagePriority getPriority(MessagePriority priority) {
+        if (priority == MessagePriority.TELEMETRY && this.getServices().getRequests().isPending(this)) {
+            return MessagePriority.STATE;
+        }
+
+        return priority;
+    }
+
+    /**
+     * Starts tracking a request made on this model. Must be called before the request is sent.
+     *
+     * @param replyType       type of the reply that completes the request.
+     * @param expectedReplies number of replies that complete the request.
+     * @return the future of the request.
+     */
+    protected ModelFuture<T> trackRequest(String replyType, int expectedReplies) {
+        return this.getServices().getRequests().track(this.getThis(), replyType, expectedReplies);
+    }
+
+    /**
+     * Returns a publisher of this model's notifications with the default buffer size and
+     * {@link OverflowStrategy#CONFLATE}, see {@link #events(int, OverflowStrategy)}.
+     *
+     * @return the event publisher.
+     */
+    public ModelEventPublisher events() {
+        return this.events(ModelEventPublisher.DEFAULT_BUFFER_SIZE, OverflowStrategy.CONFLATE);
+    }
+
+    /**
+     * Returns a Reactive Streams publisher of this model's notifications. While the publisher
+     * has subscribers it is registered as a listener of this model, so it receives the same
+     * notifications as the model's other listeners. Each call returns a new publisher, a
+     * publisher may have any number of subscribers.
+     *
+     * @param bufferSize maximum number of events buffered per subscriber.
+     * @param overflow   what to do when a subscriber's buffer is full.
+     * @return the event publisher.
+     */
+    public ModelEventPublisher events(int bufferSize, OverflowStrategy overflow) {
+        return new ModelEventPublisher(bufferSize, overflow) {
+
+            /**
+             * Listener registered on the model while the publisher has subscribers.
+             */
+            private E listener;
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            protected void activate() {
+                this.listener = Model.this.createEventListener(this);
+                Model.this.addListener(this.listener);
+            }
+
+            /**
+             * {@inheritDoc}
+             */
+            @Override
+            protected void deactivate() {
+                Model.this.removeListener(this.listener);
+                this.listener = null;
+            }
+        };
+    }
+
+    /**
+     * Returns a listener that publishes the notifications it receives.
+     *
+     * @param publisher to publish the notifications to.
+     * @return the listener.
+     */
+    protected abstract E createEventListener(ModelEventPublisher publisher);
+
     /**
      * Converts the {@link Model} to JSON.
      *
@@ -0,0 +1,72 @@
+package xyz.thepathfinder.android;
+
+/**
+ * A notification about a model published by a {@link ModelEventPublisher}.
+ *
+ * @author David Robinson
+ */
+public class ModelEvent {
+
+    /**
+     * Type of the event.
+     */
+    private final ModelEventType type;
+
+    /**
+     * Model the event is about.
+     */
+    private final Model model;
+
+    /**
+     * Error message of an {@link ModelEventType#ERROR} event, <tt>null</tt> otherwise.
+     */
+    private final String error;
+
+    /**
+     * Constructs an event.
+     *
+     * @param type  of the event.
+     * @param model the event is about.
+     * @param error message, <tt>null</tt> unless the event is an error.
+     */
+    protected ModelEvent(ModelEventType type, Model model, String error) {
+        this.type = type;
+        this.model = model;
+        this.error = error;
+    }
+
+    /**
+     * Returns the type of the event.
+     *
+     * @return the event type.
+     */
+    public ModelEventType getType() {
+        return this.type;
+    }
+
+    /**
+     * Returns the model the event is about, with the fields it had when the event was delivered.
+     *
+     * @return the model.
+     */
+    public Model getModel() {
+        return this.model;
+    }
+
+    /**
+     * Returns the error message sent by the Pathfinder server.
+     *
+     * @return the error message, <tt>null</tt> unless the event is an error.
+     */
+    public String getError() {
+        return this.error;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return this.type + " " + this.model.getPathName() + (this.error == null ? "" : ": " + this.error);
+    }
+}
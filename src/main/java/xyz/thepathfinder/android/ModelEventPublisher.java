@@ -0,0 +1,415 @@
+package xyz.thepathfinder.android;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Publishes the notifications of a model as a Reactive Streams {@link Publisher}. The publisher
+ * is registered as a listener of the model while it has subscribers, see
+ * {@link Model#events(int, OverflowStrategy)}, and buffers the events of each subscriber until
+ * the subscriber requests them. When a subscriber's
+ * buffer is full the publisher's {@link OverflowStrategy} decides which events are kept, so a
+ * slow subscriber never blocks the web socket or makes the buffer grow without bound.
+ * </p>
+ * <p>
+ * Events are delivered on the thread that publishes them or the thread that requests them,
+ * one at a time per subscriber.
+ * </p>
+ * <pre><code>   cluster.events(64, OverflowStrategy.CONFLATE).subscribe(new Subscriber&lt;ModelEvent&gt;() {
+ *       private Subscription subscription;
+ *       public void onSubscribe(Subscription subscription) {
+ *           this.subscription = subscription;
+ *           subscription.request(1);
+ *       }
+ *       public void onNext(ModelEvent event) {
+ *           draw(event.getModel());
+ *           this.subscription.request(1);
+ *       }
+ *       public void onError(Throwable error) {
+ *       }
+ *       public void onComplete() {
+ *       }
+ *   });</code></pre>
+ *
+ * @author David Robinson
+ */
+public class ModelEventPublisher implements Publisher<ModelEvent> {
+
+    /**
+     * Logs actions performed by the class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ModelEventPublisher.class);
+
+    /**
+     * Default number of events buffered per subscriber.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 128;
+
+    /**
+     * Maximum number of events buffered per subscriber.
+     */
+    private final int bufferSize;
+
+    /**
+     * What to do when a subscriber's buffer is full.
+     */
+    private final OverflowStrategy overflow;
+
+    /**
+     * The active subscriptions.
+     */
+    private final List<EventSubscription> subscriptions;
+
+    /**
+     * Number of events dropped or conflated because a buffer was full.
+     */
+    private final AtomicLong droppedCount;
+
+    /**
+     * Constructs a publisher.
+     *
+     * @param bufferSize maximum number of events buffered per subscriber.
+     * @param overflow   what to do when a subscriber's buffer is full.
+     */
+    protected ModelEventPublisher(int bufferSize, OverflowStrategy overflow) {
+        if (bufferSize < 1 || overflow == null) {
+            logger.error("Illegal Argument Exception: invalid event buffer: " + bufferSize + ", " + overflow);
+            throw new IllegalArgumentException("Invalid event buffer: " + bufferSize + ", " + overflow);
+        }
+
+        this.bufferSize = bufferSize;
+        this.overflow = overflow;
+        this.subscriptions = new CopyOnWriteArrayList<EventSubscription>();
+        this.droppedCount = new AtomicLong();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void subscribe(Subscriber<? super ModelEvent> subscriber) {
+        if (subscriber == null) {
+            logger.error("Null Pointer Exception: null subscriber");
+            throw new NullPointerException("Subscriber may not be null");
+        }
+
+        EventSubscription subscription = new EventSubscription(subscriber);
+        synchronized (this.subscriptions) {
+            if (this.subscriptions.isEmpty()) {
+                this.activate();
+            }
+            this.subscriptions.add(subscription);
+        }
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * Removes a subscription, the publisher is deactivated once it has no subscriptions left.
+     *
+     * @param subscription to remove.
+     */
+    private void unsubscribe(EventSubscription subscription) {
+        synchronized (this.subscriptions) {
+            if (this.subscriptions.remove(subscription) && this.subscriptions.isEmpty()) {
+                this.deactivate();
+            }
+        }
+    }
+
+    /**
+     * Called when the first subscriber subscribes while the publisher has no subscribers,
+     * starts receiving the events to publish. Does nothing by default.
+     */
+    protected void activate() {
+    }
+
+    /**
+     * Called when the last subscription is cancelled or terminated, stops receiving the
+     * events to publish. Does nothing by default.
+     */
+    protected void deactivate() {
+    }
+
+    /**
+     * Returns the number of active subscribers.
+     *
+     * @return the number of subscribers.
+     */
+    public int getSubscriberCount() {
+        return this.subscriptions.size();
+    }
+
+    /**
+     * Returns the number of events that were dropped or replaced by a later update because
+     * a subscriber's buffer was full, summed over every subscriber.
+     *
+     * @return the number of dropped events.
+     */
+    public long getDroppedCount() {
+        return this.droppedCount.get();
+    }
+
+    /**
+     * Publishes an event to every subscriber.
+     *
+     * @param type  of the event.
+     * @param model the event is about.
+     */
+    protected void publish(ModelEventType type, Model model) {
+        this.publish(new ModelEvent(type, model, null));
+    }
+
+    /**
+     * Publishes an event to every subscriber.
+     *
+     * @param event to publish.
+     */
+    protected void publish(ModelEvent event) {
+        for (EventSubscription subscription : this.subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    /**
+     * The subscription of one subscriber, with its buffer and outstanding demand.
+     */
+    private class EventSubscription implements Subscription {
+
+        /**
+         * The subscriber.
+         */
+        private final Subscriber<? super ModelEvent> subscriber;
+
+        /**
+         * Events waiting for demand, oldest first.
+         */
+        private final Deque<Slot> buffer;
+
+        /**
+         * The buffered update of each model, used to conflate updates.
+         */
+        private final Map<Model, Slot> bufferedUpdates;
+
+        /**
+         * Number of events requested and not yet delivered.
+         */
+        private long requested;
+
+        /**
+         * Error to signal once the buffered events are delivered, <tt>null</tt> if none.
+         */
+        private Throwable error;
+
+        /**
+         * Whether the subscription was cancelled or terminated.
+         */
+        private volatile boolean cancelled;
+
+        /**
+         * Number of times the buffer was drained while a drain was running, only the thread
+         * that raises it from zero delivers events.
+         */
+        private final AtomicInteger drains;
+
+        /**
+         * Constructs a subscription.
+         *
+         * @param subscriber to deliver events to.
+         */
+        private EventSubscription(Subscriber<? super ModelEvent> subscriber) {
+            this.subscriber = subscriber;
+            this.buffer = new ArrayDeque<Slot>();
+            this.bufferedUpdates = new IdentityHashMap<Model, Slot>();
+            this.requested = 0;
+            this.drains = new AtomicInteger();
+        }
+
+        /**
+         * Buffers an event and delivers the buffered events if there is demand.
+         *
+         * @param event to buffer.
+         */
+        private void offer(ModelEvent event) {
+            if (this.cancelled) {
+                return;
+            }
+
+            synchronized (this) {
+                if (this.error != null) {
+                    return;
+                }
+
+                boolean conflate = ModelEventPublisher.this.overflow == OverflowStrategy.CONFLATE && event.getType() == ModelEventType.UPDATED;
+                Slot updated = conflate ? this.bufferedUpdates.get(event.getModel()) : null;
+                if (updated != null) {
+                    updated.event = event;
+                    ModelEventPublisher.this.droppedCount.incrementAndGet();
+                } else if (this.buffer.size() < ModelEventPublisher.this.bufferSize) {
+                    this.add(event, conflate);
+                } else {
+                    ModelEventPublisher.this.droppedCount.incrementAndGet();
+                    switch (ModelEventPublisher.this.overflow) {
+                        case DROP_LATEST:
+                            break;
+                        case ERROR:
+                            this.error = new IllegalStateException("Event buffer of " + ModelEventPublisher.this.bufferSize + " events overflowed");
+                            this.buffer.clear();
+                            this.bufferedUpdates.clear();
+                            break;
+                        default:
+                            this.poll();
+                            this.add(event, conflate);
+                    }
+                }
+            }
+
+            this.drain();
+        }
+
+        /**
+         * Adds an event to the end of the buffer.
+         *
+         * @param event    to add.
+         * @param conflate whether later updates of the model may replace the event.
+         */
+        private void add(ModelEvent event, boolean conflate) {
+            Slot slot = new Slot(event);
+            this.buffer.addLast(slot);
+            if (conflate) {
+                this.bufferedUpdates.put(event.getModel(), slot);
+            }
+        }
+
+        /**
+         * Removes the oldest event from the buffer.
+         *
+         * @return the event, <tt>null</tt> if the buffer is empty.
+         */
+        private ModelEvent poll() {
+            Slot slot = this.buffer.pollFirst();
+            if (slot == null) {
+                return null;
+            }
+
+            if (this.bufferedUpdates.get(slot.event.getModel()) == slot) {
+                this.bufferedUpdates.remove(slot.event.getModel());
+            }
+
+            return slot.event;
+        }
+
+        /**
+         * Delivers buffered events while there is demand, then a pending error.
+         */
+        private void drain() {
+            if (this.drains.getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            do {
+                while (!this.cancelled) {
+                    ModelEvent event;
+                    Throwable error = null;
+                    synchronized (this) {
+                        event = this.requested > 0 ? this.poll() : null;
+                        if (event != null) {
+                            this.requested--;
+                        } else if (this.error != null && this.buffer.isEmpty()) {
+                            error = this.error;
+                        }
+                    }
+
+                    if (event != null) {
+                        this.subscriber.onNext(event);
+                    } else {
+                        if (error != null) {
+                            this.terminate();
+                            this.subscriber.onError(error);
+                        }
+                        break;
+                    }
+                }
+
+                missed = this.drains.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * Adds demand for events and delivers buffered events.
+         *
+         * @param n number of events requested, must be positive.
+         */
+        @Override
+        public void request(long n) {
+            if (this.cancelled) {
+                return;
+            }
+
+            synchronized (this) {
+                if (n <= 0) {
+                    this.error = new IllegalArgumentException("Requested " + n + " events, must be positive");
+                    this.buffer.clear();
+                    this.bufferedUpdates.clear();
+                } else {
+                    this.requested = this.requested + n < 0 ? Long.MAX_VALUE : this.requested + n;
+                }
+            }
+
+            this.drain();
+        }
+
+        /**
+         * Stops the delivery of events and drops the buffered events.
+         */
+        @Override
+        public void cancel() {
+            this.terminate();
+            synchronized (this) {
+                this.buffer.clear();
+                this.bufferedUpdates.clear();
+            }
+        }
+
+        /**
+         * Marks the subscription as done and removes it from the publisher.
+         */
+        private void terminate() {
+            this.cancelled = true;
+            ModelEventPublisher.this.unsubscribe(this);
+        }
+    }
+
+    /**
+     * A buffered event, replaced in place when the event is conflated.
+     */
+    private static class Slot {
+
+        /**
+         * The event.
+         */
+        private ModelEvent event;
+
+        /**
+         * Constructs a buffered event.
+         *
+         * @param event the event.
+         */
+        private Slot(ModelEvent event) {
+            this.event = event;
+        }
+    }
+}
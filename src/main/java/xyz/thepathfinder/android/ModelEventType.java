@@ -0,0 +1,71 @@
+package xyz.thepathfinder.android;
+
+/**
+ * An enum for the types of {@link ModelEvent}s.
+ *
+ * @author David Robinson
+ * @see ModelEventPublisher
+ */
+public enum ModelEventType {
+
+    /**
+     * The model was read from the Pathfinder server.
+     */
+    CONNECTED,
+
+    /**
+     * The model was created.
+     */
+    CREATED,
+
+    /**
+     * The model was updated. For a cluster's events the model may also be one of its
+     * transports, commodities or subclusters.
+     */
+    UPDATED,
+
+    /**
+     * The model was deleted.
+     */
+    DELETED,
+
+    /**
+     * A transport, commodity or subcluster was added to the cluster.
+     */
+    ADDED,
+
+    /**
+     * A transport, commodity or subcluster was removed from the cluster.
+     */
+    REMOVED,
+
+    /**
+     * The model was routed.
+     */
+    ROUTED,
+
+    /**
+     * The model was subscribed to.
+     */
+    SUBSCRIBED,
+
+    /**
+     * The model was unsubscribed from.
+     */
+    UNSUBSCRIBED,
+
+    /**
+     * The model's routes were subscribed to.
+     */
+    ROUTE_SUBSCRIBED,
+
+    /**
+     * The model's routes were unsubscribed from.
+     */
+    ROUTE_UNSUBSCRIBED,
+
+    /**
+     * The Pathfinder server sent an error about the model.
+     */
+    ERROR
+}
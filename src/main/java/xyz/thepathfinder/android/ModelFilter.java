@@ -0,0 +1,18 @@
+package xyz.thepathfinder.android;
+
+/**
+ * Selects models, used by searches such as {@link Cluster#findTransports(ModelFilter)}.
+ *
+ * @param <T> type of model being filtered.
+ * @author David Robinson
+ */
+public interface ModelFilter<T extends Model> {
+
+    /**
+     * Returns if the model should be selected.
+     *
+     * @param model to test.
+     * @return <tt>true</tt> if the model is selected, <tt>false</tt> otherwise.
+     */
+    public boolean accept(T model);
+}
@@ -0,0 +1,343 @@
+package xyz.thepathfinder.android;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The pending outcome of a request made with one of the asynchronous model methods, for
+ * example {@link SubscribableCrudModel#createAsync()}. The future completes when the Pathfinder
+ * server sends the matching reply for the model and fails when the server replies with an
+ * error or no reply arrives before the request timeout, see {@link Pathfinder#setRequestTimeout(long, TimeUnit)}.
+ * <pre><code>   transport.createAsync().addListener(new ModelFutureListener&lt;Transport&gt;() {
+ *       public void completed(Transport transport) {
+ *           transport.routeSubscribe();
+ *       }
+ *   });</code></pre>
+ *
+ * @param <T> Type of the model the request was made on.
+ * @author David Robinson
+ */
+public class ModelFuture<T extends Model> implements Future<T> {
+
+    /**
+     * Logs actions performed by the class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ModelFuture.class);
+
+    /**
+     * Model the request was made on.
+     */
+    private final T model;
+
+    /**
+     * Type of the reply that completes the request.
+     */
+    private final String replyType;
+
+    /**
+     * Number of replies still expected.
+     */
+    private int remainingReplies;
+
+    /**
+     * Time the request was made, in nanoseconds.
+     */
+    private final long startTime;
+
+    /**
+     * Tracker of the request, <tt>null</tt> once the request is done.
+     */
+    private RequestTracker tracker;
+
+    /**
+     * Fails the request when it times out, <tt>null</tt> if not scheduled.
+     */
+    private ScheduledFuture<?> timeout;
+
+    /**
+     * Whether the request is done.
+     */
+    private boolean done;
+
+    /**
+     * Reason the request failed, <tt>null</tt> if it didn't fail.
+     */
+    private String failure;
+
+    /**
+     * Cause of the failure, <tt>null</tt> if there is none.
+     */
+    private Throwable failureCause;
+
+    /**
+     * Whether the request was cancelled.
+     */
+    private boolean cancelled;
+
+    /**
+     * Listeners to notify when the request is done.
+     */
+    private final List<ModelFutureListener<T>> listeners;
+
+    /**
+     * Constructs the future of a request.
+     *
+     * @param model           the request is made on.
+     * @param replyType       type of the reply that completes the request.
+     * @param expectedReplies number of replies that complete the request.
+     */
+    protected ModelFuture(T model, String replyType, int expectedReplies) {
+        this.model = model;
+        this.replyType = replyType;
+        this.remainingReplies = expectedReplies;
+        this.startTime = System.nanoTime();
+        this.listeners = new ArrayList<ModelFutureListener<T>>();
+    }
+
+    /**
+     * Returns the model the request was made on.
+     *
+     * @return the model.
+     */
+    public T getModel() {
+        return this.model;
+    }
+
+    /**
+     * Returns the type of the reply that completes the request.
+     *
+     * @return the reply type, for example <tt>"Created"</tt>.
+     */
+    public String getReplyType() {
+        return this.replyType;
+    }
+
+    /**
+     * Returns the time the request was made.
+     *
+     * @return the start time, from {@link System#nanoTime()}.
+     */
+    protected long getStartTime() {
+        return this.startTime;
+    }
+
+    /**
+     * Adds a listener that is notified when the request is done. If the request is
+     * already done the listener is notified immediately.
+     *
+     * @param listener to add.
+     */
+    public void addListener(ModelFutureListener<T> listener) {
+        synchronized (this) {
+            if (!this.done) {
+                this.listeners.add(listener);
+                return;
+            }
+        }
+
+        this.notifyListener(listener);
+    }
+
+    /**
+     * Sets the tracker of the request and the task that fails the request when it times out.
+     *
+     * @param tracker of the request.
+     * @param timeout task failing the request, may be <tt>null</tt>.
+     */
+    protected synchronized void track(RequestTracker tracker, ScheduledFuture<?> timeout) {
+        this.tracker = tracker;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Counts a reply to the request.
+     *
+     * @return <tt>true</tt> if all of the expected replies were received.
+     */
+    protected synchronized boolean countReply() {
+        this.remainingReplies--;
+        return this.remainingReplies <= 0;
+    }
+
+    /**
+     * Completes the request successfully.
+     *
+     * @return <tt>true</tt> if the request wasn't already done.
+     */
+    protected boolean complete() {
+        return this.finish(null, null, false);
+    }
+
+    /**
+     * Fails the request.
+     *
+     * @param reason the request failed.
+     * @param cause  of the failure, may be <tt>null</tt>.
+     * @return <tt>true</tt> if the request wasn't already done.
+     */
+    protected boolean fail(String reason, Throwable cause) {
+        return this.finish(reason, cause, false);
+    }
+
+    /**
+     * Fails the request with a {@link CancellationException}. The reply, if it arrives,
+     * is still delivered to the model's listeners.
+     *
+     * @param mayInterruptIfRunning ignored, the request can't be interrupted.
+     * @return <tt>true</tt> if the request was cancelled.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return this.finish("Request cancelled", null, true);
+    }
+
+    /**
+     * Marks the request done and notifies the listeners.
+     *
+     * @param reason    the request failed, <tt>null</tt> if it completed.
+     * @param cause     of the failure, may be <tt>null</tt>.
+     * @param cancelled whether the request was cancelled.
+     * @return <tt>true</tt> if the request wasn't already done.
+     */
+    private boolean finish(String reason, Throwable cause, boolean cancelled) {
+        List<ModelFutureListener<T>> listeners;
+        synchronized (this) {
+            if (this.done) {
+                return false;
+            }
+
+            this.done = true;
+            this.failure = reason;
+            this.failureCause = cause;
+            this.cancelled = cancelled;
+
+            if (this.timeout != null) {
+                this.timeout.cancel(false);
+            }
+
+            if (this.tracker != null) {
+                this.tracker.finished(this, reason == null);
+                this.tracker = null;
+            }
+
+            this.notifyAll();
+            listeners = new ArrayList<ModelFutureListener<T>>(this.listeners);
+            this.listeners.clear();
+        }
+
+        for (ModelFutureListener<T> listener : listeners) {
+            this.notifyListener(listener);
+        }
+
+        return true;
+    }
+
+    /**
+     * Notifies a listener of the outcome of the request.
+     *
+     * @param listener to notify.
+     */
+    private void notifyListener(ModelFutureListener<T> listener) {
+        try {
+            if (this.failure == null) {
+                listener.completed(this.model);
+            } else {
+                listener.failed(this.failure);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Model future listener threw an exception: " + e.getMessage());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean isDone() {
+        return this.done;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the request failed, including if it was cancelled.
+     *
+     * @return <tt>true</tt> if the request failed.
+     */
+    public synchronized boolean isFailed() {
+        return this.done && this.failure != null;
+    }
+
+    /**
+     * Waits for the reply and returns the model.
+     *
+     * @return the model, with updated fields.
+     * @throws InterruptedException if the thread was interrupted while waiting.
+     * @throws ExecutionException   if the request failed, the cause is a {@link TimeoutException}
+     *                              if no reply arrived in time.
+     */
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (!this.done) {
+            this.wait();
+        }
+
+        return this.getResult();
+    }
+
+    /**
+     * Waits at most the specified time for the reply and returns the model.
+     *
+     * @param timeout maximum time to wait.
+     * @param unit    of the timeout.
+     * @return the model, with updated fields.
+     * @throws InterruptedException if the thread was interrupted while waiting.
+     * @throws ExecutionException   if the request failed.
+     * @throws TimeoutException     if the wait timed out, the request is still pending.
+     */
+    @Override
+    public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!this.done) {
+            long wait = deadline - System.nanoTime();
+            if (wait <= 0) {
+                throw new TimeoutException("Timed out waiting for " + this.replyType + " reply");
+            }
+
+            TimeUnit.NANOSECONDS.timedWait(this, wait);
+        }
+
+        return this.getResult();
+    }
+
+    /**
+     * Returns the model or throws the failure of a done request.
+     *
+     * @return the model.
+     * @throws ExecutionException if the request failed.
+     */
+    private T getResult() throws ExecutionException {
+        if (this.cancelled) {
+            throw new CancellationException(this.failure);
+        } else if (this.failure != null) {
+            throw new ExecutionException(this.failure, this.failureCause);
+        }
+
+        return this.model;
+    }
+}
@@ -0,0 +1,28 @@
+package xyz.thepathfinder.android;
+
+/**
+ * The <tt>ModelFutureListener</tt> gives developers access to the outcome of a request
+ * made with one of the asynchronous model methods, see {@link ModelFuture}.
+ *
+ * @param <T> Type of the model the request was made on.
+ * @author David Robinson
+ */
+public abstract class ModelFutureListener<T extends Model> implements Listener {
+
+    /**
+     * Invoked when the Pathfinder server replied to the request.
+     *
+     * @param model the request was made on, with updated fields.
+     */
+    public void completed(T model) {
+    }
+
+    /**
+     * Invoked when the request failed, because the Pathfinder server replied with an error,
+     * no reply arrived in time or the request was cancelled.
+     *
+     * @param reason the request failed.
+     */
+    public void failed(String reason) {
+    }
+}
@@ -38,12 +38,14 @@ class ModelMessageHandler implements MessageHandler {
     }
 
     /**
-     * Invoked when the web socket receives a message.
+     * Invoked when the web socket receives a message. Notifications to cluster listeners caused
+     * by the message are sent once the message has been processed, see {@link ClusterNotificationBatch}.
      *
      * @param message the message received as a String.
      */
     @Override
     public void onMessage(String message) {
+        ClusterNotificationBatch.begin();
         try {
             logger.info("Received json: " + message);
             this.receivedMessageCount++;
@@ -61,41 +63,53 @@ class ModelMessageHandler implements MessageHandler {
 
                 Path path = new Path(this.getPath(json), modelType);
 
-                Model model = this.services.getRegistry().getModel(path);
-                if (model == null && type.equals("Created") && ModelType.CLUSTER != modelType) {
-                    model = this.services.getRegistry().findInCreateBacklog(value, modelType);
-                    if (model != null) {
-                        this.services.getRegistry().removeCreateBacklog(model);
-                        model.setPathName(path.getPathName());
+                this.services.lockDispatch(path.getPathName(), modelType);
+                try {
+                    Model model = this.services.getRegistry().getModel(path);
+                    if (model == null && type.equals("Created") && ModelType.CLUSTER != modelType) {
+                        model = this.services.getRegistry().findInCreateBacklog(value, modelType);
+                        if (model != null) {
+                            this.services.getRegistry().removeCreateBacklog(model);
+                            model.setPathName(path.getPathName());
+                        }
                     }
-                }
 
-                if (model != null) {
-                    logger.info("Notifying " + model.getPathName() + " Type: " + model.getModelType() + " of message");
-
-                    model.notifyUpdate(type, json);
-                } else {
-                    Path parentPath = path.getParentPath();
-
-                    if (parentPath != null && this.services.getRegistry().isModelRegistered(parentPath)) {
-                        if (modelType == ModelType.CLUSTER) {
-                            Cluster.getInstance(value, this.services);
-                            return;
-                        } else if (modelType == ModelType.COMMODITY) {
-                            Commodity.getInstance(value, this.services);
-                            return;
-                        } else if (modelType == ModelType.TRANSPORT) {
-                            Transport.getInstance(value, this.services);
-                            return;
+                    if (model != null) {
+                        logger.info("Notifying " + model.getPathName() + " Type: " + model.getModelType() + " of message");
+
+                        model.notifyUpdate(type, json);
+                        this.services.getRequests().reply(model, type, value);
+                    } else {
+                        Path parentPath = path.getParentPath();
+
+                        if (parentPath != null && this.services.getRegistry().isModelRegistered(parentPath)) {
+                            if (modelType == ModelType.CLUSTER) {
+                                Cluster.getInstance(value, this.services);
+                                return;
+                            } else if (modelType == ModelType.COMMODITY) {
+                                Commodity.getInstance(value, this.services);
+                                return;
+                            } else if (modelType == ModelType.TRANSPORT) {
+                                Transport.getInstance(value, this.services);
+                                return;
+                            }
                         }
-                    }
 
-                    logger.warn("Received message that couldn't be routed to a model: " + message);
+                        logger.warn("Received message that couldn't be routed to a model: " + message);
+                    }
+                } finally {
+                    this.services.unlockDispatch(path.getPathName(), modelType);
                 }
             }
         } catch (Exception e) { // catch any exception that occured while serving a message
             logger.error(e.getMessage());
             e.printStackTrace();
+        } finally {
+            try {
+                ClusterNotificationBatch.end();
+            } catch (Exception e) { // catch any exception thrown by a cluster listener
+                logger.error("Cluster listener failed: " + e.getMessage(), e);
+            }
         }
     }
 
@@ -0,0 +1,305 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import java.util.Map;
+
+/**
+ * Holds the metadata of a {@link Transport} or {@link Commodity} and compares it by content,
+ * so metadata received unchanged from the Pathfinder server keeps its instance. The metadata
+ * is compared member by member, which stops at the first difference. A content hash, see
+ * {@link #hash(JsonElement)}, isn't kept since the metadata handed out by {@link #getJson()}
+ * may be changed in place, and confirming a matching hash would cost the same comparison.
+ * <p>
+ * When metadata deltas are enabled, see {@link Pathfinder#setMetadataDeltas(boolean)}, metadata
+ * updates are sent as a JSON merge patch (RFC 7396) against the last metadata received from
+ * the Pathfinder server, under the <tt>metadataPatch</tt> field instead of <tt>metadata</tt>.
+ * While a metadata update hasn't been echoed by the server, the server's metadata may not be
+ * the last metadata received, so further updates are sent in full until it is.
+ * </p>
+ *
+ * @author David Robinson
+ */
+class ModelMetadata {
+
+    /**
+     * Multiplier used to mix hashes, the 64 bit FNV prime.
+     */
+    private static final long PRIME = 0x100000001b3L;
+
+    /**
+     * Starting value of hashes, the 64 bit FNV offset basis.
+     */
+    private static final long OFFSET = 0xcbf29ce484222325L;
+
+    /**
+     * The metadata, <tt>null</tt> if it is empty and hasn't been requested.
+     */
+    private JsonObject json;
+
+    /**
+     * Metadata of the last update sent that the Pathfinder server hasn't echoed yet, <tt>null</tt>
+     * if there is none. Only kept when metadata deltas are enabled.
+     */
+    private JsonObject pending;
+
+    /**
+     * Constructs a metadata holder.
+     *
+     * @param json the metadata. If <tt>null</tt> the metadata is empty.
+     */
+    protected ModelMetadata(JsonObject json) {
+        this.json = json;
+    }
+
+    /**
+     * Returns the metadata, an empty JSON object is created if there is none.
+     *
+     * @return the metadata.
+     */
+    protected synchronized JsonObject getJson() {
+        if (this.json == null) {
+            this.json = new JsonObject();
+        }
+
+        return this.json;
+    }
+
+    /**
+     * Sets the metadata received from the Pathfinder server. The current metadata is kept if
+     * the received metadata has the same content. Receiving the metadata of the last update
+     * sent confirms it, so updates may be sent as patches again.
+     *
+     * @param metadata received, <tt>null</tt> if it is empty.
+     * @return <tt>true</tt> if the metadata changed, <tt>false</tt> otherwise.
+     */
+    protected synchronized boolean received(JsonObject metadata) {
+        if (this.pending != null && this.pending.equals(metadata == null ? new JsonObject() : metadata)) {
+            this.pending = null;
+        }
+
+        if (this.contentEquals(metadata)) {
+            return false;
+        }
+
+        this.json = metadata;
+        return true;
+    }
+
+    /**
+     * Adds new metadata to the value of an update request, either in full or, if metadata
+     * deltas are enabled and it is shorter, as a merge patch against this metadata. The
+     * metadata is sent in full while an earlier metadata update hasn't been echoed by the
+     * Pathfinder server, since the patch would be computed against metadata the server no
+     * longer has.
+     *
+     * @param value    of the update request.
+     * @param metadata to update to.
+     * @param services of the model being updated.
+     */
+    protected synchronized void addUpdate(JsonObject value, JsonObject metadata, PathfinderServices services) {
+        if (!services.isMetadataDeltas()) {
+            value.add("metadata", metadata);
+            return;
+        }
+
+        String full = metadata.toString();
+        JsonObject patch = this.pending == null ? ModelMetadata.diff(this.getJson(), metadata) : null;
+        // a copy, the caller may change the metadata in place before it is echoed
+        this.pending = new JsonParser().parse(full).getAsJsonObject();
+        if (patch == null) {
+            value.add("metadata", metadata);
+            return;
+        }
+
+        int fullLength = "metadata".length() + full.length();
+        int patchLength = "metadataPatch".length() + patch.toString().length();
+        if (patchLength < fullLength) {
+            value.add("metadataPatch", patch);
+            services.addMetadataBytesSaved(fullLength - patchLength);
+        } else {
+            value.add("metadata", metadata);
+        }
+    }
+
+    /**
+     * Returns the JSON merge patch that turns one object into another. Members that were
+     * removed are <tt>null</tt> in the patch, so members whose value is <tt>null</tt> in the
+     * target are treated as removed.
+     *
+     * The objects may not share an object or array, since it could have been modified in
+     * place, for example metadata returned by {@link Transport#getMetadata()} that was changed
+     * and passed to {@link Transport#updateMetadata(JsonObject)}.
+     *
+     * @param source object the patch is applied to.
+     * @param target object the patch produces.
+     * @return the merge patch, empty if the objects are equal, <tt>null</tt> if they share an object or array.
+     */
+    protected static JsonObject diff(JsonObject source, JsonObject target) {
+        if (source == target) {
+            return null;
+        }
+
+        JsonObject patch = new JsonObject();
+
+        for (Map.Entry<String, JsonElement> member : source.entrySet()) {
+            if (!target.has(member.getKey())) {
+                patch.add(member.getKey(), JsonNull.INSTANCE);
+            }
+        }
+
+        for (Map.Entry<String, JsonElement> member : target.entrySet()) {
+            JsonElement previous = source.get(member.getKey());
+            JsonElement current = member.getValue();
+            if (current == null || current.isJsonNull()) {
+                if (previous != null && !previous.isJsonNull()) {
+                    patch.add(member.getKey(), JsonNull.INSTANCE);
+                }
+            } else if (previous == current && !current.isJsonPrimitive()) {
+                return null;
+            } else if (previous != null && previous.isJsonObject() && current.isJsonObject()) {
+                JsonObject child = ModelMetadata.diff(previous.getAsJsonObject(), current.getAsJsonObject());
+                if (child == null) {
+                    return null;
+                } else if (!child.entrySet().isEmpty()) {
+                    patch.add(member.getKey(), child);
+                }
+            } else if (previous == null || !previous.equals(current)) {
+                patch.add(member.getKey(), current);
+            }
+        }
+
+        return patch;
+    }
+
+    /**
+     * Returns the result of applying a JSON merge patch to an object. The object isn't
+     * modified, members the patch doesn't change are shared with the result.
+     *
+     * @param target object to apply the patch to.
+     * @param patch  to apply.
+     * @return the patched object.
+     */
+    protected static JsonObject applyPatch(JsonObject target, JsonObject patch) {
+        JsonObject patched = new JsonObject();
+        for (Map.Entry<String, JsonElement> member : target.entrySet()) {
+            patched.add(member.getKey(), member.getValue());
+        }
+
+        for (Map.Entry<String, JsonElement> member : patch.entrySet()) {
+            JsonElement value = member.getValue();
+            if (value == null || value.isJsonNull()) {
+                patched.remove(member.getKey());
+            } else if (value.isJsonObject()) {
+                JsonElement previous = patched.get(member.getKey());
+                JsonObject base = previous != null && previous.isJsonObject() ? previous.getAsJsonObject() : new JsonObject();
+                patched.add(member.getKey(), ModelMetadata.applyPatch(base, value.getAsJsonObject()));
+            } else {
+                patched.add(member.getKey(), value);
+            }
+        }
+
+        return patched;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the specified metadata has the same content as this metadata.
+     *
+     * @param other metadata to compare to.
+     * @return <tt>true</tt> if the contents are the same, <tt>false</tt> otherwise.
+     */
+    protected boolean contentEquals(ModelMetadata other) {
+        return this == other || (other != null && this.contentEquals(other.getContent()));
+    }
+
+    /**
+     * Returns <tt>true</tt> if the specified metadata has the same content as this metadata.
+     * Members are compared regardless of their order.
+     *
+     * @param other metadata to compare to, <tt>null</tt> if it is empty.
+     * @return <tt>true</tt> if the contents are the same, <tt>false</tt> otherwise.
+     */
+    protected boolean contentEquals(JsonObject other) {
+        return this.getContent().equals(other == null ? new JsonObject() : other);
+    }
+
+    /**
+     * Returns the metadata without creating it if there is none.
+     *
+     * @return the metadata, an empty JSON object if there is none.
+     */
+    private synchronized JsonObject getContent() {
+        return this.json == null ? new JsonObject() : this.json;
+    }
+
+    /**
+     * Computes the content hash of a JSON element. Members of objects are combined in an
+     * order independent way, elements of arrays in order. Elements that are equal have
+     * the same hash.
+     *
+     * @param element to hash.
+     * @return the content hash.
+     */
+    protected static long hash(JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            return ModelMetadata.mix(ModelMetadata.OFFSET, 0);
+        } else if (element.isJsonObject()) {
+            long sum = 0;
+            for (Map.Entry<String, JsonElement> entry : ((JsonObject) element).entrySet()) {
+                long member = ModelMetadata.mix(ModelMetadata.hash(entry.getKey()), ModelMetadata.hash(entry.getValue()));
+                sum += member * ModelMetadata.PRIME ^ (member >>> 29);
+            }
+            return ModelMetadata.mix(ModelMetadata.mix(ModelMetadata.OFFSET, 1), sum);
+        } else if (element.isJsonArray()) {
+            long hash = ModelMetadata.mix(ModelMetadata.OFFSET, 2);
+            for (JsonElement child : (JsonArray) element) {
+                hash = ModelMetadata.mix(hash, ModelMetadata.hash(child));
+            }
+            return hash;
+        }
+
+        JsonPrimitive primitive = (JsonPrimitive) element;
+        if (primitive.isNumber()) {
+            double number = primitive.getAsDouble();
+            if (number == 0) {
+                number = 0; // -0.0 equals 0.0
+            }
+            return ModelMetadata.mix(ModelMetadata.mix(ModelMetadata.OFFSET, 3), Double.doubleToLongBits(number));
+        } else if (primitive.isBoolean()) {
+            return ModelMetadata.mix(ModelMetadata.mix(ModelMetadata.OFFSET, 4), primitive.getAsBoolean() ? 1 : 0);
+        }
+
+        return ModelMetadata.mix(ModelMetadata.mix(ModelMetadata.OFFSET, 5), ModelMetadata.hash(primitive.getAsString()));
+    }
+
+    /**
+     * Computes the 64 bit FNV-1a hash of a string.
+     *
+     * @param string to hash.
+     * @return the hash.
+     */
+    private static long hash(String string) {
+        long hash = ModelMetadata.OFFSET;
+        for (int k = 0; k < string.length(); k++) {
+            hash = (hash ^ string.charAt(k)) * ModelMetadata.PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Mixes a value into a hash.
+     *
+     * @param hash  to mix into.
+     * @param value to mix in.
+     * @return the new hash.
+     */
+    private static long mix(long hash, long value) {
+        hash = (hash ^ value) * ModelMetadata.PRIME;
+        return hash ^ (hash >>> 32);
+    }
+}
@@ -5,13 +5,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
 /**
  * The <tt>ModelRegistry</tt> keeps track of all {@link Model}s created by
- * the Pathfinder SDK.
+ * the Pathfinder SDK. Alongside the path lookup map the registry keeps a trie
+ * of path segments, so every model under a path can be enumerated, counted or
+ * evicted in time proportional to the size of that subtree. Access to the
+ * registry is synchronized so it may be read from threads other than the one
+ * receiving messages.
  *
  * @author David Robinson
  */
@@ -29,16 +36,31 @@ class ModelRegistry {
     private final Map<Path, Model> models;
 
     /**
-     * List of models that have unknown paths, occurs on create with commodities and transports.
+     * Root of the path segment trie. Every registered model is stored at the node
+     * reached by following the segments of its path.
      */
-    private final List<Model> createBacklog;
+    private final PathNode root;
+
+    /**
+     * Models that have unknown paths, occurs on create with commodities and transports. The
+     * models are indexed by the correlation key of the values they were created with, see
+     * {@link #getCorrelationKey(JsonObject, ModelType)}, in the order they were created.
+     */
+    private final Map<Long, List<Model>> createBacklog;
+
+    /**
+     * Correlation key of each model in the create backlog.
+     */
+    private final Map<Model, Long> createBacklogKeys;
 
     /**
      * Constructs a ModelRegistry object with an empty registry of {@link Model}s.
      */
     protected ModelRegistry() {
         this.models = new HashMap<Path, Model>();
-        this.createBacklog = new ArrayList<Model>();
+        this.root = new PathNode();
+        this.createBacklog = new HashMap<Long, List<Model>>();
+        this.createBacklogKeys = new IdentityHashMap<Model, Long>();
     }
 
     /**
@@ -49,7 +71,7 @@ class ModelRegistry {
      *                                  model.
      * @throws IllegalArgumentException if the model's path is unknown.
      */
-    protected void registerModel(Model model) {
+    protected synchronized void registerModel(Model model) {
         if (this.models.containsKey(model.getPath())) {
             logger.error("Illegal State Exception: path already exists" + model.getPathName());
             throw new IllegalStateException("Path already exists: " + model.getPathName());
@@ -59,6 +81,8 @@ class ModelRegistry {
         }
 
         this.models.put(model.getPath(), model);
+        this.getNode(model.getPathName(), true).models.put(model.getModelType(), model);
+        model.setRegistered(true);
     }
 
     /**
@@ -67,8 +91,211 @@ class ModelRegistry {
      * @param path to the model.
      * @return the model removed.
      */
-    protected Model unregisterModel(Path path) {
-        return this.models.remove(path);
+    protected synchronized Model unregisterModel(Path path) {
+        Model model = this.models.remove(path);
+
+        if (model != null) {
+            model.setRegistered(false);
+            PathNode node = this.getNode(path.getPathName(), false);
+            node.models.remove(path.getModelType());
+            this.prune(path.getPathName());
+        }
+
+        return model;
+    }
+
+    /**
+     * Returns every {@link Model} in the registry. Clusters are returned before the
+     * models below them.
+     *
+     * @return the registered models, in depth first order.
+     */
+    protected synchronized List<Model> getModels() {
+        List<Model> models = new ArrayList<Model>(this.models.size());
+        this.collect(this.root, null, models);
+        return models;
+    }
+
+    /**
+     * Returns all of the {@link Model}s of the specified type registered below
+     * the path provided. The model at the path itself is not included.
+     *
+     * @param path to the root of the subtree.
+     * @param type of the models to return, if <tt>null</tt> models of every type are returned.
+     * @return the models found, in depth first order.
+     */
+    protected synchronized List<Model> getDescendants(Path path, ModelType type) {
+        List<Model> descendants = new ArrayList<Model>();
+        PathNode node = this.getNode(path.getPathName(), false);
+
+        if (node != null) {
+            for (PathNode child : node.children.values()) {
+                this.collect(child, type, descendants);
+            }
+        }
+
+        return descendants;
+    }
+
+    /**
+     * Returns the number of {@link Model}s of the specified type registered below
+     * the path provided. The model at the path itself is not counted.
+     *
+     * @param path to the root of the subtree.
+     * @param type of the models to count, if <tt>null</tt> models of every type are counted.
+     * @return the number of models found.
+     */
+    protected synchronized int countDescendants(Path path, ModelType type) {
+        int count = 0;
+        PathNode node = this.getNode(path.getPathName(), false);
+
+        if (node != null) {
+            for (PathNode child : node.children.values()) {
+                count += this.count(child, type);
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Removes every {@link Model} registered below the path provided. The model at
+     * the path itself stays registered.
+     *
+     * @param path to the root of the subtree.
+     * @return the models removed.
+     */
+    protected synchronized List<Model> unregisterDescendants(Path path) {
+        List<Model> removed = new ArrayList<Model>();
+        PathNode node = this.getNode(path.getPathName(), false);
+
+        if (node != null) {
+            for (PathNode child : node.children.values()) {
+                this.collect(child, null, removed);
+            }
+
+            for (Model model : removed) {
+                this.models.remove(model.getPath());
+                model.setRegistered(false);
+            }
+
+            node.children.clear();
+            this.prune(path.getPathName());
+        }
+
+        logger.info("Evicted " + removed.size() + " models under " + path.getPathName());
+
+        return removed;
+    }
+
+    /**
+     * Returns the trie node for a path name.
+     *
+     * @param pathName of the node.
+     * @param create   if missing nodes along the way should be created.
+     * @return the node, or <tt>null</tt> if it doesn't exist and <tt>create</tt> is <tt>false</tt>.
+     */
+    private PathNode getNode(String pathName, boolean create) {
+        PathNode node = this.root;
+
+        for (String segment : ModelRegistry.getSegments(pathName)) {
+            PathNode child = node.children.get(segment);
+
+            if (child == null) {
+                if (!create) {
+                    return null;
+                }
+                child = new PathNode();
+                node.children.put(segment, child);
+            }
+
+            node = child;
+        }
+
+        return node;
+    }
+
+    /**
+     * Removes the empty trie nodes along a path name, starting at the deepest node.
+     *
+     * @param pathName to prune.
+     */
+    private void prune(String pathName) {
+        String[] segments = ModelRegistry.getSegments(pathName);
+        PathNode[] nodes = new PathNode[segments.length + 1];
+        nodes[0] = this.root;
+
+        for (int k = 0; k < segments.length; k++) {
+            nodes[k + 1] = nodes[k].children.get(segments[k]);
+            if (nodes[k + 1] == null) {
+                return;
+            }
+        }
+
+        for (int k = segments.length; k > 0 && nodes[k].isEmpty(); k--) {
+            nodes[k - 1].children.remove(segments[k - 1]);
+        }
+    }
+
+    /**
+     * Adds the models in a subtree to a list.
+     *
+     * @param node   root of the subtree.
+     * @param type   of the models to add, if <tt>null</tt> all models are added.
+     * @param models list to add to.
+     */
+    private void collect(PathNode node, ModelType type, List<Model> models) {
+        if (type == null) {
+            models.addAll(node.models.values());
+        } else if (node.models.containsKey(type)) {
+            models.add(node.models.get(type));
+        }
+
+        for (PathNode child : node.children.values()) {
+            this.collect(child, type, models);
+        }
+    }
+
+    /**
+     * Counts the models in a subtree.
+     *
+     * @param node root of the subtree.
+     * @param type of the models to count, if <tt>null</tt> all models are counted.
+     * @return the number of models.
+     */
+    private int count(PathNode node, ModelType type) {
+        int count;
+
+        if (type == null) {
+            count = node.models.size();
+        } else {
+            count = node.models.containsKey(type) ? 1 : 0;
+        }
+
+        for (PathNode child : node.children.values()) {
+            count += this.count(child, type);
+        }
+
+        return count;
+    }
+
+    /**
+     * Splits a path name into its segments. A leading separator is ignored, so
+     * <tt>"/"</tt> refers to the root of the trie.
+     *
+     * @param pathName to split.
+     * @return the segments of the path.
+     */
+    private static String[] getSegments(String pathName) {
+        if (pathName.startsWith("/")) {
+            pathName = pathName.substring(1);
+        }
+
+        if (pathName.isEmpty()) {
+            return new String[0];
+        }
+
+        return pathName.split("/");
     }
 
     /**
@@ -78,7 +305,7 @@ class ModelRegistry {
      * @return <tt>true</tt> if a model has been registered with that path,
      * <tt>false</tt> otherwise.
      */
-    protected boolean isModelRegistered(Path path) {
+    protected synchronized boolean isModelRegistered(Path path) {
         return this.models.containsKey(path);
     }
 
@@ -89,7 +316,7 @@ class ModelRegistry {
      * @return the model associate with the path specified. If no model is associated
      * with a path it returns <tt>null</tt>.
      */
-    protected Model getModel(Path path) {
+    protected synchronized Model getModel(Path path) {
         logger.info("Model requested: " + path.getPathName() + " Type: " + path.getModelType());
         return this.models.get(path);
     }
@@ -99,8 +326,23 @@ class ModelRegistry {
      *
      * @param model to be added.
      */
-    protected void addCreateBacklog(Model model) {
-        this.createBacklog.add(model);
+    protected synchronized void addCreateBacklog(Model model) {
+        if (this.createBacklogKeys.containsKey(model)) {
+            return;
+        }
+
+        JsonObject modelJson = model.toJson();
+        modelJson.remove("model");
+        long key = ModelRegistry.getCorrelationKey(modelJson, model.getModelType());
+
+        List<Model> models = this.createBacklog.get(key);
+        if (models == null) {
+            models = new LinkedList<Model>();
+            this.createBacklog.put(key, models);
+        }
+
+        models.add(model);
+        this.createBacklogKeys.put(model, key);
     }
 
     /**
@@ -108,32 +350,53 @@ class ModelRegistry {
      *
      * @param model to be removed.
      */
-    protected void removeCreateBacklog(Model model) {
-        this.createBacklog.remove(model);
+    protected synchronized void removeCreateBacklog(Model model) {
+        Long key = this.createBacklogKeys.remove(model);
+        if (key == null) {
+            return;
+        }
+
+        List<Model> models = this.createBacklog.get(key);
+        models.remove(model);
+        if (models.isEmpty()) {
+            this.createBacklog.remove(key);
+        }
+    }
+
+    /**
+     * Returns the number of models in the create backlog.
+     *
+     * @return the number of models waiting for their creation.
+     */
+    protected synchronized int getCreateBacklogSize() {
+        return this.createBacklogKeys.size();
     }
 
     /**
      * Finds a model in the create backlog. Compares the json provided to the values
      * of the models in the backlog to see if any match and returns a matching model
-     * if found.
+     * if found. Only the models with the same correlation key are compared, the
+     * oldest matching model is returned.
      *
      * @param json of model to be found.
      * @param type of the model.
      * @return model if found, <tt>null</tt> otherwise.
      */
-    protected Model findInCreateBacklog(JsonObject json, ModelType type) {
+    protected synchronized Model findInCreateBacklog(JsonObject json, ModelType type) {
         long id = json.remove("id").getAsLong();
         String clusterId = json.remove("clusterId").getAsString();
         json.addProperty("path", (String) null);
 
-        for (Model model : this.createBacklog) {
-            JsonObject modelJson = model.toJson();
-            modelJson.remove("model");
-            if (model.getModelType() == type && json.equals(modelJson)) {
-                json.remove("path");
-                json.addProperty("id", id);
-                json.addProperty("clusterId", clusterId);
-                return model;
+        Model found = null;
+        List<Model> models = this.createBacklog.get(ModelRegistry.getCorrelationKey(json, type));
+        if (models != null) {
+            for (Model model : models) {
+                JsonObject modelJson = model.toJson();
+                modelJson.remove("model");
+                if (model.getModelType() == type && json.equals(modelJson)) {
+                    found = model;
+                    break;
+                }
             }
         }
 
@@ -141,6 +404,43 @@ class ModelRegistry {
         json.addProperty("id", id);
         json.addProperty("clusterId", clusterId);
 
-        return null;
+        return found;
+    }
+
+    /**
+     * Returns the key used to correlate a created model with the server's reply, a hash of the
+     * model's type and values. Values that are equal have the same key.
+     *
+     * @param json values of the model, without the model type.
+     * @param type of the model.
+     * @return the correlation key.
+     */
+    private static long getCorrelationKey(JsonObject json, ModelType type) {
+        return ModelMetadata.hash(json) * 31 + type.ordinal();
+    }
+
+    /**
+     * A node in the path segment trie.
+     */
+    private static class PathNode {
+
+        /**
+         * Child nodes keyed by their path segment.
+         */
+        private final Map<String, PathNode> children = new HashMap<String, PathNode>();
+
+        /**
+         * Models registered at exactly this path, keyed by type.
+         */
+        private final Map<ModelType, Model> models = new EnumMap<ModelType, Model>(ModelType.class);
+
+        /**
+         * Returns if the node holds neither models nor children.
+         *
+         * @return <tt>true</tt> if the node is empty, <tt>false</tt> otherwise.
+         */
+        private boolean isEmpty() {
+            return this.children.isEmpty() && this.models.isEmpty();
+        }
     }
 }
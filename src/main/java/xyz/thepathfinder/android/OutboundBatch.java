@@ -0,0 +1,241 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the messages models send while a {@link Pathfinder#batch(Runnable)} scope is open
+ * on the current thread. Consecutive updates of the same model are merged into a single
+ * update and all of the messages are sent together when the outermost scope ends.
+ *
+ * @author David Robinson
+ */
+class OutboundBatch {
+
+    /**
+     * Logs actions performed by the class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(OutboundBatch.class);
+
+    /**
+     * The open batch of each thread.
+     */
+    private static final ThreadLocal<OutboundBatch> batches = new ThreadLocal<OutboundBatch>();
+
+    /**
+     * Number of open scopes.
+     */
+    private int depth;
+
+    /**
+     * Messages in the order they were sent.
+     */
+    private final List<Entry> entries;
+
+    /**
+     * The update of each model that later updates of the model are merged into. A model
+     * is removed when it sends any other message so updates are never moved across it.
+     */
+    private final Map<Model, Entry> lastUpdates;
+
+    /**
+     * Number of messages added to the batch, including merged ones.
+     */
+    private int addedCount;
+
+    /**
+     * Constructs an empty batch.
+     */
+    private OutboundBatch() {
+        this.depth = 0;
+        this.entries = new ArrayList<Entry>();
+        this.lastUpdates = new IdentityHashMap<Model, Entry>();
+        this.addedCount = 0;
+    }
+
+    /**
+     * Returns the batch open on the current thread.
+     *
+     * @return the open batch, <tt>null</tt> if no batch is open.
+     */
+    protected static OutboundBatch current() {
+        return OutboundBatch.batches.get();
+    }
+
+    /**
+     * Opens a scope on the current thread.
+     */
+    protected static void begin() {
+        OutboundBatch batch = OutboundBatch.batches.get();
+        if (batch == null) {
+            batch = new OutboundBatch();
+            OutboundBatch.batches.set(batch);
+        }
+
+        batch.depth++;
+    }
+
+    /**
+     * Closes a scope on the current thread. When the outermost scope is closed the batched
+     * messages are sent if the scope completed, otherwise they are discarded.
+     *
+     * @param completed whether the outermost scope completed normally.
+     */
+    protected static void end(boolean completed) {
+        OutboundBatch batch = OutboundBatch.batches.get();
+        if (batch == null) {
+            logger.error("Illegal State Exception: outbound batch ended without beginning");
+            throw new IllegalStateException("Outbound batch ended without beginning");
+        }
+
+        batch.depth--;
+        if (batch.depth == 0) {
+            OutboundBatch.batches.remove();
+            if (completed) {
+                batch.flush();
+            } else {
+                batch.discard();
+            }
+        }
+    }
+
+    /**
+     * Adds a message to the batch. An update is merged into the model's previous update if
+     * the model hasn't sent any other message since.
+     *
+     * @param model      that sent the message.
+     * @param json       message to send.
+     * @param key        path of the model, <tt>null</tt> if unknown.
+     * @param connection to send the message through.
+     */
+    protected void add(Model model, JsonObject json, String key, Connection connection) {
+        this.addedCount++;
+        boolean isUpdate = "Update".equals(json.get("message").getAsString()) && json.has("value");
+
+        if (!isUpdate) {
+            this.lastUpdates.remove(model);
+        } else {
+            Entry previous = this.lastUpdates.get(model);
+            if (previous != null) {
+                OutboundBatch.mergeValues(previous.json.getAsJsonObject("value"), json.getAsJsonObject("value"));
+                return;
+            }
+        }
+
+        Entry entry = new Entry(model, json, key, connection);
+        this.entries.add(entry);
+
+        if (isUpdate) {
+            this.lastUpdates.put(model, entry);
+        }
+    }
+
+    /**
+     * Merges the fields of a later update value into an earlier one. Fields set by both
+     * take the later value. Later metadata, in full or as a patch, replaces the earlier
+     * metadata of either form as is. A patch is only sent while no earlier metadata update
+     * is waiting for the server's echo, see {@link ModelMetadata#addUpdate(JsonObject, JsonObject, PathfinderServices)},
+     * so it is computed against the same server metadata as the earlier update.
+     *
+     * @param earlier value to merge into.
+     * @param later   value to merge.
+     * @return the earlier value.
+     */
+    protected static JsonObject mergeValues(JsonObject earlier, JsonObject later) {
+        if (later.has("metadata") || later.has("metadataPatch")) {
+            earlier.remove("metadata");
+            earlier.remove("metadataPatch");
+        }
+
+        for (Map.Entry<String, JsonElement> field : later.entrySet()) {
+            earlier.add(field.getKey(), field.getValue());
+        }
+
+        return earlier;
+    }
+
+    /**
+     * Sends the batched messages, one flush per connection.
+     */
+    private void flush() {
+        Map<Connection, List<OutboundMessage>> messages = new LinkedHashMap<Connection, List<OutboundMessage>>();
+
+        for (Entry entry : this.entries) {
+            Connection connection = entry.connection;
+            List<OutboundMessage> connectionMessages = messages.get(connection);
+            if (connectionMessages == null) {
+                connectionMessages = new ArrayList<OutboundMessage>();
+                messages.put(connection, connectionMessages);
+            }
+
+            connectionMessages.add(new OutboundMessage(entry.json.toString(), entry.key, entry.model.getPriority(entry.json)));
+        }
+
+        logger.info("Flushing outbound batch of " + this.entries.size() + " messages, " + this.addedCount + " before merging");
+        for (Map.Entry<Connection, List<OutboundMessage>> connectionMessages : messages.entrySet()) {
+            connectionMessages.getKey().sendMessages(connectionMessages.getValue());
+        }
+    }
+
+    /**
+     * Drops the batched messages. Models that were waiting for a create message in the batch
+     * are removed from the create backlog.
+     */
+    private void discard() {
+        logger.warn("Discarding outbound batch of " + this.entries.size() + " messages");
+        for (Entry entry : this.entries) {
+            if ("Create".equals(entry.json.get("message").getAsString()) && entry.model.isPathUnknown()) {
+                entry.model.getServices().getRegistry().removeCreateBacklog(entry.model);
+            }
+        }
+    }
+
+    /**
+     * A batched message.
+     */
+    private static class Entry {
+
+        /**
+         * Model that sent the message.
+         */
+        private final Model model;
+
+        /**
+         * The message.
+         */
+        private final JsonObject json;
+
+        /**
+         * Path of the model, <tt>null</tt> if unknown.
+         */
+        private final String key;
+
+        /**
+         * Connection to send the message through.
+         */
+        private final Connection connection;
+
+        /**
+         * Constructs a batched message.
+         *
+         * @param model      that sent the message.
+         * @param json       the message.
+         * @param key        path of the model, <tt>null</tt> if unknown.
+         * @param connection to send the message through.
+         */
+        private Entry(Model model, JsonObject json, String key, Connection connection) {
+            this.model = model;
+            this.json = json;
+            this.key = key;
+            this.connection = connection;
+        }
+    }
+}
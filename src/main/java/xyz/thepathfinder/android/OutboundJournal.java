@@ -0,0 +1,589 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * An append only journal of the messages sent to the Pathfinder server. Every message is
+ * journaled before it is handed to the web socket. It is acknowledged once a heartbeat pong
+ * answers a ping sent after the message was written, which shows the server received it.
+ * Written messages that were never confirmed are sent again when the connection is lost, and
+ * messages that were never acknowledged, for example because the process was killed while
+ * offline, are sent again in order the next time the journal is used.
+ * </p>
+ * <p>
+ * Delivery is at least once: the server may receive a message twice if the connection was
+ * lost after the server read it but before the pong arrived. With the heartbeat disabled a
+ * message is acknowledged as soon as the web socket has written it, so a message still in
+ * the operating system's buffers when the connection drops is lost. Use
+ * {@link Pathfinder#setOutboundJournal(OutboundJournal)} to enable the journal.
+ * </p>
+ * <p>
+ * Writes are group committed: records are buffered in memory and a background thread writes
+ * and forces them to disk every commit interval, so journaling does not slow down sending.
+ * Messages sent less than one commit interval before a crash may be lost. The file is
+ * compacted once most of its records are acknowledged, dropping acknowledged messages and
+ * updates that are superseded by a later update of the same model.
+ * </p>
+ *
+ * @author David Robinson
+ * @see Pathfinder
+ */
+public class OutboundJournal {
+
+    /**
+     * Logs actions performed by the class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(OutboundJournal.class);
+
+    /**
+     * Identifies a journal file, the ASCII characters <tt>"PFWJ"</tt>.
+     */
+    private static final int MAGIC = 0x5046574A;
+
+    /**
+     * Version of the file format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Record holding a journaled message.
+     */
+    private static final byte APPEND_RECORD = 1;
+
+    /**
+     * Record acknowledging a journaled message.
+     */
+    private static final byte ACK_RECORD = 2;
+
+    /**
+     * Default time between group commits in milliseconds.
+     */
+    private static final long DEFAULT_COMMIT_INTERVAL = 50;
+
+    /**
+     * Minimum number of records in the file before it is compacted.
+     */
+    private static final int COMPACTION_THRESHOLD = 4096;
+
+    /**
+     * The file the journal is stored in.
+     */
+    private final File file;
+
+    /**
+     * Time between group commits in milliseconds.
+     */
+    private final long commitInterval;
+
+    /**
+     * Messages that have not been acknowledged, in the order they were journaled.
+     */
+    private final Map<Long, OutboundMessage> pending;
+
+    /**
+     * Records waiting for the next group commit.
+     */
+    private ByteArrayOutputStream buffer;
+
+    /**
+     * Stream writing to the record buffer.
+     */
+    private DataOutputStream bufferStream;
+
+    /**
+     * Sequence number of the next journaled message.
+     */
+    private long nextSequence;
+
+    /**
+     * Number of records in the file, used to decide when to compact.
+     */
+    private int recordCount;
+
+    /**
+     * Channel the records are appended to, <tt>null</tt> until the journal is opened.
+     */
+    private FileChannel channel;
+
+    /**
+     * File the channel belongs to.
+     */
+    private RandomAccessFile randomAccessFile;
+
+    /**
+     * Runs the group commits.
+     */
+    private ScheduledExecutorService committer;
+
+    /**
+     * Guards the file, held while committing and compacting.
+     */
+    private final Object fileLock;
+
+    /**
+     * Constructs a journal that commits every 50 milliseconds.
+     *
+     * @param file to store the journal in.
+     */
+    public OutboundJournal(File file) {
+        this(file, OutboundJournal.DEFAULT_COMMIT_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Constructs a journal.
+     *
+     * @param file           to store the journal in.
+     * @param commitInterval time between group commits.
+     * @param unit           of the commit interval.
+     */
+    public OutboundJournal(File file, long commitInterval, TimeUnit unit) {
+        this.file = file;
+        this.commitInterval = unit.toMillis(commitInterval);
+        this.pending = new LinkedHashMap<Long, OutboundMessage>();
+        this.fileLock = new Object();
+        this.resetBuffer();
+    }
+
+    /**
+     * Opens the journal and returns the messages that were journaled but never acknowledged,
+     * in the order they were journaled. The file is rewritten to hold only those messages.
+     *
+     * @return the messages to send again.
+     * @throws IOException if the journal could not be read or written.
+     */
+    protected List<OutboundMessage> open() throws IOException {
+        synchronized (this.fileLock) {
+            if (this.file.isFile()) {
+                this.read();
+            }
+
+            synchronized (this) {
+                this.removeSuperseded();
+            }
+            this.rewrite();
+
+            this.committer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "pathfinder-journal");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+            Runnable commit = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        OutboundJournal.this.commit();
+                    } catch (IOException e) {
+                        logger.error("Could not commit journal: " + e.getMessage());
+                    }
+                }
+            };
+
+            this.committer.scheduleWithFixedDelay(commit, this.commitInterval, this.commitInterval, TimeUnit.MILLISECONDS);
+
+            synchronized (this) {
+                logger.info("Opened journal " + this.file + " with " + this.pending.size() + " unacknowledged messages");
+                return new ArrayList<OutboundMessage>(this.pending.values());
+            }
+        }
+    }
+
+    /**
+     * Journals a message and assigns it a sequence number. The message is written to disk
+     * by the next group commit.
+     *
+     * @param message to journal.
+     */
+    protected synchronized void append(OutboundMessage message) {
+        long sequence = this.nextSequence++;
+        message.setSequence(sequence);
+        this.pending.put(sequence, message);
+
+        try {
+            OutboundJournal.writeAppend(this.bufferStream, message);
+        } catch (IOException e) {
+            logger.error("Could not journal message: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Acknowledges that a journaled message was sent, it won't be sent again.
+     *
+     * @param message that was sent.
+     */
+    protected synchronized void acknowledge(OutboundMessage message) {
+        if (this.pending.remove(message.getSequence()) == null) {
+            return;
+        }
+
+        try {
+            this.bufferStream.writeByte(OutboundJournal.ACK_RECORD);
+            this.bufferStream.writeLong(message.getSequence());
+        } catch (IOException e) {
+            logger.error("Could not journal acknowledgement: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the number of messages that have not been acknowledged.
+     *
+     * @return the number of unacknowledged messages.
+     */
+    protected synchronized int getPendingCount() {
+        return this.pending.size();
+    }
+
+    /**
+     * Writes the buffered records to disk and forces them to the storage device. The
+     * file is compacted afterwards if most of its records are acknowledged.
+     *
+     * @throws IOException if the records could not be written.
+     */
+    public void commit() throws IOException {
+        synchronized (this.fileLock) {
+            if (this.channel == null) {
+                return;
+            }
+
+            byte[] records;
+            synchronized (this) {
+                records = this.buffer.toByteArray();
+                this.resetBuffer();
+            }
+
+            if (records.length > 0) {
+                ByteBuffer byteBuffer = ByteBuffer.wrap(records);
+                while (byteBuffer.hasRemaining()) {
+                    this.channel.write(byteBuffer);
+                }
+                this.channel.force(false);
+                this.recordCount += OutboundJournal.countRecords(records);
+            }
+
+            boolean compact;
+            synchronized (this) {
+                compact = this.recordCount >= OutboundJournal.COMPACTION_THRESHOLD && this.pending.size() * 4 < this.recordCount;
+            }
+
+            if (compact) {
+                this.compact();
+            }
+        }
+    }
+
+    /**
+     * Rewrites the file with only the messages that are still needed: unacknowledged messages
+     * that are not superseded by a later update of the same model.
+     *
+     * @throws IOException if the file could not be rewritten.
+     */
+    protected void compact() throws IOException {
+        synchronized (this.fileLock) {
+            if (this.channel == null) {
+                return;
+            }
+
+            int before = this.recordCount;
+            this.rewrite();
+            logger.info("Compacted journal " + this.file + " from " + before + " to " + this.recordCount + " records");
+        }
+    }
+
+    /**
+     * Commits the buffered records, stops the group commits and closes the file.
+     *
+     * @throws IOException if the records could not be written.
+     */
+    public void close() throws IOException {
+        synchronized (this.fileLock) {
+            this.commit();
+
+            if (this.committer != null) {
+                this.committer.shutdown();
+                this.committer = null;
+            }
+
+            if (this.randomAccessFile != null) {
+                this.randomAccessFile.close();
+                this.randomAccessFile = null;
+                this.channel = null;
+            }
+        }
+    }
+
+    /**
+     * Reads the journal file into the pending messages. Reading stops at the first
+     * incomplete record, which was being written when the process ended.
+     *
+     * @throws IOException if the file could not be read.
+     */
+    private void read() throws IOException {
+        RandomAccessFile input = new RandomAccessFile(this.file, "r");
+        MappedByteBuffer map;
+
+        try {
+            FileChannel inputChannel = input.getChannel();
+            map = inputChannel.map(FileChannel.MapMode.READ_ONLY, 0, inputChannel.size());
+        } finally {
+            input.close();
+        }
+
+        if (map.remaining() < 8 || map.getInt() != OutboundJournal.MAGIC || map.getInt() != OutboundJournal.VERSION) {
+            logger.warn("Ignoring invalid journal " + this.file);
+            return;
+        }
+
+        synchronized (this) {
+            while (map.remaining() >= 9) {
+                byte type = map.get();
+                long sequence = map.getLong();
+
+                if (type == OutboundJournal.ACK_RECORD) {
+                    this.pending.remove(sequence);
+                } else if (type == OutboundJournal.APPEND_RECORD) {
+                    String key = OutboundJournal.readString(map);
+                    String text = OutboundJournal.readString(map);
+                    if (text == null) {
+                        logger.warn("Journal " + this.file + " ends with an incomplete record");
+                        break;
+                    }
+
+                    OutboundMessage message = new OutboundMessage(text, key);
+                    message.setSequence(sequence);
+                    this.pending.put(sequence, message);
+                } else {
+                    logger.warn("Journal " + this.file + " has an unknown record type " + type);
+                    break;
+                }
+
+                this.nextSequence = Math.max(this.nextSequence, sequence + 1);
+            }
+        }
+    }
+
+    /**
+     * Replaces the journal file with one holding only the pending messages and reopens
+     * the channel at its end. Must be called while holding the file lock.
+     *
+     * @throws IOException if the file could not be written.
+     */
+    private void rewrite() throws IOException {
+        List<OutboundMessage> messages;
+        synchronized (this) {
+            this.removeSuperseded();
+            messages = new ArrayList<OutboundMessage>(this.pending.values());
+            this.resetBuffer();
+        }
+
+        if (this.randomAccessFile != null) {
+            this.randomAccessFile.close();
+        }
+
+        File temporary = new File(this.file.getPath() + ".tmp");
+        FileOutputStream fileStream = new FileOutputStream(temporary);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileStream));
+            out.writeInt(OutboundJournal.MAGIC);
+            out.writeInt(OutboundJournal.VERSION);
+            for (OutboundMessage message : messages) {
+                OutboundJournal.writeAppend(out, message);
+            }
+            out.flush();
+            fileStream.getFD().sync();
+        } finally {
+            fileStream.close();
+        }
+
+        if (!temporary.renameTo(this.file)) {
+            if (!this.file.delete() || !temporary.renameTo(this.file)) {
+                throw new IOException("Could not replace journal " + this.file);
+            }
+        }
+
+        this.randomAccessFile = new RandomAccessFile(this.file, "rw");
+        this.channel = this.randomAccessFile.getChannel();
+        this.channel.position(this.channel.size());
+        this.recordCount = messages.size();
+    }
+
+    /**
+     * Removes pending updates that are superseded by a later pending update of the same model.
+     * An update is superseded if the later update sets every field it sets and no other message
+     * about the model was journaled between them. Must be called while holding the lock on this
+     * object.
+     */
+    private void removeSuperseded() {
+        Map<String, Long> lastUpdate = new HashMap<String, Long>();
+        Map<Long, Set<String>> updateFields = new HashMap<Long, Set<String>>();
+        List<Long> superseded = new ArrayList<Long>();
+        JsonParser parser = new JsonParser();
+
+        for (OutboundMessage message : this.pending.values()) {
+            String key = message.getKey();
+            if (key == null) {
+                continue;
+            }
+
+            Set<String> fields = OutboundJournal.getUpdateFields(parser, message.getText());
+            Long previous = lastUpdate.remove(key);
+
+            if (fields == null) {
+                continue;
+            }
+
+            if (previous != null && fields.containsAll(updateFields.get(previous))) {
+                superseded.add(previous);
+            }
+
+            lastUpdate.put(key, message.getSequence());
+            updateFields.put(message.getSequence(), fields);
+        }
+
+        for (Long sequence : superseded) {
+            this.pending.remove(sequence);
+        }
+    }
+
+    /**
+     * Returns the fields set by an update message.
+     *
+     * @param parser to parse the message with.
+     * @param text   of the message.
+     * @return the names of the fields updated, <tt>null</tt> if the message isn't an update.
+     */
+    private static Set<String> getUpdateFields(JsonParser parser, String text) {
+        JsonElement element = parser.parse(text);
+        if (!element.isJsonObject()) {
+            return null;
+        }
+
+        JsonObject json = element.getAsJsonObject();
+        if (!json.has("message") || !"Update".equals(json.get("message").getAsString()) || !json.has("value")) {
+            return null;
+        }
+
+        Set<String> fields = new HashSet<String>();
+        for (Map.Entry<String, JsonElement> entry : json.getAsJsonObject("value").entrySet()) {
+            fields.add(entry.getKey());
+        }
+        return fields;
+    }
+
+    /**
+     * Writes an append record.
+     *
+     * @param out     stream to write to.
+     * @param message to write.
+     * @throws IOException if the record could not be written.
+     */
+    private static void writeAppend(DataOutputStream out, OutboundMessage message) throws IOException {
+        out.writeByte(OutboundJournal.APPEND_RECORD);
+        out.writeLong(message.getSequence());
+        OutboundJournal.writeString(out, message.getKey());
+        OutboundJournal.writeString(out, message.getText());
+    }
+
+    /**
+     * Writes a length prefixed string, a length of <tt>-1</tt> represents <tt>null</tt>.
+     *
+     * @param out    stream to write to.
+     * @param string to write.
+     * @throws IOException if the string could not be written.
+     */
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Reads a length prefixed string.
+     *
+     * @param buffer to read from.
+     * @return the string, <tt>null</tt> if it was <tt>null</tt> or is incomplete.
+     */
+    private static String readString(ByteBuffer buffer) {
+        if (buffer.remaining() < 4) {
+            return null;
+        }
+
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Counts the records in a block of buffered records.
+     *
+     * @param records the buffered records.
+     * @return the number of records.
+     */
+    private static int countRecords(byte[] records) {
+        ByteBuffer buffer = ByteBuffer.wrap(records);
+        int count = 0;
+
+        while (buffer.hasRemaining()) {
+            byte type = buffer.get();
+            buffer.getLong();
+            if (type == OutboundJournal.APPEND_RECORD) {
+                for (int k = 0; k < 2; k++) {
+                    int length = buffer.getInt();
+                    if (length > 0) {
+                        buffer.position(buffer.position() + length);
+                    }
+                }
+            }
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Starts a new, empty record buffer.
+     */
+    private void resetBuffer() {
+        this.buffer = new ByteArrayOutputStream();
+        this.bufferStream = new DataOutputStream(this.buffer);
+    }
+}
@@ -0,0 +1,186 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A message waiting to be sent through the web socket to the Pathfinder server.
+ *
+ * @author David Robinson
+ */
+class OutboundMessage {
+
+    /**
+     * The message as a JSON string.
+     */
+    private final String text;
+
+    /**
+     * Path of the model the message is about, <tt>null</tt> if unknown.
+     */
+    private final String key;
+
+    /**
+     * Type of the model the message is about, parsed from the message when first requested.
+     */
+    private ModelType modelType;
+
+    /**
+     * Whether the message has been parsed into {@link #modelType}.
+     */
+    private boolean modelTypeParsed;
+
+    /**
+     * Priority class of the message.
+     */
+    private final MessagePriority priority;
+
+    /**
+     * Sequence number assigned by the {@link OutboundJournal}, <tt>-1</tt> if not journaled.
+     */
+    private long sequence;
+
+    /**
+     * Journaled messages merged into this message, their journal records are acknowledged
+     * once this message is sent.
+     */
+    private List<OutboundMessage> merged;
+
+    /**
+     * Time the web socket finished writing the message, from {@link System#nanoTime()},
+     * {@link Long#MAX_VALUE} if the write failed.
+     */
+    private long writtenTime;
+
+    /**
+     * Constructs an outbound message. The message is parsed to find its priority class.
+     *
+     * @param text the message as a JSON string.
+     * @param key  path of the model the message is about, <tt>null</tt> if unknown.
+     */
+    protected OutboundMessage(String text, String key) {
+        this(text, key, MessagePriority.of(text));
+    }
+
+    /**
+     * Constructs an outbound message.
+     *
+     * @param text     the message as a JSON string.
+     * @param key      path of the model the message is about, <tt>null</tt> if unknown.
+     * @param priority class of the message.
+     */
+    protected OutboundMessage(String text, String key, MessagePriority priority) {
+        this.text = text;
+        this.key = key;
+        this.priority = priority;
+        this.sequence = -1;
+        this.merged = Collections.emptyList();
+    }
+
+    /**
+     * Returns the message as a JSON string.
+     *
+     * @return the message.
+     */
+    protected String getText() {
+        return this.text;
+    }
+
+    /**
+     * Returns the path of the model the message is about.
+     *
+     * @return the path, <tt>null</tt> if unknown.
+     */
+    protected String getKey() {
+        return this.key;
+    }
+
+    /**
+     * Returns the type of the model the message is about, the message's <tt>"model"</tt> field.
+     * The message is parsed once, the first time it is requested.
+     *
+     * @return the model type, <tt>null</tt> if the message doesn't name one.
+     */
+    protected ModelType getModelType() {
+        if (!this.modelTypeParsed) {
+            try {
+                JsonElement json = new JsonParser().parse(this.text);
+                if (json.isJsonObject() && json.getAsJsonObject().has("model")) {
+                    this.modelType = ModelType.getModelType(json.getAsJsonObject().get("model").getAsString());
+                }
+            } catch (JsonParseException e) {
+                this.modelType = null;
+            }
+            this.modelTypeParsed = true;
+        }
+
+        return this.modelType;
+    }
+
+    /**
+     * Returns the priority class of the message.
+     *
+     * @return the priority class.
+     */
+    protected MessagePriority getPriority() {
+        return this.priority;
+    }
+
+    /**
+     * Returns the sequence number assigned by the journal.
+     *
+     * @return the sequence number, <tt>-1</tt> if the message isn't journaled.
+     */
+    protected long getSequence() {
+        return this.sequence;
+    }
+
+    /**
+     * Sets the sequence number assigned by the journal.
+     *
+     * @param sequence the sequence number.
+     */
+    protected void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * Returns the journaled messages merged into this message.
+     *
+     * @return the merged messages, in the order they were sent.
+     */
+    protected List<OutboundMessage> getMerged() {
+        return this.merged;
+    }
+
+    /**
+     * Sets the journaled messages merged into this message.
+     *
+     * @param merged the merged messages, in the order they were sent.
+     */
+    protected void setMerged(List<OutboundMessage> merged) {
+        this.merged = merged;
+    }
+
+    /**
+     * Returns the time the web socket finished writing the message.
+     *
+     * @return the time, from {@link System#nanoTime()}, {@link Long#MAX_VALUE} if the write failed.
+     */
+    protected long getWrittenTime() {
+        return this.writtenTime;
+    }
+
+    /**
+     * Sets the time the web socket finished writing the message.
+     *
+     * @param writtenTime the time, from {@link System#nanoTime()}, {@link Long#MAX_VALUE} if the write failed.
+     */
+    protected void setWrittenTime(long writtenTime) {
+        this.writtenTime = writtenTime;
+    }
+}
@@ -0,0 +1,494 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+
+/**
+ * Holds the messages waiting to be sent through a {@link Connection}, one lane per
+ * {@link MessagePriority}. Messages are taken from the highest priority lane that isn't empty,
+ * in order within a lane. A {@link MessagePriority#TELEMETRY} message replaces the queued
+ * telemetry message of the same model, keeping its place in the lane. A
+ * {@link MessagePriority#STATE} update may be merged into the model's queued update, see
+ * {@link #offer(OutboundMessage, boolean)}. The queue may be bounded by the size of its
+ * telemetry messages, the oldest location updates are dropped first. Other messages are
+ * never dropped, the queue grows past its size to hold them. The queue isn't thread safe.
+ *
+ * @author David Robinson
+ */
+class OutboundQueue {
+
+    /**
+     * Logs actions performed by the class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(OutboundQueue.class);
+
+    /**
+     * Queued messages of each priority class except telemetry, indexed by the class's ordinal.
+     */
+    private final List<LinkedList<OutboundMessage>> lanes;
+
+    /**
+     * Queued telemetry messages in order, keyed by the path of their model. A message without
+     * a path is its own key so it is never replaced.
+     */
+    private final Map<Object, OutboundMessage> telemetry;
+
+    /**
+     * The last queued state message of each model, keyed by the path of the model.
+     */
+    private final Map<String, OutboundMessage> lastState;
+
+    /**
+     * Messages that left the queue without being sent, whose journal records can be acknowledged.
+     */
+    private List<OutboundMessage> discarded;
+
+    /**
+     * Number of queued messages.
+     */
+    private int size;
+
+    /**
+     * Size of the queued messages, the sum of the lengths of their text.
+     */
+    private long bytes;
+
+    /**
+     * Largest size of the queued messages, <tt>0</tt> if unbounded.
+     */
+    private long maxBytes;
+
+    /**
+     * Number of messages that replaced or were merged into a queued message.
+     */
+    private long conflatedCount;
+
+    /**
+     * Number of messages dropped because the queue was over its size.
+     */
+    private long droppedCount;
+
+    /**
+     * Constructs an empty, unbounded queue.
+     */
+    protected OutboundQueue() {
+        this.lanes = new ArrayList<LinkedList<OutboundMessage>>();
+        for (int k = 0; k < MessagePriority.TELEMETRY.ordinal(); k++) {
+            this.lanes.add(new LinkedList<OutboundMessage>());
+        }
+        this.telemetry = new LinkedHashMap<Object, OutboundMessage>();
+        this.lastState = new HashMap<String, OutboundMessage>();
+        this.discarded = new ArrayList<OutboundMessage>();
+        this.size = 0;
+        this.bytes = 0;
+        this.maxBytes = 0;
+        this.conflatedCount = 0;
+        this.droppedCount = 0;
+    }
+
+    /**
+     * Adds a message to the end of its lane. A telemetry message replaces the queued telemetry
+     * message of the same model, the fields of the replaced message that the new message
+     * doesn't set are kept. State updates are not merged.
+     *
+     * @param message to add.
+     * @return the message that was replaced, <tt>null</tt> if none.
+     */
+    protected OutboundMessage offer(OutboundMessage message) {
+        return this.offer(message, false);
+    }
+
+    /**
+     * Adds a message to the end of its lane. A telemetry message replaces the queued telemetry
+     * message of the same model, the fields of the replaced message that the new message
+     * doesn't set are kept. A state update that sets the location takes in the model's queued
+     * telemetry message, so an older location isn't sent after it. If the model's last queued
+     * state message is an update, and <tt>mergeUpdate</tt> is set, a state update is merged
+     * into it in its place. The queue is then trimmed to its size.
+     *
+     * @param message     to add.
+     * @param mergeUpdate whether a state update may be merged into the model's queued update.
+     * @return the message that was replaced, <tt>null</tt> if none.
+     */
+    protected OutboundMessage offer(OutboundMessage message, boolean mergeUpdate) {
+        OutboundMessage replaced;
+        if (message.getPriority() == MessagePriority.TELEMETRY) {
+            replaced = this.offerTelemetry(message);
+        } else if (message.getPriority() == MessagePriority.STATE && message.getKey() != null) {
+            replaced = this.offerState(message, mergeUpdate);
+        } else {
+            this.append(message);
+            replaced = null;
+        }
+
+        this.trim();
+        return replaced;
+    }
+
+    /**
+     * Adds a telemetry message, replacing the queued telemetry message of the same model.
+     *
+     * @param message to add.
+     * @return the message that was replaced, <tt>null</tt> if none.
+     */
+    private OutboundMessage offerTelemetry(OutboundMessage message) {
+        Object key = message.getKey() != null ? message.getKey() : message;
+        OutboundMessage previous = this.telemetry.get(key);
+        if (previous == null) {
+            this.telemetry.put(key, message);
+            this.size++;
+            this.bytes += message.getText().length();
+            return null;
+        }
+
+        JsonParser parser = new JsonParser();
+        OutboundMessage merged = this.merge(previous, parser.parse(previous.getText()).getAsJsonObject(),
+                message, parser.parse(message.getText()).getAsJsonObject());
+        this.telemetry.put(key, merged);
+        this.bytes += merged.getText().length() - previous.getText().length();
+        this.conflatedCount++;
+        return previous;
+    }
+
+    /**
+     * Adds a state message about a model, merging it with the model's queued messages if it is
+     * an update.
+     *
+     * @param message     to add.
+     * @param mergeUpdate whether the message may be merged into the model's queued update.
+     * @return the message that was replaced, <tt>null</tt> if none.
+     */
+    private OutboundMessage offerState(OutboundMessage message, boolean mergeUpdate) {
+        String key = message.getKey();
+        OutboundMessage previous = mergeUpdate ? this.lastState.get(key) : null;
+        if (previous == null && !this.telemetry.containsKey(key)) {
+            this.append(message);
+            return null;
+        }
+
+        JsonParser parser = new JsonParser();
+        JsonObject json = parser.parse(message.getText()).getAsJsonObject();
+        JsonObject value = OutboundQueue.getUpdateValue(json);
+        if (value == null) {
+            this.append(message);
+            return null;
+        }
+
+        OutboundMessage replaced = null;
+        if (this.telemetry.containsKey(key) && (value.has("latitude") || value.has("longitude"))) {
+            replaced = this.telemetry.remove(key);
+            this.size--;
+            this.bytes -= replaced.getText().length();
+
+            JsonObject telemetryJson = parser.parse(replaced.getText()).getAsJsonObject();
+            message = this.merge(replaced, telemetryJson, message, json);
+            json = telemetryJson;
+            this.conflatedCount++;
+        }
+
+        if (previous != null) {
+            JsonObject previousJson = parser.parse(previous.getText()).getAsJsonObject();
+            if (OutboundQueue.getUpdateValue(previousJson) != null) {
+                OutboundMessage merged = this.merge(previous, previousJson, message, json);
+
+                ListIterator<OutboundMessage> iterator = this.lanes.get(MessagePriority.STATE.ordinal()).listIterator(this.size(MessagePriority.STATE));
+                while (iterator.hasPrevious()) {
+                    if (iterator.previous() == previous) {
+                        iterator.set(merged);
+                        break;
+                    }
+                }
+
+                this.lastState.put(key, merged);
+                this.bytes += merged.getText().length() - previous.getText().length();
+                this.conflatedCount++;
+                return previous;
+            }
+        }
+
+        this.append(message);
+        return replaced;
+    }
+
+    /**
+     * Adds a message to the end of its lane, telemetry messages are never replaced by this method.
+     *
+     * @param message to add.
+     */
+    private void append(OutboundMessage message) {
+        if (message.getPriority() == MessagePriority.TELEMETRY) {
+            this.telemetry.put(message, message);
+        } else {
+            this.lanes.get(message.getPriority().ordinal()).add(message);
+            if (message.getPriority() == MessagePriority.STATE && message.getKey() != null) {
+                this.lastState.put(message.getKey(), message);
+            }
+        }
+
+        this.size++;
+        this.bytes += message.getText().length();
+    }
+
+    /**
+     * Returns a message with the value of a later update merged into the value of an earlier
+     * update of the same model. It takes the priority and journal sequence number of the later
+     * message. If the later update sets every field the earlier one sets, the earlier message is
+     * discarded, otherwise its journal record is acknowledged once the merged message is sent.
+     *
+     * @param earlier     message to merge into.
+     * @param earlierJson the earlier message parsed, its value is changed.
+     * @param later       message to merge.
+     * @param laterJson   the later message parsed.
+     * @return the merged message.
+     */
+    private OutboundMessage merge(OutboundMessage earlier, JsonObject earlierJson, OutboundMessage later, JsonObject laterJson) {
+        JsonObject earlierValue = earlierJson.getAsJsonObject("value");
+        JsonObject laterValue = laterJson.getAsJsonObject("value");
+
+        List<OutboundMessage> merged = new ArrayList<OutboundMessage>(earlier.getMerged());
+        if (OutboundQueue.setsFields(laterValue, earlierValue)) {
+            this.discarded.add(earlier);
+        } else {
+            merged.add(earlier);
+        }
+        merged.addAll(later.getMerged());
+
+        OutboundBatch.mergeValues(earlierValue, laterValue);
+
+        OutboundMessage message = new OutboundMessage(earlierJson.toString(), later.getKey(), later.getPriority());
+        message.setSequence(later.getSequence());
+        message.setMerged(merged);
+        return message;
+    }
+
+    /**
+     * Returns whether an update value sets every field another value sets. Metadata sent in
+     * full and as a patch are the same field.
+     *
+     * @param value  that may set the fields.
+     * @param fields value whose fields are checked.
+     * @return <tt>true</tt> if <tt>value</tt> sets every field of <tt>fields</tt>, <tt>false</tt> otherwise.
+     */
+    private static boolean setsFields(JsonObject value, JsonObject fields) {
+        boolean setsMetadata = value.has("metadata") || value.has("metadataPatch");
+        for (Map.Entry<String, JsonElement> field : fields.entrySet()) {
+            boolean isMetadata = "metadata".equals(field.getKey()) || "metadataPatch".equals(field.getKey());
+            if (isMetadata ? !setsMetadata : !value.has(field.getKey())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the value of an update message.
+     *
+     * @param json the message.
+     * @return the value, <tt>null</tt> if the message isn't an update with a value.
+     */
+    private static JsonObject getUpdateValue(JsonObject json) {
+        JsonElement type = json.get("message");
+        JsonElement value = json.get("value");
+        if (type == null || !"Update".equals(type.getAsString()) || value == null || !value.isJsonObject()) {
+            return null;
+        }
+
+        return value.getAsJsonObject();
+    }
+
+    /**
+     * Drops telemetry messages while the queue is over its size, oldest first. A later location
+     * update of the model replaces a dropped one. State, subscription and control messages are
+     * never dropped, they are kept even when the queue stays over its size.
+     */
+    private void trim() {
+        if (this.maxBytes <= 0 || this.bytes <= this.maxBytes) {
+            return;
+        }
+
+        int dropped = 0;
+        Iterator<OutboundMessage> iterator = this.telemetry.values().iterator();
+        while (this.bytes > this.maxBytes && iterator.hasNext()) {
+            OutboundMessage message = iterator.next();
+            iterator.remove();
+
+            this.removed(message);
+            this.discarded.add(message);
+            this.discarded.addAll(message.getMerged());
+            dropped++;
+        }
+
+        if (dropped > 0) {
+            this.droppedCount += dropped;
+            logger.warn("Outbound queue over " + this.maxBytes + " bytes, dropped " + dropped + " location updates");
+        }
+    }
+
+    /**
+     * Updates the counts after a message is removed from its lane.
+     *
+     * @param message that was removed.
+     */
+    private void removed(OutboundMessage message) {
+        this.size--;
+        this.bytes -= message.getText().length();
+        if (message.getKey() != null && this.lastState.get(message.getKey()) == message) {
+            this.lastState.remove(message.getKey());
+        }
+    }
+
+    /**
+     * Removes and returns the next message to send.
+     *
+     * @return the oldest message of the highest priority lane, <tt>null</tt> if the queue is empty.
+     */
+    protected OutboundMessage poll() {
+        if (this.size == 0) {
+            return null;
+        }
+
+        OutboundMessage message = null;
+        for (LinkedList<OutboundMessage> lane : this.lanes) {
+            if (!lane.isEmpty()) {
+                message = lane.poll();
+                break;
+            }
+        }
+
+        if (message == null) {
+            Iterator<OutboundMessage> iterator = this.telemetry.values().iterator();
+            message = iterator.next();
+            iterator.remove();
+        }
+
+        this.removed(message);
+        return message;
+    }
+
+    /**
+     * Removes and returns every queued message, in the order they would be sent.
+     *
+     * @return the queued messages.
+     */
+    protected List<OutboundMessage> drain() {
+        List<OutboundMessage> messages = new ArrayList<OutboundMessage>(this.size);
+        OutboundMessage message = this.poll();
+        while (message != null) {
+            messages.add(message);
+            message = this.poll();
+        }
+
+        return messages;
+    }
+
+    /**
+     * Removes and returns the messages that left the queue without being sent, because a later
+     * message set all of their fields or they were telemetry dropped because the queue was over
+     * its size. Their journal records can
+     * be acknowledged since they will never be sent.
+     *
+     * @return the discarded messages.
+     */
+    protected List<OutboundMessage> takeDiscarded() {
+        if (this.discarded.isEmpty()) {
+            return this.discarded;
+        }
+
+        List<OutboundMessage> discarded = this.discarded;
+        this.discarded = new ArrayList<OutboundMessage>();
+        return discarded;
+    }
+
+    /**
+     * Sets the largest size of the queued messages, the sum of the lengths of their text. Once
+     * over it telemetry messages are dropped, oldest first. Other messages are never dropped.
+     *
+     * @param maxBytes largest size of the queued messages, <tt>0</tt> if unbounded.
+     */
+    protected void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.trim();
+    }
+
+    /**
+     * Returns the number of queued messages.
+     *
+     * @return the number of messages.
+     */
+    protected int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of queued messages of a priority class.
+     *
+     * @param priority class of the messages.
+     * @return the number of messages.
+     */
+    protected int size(MessagePriority priority) {
+        if (priority == MessagePriority.TELEMETRY) {
+            return this.telemetry.size();
+        }
+
+        return this.lanes.get(priority.ordinal()).size();
+    }
+
+    /**
+     * Returns the size of the queued messages, the sum of the lengths of their text.
+     *
+     * @return the size of the messages.
+     */
+    protected long getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Returns if a state message about a model is queued.
+     *
+     * @param key path of the model.
+     * @return <tt>true</tt> if the model has a queued state message, <tt>false</tt> otherwise.
+     */
+    protected boolean hasStateMessage(String key) {
+        return this.lastState.containsKey(key);
+    }
+
+    /**
+     * Returns if no messages are queued.
+     *
+     * @return <tt>true</tt> if the queue is empty, <tt>false</tt> otherwise.
+     */
+    protected boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Returns the number of messages that replaced or were merged into a queued message.
+     *
+     * @return the number of conflated messages.
+     */
+    protected long getConflatedCount() {
+        return this.conflatedCount;
+    }
+
+    /**
+     * Returns the number of telemetry messages dropped because the queue was over its size.
+     *
+     * @return the number of dropped messages.
+     */
+    protected long getDroppedCount() {
+        return this.droppedCount;
+    }
+}
@@ -0,0 +1,33 @@
+package xyz.thepathfinder.android;
+
+/**
+ * An enum for what a {@link ModelEventPublisher} does when a subscriber's buffer is full
+ * because the subscriber hasn't requested the events yet.
+ *
+ * @author David Robinson
+ */
+public enum OverflowStrategy {
+
+    /**
+     * An update replaces the buffered, undelivered update of the same model, so the subscriber
+     * receives the latest state of each model. If the buffer is still full the oldest event is
+     * dropped.
+     */
+    CONFLATE,
+
+    /**
+     * The oldest buffered event is dropped.
+     */
+    DROP_OLDEST,
+
+    /**
+     * The new event is dropped.
+     */
+    DROP_LATEST,
+
+    /**
+     * The buffered events are dropped and the subscription fails with an
+     * {@link IllegalStateException} passed to {@link org.reactivestreams.Subscriber#onError(Throwable)}.
+     */
+    ERROR
+}
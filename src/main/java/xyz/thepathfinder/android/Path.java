@@ -35,6 +35,16 @@ class Path {
      */
     private String path;
 
+    /**
+     * The name of the model parsed as an identifier, only valid if {@link #idParsed} is <tt>true</tt>.
+     */
+    private int id;
+
+    /**
+     * Whether the name has been parsed into {@link #id}.
+     */
+    private boolean idParsed;
+
     /**
      * Constructs a path to a model. The path may not an empty string.
      * Other requirements are subject to change.
@@ -112,6 +122,22 @@ class Path {
         return this.path.substring(lastSlashIndex);
     }
 
+    /**
+     * Returns the name of the model as the identifier the Pathfinder server gave it. The name
+     * is parsed once, the first time it is requested.
+     *
+     * @return the identifier of the model.
+     * @throws NumberFormatException if the name isn't an identifier.
+     */
+    protected int getId() {
+        if (!this.idParsed) {
+            this.id = Integer.parseInt(this.getName());
+            this.idParsed = true;
+        }
+
+        return this.id;
+    }
+
     /**
      * Returns the path of the model.
      *
@@ -10,9 +10,17 @@ import javax.websocket.DeploymentException;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>
@@ -70,7 +78,18 @@ public class Pathfinder {
     private final String applicationIdentifier;
 
     /**
-     * The authenticator controlling the authentication sequence.
+     * User's credentials, a JWT.
+     */
+    private final String userCredentials;
+
+    /**
+     * URL used to authenticate users.
+     */
+    private final String authenticationServerURL;
+
+    /**
+     * The authenticator controlling the authentication sequence. When sharded it reports the
+     * combined result of the shards' authenticators.
      */
     private Authenticator authenticator;
 
@@ -84,6 +103,51 @@ public class Pathfinder {
      */
     private URI webSocketUrl;
 
+    /**
+     * Stores the models between application launches, <tt>null</tt> if not enabled.
+     */
+    private SnapshotStore snapshotStore;
+
+    /**
+     * Saves snapshots periodically, <tt>null</tt> if snapshots are only saved on close.
+     */
+    private ScheduledExecutorService snapshotExecutor;
+
+    /**
+     * Maximum number of messages in flight on each connection.
+     */
+    private int maxInFlightMessages = Connection.DEFAULT_MAX_IN_FLIGHT;
+
+    /**
+     * Largest size of the messages each connection queues, applied to connections created later.
+     */
+    private long maxQueuedBytes = Connection.DEFAULT_MAX_QUEUED_BYTES;
+
+    /**
+     * Time between heartbeat pings on each connection, in milliseconds, <tt>0</tt> if disabled.
+     */
+    private long heartbeatInterval = Connection.DEFAULT_HEARTBEAT_INTERVAL;
+
+    /**
+     * Number of unanswered heartbeat pings in a row after which a connection is lost.
+     */
+    private int maxMissedPongs = Connection.DEFAULT_MAX_MISSED_PONGS;
+
+    /**
+     * Whether a lost connection is authenticated and opened again.
+     */
+    private volatile boolean autoReconnect = false;
+
+    /**
+     * Whether the connections were closed by {@link #close(CloseReason)}, they aren't reconnected.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Listeners notified when a connection is lost.
+     */
+    private final List<ConnectionListener> connectionListeners = new CopyOnWriteArrayList<ConnectionListener>();
+
     /**
      * Constructs a Pathfinder object.
      *
@@ -97,6 +161,8 @@ public class Pathfinder {
             logger.error(e.getMessage());
         }
         this.applicationIdentifier = applicationIdentifier;
+        this.userCredentials = userCredentials;
+        this.authenticationServerURL = DEFAULT_AUTH_URI;
         this.constructPathfinderServices(applicationIdentifier, userCredentials, DEFAULT_AUTH_URI);
     }
 
@@ -114,6 +180,8 @@ public class Pathfinder {
             logger.error(e.getMessage());
         }
         this.applicationIdentifier = applicationIdentifier;
+        this.userCredentials = userCredentials;
+        this.authenticationServerURL = authenticationServerURL;
         this.constructPathfinderServices(applicationIdentifier, userCredentials, authenticationServerURL);
     }
 
@@ -126,10 +194,28 @@ public class Pathfinder {
      */
     protected Pathfinder(String applicationIdentifier, String userCredentials, URI webSocketUrl) {
         this.applicationIdentifier = applicationIdentifier;
+        this.userCredentials = userCredentials;
+        this.authenticationServerURL = DEFAULT_AUTH_URI;
         this.webSocketUrl = webSocketUrl;
         this.constructPathfinderServices(applicationIdentifier, userCredentials, DEFAULT_AUTH_URI);
     }
 
+    /**
+     * Constructs a Pathfinder object.
+     *
+     * @param applicationIdentifier   application Identifier provided by a Pathfinder service provider
+     * @param userCredentials         JWT of the user's credentials
+     * @param authenticationServerURL URL to use when authenticating users
+     * @param webSocketUrl            URL to the Pathfinder web socket service provider
+     */
+    protected Pathfinder(String applicationIdentifier, String userCredentials, String authenticationServerURL, URI webSocketUrl) {
+        this.applicationIdentifier = applicationIdentifier;
+        this.userCredentials = userCredentials;
+        this.authenticationServerURL = authenticationServerURL;
+        this.webSocketUrl = webSocketUrl;
+        this.constructPathfinderServices(applicationIdentifier, userCredentials, authenticationServerURL);
+    }
+
     /**
      * Sets the {@link PathfinderServices} object.
      *
@@ -139,6 +225,7 @@ public class Pathfinder {
      */
     private void constructPathfinderServices(String applicationIdentifier, String userCredentials, String authenticationServerURL) {
         Connection connection = new Connection();
+        connection.addConnectionListener(new ConnectionMonitor(connection));
 
         ModelRegistry registry = new ModelRegistry();
         this.services = new PathfinderServices(registry, connection);
@@ -161,6 +248,8 @@ public class Pathfinder {
 
     /**
      * Establishes a connection to the Pathfinder server, if the connection is not already open.
+     * The connection uses the web socket client shared by all <code>Pathfinder</code> objects,
+     * see {@link PathfinderRuntime}.
      * This method blocks until the connection is established if <tt>isAsync</tt> is <tt>false</tt>.
      * Setting <tt>isAsync</tt> to <tt>false</tt> helps test for SSL problems, as when <tt>isAsync</tt>
      * is <tt>true</tt> no exception is thrown when SSL fails.
@@ -170,9 +259,10 @@ public class Pathfinder {
      * @throws RuntimeException if could not connect to the Pathfinder server.
      */
     public void connect(boolean isAsync) {
+        this.closed = false;
         if (!this.isConnected()) {
 
-            ClientManager clientManager = new ClientManager();
+            ClientManager clientManager = PathfinderRuntime.getClientManager();
 
             ClientEndpointConfig.Configurator configurator = new ClientEndpointConfig.Configurator() {
                 @Override
@@ -183,21 +273,100 @@ public class Pathfinder {
 
             ClientEndpointConfig configuration = ClientEndpointConfig.Builder.create().configurator(configurator).build();
 
-            try {
-                if(isAsync) {
-                    clientManager.asyncConnectToServer(this.services.getConnection(), configuration, this.webSocketUrl);
-                } else {
-                    clientManager.connectToServer(this.services.getConnection(), configuration, this.webSocketUrl);
+            for (Connection connection : this.services.getConnections()) {
+                if (connection.isConnected()) {
+                    continue;
+                }
+
+                try {
+                    if(isAsync) {
+                        clientManager.asyncConnectToServer(connection, configuration, this.webSocketUrl);
+                    } else {
+                        clientManager.connectToServer(connection, configuration, this.webSocketUrl);
+                    }
+                } catch (DeploymentException e) {
+                    logger.error("Deployment Exception: " + e.getMessage());
+                    throw new RuntimeException(e);
+                } catch (IOException e) {
+                    e.printStackTrace();
                 }
-            } catch (DeploymentException e) {
-                logger.error("Deployment Exception: " + e.getMessage());
-                throw new RuntimeException(e);
-            } catch (IOException e) {
-                e.printStackTrace();
             }
         }
     }
 
+    /**
+     * Sets the number of web socket connections opened to the Pathfinder server. Each connection
+     * is authenticated separately and carries the messages of the models in some of the top level
+     * clusters, chosen by hashing the cluster's path, so a model's messages are always sent and
+     * received in order through one connection. The authentication listeners are notified of success
+     * once every connection is authenticated, and of the first failure. Must be called before
+     * {@link #connect()}.
+     *
+     * @param shardCount number of connections, at least one.
+     * @throws IllegalArgumentException if the number of connections is less than one.
+     * @throws IllegalStateException    if this object is already connected.
+     */
+    public void setShardCount(int shardCount) {
+        if (shardCount < 1) {
+            logger.error("Illegal Argument Exception: shard count must be positive: " + shardCount);
+            throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+        }
+
+        for (Connection connection : this.services.getConnections()) {
+            if (connection.isConnected()) {
+                logger.error("Illegal State Exception: shard count set after connecting");
+                throw new IllegalStateException("Shard count must be set before connecting");
+            }
+        }
+
+        List<OutboundMessage> stored = new ArrayList<OutboundMessage>();
+        for (Connection connection : this.services.getConnections()) {
+            stored.addAll(connection.takeStoredMessages());
+        }
+        OutboundJournal journal = this.services.getConnection().getJournal();
+
+        List<Connection> connections = new ArrayList<Connection>();
+        for (int k = 0; k < shardCount; k++) {
+            Connection connection = new Connection();
+            connection.setMaxInFlight(this.maxInFlightMessages);
+            connection.setMaxQueuedBytes(this.maxQueuedBytes);
+            connection.setHeartbeat(this.heartbeatInterval, TimeUnit.MILLISECONDS, this.maxMissedPongs);
+            connection.addConnectionListener(new ConnectionMonitor(connection));
+            connections.add(connection);
+        }
+        this.services.setConnections(connections);
+
+        Authenticator previous = this.authenticator;
+        if (shardCount == 1) {
+            this.authenticator = new Authenticator(this.applicationIdentifier, this.userCredentials, this.authenticationServerURL, this.services);
+            connections.get(0).setMessageHandler(new AuthenticationMessageHandler(this.authenticator));
+        } else {
+            this.authenticator = new Authenticator(this.applicationIdentifier, this.userCredentials, this.authenticationServerURL, this.services, null);
+            ShardAuthenticationListener shardListener = new ShardAuthenticationListener(this.authenticator, shardCount);
+            for (Connection connection : connections) {
+                Authenticator shardAuthenticator = new Authenticator(this.applicationIdentifier, this.userCredentials, this.authenticationServerURL, this.services, connection);
+                shardAuthenticator.addListener(shardListener);
+                connection.setMessageHandler(new AuthenticationMessageHandler(shardAuthenticator));
+            }
+        }
+
+        for (AuthenticationListener listener : previous.getListeners()) {
+            this.authenticator.addListener(listener);
+        }
+
+        if (journal != null) {
+            for (Connection connection : connections) {
+                connection.setJournal(journal, Collections.<OutboundMessage>emptyList());
+            }
+        }
+
+        for (OutboundMessage message : stored) {
+            this.services.getConnection(message.getKey(), message.getModelType()).storeMessages(Collections.singletonList(message));
+        }
+
+        logger.info("Using " + shardCount + " connections to the Pathfinder server");
+    }
+
     /**
      * Adds an {@link AuthenticationListener} to listen for the success or failure
      * of the authentication sequence.
@@ -256,13 +425,335 @@ public class Pathfinder {
         return Transport.getInstance(path, this.services);
     }
 
+    /**
+     * Runs the mutations in a batch. The messages models send while the runnable runs are held
+     * back, consecutive updates of the same model are merged into one update, and the resulting
+     * messages are sent together once the runnable returns. If the runnable throws an exception
+     * none of the batched messages are sent. Batches on the same thread nest, the messages are
+     * sent when the outermost batch ends.
+     * <pre><code>   pathfinder.batch(new Runnable() {
+     *       public void run() {
+     *           commodity.updateDroppedOff();
+     *           transport.updateStatus(TransportStatus.ONLINE);
+     *           transport.updateLocation(39.48, -87.32);
+     *       }
+     *   });</code></pre>
+     *
+     * @param mutations to run in the batch.
+     */
+    public void batch(Runnable mutations) {
+        boolean completed = false;
+        OutboundBatch.begin();
+        try {
+            mutations.run();
+            completed = true;
+        } finally {
+            OutboundBatch.end(completed);
+        }
+    }
+
+    /**
+     * Enables storing the models in a local snapshot. The models in the store's snapshot file are
+     * restored immediately and marked as stale until the Pathfinder server sends fresh values, see
+     * {@link Model#isStale()}. The snapshot is saved when this object is closed and, if the store
+     * has a save period, periodically in a background thread.
+     *
+     * @param store to save the snapshots to.
+     */
+    public void setSnapshotStore(SnapshotStore store) {
+        this.stopPeriodicSnapshots();
+        this.snapshotStore = store;
+
+        try {
+            store.load(this.services);
+        } catch (IOException e) {
+            logger.error("Could not restore snapshot: " + e.getMessage());
+        }
+
+        if (store.getSavePeriod() > 0) {
+            this.snapshotExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "pathfinder-snapshot");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+            Runnable save = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Pathfinder.this.saveSnapshot();
+                    } catch (RuntimeException e) { // an exception would cancel the periodic saves
+                        logger.error("Could not save snapshot: " + e.getMessage(), e);
+                    }
+                }
+            };
+
+            this.snapshotExecutor.scheduleWithFixedDelay(save, store.getSavePeriod(), store.getSavePeriod(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Saves the models to the snapshot store, if one was set with {@link #setSnapshotStore(SnapshotStore)}.
+     * Messages from the Pathfinder server wait while the models are copied.
+     */
+    public void saveSnapshot() {
+        if (this.snapshotStore != null) {
+            try {
+                this.snapshotStore.save(this.services);
+            } catch (IOException e) {
+                logger.error("Could not save snapshot: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Stops saving snapshots periodically.
+     */
+    private void stopPeriodicSnapshots() {
+        if (this.snapshotExecutor != null) {
+            this.snapshotExecutor.shutdown();
+            this.snapshotExecutor = null;
+        }
+    }
+
+    /**
+     * Enables journaling messages sent to the Pathfinder server. Messages are kept in the journal
+     * until the web socket has sent them, so messages queued while offline survive the process
+     * being killed. Messages the journal holds from a previous run are sent again, in order, as
+     * soon as the connection is authenticated.
+     *
+     * @param journal to store outbound messages in.
+     */
+    public void setOutboundJournal(OutboundJournal journal) {
+        List<OutboundMessage> recovered;
+        try {
+            recovered = journal.open();
+        } catch (IOException e) {
+            logger.error("Could not open outbound journal: " + e.getMessage());
+            return;
+        }
+
+        List<Connection> connections = this.services.getConnections();
+        List<List<OutboundMessage>> shardMessages = new ArrayList<List<OutboundMessage>>();
+        for (int k = 0; k < connections.size(); k++) {
+            shardMessages.add(new ArrayList<OutboundMessage>());
+        }
+
+        for (OutboundMessage message : recovered) {
+            shardMessages.get(PathfinderServices.getShard(message.getKey(), message.getModelType(), connections.size())).add(message);
+        }
+
+        for (int k = 0; k < connections.size(); k++) {
+            connections.get(k).setJournal(journal, shardMessages.get(k));
+        }
+    }
+
     /**
      * Returns <tt>true</tt> if the web socket connection to the Pathfinder server is open.
+     * When sharded every connection must be open.
      *
      * @return <tt>true</tt> if the connection is still open
      */
     public boolean isConnected() {
-        return this.services.getConnection().isConnected();
+        for (Connection connection : this.services.getConnections()) {
+            if (!connection.isConnected()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Sets the maximum number of messages each connection hands to the web socket before the
+     * web socket has sent them. Later messages wait in a queue that sends authentication first,
+     * then state changes such as creating a model or picking up a commodity, then subscriptions,
+     * then location updates. A queued location update is replaced by the model's next location
+     * update. A lower maximum lets urgent messages overtake more of a burst of location updates.
+     * Defaults to 64.
+     *
+     * @param maxInFlightMessages maximum number of messages in flight per connection, at least one.
+     * @throws IllegalArgumentException if the maximum is less than one.
+     */
+    public void setMaxInFlightMessages(int maxInFlightMessages) {
+        for (Connection connection : this.services.getConnections()) {
+            connection.setMaxInFlight(maxInFlightMessages);
+        }
+
+        this.maxInFlightMessages = maxInFlightMessages;
+    }
+
+    /**
+     * Returns the number of messages waiting to be sent to the Pathfinder server because the
+     * connection is down or the maximum number of messages are in flight.
+     *
+     * @return the number of queued messages.
+     */
+    public int getQueuedMessageCount() {
+        int count = 0;
+        for (Connection connection : this.services.getConnections()) {
+            count += connection.getQueuedMessageCount();
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the number of updates that replaced or were merged into a queued update of the
+     * same model instead of being sent.
+     *
+     * @return the number of conflated updates.
+     */
+    public long getConflatedMessageCount() {
+        long count = 0;
+        for (Connection connection : this.services.getConnections()) {
+            count += connection.getConflatedMessageCount();
+        }
+
+        return count;
+    }
+
+    /**
+     * Sets the largest size of the messages each connection queues while the connection is down
+     * or the maximum number of messages are in flight, measured as the length of their text. A
+     * queued update of a model takes in the model's later updates, unless the model waits for
+     * the reply of an update request, so the queue holds about one update per model. Once over
+     * the size, queued location updates are dropped oldest first, a later location update of the
+     * model takes their place. State changes, subscriptions and authentication are never dropped,
+     * the queue grows past the size to hold them. Defaults to 1 MiB.
+     *
+     * @param maxQueuedBytes largest size of the queued messages per connection, <tt>0</tt> if unbounded.
+     * @throws IllegalArgumentException if the size is negative.
+     */
+    public void setMaxQueuedBytes(long maxQueuedBytes) {
+        for (Connection connection : this.services.getConnections()) {
+            connection.setMaxQueuedBytes(maxQueuedBytes);
+        }
+
+        this.maxQueuedBytes = maxQueuedBytes;
+    }
+
+    /**
+     * Returns the number of queued location updates dropped because a connection's queue was over its
+     * size, see {@link #setMaxQueuedBytes(long)}.
+     *
+     * @return the number of dropped messages.
+     */
+    public long getDroppedMessageCount() {
+        long count = 0;
+        for (Connection connection : this.services.getConnections()) {
+            count += connection.getDroppedMessageCount();
+        }
+
+        return count;
+    }
+
+    /**
+     * Sets how often each connection pings the Pathfinder server with web socket ping frames,
+     * and how many pings in a row may go unanswered before the connection is declared lost.
+     * A lost connection is closed and the connection listeners are notified, so a dead connection
+     * is noticed within about <tt>(maxMissedPongs + 1) * interval</tt> instead of when the
+     * operating system gives up on it. The pongs measure the round trip time to the server.
+     * Defaults to a ping every 15 seconds and 2 missed pongs.
+     *
+     * @param interval       time between pings, <tt>0</tt> disables the heartbeat.
+     * @param unit           of the interval.
+     * @param maxMissedPongs number of unanswered pings after which a connection is lost, at least one.
+     * @throws IllegalArgumentException if the interval is negative or the number of pings less than one.
+     */
+    public void setHeartbeat(long interval, TimeUnit unit, int maxMissedPongs) {
+        for (Connection connection : this.services.getConnections()) {
+            connection.setHeartbeat(interval, unit, maxMissedPongs);
+        }
+
+        this.heartbeatInterval = unit.toMillis(interval);
+        this.maxMissedPongs = maxMissedPongs;
+    }
+
+    /**
+     * Returns the smoothed round trip time to the Pathfinder server measured by the heartbeat.
+     * When sharded it is the largest round trip time of the connections.
+     *
+     * @param unit to return the round trip time in.
+     * @return the round trip time, <tt>-1</tt> if not measured yet.
+     */
+    public long getRoundTripTime(TimeUnit unit) {
+        long roundTripTime = -1;
+        for (Connection connection : this.services.getConnections()) {
+            roundTripTime = Math.max(roundTripTime, connection.getRoundTripTime(unit));
+        }
+
+        return roundTripTime;
+    }
+
+    /**
+     * Returns the distribution of the round trip times to the Pathfinder server measured by
+     * the heartbeat.
+     *
+     * @return a copy of the round trip times of every connection.
+     */
+    public LatencyHistogram getRoundTripTimes() {
+        LatencyHistogram roundTripTimes = new LatencyHistogram();
+        for (Connection connection : this.services.getConnections()) {
+            roundTripTimes.add(connection.getRoundTripTimes());
+        }
+
+        return roundTripTimes;
+    }
+
+    /**
+     * Adds a {@link ConnectionListener} to listen for lost connections.
+     *
+     * @param listener to add.
+     */
+    public void addConnectionListener(ConnectionListener listener) {
+        this.connectionListeners.add(listener);
+    }
+
+    /**
+     * Removes a {@link ConnectionListener}.
+     *
+     * @param listener to remove.
+     */
+    public void removeConnectionListener(ConnectionListener listener) {
+        this.connectionListeners.remove(listener);
+    }
+
+    /**
+     * Sets whether a lost connection is opened and authenticated again right away. The messages
+     * sent while it is down are queued and sent once it is authenticated. The authentication
+     * listeners are notified again when a single connection is authenticated again. Disabled by default.
+     *
+     * @param autoReconnect <tt>true</tt> to reconnect lost connections, <tt>false</tt> otherwise.
+     */
+    public void setAutoReconnect(boolean autoReconnect) {
+        this.autoReconnect = autoReconnect;
+    }
+
+    /**
+     * Sets whether metadata updates are sent as deltas. When enabled, {@link Transport#updateMetadata(com.google.gson.JsonObject)},
+     * {@link Commodity#updateMetadata(com.google.gson.JsonObject)} and the other updates that change metadata send a JSON merge
+     * patch (RFC 7396) of the keys that changed, were added or were removed since the metadata last received from
+     * the Pathfinder server, unless the full metadata is shorter. A key set to <tt>null</tt> is sent as removed.
+     * The Pathfinder server must support the <tt>metadataPatch</tt> field. Disabled by default.
+     *
+     * @param metadataDeltas <tt>true</tt> to send metadata updates as deltas.
+     */
+    public void setMetadataDeltas(boolean metadataDeltas) {
+        this.services.setMetadataDeltas(metadataDeltas);
+    }
+
+    /**
+     * Returns the number of bytes not sent to the Pathfinder server because metadata updates were
+     * sent as deltas, see {@link #setMetadataDeltas(boolean)}.
+     *
+     * @return the number of bytes saved.
+     */
+    public long getMetadataBytesSaved() {
+        return this.services.getMetadataBytesSaved();
     }
 
     /**
@@ -271,7 +762,12 @@ public class Pathfinder {
      * @return The number of web socket messages sent
      */
     protected long getSentMessageCount() {
-        return this.services.getConnection().getSentMessageCount();
+        long count = 0;
+        for (Connection connection : this.services.getConnections()) {
+            count += connection.getSentMessageCount();
+        }
+
+        return count;
     }
 
     /**
@@ -280,7 +776,48 @@ public class Pathfinder {
      * @return The number of web socket messsages received.
      */
     protected long getReceivedMessageCount() {
-        return this.services.getConnection().getReceivedMessageCount();
+        long count = 0;
+        for (Connection connection : this.services.getConnections()) {
+            count += connection.getReceivedMessageCount();
+        }
+
+        return count;
+    }
+
+    /**
+     * Sets how long the asynchronous model methods wait for a reply before their future fails,
+     * see {@link ModelFuture}. Applies to requests made from now on. Defaults to 30 seconds.
+     *
+     * @param timeout time to wait for a reply, requests don't time out if <tt>0</tt>.
+     * @param unit    of the timeout.
+     */
+    public void setRequestTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0) {
+            logger.error("Illegal Argument Exception: negative request timeout " + timeout);
+            throw new IllegalArgumentException("Negative request timeout " + timeout);
+        }
+
+        this.services.getRequests().setTimeout(timeout, unit);
+    }
+
+    /**
+     * Returns the number of requests made with the asynchronous model methods that are
+     * waiting for a reply.
+     *
+     * @return the number of requests in flight.
+     */
+    public int getPendingRequestCount() {
+        return this.services.getRequests().getPendingCount();
+    }
+
+    /**
+     * Returns the distribution of the time between making a request with one of the
+     * asynchronous model methods and receiving its reply.
+     *
+     * @return a copy of the request latencies.
+     */
+    public LatencyHistogram getRequestLatencies() {
+        return this.services.getRequests().getLatencies().copy();
     }
 
     /**
@@ -295,14 +832,141 @@ public class Pathfinder {
 
     /**
      * Closes the web socket connection to the Pathfinder server, if it is still open, with the specified reason.
+     * If a snapshot store is set the models are saved to it and if an outbound journal is set
+     * it is committed and closed. Requests waiting for a reply fail.
      *
      * @param reason The reason to close the connection.
      * @throws IOException If there was error closing the connection.
      */
     public void close(CloseReason reason) throws IOException {
-        if (this.isConnected()) {
-            logger.info("Connection closed");
-            this.services.getConnection().close(reason);
+        this.closed = true;
+        this.stopPeriodicSnapshots();
+        this.saveSnapshot();
+
+        for (Connection connection : this.services.getConnections()) {
+            if (connection.isConnected()) {
+                logger.info("Connection closed");
+                connection.close(reason);
+            }
+        }
+
+        OutboundJournal journal = this.services.getConnection().getJournal();
+        if (journal != null) {
+            journal.close();
+        }
+
+        this.services.getRequests().failAll("Connection closed");
+    }
+
+    /**
+     * Watches a connection, notifying the connection listeners when it is lost and reconnecting
+     * it if enabled.
+     */
+    private class ConnectionMonitor extends ConnectionListener {
+
+        /**
+         * Connection watched.
+         */
+        private final Connection connection;
+
+        /**
+         * Constructs a monitor of a connection.
+         *
+         * @param connection to watch.
+         */
+        private ConnectionMonitor(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void connectionLost(String reason) {
+            for (ConnectionListener listener : Pathfinder.this.connectionListeners) {
+                listener.connectionLost(reason);
+            }
+
+            if (Pathfinder.this.autoReconnect && !Pathfinder.this.closed && Pathfinder.this.services.getConnections().contains(this.connection)) {
+                // the web socket client can't connect from within its own close callback
+                PathfinderRuntime.getScheduler().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        ConnectionMonitor.this.reconnect();
+                    }
+                });
+            }
+        }
+
+        /**
+         * Authenticates the connection again and opens it, unless the connections were closed.
+         */
+        private void reconnect() {
+            if (Pathfinder.this.closed) {
+                return;
+            }
+
+            logger.info("Reconnecting to the Pathfinder server");
+            try {
+                this.connection.resetAuthentication();
+                Pathfinder.this.connect();
+            } catch (RuntimeException e) {
+                logger.error("Could not reconnect to the Pathfinder server: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Combines the results of the authenticators of several shards. Success is reported once
+     * every shard is authenticated and failure is reported once, for the first shard that fails.
+     */
+    private static class ShardAuthenticationListener extends AuthenticationListener {
+
+        /**
+         * Authenticator whose listeners receive the combined result.
+         */
+        private final Authenticator authenticator;
+
+        /**
+         * Number of shards that have not been authenticated yet.
+         */
+        private final AtomicInteger remaining;
+
+        /**
+         * Whether a shard failed to authenticate.
+         */
+        private final AtomicBoolean failed;
+
+        /**
+         * Constructs a listener combining the results of several shards.
+         *
+         * @param authenticator whose listeners receive the combined result.
+         * @param shardCount    number of shards.
+         */
+        private ShardAuthenticationListener(Authenticator authenticator, int shardCount) {
+            this.authenticator = authenticator;
+            this.remaining = new AtomicInteger(shardCount);
+            this.failed = new AtomicBoolean(false);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void authenticationSuccessful() {
+            if (this.remaining.decrementAndGet() == 0 && !this.failed.get()) {
+                this.authenticator.authenticationSuccessful();
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void authenticationFailed(String reason) {
+            if (this.failed.compareAndSet(false, true)) {
+                this.authenticator.authenticationFailed(reason);
+            }
         }
     }
 }
@@ -0,0 +1,195 @@
+package xyz.thepathfinder.android;
+
+import org.glassfish.tyrus.client.ClientManager;
+import org.glassfish.tyrus.client.ClientProperties;
+import org.glassfish.tyrus.client.ThreadPoolConfig;
+import org.glassfish.tyrus.container.grizzly.client.GrizzlyClientProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * <p>
+ * The web socket client runtime shared by every {@link Pathfinder} object in the JVM. All of the
+ * web socket connections use one client manager and one pool of selector and worker threads, so
+ * the number of threads does not grow with the number of <code>Pathfinder</code> objects.
+ * </p>
+ * <p>
+ * The pool sizes may be changed with {@link #configure(int, int)} before the first
+ * <code>Pathfinder</code> object connects.
+ * </p>
+ * <pre><code>   PathfinderRuntime.configure(1, 8);
+ *   for (String account : accounts) {
+ *       Pathfinder pathfinder = new Pathfinder(appId, jwtFor(account));
+ *       pathfinder.connect();
+ *   }</code></pre>
+ *
+ * @author David Robinson
+ * @see Pathfinder
+ */
+public final class PathfinderRuntime {
+
+    /**
+     * Logs actions performed by the class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(PathfinderRuntime.class);
+
+    /**
+     * Default number of selector threads.
+     */
+    public static final int DEFAULT_SELECTOR_THREADS = 1;
+
+    /**
+     * Smallest number of worker threads the web socket client accepts.
+     */
+    public static final int MIN_WORKER_THREADS = 3;
+
+    /**
+     * Default number of worker threads.
+     */
+    public static final int DEFAULT_WORKER_THREADS = Math.max(PathfinderRuntime.MIN_WORKER_THREADS, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Number of selector threads the client manager is created with.
+     */
+    private static int selectorThreads = PathfinderRuntime.DEFAULT_SELECTOR_THREADS;
+
+    /**
+     * Number of worker threads the client manager is created with.
+     */
+    private static int workerThreads = PathfinderRuntime.DEFAULT_WORKER_THREADS;
+
+    /**
+     * The shared client manager, <tt>null</tt> until the first connection is made.
+     */
+    private static ClientManager clientManager;
+
+    /**
+     * The shared timer, <tt>null</tt> until a request needs a timeout.
+     */
+    private static ScheduledExecutorService scheduler;
+
+    /**
+     * The runtime is only accessed statically.
+     */
+    private PathfinderRuntime() {
+    }
+
+    /**
+     * Sets the number of threads used by the shared web socket client. Must be called before the first
+     * <code>Pathfinder</code> object connects, or after {@link #shutdown()}.
+     *
+     * @param selectorThreads number of threads that wait for network events.
+     * @param workerThreads   number of threads that process the web socket messages, at least
+     *                        {@link #MIN_WORKER_THREADS}.
+     * @throws IllegalArgumentException if there are fewer than one selector thread or fewer than
+     *                                  {@link #MIN_WORKER_THREADS} worker threads.
+     * @throws IllegalStateException    if the runtime has already started.
+     */
+    public static synchronized void configure(int selectorThreads, int workerThreads) {
+        if (selectorThreads < 1 || workerThreads < PathfinderRuntime.MIN_WORKER_THREADS) {
+            logger.error("Illegal Argument Exception: invalid thread counts: " + selectorThreads + ", " + workerThreads);
+            throw new IllegalArgumentException("Invalid thread counts: " + selectorThreads + ", " + workerThreads);
+        }
+
+        if (PathfinderRuntime.clientManager != null) {
+            logger.error("Illegal State Exception: the runtime has already started");
+            throw new IllegalStateException("The runtime has already started");
+        }
+
+        PathfinderRuntime.selectorThreads = selectorThreads;
+        PathfinderRuntime.workerThreads = workerThreads;
+    }
+
+    /**
+     * Returns the number of selector threads.
+     *
+     * @return the number of selector threads.
+     */
+    public static synchronized int getSelectorThreads() {
+        return PathfinderRuntime.selectorThreads;
+    }
+
+    /**
+     * Returns the number of worker threads.
+     *
+     * @return the number of worker threads.
+     */
+    public static synchronized int getWorkerThreads() {
+        return PathfinderRuntime.workerThreads;
+    }
+
+    /**
+     * Returns the shared client manager, creating it on first use.
+     *
+     * @return the shared client manager.
+     */
+    protected static synchronized ClientManager getClientManager() {
+        if (PathfinderRuntime.clientManager == null) {
+            logger.info("Starting shared web socket client with " + PathfinderRuntime.selectorThreads +
+                    " selector threads and " + PathfinderRuntime.workerThreads + " worker threads");
+
+            ClientManager manager = ClientManager.createClient();
+            manager.getProperties().put(ClientProperties.SHARED_CONTAINER, true);
+
+            ThreadPoolConfig workers = ThreadPoolConfig.defaultConfig()
+                    .setPoolName("pathfinder-worker")
+                    .setCorePoolSize(PathfinderRuntime.workerThreads)
+                    .setMaxPoolSize(PathfinderRuntime.workerThreads)
+                    .setDaemon(true);
+            manager.getProperties().put(ClientProperties.WORKER_THREAD_POOL_CONFIG, workers);
+
+            org.glassfish.grizzly.threadpool.ThreadPoolConfig selectors = org.glassfish.grizzly.threadpool.ThreadPoolConfig.defaultConfig()
+                    .setPoolName("pathfinder-selector")
+                    .setCorePoolSize(PathfinderRuntime.selectorThreads)
+                    .setMaxPoolSize(PathfinderRuntime.selectorThreads)
+                    .setDaemon(true);
+            manager.getProperties().put(GrizzlyClientProperties.SELECTOR_THREAD_POOL_CONFIG, selectors);
+
+            PathfinderRuntime.clientManager = manager;
+        }
+
+        return PathfinderRuntime.clientManager;
+    }
+
+    /**
+     * Returns the shared timer used for request timeouts, creating it on first use. The timer
+     * runs on a single daemon thread.
+     *
+     * @return the shared timer.
+     */
+    protected static synchronized ScheduledExecutorService getScheduler() {
+        if (PathfinderRuntime.scheduler == null) {
+            PathfinderRuntime.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "pathfinder-timer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return PathfinderRuntime.scheduler;
+    }
+
+    /**
+     * Stops the shared web socket client and timer. Open connections are closed. The client is started
+     * again the next time a <code>Pathfinder</code> object connects.
+     */
+    public static synchronized void shutdown() {
+        if (PathfinderRuntime.clientManager != null) {
+            logger.info("Stopping shared web socket client");
+            PathfinderRuntime.clientManager.shutdown();
+            PathfinderRuntime.clientManager = null;
+        }
+
+        if (PathfinderRuntime.scheduler != null) {
+            PathfinderRuntime.scheduler.shutdownNow();
+            PathfinderRuntime.scheduler = null;
+        }
+    }
+}
@@ -1,7 +1,18 @@
 package xyz.thepathfinder.android;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 /**
- * Gives access to the model repository and the connection to the pathfinder server.
+ * Gives access to the model repository, the connections to the pathfinder server and the
+ * requests waiting for a reply.
+ * When there is more than one connection, the connections are shards: each model's messages
+ * are sent through the connection chosen by hashing the model's top level cluster, see
+ * {@link #getConnection(String, ModelType)}.
  *
  * @author David Robinson
  */
@@ -13,9 +24,36 @@ class PathfinderServices {
     private ModelRegistry registry;
 
     /**
-     * Connection to the pathfinder server
+     * Connections to the pathfinder server, one per shard.
+     */
+    private volatile List<Connection> connections;
+
+    /**
+     * Keeps track of the requests waiting for a reply.
+     */
+    private final RequestTracker requests;
+
+    /**
+     * Held for reading while a message is dispatched, and for writing while a message about the
+     * root cluster is dispatched over several connections or the models are read from another
+     * thread, see {@link #lockModels()}.
+     */
+    private final ReentrantReadWriteLock dispatchLock;
+
+    /**
+     * Serializes the dispatch of messages about the models of each shard.
+     */
+    private volatile ReentrantLock[] shardLocks;
+
+    /**
+     * Whether metadata updates are sent as merge patches.
+     */
+    private volatile boolean metadataDeltas;
+
+    /**
+     * Number of bytes not sent because metadata updates were sent as merge patches.
      */
-    private Connection connection;
+    private final AtomicLong metadataBytesSaved;
 
     /**
      * Constructs a pathfinder services object.
@@ -25,7 +63,11 @@ class PathfinderServices {
      */
     protected PathfinderServices(ModelRegistry registry, Connection connection) {
         this.registry = registry;
-        this.connection = connection;
+        this.requests = new RequestTracker();
+        this.dispatchLock = new ReentrantReadWriteLock();
+        this.metadataDeltas = false;
+        this.metadataBytesSaved = new AtomicLong();
+        this.setConnections(Collections.singletonList(connection));
     }
 
     /**
@@ -38,11 +80,215 @@ class PathfinderServices {
     }
 
     /**
-     * Returns the connection to the pathfinder server.
+     * Returns the tracker of the requests waiting for a reply.
+     *
+     * @return the request tracker.
+     */
+    protected RequestTracker getRequests() {
+        return this.requests;
+    }
+
+    /**
+     * Returns whether metadata updates are sent as merge patches.
+     *
+     * @return <tt>true</tt> if metadata deltas are enabled, <tt>false</tt> otherwise.
+     */
+    protected boolean isMetadataDeltas() {
+        return this.metadataDeltas;
+    }
+
+    /**
+     * Sets whether metadata updates are sent as merge patches.
+     *
+     * @param metadataDeltas <tt>true</tt> to send merge patches.
+     */
+    protected void setMetadataDeltas(boolean metadataDeltas) {
+        this.metadataDeltas = metadataDeltas;
+    }
+
+    /**
+     * Records bytes not sent because a metadata update was sent as a merge patch.
+     *
+     * @param bytes number of bytes saved.
+     */
+    protected void addMetadataBytesSaved(long bytes) {
+        this.metadataBytesSaved.addAndGet(bytes);
+    }
+
+    /**
+     * Returns the number of bytes not sent because metadata updates were sent as merge patches.
+     *
+     * @return the number of bytes saved.
+     */
+    protected long getMetadataBytesSaved() {
+        return this.metadataBytesSaved.get();
+    }
+
+    /**
+     * Returns the connection to the pathfinder server, the first shard's connection if sharded.
      *
      * @return the connection to the pathfinder server.
      */
     protected Connection getConnection() {
-        return this.connection;
+        return this.connections.get(0);
+    }
+
+    /**
+     * Returns the connection that carries the messages of the model at the specified path.
+     * Models in the same top level cluster, for example <tt>"/root/cityA"</tt>, always use
+     * the same connection. The root cluster and the transports and commodities directly in it
+     * use the first connection.
+     *
+     * @param pathName  of the model, may be <tt>null</tt>.
+     * @param modelType of the model, <tt>null</tt> if unknown.
+     * @return the connection to send the model's messages through.
+     */
+    protected Connection getConnection(String pathName, ModelType modelType) {
+        List<Connection> connections = this.connections;
+        if (connections.size() == 1) {
+            return connections.get(0);
+        }
+
+        return connections.get(PathfinderServices.getShard(pathName, modelType, connections.size()));
+    }
+
+    /**
+     * Returns all of the connections to the pathfinder server.
+     *
+     * @return the connections, one per shard.
+     */
+    protected List<Connection> getConnections() {
+        return this.connections;
+    }
+
+    /**
+     * Replaces the connections to the pathfinder server.
+     *
+     * @param connections one per shard.
+     */
+    protected void setConnections(List<Connection> connections) {
+        ReentrantLock[] locks = new ReentrantLock[connections.size()];
+        for (int k = 0; k < locks.length; k++) {
+            locks[k] = new ReentrantLock();
+        }
+
+        for (Connection connection : connections) {
+            connection.setRequestTracker(this.requests, this.registry);
+        }
+
+        this.shardLocks = locks;
+        this.connections = Collections.unmodifiableList(new ArrayList<Connection>(connections));
+    }
+
+    /**
+     * Acquires the locks needed to dispatch a message about the model at the specified path.
+     * Messages about models of the same shard are dispatched one at a time, messages about the
+     * root cluster exclusively. If there is a single connection its messages are already
+     * dispatched one at a time, only the models are kept from being read by {@link #lockModels()}.
+     *
+     * @param pathName  of the model the message is about.
+     * @param modelType of the model the message is about.
+     */
+    protected void lockDispatch(String pathName, ModelType modelType) {
+        ReentrantLock[] locks = this.shardLocks;
+        if (locks.length == 1) {
+            this.dispatchLock.readLock().lock();
+        } else if (PathfinderServices.getShardKey(pathName, modelType) == null) {
+            this.dispatchLock.writeLock().lock();
+        } else {
+            this.dispatchLock.readLock().lock();
+            locks[PathfinderServices.getShard(pathName, modelType, locks.length)].lock();
+        }
+    }
+
+    /**
+     * Releases the locks acquired by {@link #lockDispatch(String, ModelType)}.
+     *
+     * @param pathName  of the model the message is about.
+     * @param modelType of the model the message is about.
+     */
+    protected void unlockDispatch(String pathName, ModelType modelType) {
+        ReentrantLock[] locks = this.shardLocks;
+        if (locks.length == 1) {
+            this.dispatchLock.readLock().unlock();
+        } else if (PathfinderServices.getShardKey(pathName, modelType) == null) {
+            this.dispatchLock.writeLock().unlock();
+        } else {
+            locks[PathfinderServices.getShard(pathName, modelType, locks.length)].unlock();
+            this.dispatchLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Waits for the messages being dispatched and blocks the dispatch of further messages until
+     * {@link #unlockModels()}, so the models can be read consistently from another thread. A
+     * thread dispatching a message can't wait for itself, so the models aren't locked if it is
+     * called from a model listener.
+     *
+     * @return <tt>true</tt> if the models were locked, <tt>false</tt> otherwise.
+     */
+    protected boolean lockModels() {
+        if (this.dispatchLock.getReadHoldCount() > 0) {
+            return false;
+        }
+
+        this.dispatchLock.writeLock().lock();
+        return true;
+    }
+
+    /**
+     * Releases the lock acquired by {@link #lockModels()}.
+     */
+    protected void unlockModels() {
+        this.dispatchLock.writeLock().unlock();
+    }
+
+    /**
+     * Returns the shard of the model at the specified path.
+     *
+     * @param pathName   of the model, may be <tt>null</tt>.
+     * @param modelType  of the model, <tt>null</tt> if unknown.
+     * @param shardCount number of shards.
+     * @return the shard's index.
+     */
+    protected static int getShard(String pathName, ModelType modelType, int shardCount) {
+        String key = PathfinderServices.getShardKey(pathName, modelType);
+        if (key == null) {
+            return 0;
+        }
+
+        return (key.hashCode() & Integer.MAX_VALUE) % shardCount;
+    }
+
+    /**
+     * Returns the path of the top level cluster containing the specified model, the first two
+     * segments of the path of the model's cluster. A transport or commodity is in the cluster
+     * of its parent path, so <tt>"/root/5"</tt> is in the root cluster.
+     *
+     * @param pathName  of a model, may be <tt>null</tt>.
+     * @param modelType of the model, <tt>null</tt> if unknown, the path is then taken as a cluster's.
+     * @return the top level cluster's path, <tt>null</tt> if the model is in the root cluster.
+     */
+    private static String getShardKey(String pathName, ModelType modelType) {
+        if (pathName == null) {
+            return null;
+        }
+
+        String clusterPath = pathName;
+        if (modelType != null && modelType != ModelType.CLUSTER) {
+            int last = pathName.lastIndexOf('/');
+            if (last <= 0) {
+                return null;
+            }
+            clusterPath = pathName.substring(0, last);
+        }
+
+        int first = clusterPath.indexOf('/', 1);
+        if (first < 0 || first == clusterPath.length() - 1) {
+            return null;
+        }
+
+        int second = clusterPath.indexOf('/', first + 1);
+        return second < 0 ? clusterPath : clusterPath.substring(0, second);
     }
 }
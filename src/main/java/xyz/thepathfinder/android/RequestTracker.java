@@ -0,0 +1,253 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Keeps track of the requests made with the asynchronous model methods. The Pathfinder
+ * server's replies carry no request identifier, so a reply is matched to the oldest
+ * pending request of the same model that expects a reply of that type. An error reply
+ * fails the oldest pending request of the model.
+ *
+ * @author David Robinson
+ */
+class RequestTracker {
+
+    /**
+     * Logs actions performed by the class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(RequestTracker.class);
+
+    /**
+     * Default time to wait for a reply, in milliseconds.
+     */
+    protected static final long DEFAULT_TIMEOUT = 30000;
+
+    /**
+     * Pending requests of each model, oldest first.
+     */
+    private final Map<Model, List<ModelFuture<?>>> pending;
+
+    /**
+     * Number of pending requests.
+     */
+    private int pendingCount;
+
+    /**
+     * Time to wait for a reply, in milliseconds. Requests don't time out if <tt>0</tt>.
+     */
+    private volatile long timeout;
+
+    /**
+     * Latencies of the requests that completed.
+     */
+    private final LatencyHistogram latencies;
+
+    /**
+     * Constructs an empty request tracker.
+     */
+    protected RequestTracker() {
+        this.pending = new IdentityHashMap<Model, List<ModelFuture<?>>>();
+        this.pendingCount = 0;
+        this.timeout = RequestTracker.DEFAULT_TIMEOUT;
+        this.latencies = new LatencyHistogram();
+    }
+
+    /**
+     * Sets the time to wait for a reply to requests made from now on.
+     *
+     * @param timeout time to wait, requests don't time out if <tt>0</tt>.
+     * @param unit    of the timeout.
+     */
+    protected void setTimeout(long timeout, TimeUnit unit) {
+        this.timeout = unit.toMillis(timeout);
+    }
+
+    /**
+     * Returns the time to wait for a reply.
+     *
+     * @return the timeout in milliseconds.
+     */
+    protected long getTimeout() {
+        return this.timeout;
+    }
+
+    /**
+     * Starts tracking a request. Must be called before the request is sent so the
+     * reply can't arrive first.
+     *
+     * @param model           the request is made on.
+     * @param replyType       type of the reply that completes the request.
+     * @param expectedReplies number of replies that complete the request.
+     * @param <T>             type of the model.
+     * @return the future of the request.
+     */
+    protected <T extends Model> ModelFuture<T> track(T model, String replyType, int expectedReplies) {
+        final ModelFuture<T> future = new ModelFuture<T>(model, replyType, expectedReplies);
+
+        synchronized (this) {
+            List<ModelFuture<?>> requests = this.pending.get(model);
+            if (requests == null) {
+                requests = new LinkedList<ModelFuture<?>>();
+                this.pending.put(model, requests);
+            }
+
+            requests.add(future);
+            this.pendingCount++;
+        }
+
+        ScheduledFuture<?> timeoutTask = null;
+        final long timeout = this.timeout;
+        if (timeout > 0) {
+            timeoutTask = PathfinderRuntime.getScheduler().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    String reason = "No " + future.getReplyType() + " reply within " + timeout + " ms";
+                    logger.warn("Request timed out: " + reason);
+                    future.fail(reason, new TimeoutException(reason));
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+        }
+
+        future.track(this, timeoutTask);
+        return future;
+    }
+
+    /**
+     * Matches a reply from the Pathfinder server to a pending request of the model.
+     *
+     * @param model the reply is about.
+     * @param type  of the reply.
+     * @param value of the reply, may be <tt>null</tt>.
+     */
+    protected void reply(Model model, String type, JsonObject value) {
+        ModelFuture<?> matched = null;
+        boolean isError = "Error".equals(type);
+
+        synchronized (this) {
+            List<ModelFuture<?>> requests = this.pending.get(model);
+            if (requests == null) {
+                return;
+            }
+
+            for (ModelFuture<?> request : requests) {
+                if (isError || request.getReplyType().equals(type)) {
+                    matched = request;
+                    break;
+                }
+            }
+        }
+
+        if (matched == null) {
+            return;
+        }
+
+        if (isError) {
+            String reason = value != null && value.has("reason") ? value.get("reason").getAsString() : "Error";
+            matched.fail(reason, null);
+        } else if (matched.countReply()) {
+            matched.complete();
+        }
+    }
+
+    /**
+     * Removes a request that is done and records its latency if it completed.
+     *
+     * @param future    of the request.
+     * @param completed whether the request completed successfully.
+     */
+    protected void finished(ModelFuture<?> future, boolean completed) {
+        synchronized (this) {
+            List<ModelFuture<?>> requests = this.pending.get(future.getModel());
+            if (requests == null || !requests.remove(future)) {
+                return;
+            }
+
+            if (requests.isEmpty()) {
+                this.pending.remove(future.getModel());
+            }
+
+            this.pendingCount--;
+        }
+
+        if (completed) {
+            this.latencies.record(System.nanoTime() - future.getStartTime(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Fails every pending request.
+     *
+     * @param reason the requests failed.
+     */
+    protected void failAll(String reason) {
+        List<ModelFuture<?>> requests = new ArrayList<ModelFuture<?>>();
+        synchronized (this) {
+            for (List<ModelFuture<?>> modelRequests : this.pending.values()) {
+                requests.addAll(modelRequests);
+            }
+        }
+
+        for (ModelFuture<?> request : requests) {
+            request.fail(reason, null);
+        }
+    }
+
+    /**
+     * Returns if a model has requests waiting for a reply.
+     *
+     * @param model the requests are made on.
+     * @return <tt>true</tt> if the model has pending requests, <tt>false</tt> otherwise.
+     */
+    protected synchronized boolean isPending(Model model) {
+        return this.pending.containsKey(model);
+    }
+
+    /**
+     * Returns if a model has requests waiting for a reply of a type.
+     *
+     * @param model     the requests are made on.
+     * @param replyType type of the reply.
+     * @return <tt>true</tt> if the model has pending requests expecting the reply, <tt>false</tt> otherwise.
+     */
+    protected synchronized boolean isPending(Model model, String replyType) {
+        List<ModelFuture<?>> requests = this.pending.get(model);
+        if (requests != null) {
+            for (ModelFuture<?> request : requests) {
+                if (request.getReplyType().equals(replyType)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the number of requests waiting for a reply.
+     *
+     * @return the number of pending requests.
+     */
+    protected synchronized int getPendingCount() {
+        return this.pendingCount;
+    }
+
+    /**
+     * Returns the latencies of the requests that completed.
+     *
+     * @return the latency histogram.
+     */
+    protected LatencyHistogram getLatencies() {
+        return this.latencies;
+    }
+}
@@ -7,7 +7,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Route of the model.
@@ -31,6 +34,21 @@ public class Route {
      */
     private final List<Action> actions;
 
+    /**
+     * Distance along the route from the first action to each action, in meters.
+     */
+    private final double[] cumulativeDistances;
+
+    /**
+     * Index of each action in the route.
+     */
+    private final Map<Action, Integer> actionIndices;
+
+    /**
+     * Whether the route was planned on the device instead of by the pathfinder server.
+     */
+    private final boolean provisional;
+
     /**
      * Creates a route for a transport to perform.
      *
@@ -38,9 +56,36 @@ public class Route {
      * @param services  a pathfinder services object.
      */
     protected Route(JsonObject routeJson, PathfinderServices services) {
-        logger.info("Parsing route: " + routeJson.toString());
-        this.transport = Route.getTransport(routeJson, services);
-        this.actions = Route.getActions(routeJson, services);
+        this(Route.getTransport(routeJson, services), Route.getActions(routeJson, services), false);
+    }
+
+    /**
+     * Creates a provisional route planned on the device.
+     *
+     * @param transport to perform the route.
+     * @param actions   for the transport to perform, starting with its start action.
+     */
+    protected Route(Transport transport, List<Action> actions) {
+        this(transport, actions, true);
+    }
+
+    /**
+     * Creates a route for a transport to perform.
+     *
+     * @param transport   to perform the route.
+     * @param actions     for the transport to perform.
+     * @param provisional whether the route was planned on the device.
+     */
+    private Route(Transport transport, List<Action> actions, boolean provisional) {
+        this.transport = transport;
+        this.actions = Collections.unmodifiableList(new ArrayList<Action>(actions));
+        this.provisional = provisional;
+        this.cumulativeDistances = Route.getCumulativeDistances(this.actions);
+
+        this.actionIndices = new IdentityHashMap<Action, Integer>();
+        for (int k = 0; k < this.actions.size(); k++) {
+            this.actionIndices.put(this.actions.get(k), k);
+        }
     }
 
     /**
@@ -75,6 +120,24 @@ public class Route {
         return list;
     }
 
+    /**
+     * Computes the distance along the route from the first action to each action.
+     *
+     * @param actions of the route.
+     * @return the cumulative distances in meters.
+     */
+    private static double[] getCumulativeDistances(List<Action> actions) {
+        double[] distances = new double[actions.size()];
+
+        for (int k = 1; k < distances.length; k++) {
+            Action previous = actions.get(k - 1);
+            Action action = actions.get(k);
+            distances[k] = distances[k - 1] + GeoMath.distance(previous.getLatitude(), previous.getLongitude(), action.getLatitude(), action.getLongitude());
+        }
+
+        return distances;
+    }
+
     /**
      * Returns the transport to perform the route.
      *
@@ -84,15 +147,125 @@ public class Route {
         return this.transport;
     }
 
+    /**
+     * Returns <tt>true</tt> if the route was planned on the device by
+     * {@link Cluster#planLocalRoutes(long, java.util.concurrent.TimeUnit)} and will be replaced
+     * when the pathfinder server routes the cluster again.
+     *
+     * @return <tt>true</tt> if the route is provisional, <tt>false</tt> if it came from the server.
+     */
+    public boolean isProvisional() {
+        return this.provisional;
+    }
+
     /**
      * Returns a list of actions for the transport to perform.
      *
-     * @return a list of actions.
+     * @return an unmodifiable list of actions.
      */
     public List<Action> getActions() {
         return this.actions;
     }
 
+    /**
+     * Returns the index of an action in the route.
+     *
+     * @param action of the route.
+     * @return the index of the action, <tt>-1</tt> if the action isn't part of the route.
+     */
+    public int indexOf(Action action) {
+        Integer index = this.actionIndices.get(action);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Returns the length of the route, from the first action to the last.
+     *
+     * @return the distance in meters.
+     */
+    public double getTotalDistance() {
+        return this.cumulativeDistances.length == 0 ? 0 : this.cumulativeDistances[this.cumulativeDistances.length - 1];
+    }
+
+    /**
+     * Returns the distance along the route from the first action to the specified action.
+     *
+     * @param actionIndex index of the action.
+     * @return the distance in meters.
+     */
+    public double getDistanceTo(int actionIndex) {
+        return this.cumulativeDistances[actionIndex];
+    }
+
+    /**
+     * Returns the distance from the previous action to the specified action.
+     *
+     * @param actionIndex index of the action.
+     * @return the distance in meters, <tt>0</tt> for the first action.
+     */
+    public double getLegDistance(int actionIndex) {
+        return actionIndex == 0 ? 0 : this.cumulativeDistances[actionIndex] - this.cumulativeDistances[actionIndex - 1];
+    }
+
+    /**
+     * Returns the distance along the route from the specified action to the last action.
+     *
+     * @param actionIndex index of the action.
+     * @return the distance in meters.
+     */
+    public double remainingDistanceFrom(int actionIndex) {
+        return this.getTotalDistance() - this.cumulativeDistances[actionIndex];
+    }
+
+    /**
+     * Returns the distance left to travel from a location on the way to the specified action,
+     * the straight line distance to that action plus the route's distance from there on.
+     *
+     * @param latitude        of the location.
+     * @param longitude       of the location.
+     * @param nextActionIndex index of the next action to be performed.
+     * @return the distance in meters.
+     */
+    public double remainingDistanceFrom(double latitude, double longitude, int nextActionIndex) {
+        Action next = this.actions.get(nextActionIndex);
+        return GeoMath.distance(latitude, longitude, next.getLatitude(), next.getLongitude()) + this.remainingDistanceFrom(nextActionIndex);
+    }
+
+    /**
+     * Returns the time to travel from the first action to the specified action at a constant speed.
+     *
+     * @param action of the route.
+     * @param speed  in meters per second.
+     * @return the time in seconds.
+     * @throws IllegalArgumentException if the action isn't part of the route or the speed isn't positive.
+     */
+    public double etaFor(Action action, double speed) {
+        int index = this.indexOf(action);
+        if (index < 0) {
+            logger.error("Illegal Argument Exception: action is not part of the route: " + action);
+            throw new IllegalArgumentException("Action is not part of the route: " + action);
+        }
+
+        return this.etaFor(index, speed);
+    }
+
+    /**
+     * Returns the time to travel from the first action to the specified action at a constant speed.
+     *
+     * @param actionIndex index of the action.
+     * @param speed       in meters per second.
+     * @return the time in seconds.
+     * @throws IllegalArgumentException if the speed isn't positive.
+     */
+    public double etaFor(int actionIndex, double speed) {
+        if (!(speed > 0)) {
+            logger.error("Illegal Argument Exception: speed must be positive: " + speed);
+            throw new IllegalArgumentException("Speed must be positive: " + speed);
+        }
+
+        return this.cumulativeDistances[actionIndex] / speed;
+    }
+
     /**
      * {@inheritDoc}
      */
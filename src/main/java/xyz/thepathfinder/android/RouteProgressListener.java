@@ -0,0 +1,45 @@
+package xyz.thepathfinder.android;
+
+/**
+ * The <tt>RouteProgressListener</tt> gives developers access to notifications about a
+ * transport's progress along its route, see {@link RouteProgressTracker}.
+ *
+ * @author David Robinson
+ */
+public abstract class RouteProgressListener implements Listener {
+
+    /**
+     * Invoked when the transport reached the location of an action.
+     *
+     * @param route       the transport is following.
+     * @param action      reached.
+     * @param actionIndex index of the action in the route.
+     */
+    public void actionReached(Route route, Action action, int actionIndex) {
+    }
+
+    /**
+     * Invoked when the transport left its route.
+     *
+     * @param route    the transport was following.
+     * @param distance from the transport to the route, in meters.
+     */
+    public void offRoute(Route route, double distance) {
+    }
+
+    /**
+     * Invoked when the transport returned to its route after leaving it.
+     *
+     * @param route the transport is following.
+     */
+    public void backOnRoute(Route route) {
+    }
+
+    /**
+     * Invoked when the transport reached the last action of its route.
+     *
+     * @param route completed.
+     */
+    public void routeCompleted(Route route) {
+    }
+}
@@ -0,0 +1,341 @@
+package xyz.thepathfinder.android;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * <p>
+ * Follows a transport along its route, see {@link Transport#getRoute()}. The tracker keeps a
+ * cursor on the next action to be performed and advances it as location updates arrive, so each
+ * update only looks at the next few actions and the current leg of the route instead of the
+ * whole route. A new route from the Pathfinder server restarts the tracker on that route.
+ * </p>
+ * <p>
+ * An action is reached once the transport is within the arrival radius of it. The transport is
+ * off route after {@link #OFF_ROUTE_UPDATES} consecutive updates farther than the off route
+ * distance from its current leg, and back on route once it is within half of that distance,
+ * so a noisy location doesn't flip between the two.
+ * </p>
+ * <pre><code>   RouteProgressTracker tracker = new RouteProgressTracker(transport);
+ *   tracker.addListener(new RouteProgressListener() {
+ *       public void actionReached(Route route, Action action, int actionIndex) {
+ *           showNextStop(route.getActions().get(actionIndex + 1));
+ *       }
+ *   });</code></pre>
+ *
+ * @author David Robinson
+ * @see RouteProgressListener
+ */
+public class RouteProgressTracker extends Listenable<RouteProgressListener, Transport> {
+
+    /**
+     * Logs actions performed by the class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(RouteProgressTracker.class);
+
+    /**
+     * Default distance from an action at which it is reached, in meters.
+     */
+    public static final double DEFAULT_ARRIVAL_RADIUS = 30;
+
+    /**
+     * Default distance from the current leg at which the transport is off route, in meters.
+     */
+    public static final double DEFAULT_OFF_ROUTE_DISTANCE = 150;
+
+    /**
+     * Number of consecutive location updates away from the route before the transport is off route.
+     */
+    public static final int OFF_ROUTE_UPDATES = 3;
+
+    /**
+     * Number of actions, starting at the next one, checked for arrival on each location update.
+     */
+    private static final int LOOKAHEAD = 3;
+
+    /**
+     * The transport being followed.
+     */
+    private final Transport transport;
+
+    /**
+     * Distance from an action at which it is reached, in meters.
+     */
+    private final double arrivalRadius;
+
+    /**
+     * Distance from the current leg at which the transport is off route, in meters.
+     */
+    private final double offRouteDistance;
+
+    /**
+     * Listens to the transport's location and route.
+     */
+    private final TransportListener transportListener;
+
+    /**
+     * The route being followed, <tt>null</tt> if the transport has none.
+     */
+    private Route route;
+
+    /**
+     * Index of the next action to be reached.
+     */
+    private int nextActionIndex;
+
+    /**
+     * Whether the transport is off route.
+     */
+    private boolean offRoute;
+
+    /**
+     * Number of consecutive location updates away from the route.
+     */
+    private int updatesAway;
+
+    /**
+     * Constructs a tracker of a transport with the default arrival radius and off route distance.
+     *
+     * @param transport to follow.
+     */
+    public RouteProgressTracker(Transport transport) {
+        this(transport, RouteProgressTracker.DEFAULT_ARRIVAL_RADIUS, RouteProgressTracker.DEFAULT_OFF_ROUTE_DISTANCE);
+    }
+
+    /**
+     * Constructs a tracker of a transport. The tracker starts on the transport's current route.
+     *
+     * @param transport        to follow.
+     * @param arrivalRadius    distance from an action at which it is reached, in meters.
+     * @param offRouteDistance distance from the current leg at which the transport is off route, in meters.
+     * @throws IllegalArgumentException if a distance isn't positive.
+     */
+    public RouteProgressTracker(Transport transport, double arrivalRadius, double offRouteDistance) {
+        if (!(arrivalRadius > 0) || !(offRouteDistance > 0)) {
+            logger.error("Illegal Argument Exception: invalid tracking distances: " + arrivalRadius + ", " + offRouteDistance);
+            throw new IllegalArgumentException("Invalid tracking distances: " + arrivalRadius + ", " + offRouteDistance);
+        }
+
+        this.transport = transport;
+        this.arrivalRadius = arrivalRadius;
+        this.offRouteDistance = offRouteDistance;
+        this.setRoute(transport.getRoute());
+
+        this.transportListener = new TransportListener() {
+            @Override
+            public void locationUpdated(double latitude, double longitude) {
+                RouteProgressTracker.this.notifyUpdate("LocationUpdated", RouteProgressTracker.this.transport);
+            }
+
+            @Override
+            public void routed(Route route) {
+                RouteProgressTracker.this.setRoute(route);
+            }
+        };
+        transport.addListener(this.transportListener);
+    }
+
+    /**
+     * Stops following the transport.
+     */
+    public void stop() {
+        this.transport.removeListener(this.transportListener);
+    }
+
+    /**
+     * Returns the transport being followed.
+     *
+     * @return the transport.
+     */
+    public Transport getTransport() {
+        return this.transport;
+    }
+
+    /**
+     * Returns the route being followed.
+     *
+     * @return the route, <tt>null</tt> if the transport has none.
+     */
+    public synchronized Route getRoute() {
+        return this.route;
+    }
+
+    /**
+     * Returns the index of the next action to be reached.
+     *
+     * @return the index, the number of actions if the route is completed.
+     */
+    public synchronized int getNextActionIndex() {
+        return this.nextActionIndex;
+    }
+
+    /**
+     * Returns the next action to be reached.
+     *
+     * @return the next action, <tt>null</tt> if there is no route or it is completed.
+     */
+    public synchronized Action getNextAction() {
+        if (this.route == null || this.isCompleted()) {
+            return null;
+        }
+
+        return this.route.getActions().get(this.nextActionIndex);
+    }
+
+    /**
+     * Returns <tt>true</tt> if every action of the route was reached.
+     *
+     * @return <tt>true</tt> if the route is completed, <tt>false</tt> otherwise.
+     */
+    public synchronized boolean isCompleted() {
+        return this.route != null && this.nextActionIndex >= this.route.getActions().size();
+    }
+
+    /**
+     * Returns <tt>true</tt> if the transport left its route.
+     *
+     * @return <tt>true</tt> if off route, <tt>false</tt> otherwise.
+     */
+    public synchronized boolean isOffRoute() {
+        return this.offRoute;
+    }
+
+    /**
+     * Starts following a route. The start action, the transport's location when routed, is
+     * not reported as reached.
+     *
+     * @param route to follow, may be <tt>null</tt>.
+     */
+    protected synchronized void setRoute(Route route) {
+        this.route = route;
+        this.nextActionIndex = 0;
+        this.offRoute = false;
+        this.updatesAway = 0;
+
+        if (route != null) {
+            List<Action> actions = route.getActions();
+            while (this.nextActionIndex < actions.size() && actions.get(this.nextActionIndex).getStatus() == ActionStatus.START) {
+                this.nextActionIndex++;
+            }
+        }
+    }
+
+    /**
+     * Advances the tracker to a new location of the transport.
+     *
+     * @param latitude  of the transport.
+     * @param longitude of the transport.
+     */
+    public synchronized void update(double latitude, double longitude) {
+        if (this.route == null || this.isCompleted()) {
+            return;
+        }
+
+        List<Action> actions = this.route.getActions();
+
+        int reached = -1;
+        int lookahead = Math.min(actions.size(), this.nextActionIndex + RouteProgressTracker.LOOKAHEAD);
+        for (int k = this.nextActionIndex; k < lookahead && reached < 0; k++) {
+            if (this.distanceTo(actions.get(k), latitude, longitude) <= this.arrivalRadius) {
+                reached = k;
+            }
+        }
+
+        if (reached >= 0) {
+            // actions that were skipped over are reached as well, and so are actions at the same location
+            while (this.nextActionIndex <= reached ||
+                    (this.nextActionIndex < actions.size() && this.distanceTo(actions.get(this.nextActionIndex), latitude, longitude) <= this.arrivalRadius)) {
+                int index = this.nextActionIndex++;
+                for (RouteProgressListener listener : this.getListeners()) {
+                    listener.actionReached(this.route, actions.get(index), index);
+                }
+            }
+
+            this.updatesAway = 0;
+            if (this.isCompleted()) {
+                this.offRoute = false;
+                for (RouteProgressListener listener : this.getListeners()) {
+                    listener.routeCompleted(this.route);
+                }
+                return;
+            }
+        }
+
+        double distance = this.distanceToLeg(actions, latitude, longitude);
+        if (!this.offRoute) {
+            this.updatesAway = distance > this.offRouteDistance ? this.updatesAway + 1 : 0;
+            if (this.updatesAway >= RouteProgressTracker.OFF_ROUTE_UPDATES) {
+                this.offRoute = true;
+                logger.info("Transport " + this.transport.getPathName() + " is " + distance + " m off route");
+                for (RouteProgressListener listener : this.getListeners()) {
+                    listener.offRoute(this.route, distance);
+                }
+            }
+        } else if (distance < this.offRouteDistance / 2) {
+            this.offRoute = false;
+            this.updatesAway = 0;
+            for (RouteProgressListener listener : this.getListeners()) {
+                listener.backOnRoute(this.route);
+            }
+        }
+    }
+
+    /**
+     * Returns the distance from a location to an action.
+     *
+     * @param action    to measure to.
+     * @param latitude  of the location.
+     * @param longitude of the location.
+     * @return the distance in meters.
+     */
+    private double distanceTo(Action action, double latitude, double longitude) {
+        return GeoMath.distance(latitude, longitude, action.getLatitude(), action.getLongitude());
+    }
+
+    /**
+     * Returns the distance from a location to the current leg of the route, the leg ending at the
+     * next action, or the leg after it if that is closer.
+     *
+     * @param actions   of the route.
+     * @param latitude  of the location.
+     * @param longitude of the location.
+     * @return the distance in meters.
+     */
+    private double distanceToLeg(List<Action> actions, double latitude, double longitude) {
+        Action next = actions.get(this.nextActionIndex);
+
+        double distance;
+        if (this.nextActionIndex == 0) {
+            distance = this.distanceTo(next, latitude, longitude);
+        } else {
+            Action previous = actions.get(this.nextActionIndex - 1);
+            distance = GeoMath.distanceToSegment(latitude, longitude, previous.getLatitude(), previous.getLongitude(), next.getLatitude(), next.getLongitude());
+        }
+
+        if (this.nextActionIndex + 1 < actions.size()) {
+            Action after = actions.get(this.nextActionIndex + 1);
+            distance = Math.min(distance, GeoMath.distanceToSegment(latitude, longitude, next.getLatitude(), next.getLongitude(), after.getLatitude(), after.getLongitude()));
+        }
+
+        return distance;
+    }
+
+    /**
+     * Advances the tracker to the transport's current location.
+     *
+     * @param reason    for notifying the tracker, <tt>"LocationUpdated"</tt>.
+     * @param transport whose location was updated.
+     * @return <tt>true</tt> if the tracker was advanced, <tt>false</tt> otherwise.
+     */
+    @Override
+    protected boolean notifyUpdate(String reason, Transport transport) {
+        if (!"LocationUpdated".equals(reason)) {
+            return false;
+        }
+
+        this.update(transport.getLatitude(), transport.getLongitude());
+        return true;
+    }
+}
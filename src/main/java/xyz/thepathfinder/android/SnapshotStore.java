@@ -0,0 +1,473 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Stores the models known to a {@link Pathfinder} object in a local file, so they can be shown
+ * immediately the next time the application starts instead of waiting for the connection,
+ * authentication and the first reads to complete. Use {@link Pathfinder#setSnapshotStore(SnapshotStore)}
+ * to enable it.
+ * </p>
+ * <p>
+ * Restored models are marked as stale, see {@link Model#isStale()}, and as not connected, see
+ * {@link Model#isConnected()}. A stale model becomes fresh and connected when the Pathfinder
+ * server sends it, and is removed when a connected cluster's members no longer include it.
+ * </p>
+ * <p>
+ * The file is a small header followed by one length prefixed record per cluster, commodity,
+ * transport and route list, each holding the model in the format the Pathfinder server uses.
+ * It is memory mapped when loading.
+ * </p>
+ *
+ * @author David Robinson
+ * @see Pathfinder
+ */
+public class SnapshotStore {
+
+    /**
+     * Logs actions performed by the class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotStore.class);
+
+    /**
+     * Identifies a snapshot file, the ASCII characters <tt>"PFSS"</tt>.
+     */
+    private static final int MAGIC = 0x50465353;
+
+    /**
+     * Version of the file format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Record holding a cluster.
+     */
+    private static final byte CLUSTER_RECORD = 1;
+
+    /**
+     * Record holding a commodity.
+     */
+    private static final byte COMMODITY_RECORD = 2;
+
+    /**
+     * Record holding a transport.
+     */
+    private static final byte TRANSPORT_RECORD = 3;
+
+    /**
+     * Record holding the routes of a cluster.
+     */
+    private static final byte CLUSTER_ROUTES_RECORD = 4;
+
+    /**
+     * Record holding the route of a transport.
+     */
+    private static final byte TRANSPORT_ROUTE_RECORD = 5;
+
+    /**
+     * The file the snapshot is stored in.
+     */
+    private final File file;
+
+    /**
+     * Time between periodic saves in milliseconds, zero if snapshots are only saved on close.
+     */
+    private final long savePeriod;
+
+    /**
+     * Constructs a snapshot store that saves when the {@link Pathfinder} object is closed.
+     *
+     * @param file to store the snapshot in.
+     */
+    public SnapshotStore(File file) {
+        this(file, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Constructs a snapshot store that saves periodically and when the {@link Pathfinder}
+     * object is closed.
+     *
+     * @param file       to store the snapshot in.
+     * @param savePeriod time between saves, if zero the snapshot is only saved on close.
+     * @param unit       of the save period.
+     */
+    public SnapshotStore(File file, long savePeriod, TimeUnit unit) {
+        this.file = file;
+        this.savePeriod = unit.toMillis(savePeriod);
+    }
+
+    /**
+     * Returns the file the snapshot is stored in.
+     *
+     * @return the snapshot file.
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Returns the time between periodic saves.
+     *
+     * @return the save period in milliseconds, zero if the snapshot is only saved on close.
+     */
+    public long getSavePeriod() {
+        return this.savePeriod;
+    }
+
+    /**
+     * Writes every model to the snapshot file. The models are copied while the dispatch of
+     * messages is blocked, so the snapshot is consistent, and written once it resumes.
+     *
+     * @param services holding the models to save.
+     * @throws IOException if the snapshot could not be written.
+     */
+    protected void save(PathfinderServices services) throws IOException {
+        List<byte[]> records;
+        boolean locked = services.lockModels();
+        try {
+            records = SnapshotStore.capture(services.getRegistry());
+        } finally {
+            if (locked) {
+                services.unlockModels();
+            }
+        }
+
+        this.write(records);
+    }
+
+    /**
+     * Encodes every model in the registry as a snapshot record.
+     *
+     * @param registry holding the models to encode.
+     * @return the records, routes after the models they refer to.
+     * @throws IOException if a record could not be encoded.
+     */
+    private static List<byte[]> capture(ModelRegistry registry) throws IOException {
+        List<Model> models = registry.getModels();
+        List<Cluster> routedClusters = new ArrayList<Cluster>();
+        List<Transport> routedTransports = new ArrayList<Transport>();
+        List<byte[]> records = new ArrayList<byte[]>(models.size());
+
+        for (Model model : models) {
+            if (model instanceof Cluster) {
+                Cluster cluster = (Cluster) model;
+                JsonObject json = new JsonObject();
+                json.addProperty("id", cluster.getPathName());
+                records.add(SnapshotStore.encodeRecord(SnapshotStore.CLUSTER_RECORD, json));
+
+                if (!cluster.getRoutes().isEmpty()) {
+                    routedClusters.add(cluster);
+                }
+            } else if (model instanceof Commodity) {
+                records.add(SnapshotStore.encodeRecord(SnapshotStore.COMMODITY_RECORD, SnapshotStore.toJson((Commodity) model)));
+            } else if (model instanceof Transport) {
+                Transport transport = (Transport) model;
+                records.add(SnapshotStore.encodeRecord(SnapshotStore.TRANSPORT_RECORD, SnapshotStore.toJson(transport)));
+
+                if (transport.getRoute() != null) {
+                    routedTransports.add(transport);
+                }
+            }
+        }
+
+        for (Cluster cluster : routedClusters) {
+            JsonObject json = new JsonObject();
+            json.addProperty("id", cluster.getPathName());
+            json.add("route", SnapshotStore.toJson(cluster.getRoutes()));
+            records.add(SnapshotStore.encodeRecord(SnapshotStore.CLUSTER_ROUTES_RECORD, json));
+        }
+
+        for (Transport transport : routedTransports) {
+            records.add(SnapshotStore.encodeRecord(SnapshotStore.TRANSPORT_ROUTE_RECORD, SnapshotStore.toJson(transport.getRoute())));
+        }
+
+        return records;
+    }
+
+    /**
+     * Writes records to the snapshot file. The snapshot is written to a temporary file first
+     * and then moved over the previous snapshot.
+     *
+     * @param records to write.
+     * @throws IOException if the snapshot could not be written.
+     */
+    private void write(List<byte[]> records) throws IOException {
+        File temporary = new File(this.file.getPath() + ".tmp");
+        FileOutputStream fileStream = new FileOutputStream(temporary);
+
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileStream));
+            out.writeInt(SnapshotStore.MAGIC);
+            out.writeInt(SnapshotStore.VERSION);
+
+            for (byte[] record : records) {
+                out.write(record);
+            }
+
+            out.flush();
+            fileStream.getFD().sync();
+        } finally {
+            fileStream.close();
+        }
+
+        if (!temporary.renameTo(this.file)) {
+            if (!this.file.delete() || !temporary.renameTo(this.file)) {
+                throw new IOException("Could not replace snapshot " + this.file);
+            }
+        }
+
+        logger.info("Saved snapshot of " + records.size() + " records to " + this.file);
+    }
+
+    /**
+     * Restores the models in the snapshot file. Every restored model is marked as stale and
+     * not connected.
+     * Nothing is restored if the file does not exist or is not a snapshot.
+     *
+     * @param services a pathfinder services object to restore the models into.
+     * @return the models restored.
+     * @throws IOException if the snapshot could not be read.
+     */
+    protected List<Model> load(PathfinderServices services) throws IOException {
+        List<Model> restored = new ArrayList<Model>();
+
+        if (!this.file.isFile()) {
+            logger.info("No snapshot found at " + this.file);
+            return restored;
+        }
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(this.file, "r");
+        MappedByteBuffer buffer;
+
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            randomAccessFile.close();
+        }
+
+        if (buffer.remaining() < 8 || buffer.getInt() != SnapshotStore.MAGIC || buffer.getInt() != SnapshotStore.VERSION) {
+            logger.warn("Ignoring invalid snapshot " + this.file);
+            return restored;
+        }
+
+        JsonParser parser = new JsonParser();
+
+        while (buffer.remaining() >= 5) {
+            byte type = buffer.get();
+            int length = buffer.getInt();
+
+            if (length < 0 || length > buffer.remaining()) {
+                logger.warn("Snapshot " + this.file + " is truncated, restored " + restored.size() + " models");
+                break;
+            }
+
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            JsonObject json = parser.parse(new String(bytes, StandardCharsets.UTF_8)).getAsJsonObject();
+
+            Model model = SnapshotStore.restore(type, json, services);
+            if (model != null) {
+                restored.add(model);
+            }
+        }
+
+        for (Model model : restored) {
+            model.setStale(true);
+            model.setConnected(false);
+        }
+
+        logger.info("Restored " + restored.size() + " models from snapshot " + this.file);
+
+        return restored;
+    }
+
+    /**
+     * Restores a single record.
+     *
+     * @param type     of the record.
+     * @param json     held by the record.
+     * @param services a pathfinder services object.
+     * @return the model restored, <tt>null</tt> if the record doesn't restore a model.
+     */
+    private static Model restore(byte type, JsonObject json, PathfinderServices services) {
+        switch (type) {
+            case SnapshotStore.CLUSTER_RECORD:
+                Cluster cluster = Cluster.getInstance(json.get("id").getAsString(), services);
+                Cluster parent = SnapshotStore.getRegisteredParent(cluster, services);
+                if (parent != null) {
+                    parent.addSubcluster(cluster);
+                }
+                return cluster;
+            case SnapshotStore.COMMODITY_RECORD:
+                Commodity commodity = Commodity.getInstance(json, services);
+                Cluster commodityParent = SnapshotStore.getRegisteredParent(commodity, services);
+                if (commodityParent != null) {
+                    commodityParent.addCommodity(commodity);
+                }
+                return commodity;
+            case SnapshotStore.TRANSPORT_RECORD:
+                Transport transport = Transport.getInstance(json, services);
+                Cluster transportParent = SnapshotStore.getRegisteredParent(transport, services);
+                if (transportParent != null) {
+                    transportParent.addTransport(transport);
+                }
+                return transport;
+            case SnapshotStore.CLUSTER_ROUTES_RECORD:
+                Cluster.getInstance(json.get("id").getAsString(), services).route(json, services);
+                return null;
+            case SnapshotStore.TRANSPORT_ROUTE_RECORD:
+                Route route = new Route(json, services);
+                route.getTransport().setRoute(route);
+                return null;
+            default:
+                logger.warn("Ignoring unknown snapshot record type " + type);
+                return null;
+        }
+    }
+
+    /**
+     * Returns the parent cluster of a model if it is registered.
+     *
+     * @param model    to find the parent of.
+     * @param services a pathfinder services object.
+     * @return the parent cluster, <tt>null</tt> if it isn't registered.
+     */
+    private static Cluster getRegisteredParent(Model model, PathfinderServices services) {
+        Path parentPath = model.getParentPath();
+        if (parentPath == null) {
+            return null;
+        }
+        return (Cluster) services.getRegistry().getModel(parentPath);
+    }
+
+    /**
+     * Encodes a length prefixed record.
+     *
+     * @param type of the record.
+     * @param json held by the record.
+     * @return the record.
+     * @throws IOException if the record could not be encoded.
+     */
+    private static byte[] encodeRecord(byte type, JsonObject json) throws IOException {
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream record = new ByteArrayOutputStream(bytes.length + 5);
+        DataOutputStream out = new DataOutputStream(record);
+        out.writeByte(type);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        return record.toByteArray();
+    }
+
+    /**
+     * Converts a commodity to the JSON format used by the Pathfinder server.
+     *
+     * @param commodity to convert.
+     * @return the commodity as JSON.
+     */
+    private static JsonObject toJson(Commodity commodity) {
+        JsonObject json = new JsonObject();
+
+        json.addProperty("id", commodity.getName());
+        json.addProperty("clusterId", commodity.getParentPath().getPathName());
+        json.addProperty("startLatitude", commodity.getStartLatitude());
+        json.addProperty("startLongitude", commodity.getStartLongitude());
+        json.addProperty("endLatitude", commodity.getEndLatitude());
+        json.addProperty("endLongitude", commodity.getEndLongitude());
+        json.addProperty("status", commodity.getStatus().toString());
+        json.add("metadata", commodity.getMetadata());
+
+        if (commodity.getTransportId() != null) {
+            json.addProperty("transportId", commodity.getTransportId());
+        }
+
+        return json;
+    }
+
+    /**
+     * Converts a transport to the JSON format used by the Pathfinder server.
+     *
+     * @param transport to convert.
+     * @return the transport as JSON.
+     */
+    private static JsonObject toJson(Transport transport) {
+        JsonObject json = new JsonObject();
+
+        json.addProperty("id", transport.getName());
+        json.addProperty("clusterId", transport.getParentPath().getPathName());
+        json.addProperty("latitude", transport.getLatitude());
+        json.addProperty("longitude", transport.getLongitude());
+        json.addProperty("status", transport.getStatus().toString());
+        json.add("metadata", transport.getMetadata());
+
+        JsonArray commodities = new JsonArray();
+        for (Commodity commodity : transport.getCommodities()) {
+            commodities.add(SnapshotStore.toJson(commodity));
+        }
+        json.add("commodities", commodities);
+
+        return json;
+    }
+
+    /**
+     * Converts a route to the JSON format used by the Pathfinder server.
+     *
+     * @param route to convert.
+     * @return the route as JSON.
+     */
+    private static JsonObject toJson(Route route) {
+        JsonObject json = new JsonObject();
+        json.add("transport", SnapshotStore.toJson(route.getTransport()));
+
+        JsonArray actions = new JsonArray();
+        for (Action action : route.getActions()) {
+            JsonObject actionJson = new JsonObject();
+            actionJson.addProperty("action", action.getStatus().toString());
+            actionJson.addProperty("latitude", action.getLatitude());
+            actionJson.addProperty("longitude", action.getLongitude());
+
+            if (action.getCommodity() != null) {
+                actionJson.add("commodity", SnapshotStore.toJson(action.getCommodity()));
+            }
+
+            actions.add(actionJson);
+        }
+        json.add("actions", actions);
+
+        return json;
+    }
+
+    /**
+     * Converts a list of routes to the JSON format used by the Pathfinder server.
+     *
+     * @param routes to convert.
+     * @return the routes as JSON.
+     */
+    private static JsonArray toJson(Collection<Route> routes) {
+        JsonArray json = new JsonArray();
+        for (Route route : routes) {
+            json.add(SnapshotStore.toJson(route));
+        }
+        return json;
+    }
+}
@@ -37,6 +37,18 @@ public abstract class SubscribableCrudModel<T extends SubscribableCrudModel<T, E
         this.sendMessage(json);
     }
 
+    /**
+     * Reads the model specified by the path from the server and returns a future that
+     * completes once the server sends the model.
+     *
+     * @return the future of the request.
+     */
+    public ModelFuture<T> connectAsync() {
+        ModelFuture<T> future = this.trackRequest("Model", 1);
+        this.connect();
+        return future;
+    }
+
     /**
      * Creates the model at the path specified on the server.
      */
@@ -56,7 +68,33 @@ public abstract class SubscribableCrudModel<T extends SubscribableCrudModel<T, E
             this.getServices().getRegistry().addCreateBacklog(this);
         }
 
-        this.getServices().getConnection().sendMessage(json.toString()); // needs to bypass the unknown path check.
+        // the server replies through the connection of the cluster the model is created in
+        Connection connection = value.has("clusterId")
+                ? this.getServices().getConnection(value.get("clusterId").getAsString(), ModelType.CLUSTER)
+                : this.getServices().getConnection(this.getPathName(), this.getModelType());
+
+        OutboundBatch batch = OutboundBatch.current();
+        if (batch != null) {
+            batch.add(this, json, null, connection);
+        } else {
+            connection.sendMessage(json.toString(), null, MessagePriority.STATE); // needs to bypass the unknown path check.
+        }
+    }
+
+    /**
+     * Creates the model at the path specified on the server and returns a future that
+     * completes once the server confirms the creation.
+     *
+     * @return the future of the request, failed if the model already exists.
+     */
+    public ModelFuture<T> createAsync() {
+        ModelFuture<T> future = this.trackRequest("Created", 1);
+        if (this.isConnected()) {
+            future.fail("The model " + this.getPathName() + " already exists", null);
+        }
+
+        this.create();
+        return future;
     }
 
     /**
@@ -67,6 +105,18 @@ public abstract class SubscribableCrudModel<T extends SubscribableCrudModel<T, E
         this.sendMessage(json);
     }
 
+    /**
+     * Deletes the model specified by the path on the server and returns a future that
+     * completes once the server confirms the deletion.
+     *
+     * @return the future of the request.
+     */
+    public ModelFuture<T> deleteAsync() {
+        ModelFuture<T> future = this.trackRequest("Deleted", 1);
+        this.delete();
+        return future;
+    }
+
     /**
      * Updates the model specified by the path on the server.
      *
@@ -80,6 +130,20 @@ public abstract class SubscribableCrudModel<T extends SubscribableCrudModel<T, E
         this.sendMessage(json);
     }
 
+    /**
+     * Updates the model specified by the path on the server and returns a future that
+     * completes once the server confirms the update. While subscribed, an update made by
+     * another client may complete the future first since replies carry no request identifier.
+     *
+     * @param value of the update request.
+     * @return the future of the request.
+     */
+    protected ModelFuture<T> updateAsync(JsonObject value) {
+        ModelFuture<T> future = this.trackRequest("Updated", 1);
+        this.update(value);
+        return future;
+    }
+
     /**
      * Returns the JSON needed to create the object on the Pathfinder server.
      *
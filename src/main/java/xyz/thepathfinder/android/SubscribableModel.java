@@ -43,7 +43,7 @@ public abstract class SubscribableModel<T extends SubscribableModel<T, E>, E ext
         if (this.getModelType() == ModelType.CLUSTER) {
             json.addProperty("id", this.getPathName());
         } else if (!this.isPathUnknown()) {
-            json.addProperty("id", Integer.parseInt(this.getName()));
+            json.addProperty("id", this.getId());
         }
 
         json.addProperty("model", this.getModelType().toString());
@@ -57,20 +57,30 @@ public abstract class SubscribableModel<T extends SubscribableModel<T, E>, E ext
      * @param type "Subscribe" or "Unsubscribe".
      */
     private void sendSubscribeMessage(String type) {
-        JsonObject json = this.getMessageHeader(type);
-
         if (this.getModelType().equals(ModelType.CLUSTER)) {
-            json.remove("id");
-            json.addProperty("model", ModelType.TRANSPORT.toString());
-            json.addProperty("clusterId", this.getPathName());
-            this.sendMessage(json);
-            json.addProperty("model", ModelType.COMMODITY.toString());
-            this.sendMessage(json);
+            this.sendMessage(this.getClusterSubscribeMessage(type, ModelType.TRANSPORT));
+            this.sendMessage(this.getClusterSubscribeMessage(type, ModelType.COMMODITY));
         } else {
-            this.sendMessage(json);
+            this.sendMessage(this.getMessageHeader(type));
         }
     }
 
+    /**
+     * Returns a subscribe like message for the models of a type in this cluster. Each message
+     * is a separate object, since a message may be kept until the path is known.
+     *
+     * @param type      "Subscribe" or "Unsubscribe".
+     * @param modelType of the models subscribed to.
+     * @return the message.
+     */
+    private JsonObject getClusterSubscribeMessage(String type, ModelType modelType) {
+        JsonObject json = this.getMessageHeader(type);
+        json.remove("id");
+        json.addProperty("model", modelType.toString());
+        json.addProperty("clusterId", this.getPathName());
+        return json;
+    }
+
     /**
      * Subscribes to the models updates from the server.
      */
@@ -78,6 +88,20 @@ public abstract class SubscribableModel<T extends SubscribableModel<T, E>, E ext
         this.sendSubscribeMessage("Subscribe");
     }
 
+    /**
+     * Subscribes to the models updates from the server and returns a future that completes
+     * once the server confirms the subscription.
+     *
+     * @return the future of the request.
+     */
+    public ModelFuture<T> subscribeAsync() {
+        // a cluster subscribes to its transports and commodities separately
+        int replies = this.getModelType() == ModelType.CLUSTER ? 2 : 1;
+        ModelFuture<T> future = this.trackRequest("Subscribed", replies);
+        this.subscribe();
+        return future;
+    }
+
     /**
      * Unsubcribes from updates from the server.
      */
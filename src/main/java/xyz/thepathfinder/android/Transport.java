@@ -7,7 +7,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
@@ -55,7 +54,7 @@ public class Transport extends SubscribableCrudModel<Transport, TransportListene
     /**
      * Metadata of the transport.
      */
-    private JsonObject metadata;
+    private ModelMetadata metadata;
 
     /**
      * List of commodities being carried by the transport.
@@ -95,7 +94,7 @@ public class Transport extends SubscribableCrudModel<Transport, TransportListene
         this.latitude = 0;
         this.longitude = 0;
         this.status = TransportStatus.OFFLINE;
-        this.metadata = new JsonObject();
+        this.metadata = new ModelMetadata(null);
         this.commodities = new ArrayList<Commodity>();
         this.route = null;
         this.createCluster = null;
@@ -124,11 +123,7 @@ public class Transport extends SubscribableCrudModel<Transport, TransportListene
             this.status = status;
         }
 
-        if (metadata == null) {
-            this.metadata = new JsonObject();
-        } else {
-            this.metadata = metadata;
-        }
+        this.metadata = new ModelMetadata(metadata);
 
         this.commodities = commodities;
 
@@ -265,7 +260,7 @@ public class Transport extends SubscribableCrudModel<Transport, TransportListene
         this.latitude = latitude;
         this.longitude = longitude;
         this.status = status;
-        this.metadata = metadata;
+        this.metadata = new ModelMetadata(metadata);
         this.createCluster = cluster;
     }
 
@@ -278,7 +273,11 @@ public class Transport extends SubscribableCrudModel<Transport, TransportListene
      * @param longitude The longitude to change the location to.
      */
     public void updateLocation(double latitude, double longitude) {
-        this.update(latitude, longitude, null, null);
+        if (this.canSendFrame()) {
+            this.sendFrame(FrameWriter.begin("Update", this).field("latitude", latitude).field("longitude", longitude).end(), MessagePriority.TELEMETRY);
+        } else {
+            this.update(latitude, longitude, null, null);
+        }
     }
 
     /**
@@ -352,20 +351,18 @@ public class Transport extends SubscribableCrudModel<Transport, TransportListene
      * @return the metadata.
      */
     public JsonObject getMetadata() {
-        return this.metadata;
+        return this.metadata.getJson();
     }
 
     /**
-     * Sets the metadata of the transport.
+     * Sets the metadata of the transport. The current metadata is kept if the new metadata
+     * has the same content.
      *
      * @param metadata the of the transport.
+     * @return <tt>true</tt> if the metadata changed, <tt>false</tt> otherwise.
      */
-    private void setMetadata(JsonObject metadata) {
-        if (metadata == null) {
-            this.metadata = new JsonObject();
-        } else {
-            this.metadata = metadata;
-        }
+    private boolean setMetadata(JsonObject metadata) {
+        return this.metadata.received(metadata);
     }
 
     /**
@@ -397,6 +394,7 @@ public class Transport extends SubscribableCrudModel<Transport, TransportListene
         List<Commodity> commodities = new ArrayList<Commodity>();
         for (JsonElement commodityje : json) {
             Commodity commodity = Commodity.getInstance(commodityje.getAsJsonObject(), this.getServices());
+            commodity.setTransport(this);
             commodities.add(commodity);
         }
 
@@ -431,6 +429,49 @@ public class Transport extends SubscribableCrudModel<Transport, TransportListene
      * @param metadata  to update to.
      */
     public void update(Double latitude, Double longitude, TransportStatus status, JsonObject metadata) {
+        if (metadata == null && this.canSendFrame()) {
+            FrameWriter writer = FrameWriter.begin("Update", this);
+            if (latitude != null) {
+                writer.field("latitude", latitude);
+            }
+            if (longitude != null) {
+                writer.field("longitude", longitude);
+            }
+            if (status != null) {
+                writer.field("status", status.toString());
+            }
+
+            boolean location = status == null && (latitude != null || longitude != null);
+            this.sendFrame(writer.end(), location ? MessagePriority.TELEMETRY : MessagePriority.STATE);
+        } else {
+            super.update(this.getUpdateValue(latitude, longitude, status, metadata));
+        }
+    }
+
+    /**
+     * Sends update requests to the Pathfinder server and returns a future that completes once
+     * the server confirms the update. If a parameter is null it will not be updated.
+     *
+     * @param latitude  to update to.
+     * @param longitude to update to.
+     * @param status    to update to.
+     * @param metadata  to update to.
+     * @return the future of the request.
+     */
+    public ModelFuture<Transport> updateAsync(Double latitude, Double longitude, TransportStatus status, JsonObject metadata) {
+        return super.updateAsync(this.getUpdateValue(latitude, longitude, status, metadata));
+    }
+
+    /**
+     * Returns the value of an update request. If a parameter is null it is left out.
+     *
+     * @param latitude  to update to.
+     * @param longitude to update to.
+     * @param status    to update to.
+     * @param metadata  to update to.
+     * @return the value of the update request.
+     */
+    private JsonObject getUpdateValue(Double latitude, Double longitude, TransportStatus status, JsonObject metadata) {
         JsonObject value = new JsonObject();
 
         if (latitude != null) {
@@ -446,10 +487,10 @@ public class Transport extends SubscribableCrudModel<Transport, TransportListene
         }
 
         if (metadata != null) {
-            value.add("metadata", metadata);
+            this.metadata.addUpdate(value, metadata, this.getServices());
         }
 
-        super.update(value);
+        return value;
     }
 
     /**
@@ -460,7 +501,7 @@ public class Transport extends SubscribableCrudModel<Transport, TransportListene
         double prevLatitude;
         double prevLongitude;
         TransportStatus prevStatus;
-        JsonObject prevMetadata;
+        boolean metadataUpdated = false;
         List<Commodity> prevCommodities;
 
         boolean updated = false;
@@ -484,9 +525,11 @@ public class Transport extends SubscribableCrudModel<Transport, TransportListene
             this.setStatus(Transport.getStatus(json.get("status").getAsString()));
         }
 
-        prevMetadata = this.getMetadata();
         if (json.has("metadata")) {
-            this.setMetadata(json.getAsJsonObject("metadata"));
+            metadataUpdated = this.setMetadata(json.getAsJsonObject("metadata"));
+        }
+        if (json.has("metadataPatch")) {
+            metadataUpdated |= this.setMetadata(ModelMetadata.applyPatch(this.getMetadata(), json.getAsJsonObject("metadataPatch")));
         }
 
         prevCommodities = this.getCommodities();
@@ -512,7 +555,7 @@ public class Transport extends SubscribableCrudModel<Transport, TransportListene
             updated = true;
         }
 
-        if (!this.getMetadata().equals(prevMetadata)) {
+        if (metadataUpdated) {
             logger.info("Transport " + this.getPathName() + " metadata updated: " + this.getMetadata());
             for (TransportListener listener : listeners) {
                 listener.metadataUpdated(this.getMetadata());
@@ -538,9 +581,8 @@ public class Transport extends SubscribableCrudModel<Transport, TransportListene
             updated = true;
         }
 
-        Path parentPath = this.getParentPath();
-        if (updated && this.getServices().getRegistry().isModelRegistered(parentPath)) {
-            Cluster parentCluster = Cluster.getInstance(parentPath.getPathName(), this.getServices());
+        Cluster parentCluster = updated ? this.getRegisteredParentCluster() : null;
+        if (parentCluster != null) {
 
             boolean added = !parentCluster.getTransportsMap().containsKey(this.getPathName());
 
@@ -548,18 +590,18 @@ public class Transport extends SubscribableCrudModel<Transport, TransportListene
                 parentCluster.addTransport(this);
             }
 
-            Collection<Transport> transports = parentCluster.getTransports();
-
             logger.info("Transport " + this.getPathName() + " calling parent cluster's update");
 
-            List<ClusterListener> clusterListeners = parentCluster.getListeners();
-            for (ClusterListener listener : clusterListeners) {
+            ClusterNotificationBatch.begin();
+            try {
+                ClusterNotificationBatch.Notifications notifications = ClusterNotificationBatch.get(parentCluster);
                 if (added) {
-                    listener.transportAdded(this);
+                    notifications.transportAdded(this);
                 }
 
-                listener.transportUpdated(this);
-                listener.transportsUpdated(transports);
+                notifications.transportUpdated(this);
+            } finally {
+                ClusterNotificationBatch.end();
             }
         }
 
@@ -613,6 +655,64 @@ public class Transport extends SubscribableCrudModel<Transport, TransportListene
         return this.toJson().toString();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected TransportListener createEventListener(final ModelEventPublisher publisher) {
+        return new TransportListener() {
+            @Override
+            public void connected(Transport model) {
+                publisher.publish(ModelEventType.CONNECTED, model);
+            }
+
+            @Override
+            public void created(Transport model) {
+                publisher.publish(ModelEventType.CREATED, model);
+            }
+
+            @Override
+            public void updated(Transport model) {
+                publisher.publish(ModelEventType.UPDATED, model);
+            }
+
+            @Override
+            public void deleted(Transport model) {
+                publisher.publish(ModelEventType.DELETED, model);
+            }
+
+            @Override
+            public void error(String error) {
+                publisher.publish(new ModelEvent(ModelEventType.ERROR, Transport.this, error));
+            }
+
+            @Override
+            public void subscribed(Transport model) {
+                publisher.publish(ModelEventType.SUBSCRIBED, model);
+            }
+
+            @Override
+            public void unsubscribed(Transport model) {
+                publisher.publish(ModelEventType.UNSUBSCRIBED, model);
+            }
+
+            @Override
+            public void routeSubscribed(Transport model) {
+                publisher.publish(ModelEventType.ROUTE_SUBSCRIBED, model);
+            }
+
+            @Override
+            public void routeUnsubscribed(Transport model) {
+                publisher.publish(ModelEventType.ROUTE_UNSUBSCRIBED, model);
+            }
+
+            @Override
+            public void routed(Route route) {
+                publisher.publish(ModelEventType.ROUTED, Transport.this);
+            }
+        };
+    }
+
     /**
      *  {@inheritDoc}
      */
@@ -0,0 +1,82 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonObject;
+
+/**
+ * The values of a transport to be created by {@link Cluster#createTransports(java.util.List)}.
+ *
+ * @author David Robinson
+ */
+public class TransportSpec {
+
+    /**
+     * Latitude of the transport.
+     */
+    private final double latitude;
+
+    /**
+     * Longitude of the transport.
+     */
+    private final double longitude;
+
+    /**
+     * Status of the transport.
+     */
+    private final TransportStatus status;
+
+    /**
+     * Metadata of the transport.
+     */
+    private final JsonObject metadata;
+
+    /**
+     * Constructs the values of a transport.
+     *
+     * @param latitude  of the transport.
+     * @param longitude of the transport.
+     * @param status    of the transport, {@link TransportStatus#OFFLINE} if <tt>null</tt>.
+     * @param metadata  of the transport, may be <tt>null</tt>.
+     */
+    public TransportSpec(double latitude, double longitude, TransportStatus status, JsonObject metadata) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.status = status == null ? TransportStatus.OFFLINE : status;
+        this.metadata = metadata;
+    }
+
+    /**
+     * Returns the latitude of the transport.
+     *
+     * @return the latitude.
+     */
+    public double getLatitude() {
+        return this.latitude;
+    }
+
+    /**
+     * Returns the longitude of the transport.
+     *
+     * @return the longitude.
+     */
+    public double getLongitude() {
+        return this.longitude;
+    }
+
+    /**
+     * Returns the status of the transport.
+     *
+     * @return the status.
+     */
+    public TransportStatus getStatus() {
+        return this.status;
+    }
+
+    /**
+     * Returns the metadata of the transport.
+     *
+     * @return the metadata, may be <tt>null</tt>.
+     */
+    public JsonObject getMetadata() {
+        return this.metadata;
+    }
+}
@@ -0,0 +1,151 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class BulkCreateTest {
+
+    private static String created(JsonObject value) {
+        JsonObject message = new JsonObject();
+        message.addProperty("message", "Created");
+        message.addProperty("model", value.has("startLatitude") ? "Commodity" : "Transport");
+        message.add("value", value);
+        return message.toString();
+    }
+
+    @Test(timeout = 30000)
+    public void testBulkCreateTransports() throws Exception {
+        final List<OutboundMessage> sent = new ArrayList<OutboundMessage>();
+        PathfinderServices services = new PathfinderServices(new ModelRegistry(), new Connection() {
+            @Override
+            protected void sendMessages(List<OutboundMessage> messages) {
+                sent.addAll(messages);
+            }
+        });
+        Cluster cluster = Cluster.getInstance("/root", services);
+
+        int count = 10000;
+        List<TransportSpec> specs = new ArrayList<TransportSpec>();
+        for (int k = 0; k < count; k++) {
+            specs.add(new TransportSpec(k / 100, k % 100, TransportStatus.ONLINE, null));
+        }
+
+        final List<Transport> completed = new ArrayList<Transport>();
+        long start = System.nanoTime();
+        BulkCreate<Transport> bulk = cluster.createTransports(specs);
+        bulk.addListener(new BulkCreateListener<Transport>() {
+            @Override
+            public void completed(List<Transport> models) {
+                completed.addAll(models);
+            }
+        });
+        Assert.assertEquals(count, sent.size());
+        Assert.assertEquals(count, services.getRegistry().getCreateBacklogSize());
+
+        ModelMessageHandler handler = new ModelMessageHandler(services);
+        for (int k = count - 1; k >= 0; k--) {
+            handler.onMessage(created(TestModels.transport("/root", k, k / 100, k % 100, TransportStatus.ONLINE)));
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.println("Bulk created " + count + " transports in " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms");
+
+        Assert.assertTrue(bulk.awaitCompletion(1, TimeUnit.SECONDS));
+        Assert.assertEquals(count, completed.size());
+        Assert.assertEquals(0, services.getRegistry().getCreateBacklogSize());
+        for (int k = 0; k < count; k++) {
+            Transport transport = bulk.getModels().get(k);
+            Assert.assertEquals("/root/" + k, transport.getPathName());
+            Assert.assertTrue(transport.getListeners().isEmpty());
+        }
+    }
+
+    @Test
+    public void testIdenticalCommoditiesCreatedInOrder() {
+        PathfinderServices services = TestModels.services();
+        Cluster cluster = Cluster.getInstance("/root", services);
+
+        List<CommoditySpec> specs = new ArrayList<CommoditySpec>();
+        specs.add(new CommoditySpec(1, 2, 3, 4, CommodityStatus.WAITING, null));
+        specs.add(new CommoditySpec(1, 2, 3, 4, CommodityStatus.WAITING, null));
+        BulkCreate<Commodity> bulk = cluster.createCommodities(specs);
+
+        ModelMessageHandler handler = new ModelMessageHandler(services);
+        handler.onMessage(created(TestModels.commodity("/root", 7, 1, 2, 3, 4, CommodityStatus.WAITING)));
+        Assert.assertEquals(1, bulk.getRemainingCount());
+        Assert.assertEquals("/root/7", bulk.getModels().get(0).getPathName());
+
+        handler.onMessage(created(TestModels.commodity("/root", 8, 1, 2, 3, 4, CommodityStatus.WAITING)));
+        Assert.assertTrue(bulk.isComplete());
+        Assert.assertEquals("/root/8", bulk.getModels().get(1).getPathName());
+    }
+
+    @Test
+    public void testListenerAddedAfterCompletionIsNotified() {
+        PathfinderServices services = TestModels.services();
+        Cluster cluster = Cluster.getInstance("/root", services);
+
+        List<TransportSpec> specs = new ArrayList<TransportSpec>();
+        specs.add(new TransportSpec(1, 2, TransportStatus.ONLINE, null));
+        final List<Transport> created = new ArrayList<Transport>();
+        BulkCreate<Transport> bulk = cluster.createTransports(specs, new BulkCreateListener<Transport>() {
+            @Override
+            public void created(Transport model) {
+                created.add(model);
+            }
+        });
+
+        new ModelMessageHandler(services).onMessage(created(TestModels.transport("/root", 3, 1, 2, TransportStatus.ONLINE)));
+        Assert.assertEquals(1, created.size());
+        Assert.assertTrue(bulk.isComplete());
+
+        final List<Transport> completed = new ArrayList<Transport>();
+        bulk.addListener(new BulkCreateListener<Transport>() {
+            @Override
+            public void completed(List<Transport> models) {
+                completed.addAll(models);
+            }
+        });
+        Assert.assertEquals(bulk.getModels(), completed);
+    }
+
+    @Test(timeout = 10000)
+    public void testTimedOutCreatesCountTowardCompletion() throws Exception {
+        PathfinderServices services = TestModels.services();
+        services.getRequests().setTimeout(100, TimeUnit.MILLISECONDS);
+        Cluster cluster = Cluster.getInstance("/root", services);
+
+        List<CommoditySpec> specs = new ArrayList<CommoditySpec>();
+        specs.add(new CommoditySpec(1, 2, 3, 4, CommodityStatus.WAITING, null));
+        specs.add(new CommoditySpec(5, 6, 7, 8, CommodityStatus.WAITING, null));
+        final List<Commodity> failed = new ArrayList<Commodity>();
+        final List<Commodity> completed = new ArrayList<Commodity>();
+        final CountDownLatch done = new CountDownLatch(1);
+        BulkCreate<Commodity> bulk = cluster.createCommodities(specs, new BulkCreateListener<Commodity>() {
+            @Override
+            public void failed(Commodity model, String reason) {
+                failed.add(model);
+            }
+
+            @Override
+            public void completed(List<Commodity> models) {
+                completed.addAll(models);
+                done.countDown();
+            }
+        });
+
+        new ModelMessageHandler(services).onMessage(created(TestModels.commodity("/root", 7, 1, 2, 3, 4, CommodityStatus.WAITING)));
+        Assert.assertTrue(bulk.awaitCompletion(5, TimeUnit.SECONDS));
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        Assert.assertEquals(1, bulk.getFailedModels().size());
+        Assert.assertSame(bulk.getModels().get(1), bulk.getFailedModels().get(0));
+        Assert.assertEquals(bulk.getFailedModels(), failed);
+        Assert.assertEquals(bulk.getModels(), completed);
+    }
+}
@@ -0,0 +1,145 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ClusterTest {
+
+    private PathfinderServices services;
+
+    @Before
+    public void setupServices() {
+        this.services = TestModels.services();
+    }
+
+    private Cluster buildFleet() {
+        JsonObject north = TestModels.cluster("/root/cityA", "north",
+                TestModels.transport("/root/cityA/north", 3, 1, 1, TransportStatus.ONLINE),
+                TestModels.commodity("/root/cityA/north", 4, 0, 0, 1, 1, CommodityStatus.WAITING));
+        JsonObject cityA = TestModels.cluster("/root", "cityA",
+                TestModels.transport("/root/cityA", 1, 1, 1, TransportStatus.ONLINE),
+                TestModels.transport("/root/cityA", 2, 1, 1, TransportStatus.OFFLINE),
+                north);
+        JsonObject cityB = TestModels.cluster("/root", "cityB",
+                TestModels.transport("/root/cityB", 5, 1, 1, TransportStatus.ONLINE),
+                TestModels.commodity("/root/cityB", 6, 0, 0, 1, 1, CommodityStatus.PICKED_UP),
+                TestModels.commodity("/root/cityB", 7, 0, 0, 1, 1, CommodityStatus.WAITING));
+
+        return Cluster.getInstance(TestModels.cluster(null, "/root", cityA, cityB), this.services);
+    }
+
+    @Test
+    public void testCountTransportsByStatus() {
+        Map<TransportStatus, Integer> counts = this.buildFleet().countTransportsByStatus();
+
+        Assert.assertEquals(Integer.valueOf(3), counts.get(TransportStatus.ONLINE));
+        Assert.assertEquals(Integer.valueOf(1), counts.get(TransportStatus.OFFLINE));
+    }
+
+    @Test
+    public void testCountCommoditiesByStatus() {
+        Map<CommodityStatus, Integer> counts = this.buildFleet().countCommoditiesByStatus();
+
+        Assert.assertEquals(Integer.valueOf(2), counts.get(CommodityStatus.WAITING));
+        Assert.assertEquals(Integer.valueOf(1), counts.get(CommodityStatus.PICKED_UP));
+        Assert.assertNull(counts.get(CommodityStatus.CANCELLED));
+    }
+
+    @Test
+    public void testFindTransports() {
+        List<Transport> online = this.buildFleet().getSubcluster("/root/cityA").findTransports(new ModelFilter<Transport>() {
+            @Override
+            public boolean accept(Transport transport) {
+                return transport.getStatus() == TransportStatus.ONLINE;
+            }
+        });
+
+        Assert.assertEquals(2, online.size());
+    }
+
+    @Test
+    public void testClusterUpdateNotifiesListenersOnce() {
+        Cluster root = Cluster.getInstance(TestModels.cluster(null, "/root"), this.services);
+        final List<Integer> transportsUpdated = new ArrayList<Integer>();
+        final List<Transport> added = new ArrayList<Transport>();
+        root.addListener(new ClusterListener() {
+            @Override
+            public void transportAdded(Transport transport) {
+                added.add(transport);
+            }
+
+            @Override
+            public void transportsUpdated(Collection<Transport> transports) {
+                transportsUpdated.add(transports.size());
+            }
+        });
+
+        JsonObject[] transports = new JsonObject[50];
+        for (int k = 0; k < transports.length; k++) {
+            transports[k] = TestModels.transport("/root", k + 1, 1, 1, TransportStatus.ONLINE);
+        }
+
+        JsonObject message = new JsonObject();
+        message.addProperty("message", "Model");
+        message.addProperty("model", "Cluster");
+        message.add("value", TestModels.cluster(null, "/root", transports));
+        new ModelMessageHandler(this.services).onMessage(message.toString());
+
+        Assert.assertEquals(50, added.size());
+        Assert.assertEquals(1, transportsUpdated.size());
+        Assert.assertEquals(Integer.valueOf(50), transportsUpdated.get(0));
+    }
+
+    @Test(timeout = 20000)
+    public void testSnapshotsAreConsistentAcrossThreads() throws Exception {
+        final Cluster cluster = Cluster.getInstance("/root", this.services);
+        List<JsonObject> members = new ArrayList<JsonObject>();
+        for (int k = 0; k < 50; k++) {
+            members.add(TestModels.transport("/root", k, 1, 1, TransportStatus.ONLINE));
+            members.add(TestModels.commodity("/root", 1000 + k, 0, 0, 1, 1, CommodityStatus.WAITING));
+        }
+        JsonObject full = TestModels.cluster(null, "/root", members.toArray(new JsonObject[members.size()]));
+        JsonObject empty = TestModels.cluster(null, "/root");
+
+        final boolean[] consistent = {true};
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long version = -1;
+                while (running.get()) {
+                    ClusterSnapshot snapshot = cluster.getSnapshot();
+                    if (snapshot.getTransportsMap().size() != snapshot.getCommoditiesMap().size() || snapshot.getVersion() < version) {
+                        consistent[0] = false;
+                    }
+                    version = snapshot.getVersion();
+                }
+            }
+        });
+        reader.start();
+
+        ClusterSnapshot first = null;
+        for (int k = 0; k < 500; k++) {
+            cluster.notifyUpdate(null, k % 2 == 0 ? full : empty);
+            if (first == null) {
+                first = cluster.getSnapshot();
+            }
+        }
+        running.set(false);
+        reader.join();
+
+        Assert.assertTrue(consistent[0]);
+        Assert.assertEquals(50, first.getTransports().size());
+        Assert.assertEquals(0, cluster.getSnapshot().getTransports().size());
+        Assert.assertTrue(cluster.getSnapshot().getVersion() > first.getVersion());
+        Assert.assertSame(cluster.getSnapshot().getTransportsMap(), cluster.getTransportsMap());
+    }
+}
@@ -0,0 +1,392 @@
+package xyz.thepathfinder.android;
+
+import ch.qos.logback.classic.Level;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Simulates a fleet driven through the real SDK under a {@link VirtualClock}. A driver client
+ * moves every transport along the route the server gave it, sending location updates and
+ * pick ups and drop offs, while an observer client subscribes to the cluster. Messages travel
+ * through an in-memory {@link ProtocolServer} with a fixed latency each way, so the same
+ * configuration always produces the same traffic and staleness, only the CPU time varies.
+ */
+public class FleetSimulation {
+
+    public static class Config {
+        public int transports = 10;
+        public int commodities = 40;
+        public long updateIntervalMillis = 1000;
+        // meters per second
+        public double speed = 10;
+        // one way, between a client and the server
+        public long latencyMillis = 50;
+        // sends each tick's updates in one outbound batch
+        public boolean batchUpdates = false;
+        public long durationMillis = 30 * 60 * 1000;
+        public long seed = 1;
+    }
+
+    public static class Result {
+        public long simulatedMillis;
+        public long messagesSent;
+        public long bytesSent;
+        // writes to the socket, a batch is written at once
+        public long flushes;
+        public long messagesReceived;
+        public long bytesReceived;
+        // CPU time spent in the clients, the server isn't counted
+        public long clientCpuNanos;
+        // age of the location the observer sees, from the driver sending it, while the transport drives
+        public double meanStalenessMillis;
+        public long maxStalenessMillis;
+        // distance between where a transport is and where the observer sees it
+        public double meanPositionError;
+        public int pickedUp;
+        public int droppedOff;
+
+        public long getCpuNanosPerSimulatedHour() {
+            return this.simulatedMillis == 0 ? 0 : Math.round(this.clientCpuNanos * 3600000.0 / this.simulatedMillis);
+        }
+
+        @Override
+        public String toString() {
+            return "sent " + this.messagesSent + " messages in " + this.flushes + " flushes, " + this.bytesSent / 1024 + " KiB, received " +
+                    this.messagesReceived + " messages, " + this.bytesReceived / 1024 + " KiB, client CPU " +
+                    this.getCpuNanosPerSimulatedHour() / 1000000 + " ms per simulated hour, staleness mean " +
+                    Math.round(this.meanStalenessMillis) + " ms max " + this.maxStalenessMillis + " ms, position error " +
+                    Math.round(this.meanPositionError) + " m, " + this.pickedUp + " picked up, " + this.droppedOff + " dropped off";
+        }
+    }
+
+    // transports move in small steps between the location updates they send
+    private static final long MOTION_STEP = 100;
+
+    // not a divisor of the update intervals, so samples fall at every point between updates
+    private static final long SAMPLE_PERIOD = 997;
+
+    private final Config config;
+    private final VirtualClock clock = new VirtualClock();
+    private final ProtocolServer server = new ProtocolServer();
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final Result result = new Result();
+
+    private Client driver;
+    private Client observer;
+    private final List<Vehicle> vehicles = new ArrayList<Vehicle>();
+
+    // Send time of the client message the server is processing, -1 if none
+    private long origin = -1;
+    // Send time of the location the observer has for each transport, by path
+    private final Map<String, Long> observedSentAt = new HashMap<String, Long>();
+    private long measureStart;
+
+    private long stalenessSum;
+    private double positionErrorSum;
+    private long sampleCount;
+
+    public FleetSimulation(Config config) {
+        this.config = config;
+    }
+
+    public static Result run(Config config) {
+        ch.qos.logback.classic.Logger root = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+        Level level = root.getLevel();
+        root.setLevel(Level.WARN);
+        try {
+            return new FleetSimulation(config).run();
+        } finally {
+            root.setLevel(level);
+        }
+    }
+
+    private Result run() {
+        this.seed();
+        this.driver = new Client();
+        this.observer = new Client();
+
+        Cluster cluster = Cluster.getInstance(Path.DEFAULT_PATH, this.driver.services);
+        cluster.connect();
+        cluster.routeSubscribe();
+        Cluster observed = Cluster.getInstance(Path.DEFAULT_PATH, this.observer.services);
+        observed.connect();
+        observed.subscribe();
+        this.clock.runUntil(this.clock.now() + 4 * this.config.latencyMillis);
+
+        // the drivers follow their first routes, the server doesn't reroute them while they drive
+        cluster.routeUnsubscribe();
+        for (Route route : cluster.getRoutes()) {
+            this.vehicles.add(new Vehicle(route));
+        }
+        this.clock.runUntil(this.clock.now() + 2 * this.config.latencyMillis);
+
+        this.driver.reset();
+        this.observer.reset();
+        this.measureStart = this.clock.now();
+        this.scheduleMotion();
+        this.scheduleTick();
+        this.scheduleSample();
+        this.clock.runUntil(this.measureStart + this.config.durationMillis);
+
+        this.result.simulatedMillis = this.config.durationMillis;
+        this.result.messagesSent = this.driver.messagesSent + this.observer.messagesSent;
+        this.result.bytesSent = this.driver.bytesSent + this.observer.bytesSent;
+        this.result.flushes = this.driver.flushes + this.observer.flushes;
+        this.result.messagesReceived = this.driver.messagesReceived + this.observer.messagesReceived;
+        this.result.bytesReceived = this.driver.bytesReceived + this.observer.bytesReceived;
+        this.result.meanStalenessMillis = this.sampleCount == 0 ? 0 : (double) this.stalenessSum / this.sampleCount;
+        this.result.meanPositionError = this.sampleCount == 0 ? 0 : this.positionErrorSum / this.sampleCount;
+        return this.result;
+    }
+
+    private void seed() {
+        Random random = new Random(this.config.seed);
+        for (int k = 0; k < this.config.transports; k++) {
+            this.server.addTransport(Path.DEFAULT_PATH, 39.45 + random.nextDouble() * 0.05, -87.35 + random.nextDouble() * 0.05, TransportStatus.ONLINE);
+        }
+        for (int k = 0; k < this.config.commodities; k++) {
+            this.server.addCommodity(Path.DEFAULT_PATH, 39.45 + random.nextDouble() * 0.05, -87.35 + random.nextDouble() * 0.05,
+                    39.45 + random.nextDouble() * 0.05, -87.35 + random.nextDouble() * 0.05, CommodityStatus.WAITING);
+        }
+    }
+
+    private void scheduleMotion() {
+        this.clock.schedule(FleetSimulation.MOTION_STEP, new Runnable() {
+            @Override
+            public void run() {
+                long start = FleetSimulation.this.threads.getCurrentThreadCpuTime();
+                for (Vehicle vehicle : FleetSimulation.this.vehicles) {
+                    vehicle.drive(FleetSimulation.this.config.speed * FleetSimulation.MOTION_STEP / 1000);
+                }
+                FleetSimulation.this.result.clientCpuNanos += FleetSimulation.this.threads.getCurrentThreadCpuTime() - start;
+                FleetSimulation.this.scheduleMotion();
+            }
+        });
+    }
+
+    private void scheduleTick() {
+        this.clock.schedule(this.config.updateIntervalMillis, new Runnable() {
+            @Override
+            public void run() {
+                FleetSimulation.this.tick();
+                FleetSimulation.this.scheduleTick();
+            }
+        });
+    }
+
+    private void tick() {
+        long start = this.threads.getCurrentThreadCpuTime();
+
+        if (this.config.batchUpdates) {
+            OutboundBatch.begin();
+        }
+        try {
+            for (Vehicle vehicle : this.vehicles) {
+                vehicle.reportLocation();
+            }
+        } finally {
+            if (this.config.batchUpdates) {
+                OutboundBatch.end(true);
+            }
+        }
+
+        this.result.clientCpuNanos += this.threads.getCurrentThreadCpuTime() - start;
+    }
+
+    private void scheduleSample() {
+        this.clock.schedule(FleetSimulation.SAMPLE_PERIOD, new Runnable() {
+            @Override
+            public void run() {
+                FleetSimulation.this.sample();
+                FleetSimulation.this.scheduleSample();
+            }
+        });
+    }
+
+    private void sample() {
+        long now = this.clock.now();
+        for (Vehicle vehicle : this.vehicles) {
+            if (vehicle.isParked() && !vehicle.moved) {
+                continue;
+            }
+
+            String path = vehicle.transport.getPathName();
+            Transport seen = (Transport) this.observer.services.getRegistry().getModel(new Path(path, ModelType.TRANSPORT));
+            Long sentAt = this.observedSentAt.get(path);
+
+            long staleness = now - (sentAt == null ? this.measureStart : Math.max(sentAt, this.measureStart));
+            this.stalenessSum += staleness;
+            this.result.maxStalenessMillis = Math.max(this.result.maxStalenessMillis, staleness);
+            this.positionErrorSum += GeoMath.distance(vehicle.latitude, vehicle.longitude, seen.getLatitude(), seen.getLongitude());
+            this.sampleCount++;
+        }
+    }
+
+    private void observe(String message, long sentAt) {
+        JsonObject json = new JsonParser().parse(message).getAsJsonObject();
+        if ("Updated".equals(json.get("message").getAsString()) && "Transport".equals(json.get("model").getAsString())) {
+            JsonObject value = json.getAsJsonObject("value");
+            this.observedSentAt.put(value.get("clusterId").getAsString() + "/" + value.get("id").getAsString(), sentAt);
+        }
+    }
+
+    /**
+     * A transport driving along its route.
+     */
+    private class Vehicle {
+
+        private final Transport transport;
+        private final List<Action> actions;
+        private int next;
+        private double latitude;
+        private double longitude;
+        // whether the transport moved since it last sent its location
+        private boolean moved;
+
+        private Vehicle(Route route) {
+            this.transport = route.getTransport();
+            this.actions = route.getActions();
+            this.next = 1;
+            this.latitude = this.transport.getLatitude();
+            this.longitude = this.transport.getLongitude();
+        }
+
+        private boolean isParked() {
+            return this.next >= this.actions.size();
+        }
+
+        private void drive(double distance) {
+            while (distance > 0 && this.next < this.actions.size()) {
+                Action target = this.actions.get(this.next);
+                double remaining = GeoMath.distance(this.latitude, this.longitude, target.getLatitude(), target.getLongitude());
+                this.moved = true;
+
+                if (remaining > distance) {
+                    this.latitude += (target.getLatitude() - this.latitude) * distance / remaining;
+                    this.longitude += (target.getLongitude() - this.longitude) * distance / remaining;
+                    break;
+                }
+
+                distance -= remaining;
+                this.latitude = target.getLatitude();
+                this.longitude = target.getLongitude();
+                this.next++;
+
+                if (target.getStatus() == ActionStatus.PICK_UP) {
+                    target.getCommodity().updatePickedUp(this.transport);
+                    FleetSimulation.this.result.pickedUp++;
+                } else if (target.getStatus() == ActionStatus.DROP_OFF) {
+                    target.getCommodity().updateDroppedOff();
+                    FleetSimulation.this.result.droppedOff++;
+                }
+            }
+        }
+
+        private void reportLocation() {
+            if (this.moved) {
+                this.transport.updateLocation(this.latitude, this.longitude);
+                this.moved = false;
+            }
+        }
+    }
+
+    /**
+     * A client of the simulated server, the SDK's models and message handling over a simulated connection.
+     */
+    private class Client implements ProtocolServer.Peer {
+
+        private final PathfinderServices services;
+        private final ModelMessageHandler handler;
+        private long messagesSent;
+        private long bytesSent;
+        private long flushes;
+        private long messagesReceived;
+        private long bytesReceived;
+
+        private Client() {
+            this.services = new PathfinderServices(new ModelRegistry(), new SimulatedConnection(this));
+            this.handler = new ModelMessageHandler(this.services);
+            FleetSimulation.this.server.attach(this);
+        }
+
+        private void reset() {
+            this.messagesSent = 0;
+            this.bytesSent = 0;
+            this.flushes = 0;
+            this.messagesReceived = 0;
+            this.bytesReceived = 0;
+        }
+
+        private void send(final String message) {
+            final long sentAt = FleetSimulation.this.clock.now();
+            this.messagesSent++;
+            this.bytesSent += message.getBytes(StandardCharsets.UTF_8).length;
+
+            FleetSimulation.this.clock.schedule(FleetSimulation.this.config.latencyMillis, new Runnable() {
+                @Override
+                public void run() {
+                    FleetSimulation.this.origin = sentAt;
+                    FleetSimulation.this.server.receive(message, Client.this);
+                    FleetSimulation.this.origin = -1;
+                }
+            });
+        }
+
+        @Override
+        public void deliver(final String message) {
+            final long sentAt = FleetSimulation.this.origin;
+
+            FleetSimulation.this.clock.schedule(FleetSimulation.this.config.latencyMillis, new Runnable() {
+                @Override
+                public void run() {
+                    Client.this.messagesReceived++;
+                    Client.this.bytesReceived += message.getBytes(StandardCharsets.UTF_8).length;
+
+                    long start = FleetSimulation.this.threads.getCurrentThreadCpuTime();
+                    Client.this.handler.onMessage(message);
+                    FleetSimulation.this.result.clientCpuNanos += FleetSimulation.this.threads.getCurrentThreadCpuTime() - start;
+
+                    if (Client.this == FleetSimulation.this.observer) {
+                        FleetSimulation.this.observe(message, sentAt);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Connection that hands the messages models send to the simulated client instead of a web socket.
+     */
+    private static class SimulatedConnection extends Connection {
+
+        private final Client client;
+
+        private SimulatedConnection(Client client) {
+            this.client = client;
+        }
+
+        @Override
+        protected void sendMessage(String message, String key, MessagePriority priority) {
+            this.client.flushes++;
+            this.client.send(message);
+        }
+
+        @Override
+        protected void sendMessages(List<OutboundMessage> messages) {
+            this.client.flushes++;
+            for (OutboundMessage message : messages) {
+                this.client.send(message.getText());
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package xyz.thepathfinder.android;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FleetSimulationTest {
+
+    private static FleetSimulation.Config config(long updateIntervalMillis, boolean batchUpdates) {
+        FleetSimulation.Config config = new FleetSimulation.Config();
+        config.updateIntervalMillis = updateIntervalMillis;
+        config.batchUpdates = batchUpdates;
+        return config;
+    }
+
+    @Test
+    public void testSimulationIsDeterministic() {
+        FleetSimulation.Config config = config(1000, false);
+        config.durationMillis = 10 * 60 * 1000;
+
+        FleetSimulation.Result first = FleetSimulation.run(config);
+        FleetSimulation.Result second = FleetSimulation.run(config);
+
+        Assert.assertTrue(first.messagesSent > 0);
+        Assert.assertTrue(first.pickedUp > 0);
+        Assert.assertEquals(first.messagesSent, second.messagesSent);
+        Assert.assertEquals(first.bytesReceived, second.bytesReceived);
+        Assert.assertEquals(first.meanStalenessMillis, second.meanStalenessMillis, 0);
+        Assert.assertEquals(first.meanPositionError, second.meanPositionError, 0);
+        Assert.assertEquals(first.droppedOff, second.droppedOff);
+    }
+
+    @Test
+    public void testCompareUpdateConfigurations() {
+        FleetSimulation.Result everySecond = FleetSimulation.run(config(1000, false));
+        FleetSimulation.Result batched = FleetSimulation.run(config(1000, true));
+        FleetSimulation.Result everyFiveSeconds = FleetSimulation.run(config(5000, false));
+
+        System.out.println("Bench fleet updates every 1 s: " + everySecond);
+        System.out.println("Bench fleet updates every 1 s, batched: " + batched);
+        System.out.println("Bench fleet updates every 5 s: " + everyFiveSeconds);
+
+        Assert.assertEquals(everySecond.messagesSent, batched.messagesSent);
+        Assert.assertTrue(batched.flushes < everySecond.flushes);
+        Assert.assertTrue(everyFiveSeconds.messagesSent < everySecond.messagesSent);
+        Assert.assertTrue(everyFiveSeconds.meanStalenessMillis > everySecond.meanStalenessMillis);
+        Assert.assertTrue(everyFiveSeconds.meanPositionError > everySecond.meanPositionError);
+    }
+}
@@ -0,0 +1,121 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FrameWriterTest {
+
+    private static class SinkConnection extends Connection {
+
+        private final List<String> sent = new ArrayList<String>();
+
+        private boolean keep = true;
+
+        private long count;
+
+        @Override
+        protected void sendMessage(String message, String key, MessagePriority priority) {
+            this.count += message.length();
+            if (this.keep) {
+                this.sent.add(priority + " " + message);
+            }
+        }
+    }
+
+    private static String tree(SubscribableModel<?, ?> model, JsonObject value) {
+        JsonObject json = model.getMessageHeader("Update");
+        json.add("value", value);
+        return json.toString();
+    }
+
+    private static Transport transport(PathfinderServices services) {
+        JsonObject transport = TestModels.transport("/root", 17, 1, 2, TransportStatus.ONLINE);
+        JsonObject commodity = TestModels.commodity("/root", 18, 1, 2, 3, 4, CommodityStatus.WAITING);
+        Cluster.getInstance(TestModels.cluster(null, "/root", transport, commodity), services);
+        return Transport.getInstance("/root/17", services);
+    }
+
+    @Test
+    public void testFramesMatchTreeEncoding() {
+        SinkConnection connection = new SinkConnection();
+        PathfinderServices services = new PathfinderServices(new ModelRegistry(), connection);
+        Transport transport = transport(services);
+        Commodity commodity = Commodity.getInstance("/root/18", services);
+
+        transport.updateLocation(39.480001, -87.3);
+        JsonObject value = new JsonObject();
+        value.addProperty("latitude", 39.480001);
+        value.addProperty("longitude", -87.3);
+        Assert.assertEquals("TELEMETRY " + tree(transport, value), connection.sent.get(0));
+
+        transport.update(1e-7, null, TransportStatus.OFFLINE, null);
+        value = new JsonObject();
+        value.addProperty("latitude", 1e-7);
+        value.addProperty("status", TransportStatus.OFFLINE.toString());
+        Assert.assertEquals("STATE " + tree(transport, value), connection.sent.get(1));
+
+        commodity.update(null, null, 5.0, null, CommodityStatus.PICKED_UP, null, 17L);
+        value = new JsonObject();
+        value.addProperty("endLatitude", 5.0);
+        value.addProperty("status", CommodityStatus.PICKED_UP.toString());
+        value.addProperty("transportId", 17L);
+        Assert.assertEquals("STATE " + tree(commodity, value), connection.sent.get(2));
+
+        String text = "quote \" slash \\ tab \t newline \n bell \u0007 separator \u2028 \u00e9";
+        JsonObject json = new JsonObject();
+        json.addProperty("message", "Update");
+        json.addProperty("id", 17);
+        json.addProperty("model", "Transport");
+        value = new JsonObject();
+        value.addProperty("note", text);
+        json.add("value", value);
+        Assert.assertEquals(json.toString(), FrameWriter.begin("Update", transport).field("note", text).end());
+    }
+
+    @Test
+    public void testAllocationBenchmark() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        SinkConnection connection = new SinkConnection();
+        connection.keep = false;
+        PathfinderServices services = new PathfinderServices(new ModelRegistry(), connection);
+        Transport transport = transport(services);
+        int updates = 200000;
+
+        for (int k = 0; k < updates; k++) {
+            transport.update(39.48 + k * 1e-6, -87.32, null, new JsonObject());
+            transport.updateLocation(39.48 + k * 1e-6, -87.32);
+        }
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int k = 0; k < updates; k++) {
+            JsonObject value = new JsonObject();
+            value.addProperty("latitude", 39.48 + k * 1e-6);
+            value.addProperty("longitude", -87.32);
+            JsonObject json = transport.getMessageHeader("Update");
+            json.add("value", value);
+            connection.sendMessage(json.toString(), transport.getPathName(), transport.getPriority(json));
+        }
+        long treeTime = System.nanoTime() - start;
+        long treeBytes = threads.getThreadAllocatedBytes(thread) - before;
+
+        before = threads.getThreadAllocatedBytes(thread);
+        start = System.nanoTime();
+        for (int k = 0; k < updates; k++) {
+            transport.updateLocation(39.48 + k * 1e-6, -87.32);
+        }
+        long frameTime = System.nanoTime() - start;
+        long frameBytes = threads.getThreadAllocatedBytes(thread) - before;
+
+        System.out.println("Bench updateLocation encoding: tree " + treeBytes / updates + " bytes and " + treeTime / updates +
+                " ns per update, frame writer " + frameBytes / updates + " bytes and " + frameTime / updates + " ns per update");
+        Assert.assertTrue(connection.count > 0);
+        Assert.assertTrue(frameBytes * 2 < treeBytes);
+    }
+}
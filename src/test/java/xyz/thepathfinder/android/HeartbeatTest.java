@@ -0,0 +1,172 @@
+package xyz.thepathfinder.android;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.websocket.CloseReason;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class HeartbeatTest {
+
+    private final List<ByteBuffer> pings = new ArrayList<ByteBuffer>();
+    private final List<String> sent = new ArrayList<String>();
+    private final List<SendHandler> handlers = new ArrayList<SendHandler>();
+    private final List<String> lost = new ArrayList<String>();
+    private boolean open;
+    private Session session;
+    private Connection connection;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void openConnection() {
+        final RemoteEndpoint.Async remote = (RemoteEndpoint.Async) Proxy.newProxyInstance(RemoteEndpoint.Async.class.getClassLoader(),
+                new Class<?>[]{RemoteEndpoint.Async.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("sendPing")) {
+                            pings.add((ByteBuffer) args[0]);
+                        } else if (method.getName().equals("sendText")) {
+                            sent.add((String) args[0]);
+                            handlers.add((SendHandler) args[1]);
+                        }
+                        return null;
+                    }
+                });
+        this.open = true;
+        this.session = (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class<?>[]{Session.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("isOpen")) {
+                    return open;
+                } else if (method.getName().equals("getAsyncRemote")) {
+                    return remote;
+                } else if (method.getName().equals("close")) {
+                    open = false;
+                }
+                return null;
+            }
+        });
+
+        this.connection = new Connection();
+        this.connection.setMessageHandler(new ModelMessageHandler(TestModels.services()));
+        this.connection.setHeartbeat(1, TimeUnit.HOURS, 2);
+        this.connection.addConnectionListener(new ConnectionListener() {
+            @Override
+            public void connectionLost(String reason) {
+                lost.add(reason);
+            }
+        });
+        this.connection.onOpen(this.session, null);
+    }
+
+    @Test
+    public void testMeasuresRoundTripTime() {
+        Heartbeat heartbeat = this.connection.getHeartbeat();
+        Assert.assertEquals(-1, this.connection.getRoundTripTime(TimeUnit.MILLISECONDS));
+
+        heartbeat.tick(1000000);
+        Assert.assertEquals(1, this.pings.size());
+        Assert.assertEquals(1, heartbeat.getMissedPongs());
+        heartbeat.pong(this.pings.get(0).duplicate(), 6000000);
+        Assert.assertEquals(0, heartbeat.getMissedPongs());
+        Assert.assertEquals(5, this.connection.getRoundTripTime(TimeUnit.MILLISECONDS));
+
+        heartbeat.tick(10000000);
+        heartbeat.pong(this.pings.get(1).duplicate(), 23000000);
+        Assert.assertEquals(6, this.connection.getRoundTripTime(TimeUnit.MILLISECONDS));
+        Assert.assertEquals(2, this.connection.getRoundTripTimes().getCount());
+        Assert.assertEquals(13, this.connection.getRoundTripTimes().getMax(TimeUnit.MILLISECONDS));
+
+        heartbeat.pong(ByteBuffer.allocate(0), 30000000);
+        Assert.assertEquals(2, this.connection.getRoundTripTimes().getCount());
+    }
+
+    @Test
+    public void testDeclaresPeerDeadAfterMissedPongs() {
+        Heartbeat heartbeat = this.connection.getHeartbeat();
+        heartbeat.tick(0);
+        heartbeat.tick(1);
+        Assert.assertTrue(this.connection.isConnected());
+        Assert.assertTrue(this.lost.isEmpty());
+
+        heartbeat.tick(2);
+        Assert.assertEquals(2, this.pings.size());
+        Assert.assertEquals(1, this.lost.size());
+        Assert.assertFalse(this.open);
+        Assert.assertFalse(this.connection.isConnected());
+        Assert.assertNull(this.connection.getHeartbeat());
+
+        this.connection.sendMessage("{\"message\":\"Update\",\"model\":\"Transport\",\"id\":1,\"value\":{\"status\":\"Online\"}}", "/root/1", MessagePriority.STATE);
+        Assert.assertTrue(this.sent.isEmpty());
+        Assert.assertEquals(1, this.connection.getQueuedMessageCount());
+
+        this.connection.onClose(this.session, new CloseReason(CloseReason.CloseCodes.GOING_AWAY, "Heartbeat timeout"));
+        Assert.assertEquals(1, this.lost.size());
+    }
+
+    @Test
+    public void testReportsUnexpectedClose() {
+        this.connection.onClose(this.session, new CloseReason(CloseReason.CloseCodes.NORMAL_CLOSURE, "Bye"));
+        Assert.assertTrue(this.lost.isEmpty());
+
+        this.connection.onOpen(this.session, null);
+        this.connection.onClose(this.session, new CloseReason(CloseReason.CloseCodes.CLOSED_ABNORMALLY, "Network"));
+        Assert.assertEquals(1, this.lost.size());
+    }
+
+    @Test
+    public void testJournalKeepsMessagesUntilPong() throws IOException {
+        OutboundJournal journal = new OutboundJournal(new File(this.folder.getRoot(), "outbound.journal"), 1, TimeUnit.HOURS);
+        this.connection.setJournal(journal, journal.open());
+        Heartbeat heartbeat = this.connection.getHeartbeat();
+
+        this.connection.sendMessage("{\"message\":\"Update\",\"model\":\"Transport\",\"id\":1,\"value\":{\"status\":\"Online\"}}", "/root/1", MessagePriority.STATE);
+        this.handlers.get(0).onResult(new SendResult());
+        Assert.assertEquals(1, journal.getPendingCount());
+        Assert.assertEquals(1, this.connection.getUnconfirmedMessageCount());
+
+        // a ping sent before the write completed doesn't confirm it
+        heartbeat.tick(System.nanoTime() - TimeUnit.SECONDS.toNanos(1));
+        heartbeat.pong(this.pings.get(0).duplicate(), System.nanoTime());
+        Assert.assertEquals(1, journal.getPendingCount());
+
+        this.connection.sendMessage("{\"message\":\"Update\",\"model\":\"Transport\",\"id\":2,\"value\":{\"status\":\"Online\"}}", "/root/2", MessagePriority.STATE);
+        heartbeat.tick(System.nanoTime());
+        this.handlers.get(1).onResult(new SendResult());
+        heartbeat.pong(this.pings.get(1).duplicate(), System.nanoTime());
+        Assert.assertEquals(1, journal.getPendingCount());
+        Assert.assertEquals(1, this.connection.getUnconfirmedMessageCount());
+
+        // the unconfirmed message is sent again on the next session
+        this.connection.onClose(this.session, new CloseReason(CloseReason.CloseCodes.CLOSED_ABNORMALLY, "Network"));
+        Assert.assertEquals(0, this.connection.getUnconfirmedMessageCount());
+        Assert.assertEquals(1, this.connection.getQueuedMessageCount());
+        this.connection.onOpen(this.session, null);
+        Assert.assertEquals(3, this.sent.size());
+        Assert.assertTrue(this.sent.get(2).contains("\"id\":2"));
+
+        this.handlers.get(2).onResult(new SendResult());
+        heartbeat = this.connection.getHeartbeat();
+        heartbeat.tick(System.nanoTime());
+        heartbeat.pong(this.pings.get(2).duplicate(), System.nanoTime());
+        Assert.assertEquals(0, journal.getPendingCount());
+        journal.close();
+    }
+}
@@ -0,0 +1,120 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public class LocalRoutePlannerTest {
+
+    private static Cluster fleet(PathfinderServices services, int transportCount, int commodityCount) {
+        Random random = new Random(42);
+        List<JsonObject> members = new ArrayList<JsonObject>();
+        for (int k = 0; k < transportCount; k++) {
+            members.add(TestModels.transport("/root", k, 39.4 + random.nextDouble() * 0.2, -87.4 + random.nextDouble() * 0.2, TransportStatus.ONLINE));
+        }
+        members.add(TestModels.transport("/root", transportCount, 39.5, -87.3, TransportStatus.OFFLINE));
+        for (int k = 0; k < commodityCount; k++) {
+            members.add(TestModels.commodity("/root", 100000 + k, 39.4 + random.nextDouble() * 0.2, -87.4 + random.nextDouble() * 0.2,
+                    39.4 + random.nextDouble() * 0.2, -87.4 + random.nextDouble() * 0.2, CommodityStatus.WAITING));
+        }
+        members.add(TestModels.commodity("/root", 200000, 39.5, -87.3, 39.6, -87.2, CommodityStatus.PICKED_UP));
+
+        return Cluster.getInstance(TestModels.cluster(null, "/root", members.toArray(new JsonObject[members.size()])), services);
+    }
+
+    private static double totalDistance(List<Route> routes) {
+        double distance = 0;
+        for (Route route : routes) {
+            distance += route.getTotalDistance();
+        }
+        return distance;
+    }
+
+    @Test
+    public void testEveryWaitingCommodityIsRoutedOnce() {
+        PathfinderServices services = TestModels.services();
+        Cluster cluster = fleet(services, 5, 60);
+
+        List<Route> routes = cluster.planLocalRoutes(1, TimeUnit.SECONDS);
+        Assert.assertEquals(5, routes.size());
+
+        Set<Commodity> routed = new HashSet<Commodity>();
+        for (Route route : routes) {
+            Assert.assertTrue(route.isProvisional());
+            Assert.assertSame(route, route.getTransport().getRoute());
+            Assert.assertEquals(TransportStatus.ONLINE, route.getTransport().getStatus());
+
+            List<Action> actions = route.getActions();
+            Assert.assertEquals(ActionStatus.START, actions.get(0).getStatus());
+            for (int k = 1; k < actions.size(); k += 2) {
+                Assert.assertEquals(ActionStatus.PICK_UP, actions.get(k).getStatus());
+                Assert.assertEquals(ActionStatus.DROP_OFF, actions.get(k + 1).getStatus());
+                Assert.assertSame(actions.get(k).getCommodity(), actions.get(k + 1).getCommodity());
+                Assert.assertTrue(routed.add(actions.get(k).getCommodity()));
+                Assert.assertEquals(CommodityStatus.WAITING, actions.get(k).getCommodity().getStatus());
+            }
+        }
+        Assert.assertEquals(60, routed.size());
+    }
+
+    @Test
+    public void testServerRoutesReplaceLocalRoutes() {
+        PathfinderServices services = TestModels.services();
+        Cluster cluster = fleet(services, 2, 10);
+        List<Route> local = cluster.planLocalRoutes(100, TimeUnit.MILLISECONDS);
+        Transport first = local.get(0).getTransport();
+        Assert.assertEquals("/root/0", first.getPathName());
+        Transport second = local.get(1).getTransport();
+
+        JsonArray actions = new JsonArray();
+        actions.add(TestModels.action("Start", first.getLatitude(), first.getLongitude(), null));
+        JsonArray routes = new JsonArray();
+        routes.add(TestModels.route(TestModels.transport("/root", 0, first.getLatitude(), first.getLongitude(), TransportStatus.ONLINE), actions));
+        JsonObject json = new JsonObject();
+        json.add("route", routes);
+        cluster.route(json, services);
+
+        Assert.assertFalse(first.getRoute().isProvisional());
+        Assert.assertNull(second.getRoute());
+        Assert.assertEquals(1, cluster.getRoutes().size());
+    }
+
+    @Test
+    public void testPlannerBenchmark() {
+        PathfinderServices services = TestModels.services();
+        Cluster cluster = fleet(services, 50, 1000);
+        List<Transport> transports = new ArrayList<Transport>();
+        for (Transport transport : cluster.getTransports()) {
+            if (transport.getStatus() == TransportStatus.ONLINE) {
+                transports.add(transport);
+            }
+        }
+        List<Commodity> commodities = new ArrayList<Commodity>();
+        for (Commodity commodity : cluster.getCommodities()) {
+            if (commodity.getStatus() == CommodityStatus.WAITING) {
+                commodities.add(commodity);
+            }
+        }
+
+        long start = System.nanoTime();
+        double seeded = totalDistance(new LocalRoutePlanner(transports, commodities).plan(start));
+        long seedTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        double improved = totalDistance(new LocalRoutePlanner(transports, commodities).plan(start + TimeUnit.SECONDS.toNanos(2)));
+        long planTime = System.nanoTime() - start;
+
+        System.out.println("Bench local planner, 50 transports and 1000 commodities: greedy seed " + Math.round(seeded / 1000) +
+                " km in " + seedTime / 1000000 + " ms, with local search " + Math.round(improved / 1000) + " km in " + planTime / 1000000 + " ms");
+        Assert.assertTrue(improved < seeded);
+        Assert.assertTrue(planTime < TimeUnit.SECONDS.toNanos(4));
+    }
+}
@@ -0,0 +1,67 @@
+package xyz.thepathfinder.android;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class MemberMapTest {
+
+    @Test
+    public void testMatchesHashMap() {
+        Random random = new Random(42);
+        Map<String, Integer> expected = new HashMap<String, Integer>();
+        MemberMap<Integer> map = MemberMap.empty();
+
+        for (int k = 0; k < 20000; k++) {
+            String path = "/root/" + random.nextInt(5000);
+            if (random.nextInt(4) == 0) {
+                expected.remove(path);
+                map = map.minus(path);
+            } else {
+                expected.put(path, k);
+                map = map.plus(path, k);
+            }
+        }
+
+        Assert.assertEquals(expected.size(), map.size());
+        Assert.assertEquals(expected, map);
+        Assert.assertEquals(expected.hashCode(), map.hashCode());
+        for (int k = 0; k < 5000; k++) {
+            Assert.assertEquals(expected.get("/root/" + k), map.get("/root/" + k));
+            Assert.assertEquals(expected.containsKey("/root/" + k), map.containsKey("/root/" + k));
+        }
+    }
+
+    @Test
+    public void testAddingSharesPreviousMap() {
+        MemberMap<Integer> before = MemberMap.<Integer>empty().plus("/root/1", 1).plus("/root/2", 2);
+        MemberMap<Integer> after = before.plus("/root/3", 3);
+
+        Assert.assertEquals(2, before.size());
+        Assert.assertFalse(before.containsKey("/root/3"));
+        Assert.assertEquals(3, after.size());
+        Assert.assertSame(after, after.plus("/root/3", 3));
+        Assert.assertSame(after, after.minus("/root/4"));
+        Assert.assertSame(after, MemberMap.copyOf(after));
+        Assert.assertTrue(after.minus("/root/1").minus("/root/2").minus("/root/3").isEmpty());
+    }
+
+    @Test
+    public void testEqualHashes() {
+        // "Aa" and "BB" have the same hash code
+        MemberMap<String> map = MemberMap.<String>empty().plus("Aa", "a").plus("BB", "b").plus("AaBB", "c").plus("BBAa", "d");
+        Assert.assertEquals(4, map.size());
+        Assert.assertEquals("a", map.get("Aa"));
+        Assert.assertEquals("b", map.get("BB"));
+        Assert.assertEquals("d", map.get("BBAa"));
+
+        map = map.minus("Aa").plus("BB", "e");
+        Assert.assertEquals(3, map.size());
+        Assert.assertNull(map.get("Aa"));
+        Assert.assertEquals("e", map.get("BB"));
+        Assert.assertEquals(3, map.entrySet().size());
+    }
+}
@@ -0,0 +1,116 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MessageBacklogTest {
+
+    private static JsonObject message(String text) {
+        return new JsonParser().parse(text).getAsJsonObject();
+    }
+
+    private static JsonObject update(String fields) {
+        return message("{\"message\":\"Update\",\"model\":\"Transport\",\"value\":{" + fields + "}}");
+    }
+
+    private static JsonObject subscription(String type) {
+        return message("{\"message\":\"" + type + "\",\"model\":\"Transport\"}");
+    }
+
+    private static JsonObject parse(OutboundMessage message) {
+        return new JsonParser().parse(message.getText()).getAsJsonObject();
+    }
+
+    @Test
+    public void testMergesUpdatesAcrossSubscriptions() {
+        MessageBacklog backlog = new MessageBacklog();
+        backlog.add(update("\"latitude\":1,\"longitude\":1"), true, true);
+        backlog.add(subscription("Subscribe"), true, true);
+        backlog.add(update("\"latitude\":2,\"longitude\":2"), true, true);
+        backlog.add(update("\"status\":\"Online\""), true, true);
+        backlog.add(subscription("Subscribe"), true, true);
+        backlog.add(subscription("RouteSubscribe"), true, true);
+        backlog.add(subscription("RouteSubscribe"), true, true);
+
+        List<JsonObject> messages = backlog.getMessages();
+        Assert.assertEquals(3, messages.size());
+        Assert.assertEquals(4, backlog.getMergedCount());
+        Assert.assertEquals(update("\"latitude\":2,\"longitude\":2,\"status\":\"Online\""), messages.get(0));
+        Assert.assertEquals(subscription("Subscribe"), messages.get(1));
+        Assert.assertEquals(subscription("RouteSubscribe"), messages.get(2));
+    }
+
+    @Test
+    public void testKeepsOrderAroundOtherMessages() {
+        MessageBacklog backlog = new MessageBacklog();
+        backlog.add(update("\"latitude\":1"), true, true);
+        backlog.add(message("{\"message\":\"Delete\",\"model\":\"Transport\"}"), true, true);
+        backlog.add(update("\"latitude\":2"), true, true);
+        backlog.add(subscription("Subscribe"), true, true);
+        backlog.add(subscription("Unsubscribe"), true, true);
+        backlog.add(subscription("Subscribe"), true, true);
+
+        Assert.assertEquals(6, backlog.getMessages().size());
+        Assert.assertEquals(0, backlog.getMergedCount());
+    }
+
+    @Test
+    public void testKeepsTrackedRequests() {
+        MessageBacklog backlog = new MessageBacklog();
+        backlog.add(update("\"latitude\":1"), false, false);
+        backlog.add(update("\"latitude\":2"), false, false);
+        backlog.add(subscription("Subscribe"), false, false);
+        backlog.add(subscription("Subscribe"), false, false);
+
+        Assert.assertEquals(4, backlog.getMessages().size());
+    }
+
+    @Test
+    public void testFlushesBacklogInOneBatch() {
+        final List<List<OutboundMessage>> flushes = new ArrayList<List<OutboundMessage>>();
+        final List<String> sent = new ArrayList<String>();
+        PathfinderServices services = new PathfinderServices(new ModelRegistry(), new Connection() {
+            @Override
+            protected void sendMessage(String message, String key, MessagePriority priority) {
+                sent.add(message);
+            }
+
+            @Override
+            protected void sendMessages(List<OutboundMessage> messages) {
+                flushes.add(messages);
+            }
+        });
+        Cluster cluster = Cluster.getInstance("/root", services);
+
+        Transport transport = cluster.createTransport(0, 0, TransportStatus.OFFLINE, null);
+        transport.create();
+        for (int k = 1; k <= 10; k++) {
+            transport.updateLocation(k, -k);
+            transport.subscribe();
+        }
+        transport.updateStatus(TransportStatus.ONLINE);
+        transport.routeSubscribe();
+        Assert.assertEquals(1, sent.size());
+
+        transport.setPathName("/root/7");
+
+        Assert.assertEquals(1, flushes.size());
+        List<OutboundMessage> messages = flushes.get(0);
+        Assert.assertEquals(3, messages.size());
+
+        JsonObject update = parse(messages.get(0));
+        Assert.assertEquals("Update", update.get("message").getAsString());
+        Assert.assertEquals(7, update.get("id").getAsInt());
+        Assert.assertEquals(10, update.getAsJsonObject("value").get("latitude").getAsDouble(), 0);
+        Assert.assertEquals(-10, update.getAsJsonObject("value").get("longitude").getAsDouble(), 0);
+        Assert.assertEquals("Online", update.getAsJsonObject("value").get("status").getAsString());
+        Assert.assertEquals("/root/7", messages.get(0).getKey());
+        Assert.assertEquals("Subscribe", parse(messages.get(1)).get("message").getAsString());
+        Assert.assertEquals("RouteSubscribe", parse(messages.get(2)).get("message").getAsString());
+    }
+}
@@ -0,0 +1,147 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ModelEventPublisherTest {
+
+    private static class TestSubscriber implements Subscriber<ModelEvent> {
+
+        private Subscription subscription;
+
+        private final List<ModelEvent> events = new ArrayList<ModelEvent>();
+
+        private Throwable error;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(ModelEvent event) {
+            this.events.add(event);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+
+    @Test
+    public void testEventsDeliveredOnDemand() {
+        PathfinderServices services = TestModels.services();
+        Transport transport = Transport.getInstance(TestModels.transport("/root", 1, 0, 0, TransportStatus.ONLINE), services);
+        TestSubscriber subscriber = new TestSubscriber();
+        transport.events(16, OverflowStrategy.DROP_OLDEST).subscribe(subscriber);
+
+        for (int k = 1; k <= 3; k++) {
+            JsonObject message = new JsonObject();
+            message.addProperty("message", "Updated");
+            message.addProperty("model", "Transport");
+            message.add("value", TestModels.transport("/root", 1, k, 0, TransportStatus.ONLINE));
+            new ModelMessageHandler(services).onMessage(message.toString());
+        }
+        Assert.assertTrue(subscriber.events.isEmpty());
+
+        subscriber.subscription.request(2);
+        Assert.assertEquals(2, subscriber.events.size());
+        Assert.assertEquals(ModelEventType.UPDATED, subscriber.events.get(0).getType());
+        Assert.assertSame(transport, subscriber.events.get(0).getModel());
+
+        subscriber.subscription.request(5);
+        Assert.assertEquals(3, subscriber.events.size());
+    }
+
+    @Test
+    public void testConflationKeepsLatestPerModel() {
+        PathfinderServices services = TestModels.services();
+        Cluster cluster = Cluster.getInstance("/root", services);
+        Transport first = Transport.getInstance("/root/1", services);
+        Transport second = Transport.getInstance("/root/2", services);
+
+        ModelEventPublisher publisher = cluster.events(2, OverflowStrategy.CONFLATE);
+        TestSubscriber subscriber = new TestSubscriber();
+        publisher.subscribe(subscriber);
+
+        for (int k = 0; k < 100; k++) {
+            publisher.publish(ModelEventType.UPDATED, first);
+            publisher.publish(ModelEventType.UPDATED, second);
+        }
+        Assert.assertEquals(198, publisher.getDroppedCount());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        Assert.assertEquals(2, subscriber.events.size());
+        Assert.assertSame(first, subscriber.events.get(0).getModel());
+        Assert.assertSame(second, subscriber.events.get(1).getModel());
+
+        publisher.publish(ModelEventType.DELETED, first);
+        Assert.assertEquals(3, subscriber.events.size());
+    }
+
+    @Test
+    public void testOverflowErrorAndCancel() {
+        PathfinderServices services = TestModels.services();
+        Transport transport = Transport.getInstance("/root/1", services);
+        ModelEventPublisher publisher = transport.events(1, OverflowStrategy.ERROR);
+
+        TestSubscriber failing = new TestSubscriber();
+        TestSubscriber cancelled = new TestSubscriber();
+        publisher.subscribe(failing);
+        publisher.subscribe(cancelled);
+        cancelled.subscription.cancel();
+        Assert.assertEquals(1, publisher.getSubscriberCount());
+
+        publisher.publish(ModelEventType.UPDATED, transport);
+        publisher.publish(ModelEventType.UPDATED, transport);
+
+        Assert.assertTrue(failing.error instanceof IllegalStateException);
+        Assert.assertTrue(failing.events.isEmpty());
+        Assert.assertEquals(0, publisher.getSubscriberCount());
+        Assert.assertTrue(cancelled.events.isEmpty());
+    }
+
+    @Test
+    public void testListenerRemovedWhenLastSubscriptionEnds() {
+        PathfinderServices services = TestModels.services();
+        Transport transport = Transport.getInstance("/root/1", services);
+        int listeners = transport.getListeners().size();
+
+        ModelEventPublisher publisher = transport.events();
+        Assert.assertEquals(listeners, transport.getListeners().size());
+
+        TestSubscriber first = new TestSubscriber();
+        TestSubscriber second = new TestSubscriber();
+        publisher.subscribe(first);
+        publisher.subscribe(second);
+        Assert.assertEquals(listeners + 1, transport.getListeners().size());
+
+        first.subscription.cancel();
+        Assert.assertEquals(listeners + 1, transport.getListeners().size());
+        second.subscription.cancel();
+        Assert.assertEquals(listeners, transport.getListeners().size());
+
+        // subscribing again registers the publisher again
+        TestSubscriber third = new TestSubscriber();
+        publisher.subscribe(third);
+        third.subscription.request(1);
+        JsonObject message = new JsonObject();
+        message.addProperty("message", "Updated");
+        message.addProperty("model", "Transport");
+        message.add("value", TestModels.transport("/root", 1, 5, 0, TransportStatus.ONLINE));
+        new ModelMessageHandler(services).onMessage(message.toString());
+        Assert.assertEquals(1, third.events.size());
+        Assert.assertEquals(listeners + 1, transport.getListeners().size());
+    }
+}
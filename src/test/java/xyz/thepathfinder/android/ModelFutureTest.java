@@ -0,0 +1,119 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class ModelFutureTest {
+
+    private PathfinderServices services;
+
+    private ModelMessageHandler handler;
+
+    @Before
+    public void setup() {
+        this.services = TestModels.services();
+        this.handler = new ModelMessageHandler(this.services);
+    }
+
+    private void reply(String type, String model, JsonObject value) {
+        JsonObject message = new JsonObject();
+        message.addProperty("message", type);
+        message.addProperty("model", model);
+        message.add("value", value);
+        this.handler.onMessage(message.toString());
+    }
+
+    @Test(timeout = 10000)
+    public void testCreateCompletesOnCreated() throws Exception {
+        Cluster cluster = Cluster.getInstance("/root", this.services);
+        Transport transport = cluster.createTransport(1, 2, TransportStatus.ONLINE, null);
+
+        ModelFuture<Transport> future = transport.createAsync();
+        Assert.assertFalse(future.isDone());
+        Assert.assertEquals(1, this.services.getRequests().getPendingCount());
+
+        this.reply("Created", "Transport", TestModels.transport("/root", 5, 1, 2, TransportStatus.ONLINE));
+
+        Assert.assertSame(transport, future.get(1, TimeUnit.SECONDS));
+        Assert.assertEquals("/root/5", transport.getPathName());
+        Assert.assertEquals(0, this.services.getRequests().getPendingCount());
+        Assert.assertEquals(1, this.services.getRequests().getLatencies().getCount());
+    }
+
+    @Test(timeout = 10000)
+    public void testRepliesMatchOldestRequestOfType() throws Exception {
+        Transport transport = Transport.getInstance(TestModels.transport("/root", 5, 1, 2, TransportStatus.ONLINE), this.services);
+
+        ModelFuture<Transport> first = transport.updateAsync(3.0, null, null, null);
+        ModelFuture<Transport> second = transport.updateAsync(4.0, null, null, null);
+        ModelFuture<Transport> subscribed = transport.subscribeAsync();
+
+        this.reply("Subscribed", "Transport", TestModels.transport("/root", 5, 1, 2, TransportStatus.ONLINE));
+        Assert.assertTrue(subscribed.isDone());
+        Assert.assertFalse(first.isDone());
+
+        this.reply("Updated", "Transport", TestModels.transport("/root", 5, 3, 2, TransportStatus.ONLINE));
+        Assert.assertTrue(first.isDone());
+        Assert.assertFalse(second.isDone());
+
+        JsonObject error = new JsonObject();
+        error.addProperty("clusterId", "/root");
+        error.addProperty("id", 5);
+        error.addProperty("reason", "Invalid latitude");
+        this.reply("Error", "Transport", error);
+
+        Assert.assertTrue(second.isFailed());
+        try {
+            second.get();
+            Assert.fail("Failed request returned a model");
+        } catch (ExecutionException e) {
+            Assert.assertEquals("Invalid latitude", e.getMessage());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testRequestTimesOut() throws Exception {
+        this.services.getRequests().setTimeout(50, TimeUnit.MILLISECONDS);
+        Transport transport = Transport.getInstance(TestModels.transport("/root", 5, 1, 2, TransportStatus.ONLINE), this.services);
+
+        final CountDownLatch failed = new CountDownLatch(1);
+        ModelFuture<Transport> future = transport.deleteAsync();
+        future.addListener(new ModelFutureListener<Transport>() {
+            @Override
+            public void failed(String reason) {
+                failed.countDown();
+            }
+        });
+
+        try {
+            future.get();
+            Assert.fail("Request did not time out");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        failed.await();
+        Assert.assertEquals(0, this.services.getRequests().getPendingCount());
+    }
+
+    @Test
+    public void testLatencyHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int k = 1; k <= 100; k++) {
+            histogram.record(k, TimeUnit.MILLISECONDS);
+        }
+        histogram.record(0, TimeUnit.MILLISECONDS);
+
+        long p50 = histogram.getPercentile(0.5, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(p50 >= 50 && p50 <= 100);
+        Assert.assertEquals(100, histogram.getPercentile(1, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(101, histogram.getCount());
+        Assert.assertEquals(50, histogram.getMean(TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,180 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ModelMetadataTest {
+
+    private static ModelMetadata metadata(String json) {
+        return new ModelMetadata(new JsonParser().parse(json).getAsJsonObject());
+    }
+
+    @Test
+    public void testContentEqualsIgnoresMemberOrder() {
+        ModelMetadata first = metadata("{\"capacity\":4,\"notes\":[\"a\",\"b\"],\"owner\":{\"name\":\"x\",\"id\":1}}");
+        ModelMetadata second = metadata("{\"owner\":{\"id\":1.0,\"name\":\"x\"},\"notes\":[\"a\",\"b\"],\"capacity\":4}");
+        Assert.assertTrue(first.contentEquals(second));
+        Assert.assertTrue(new ModelMetadata(null).contentEquals(metadata("{}")));
+    }
+
+    @Test
+    public void testContentEqualsDetectsChanges() {
+        ModelMetadata base = metadata("{\"notes\":[\"a\",\"b\"],\"capacity\":4}");
+        Assert.assertFalse(base.contentEquals(metadata("{\"notes\":[\"b\",\"a\"],\"capacity\":4}")));
+        Assert.assertFalse(base.contentEquals(metadata("{\"notes\":[\"a\",\"b\"],\"capacity\":\"4\"}")));
+        Assert.assertFalse(base.contentEquals(metadata("{\"notes\":[\"a\",\"b\"],\"capacity\":5}")));
+        Assert.assertFalse(base.contentEquals(metadata("{\"notes\":[\"a\",\"b\"]}")));
+    }
+
+    @Test
+    public void testContentEqualsSeesChangesInPlace() {
+        ModelMetadata holder = metadata("{\"capacity\":4}");
+        Assert.assertTrue(holder.contentEquals(metadata("{\"capacity\":4}")));
+
+        holder.getJson().addProperty("seats", 2);
+        Assert.assertFalse(holder.contentEquals(metadata("{\"capacity\":4}")));
+        Assert.assertTrue(holder.contentEquals(metadata("{\"seats\":2,\"capacity\":4}")));
+    }
+
+    @Test
+    public void testUnchangedMetadataKeepsInstance() {
+        PathfinderServices services = TestModels.services();
+        JsonObject transport = TestModels.transport("/root", 1, 1, 2, TransportStatus.ONLINE);
+        transport.add("metadata", new JsonParser().parse("{\"capacity\":4,\"seats\":2}"));
+        Cluster.getInstance(TestModels.cluster(null, "/root", transport), services);
+
+        Transport model = Transport.getInstance("/root/1", services);
+        JsonObject before = model.getMetadata();
+
+        JsonObject update = new JsonObject();
+        update.add("metadata", new JsonParser().parse("{\"seats\":2,\"capacity\":4}"));
+        Assert.assertFalse(model.updateFields(update));
+        Assert.assertSame(before, model.getMetadata());
+
+        update.add("metadata", new JsonParser().parse("{\"seats\":3,\"capacity\":4}"));
+        Assert.assertTrue(model.updateFields(update));
+        Assert.assertEquals(3, model.getMetadata().get("seats").getAsInt());
+    }
+
+    @Test
+    public void testDiffIsMergePatch() {
+        JsonObject source = metadata("{\"capacity\":4,\"notes\":[\"a\"],\"owner\":{\"name\":\"x\",\"id\":1},\"old\":true}").getJson();
+        JsonObject target = metadata("{\"capacity\":4,\"notes\":[\"a\",\"b\"],\"owner\":{\"name\":\"y\",\"id\":1},\"seats\":2}").getJson();
+
+        JsonObject patch = ModelMetadata.diff(source, target);
+        Assert.assertEquals(new JsonParser().parse("{\"old\":null,\"notes\":[\"a\",\"b\"],\"owner\":{\"name\":\"y\"},\"seats\":2}"), patch);
+        Assert.assertEquals(target, ModelMetadata.applyPatch(source, patch));
+        Assert.assertEquals(4, source.entrySet().size());
+        Assert.assertTrue(ModelMetadata.diff(source, metadata(source.toString()).getJson()).entrySet().isEmpty());
+        Assert.assertNull(ModelMetadata.diff(source, source));
+    }
+
+    @Test
+    public void testMetadataDeltas() {
+        final List<String> sent = new ArrayList<String>();
+        PathfinderServices services = new PathfinderServices(new ModelRegistry(), new Connection() {
+            @Override
+            protected void sendMessage(String message, String key, MessagePriority priority) {
+                sent.add(message);
+            }
+        });
+        services.setMetadataDeltas(true);
+
+        StringBuilder manifest = new StringBuilder("{\"driver\":\"a\"");
+        for (int k = 0; k < 100; k++) {
+            manifest.append(",\"item").append(k).append("\":\"parcel ").append(k).append('"');
+        }
+        manifest.append('}');
+        JsonObject transport = TestModels.transport("/root", 1, 1, 2, TransportStatus.ONLINE);
+        transport.add("metadata", new JsonParser().parse(manifest.toString()));
+        Cluster.getInstance(TestModels.cluster(null, "/root", transport), services);
+        Transport model = Transport.getInstance("/root/1", services);
+
+        JsonObject metadata = metadata(model.getMetadata().toString()).getJson();
+        metadata.addProperty("driver", "b");
+        metadata.remove("item0");
+        model.updateMetadata(metadata);
+
+        JsonObject value = new JsonParser().parse(sent.get(0)).getAsJsonObject().getAsJsonObject("value");
+        Assert.assertFalse(value.has("metadata"));
+        Assert.assertEquals(new JsonParser().parse("{\"driver\":\"b\",\"item0\":null}"), value.get("metadataPatch"));
+        Assert.assertTrue(services.getMetadataBytesSaved() > manifest.length() - 100);
+
+        Assert.assertTrue(model.updateFields(value));
+        Assert.assertEquals(metadata, model.getMetadata());
+
+        model.getMetadata().addProperty("driver", "c");
+        model.updateMetadata(model.getMetadata());
+        value = new JsonParser().parse(sent.get(1)).getAsJsonObject().getAsJsonObject("value");
+        Assert.assertEquals("c", value.getAsJsonObject("metadata").get("driver").getAsString());
+    }
+
+    @Test
+    public void testBatchKeepsLaterMetadataAsIs() {
+        // both are relative to the server's metadata, not to each other
+        JsonObject earlier = new JsonParser().parse("{\"metadata\":{\"x\":1},\"capacity\":2}").getAsJsonObject();
+        OutboundBatch.mergeValues(earlier, new JsonParser().parse("{\"metadataPatch\":{\"c\":3},\"status\":\"Online\"}").getAsJsonObject());
+        Assert.assertEquals(new JsonParser().parse("{\"metadataPatch\":{\"c\":3},\"capacity\":2,\"status\":\"Online\"}"), earlier);
+
+        OutboundBatch.mergeValues(earlier, new JsonParser().parse("{\"metadata\":{\"d\":4}}").getAsJsonObject());
+        Assert.assertEquals(new JsonParser().parse("{\"d\":4}"), earlier.get("metadata"));
+        Assert.assertFalse(earlier.has("metadataPatch"));
+
+        OutboundBatch.mergeValues(earlier, new JsonParser().parse("{\"status\":\"Offline\"}").getAsJsonObject());
+        Assert.assertEquals(new JsonParser().parse("{\"d\":4}"), earlier.get("metadata"));
+    }
+
+    @Test
+    public void testSendsFullMetadataUntilEchoed() {
+        final List<String> sent = new ArrayList<String>();
+        PathfinderServices services = new PathfinderServices(new ModelRegistry(), new Connection() {
+            @Override
+            protected void sendMessage(String message, String key, MessagePriority priority) {
+                sent.add(message);
+            }
+        });
+        services.setMetadataDeltas(true);
+
+        StringBuilder manifest = new StringBuilder("{\"driver\":\"a\"");
+        for (int k = 0; k < 20; k++) {
+            manifest.append(",\"item").append(k).append("\":\"parcel ").append(k).append('"');
+        }
+        manifest.append('}');
+        JsonObject transport = TestModels.transport("/root", 1, 1, 2, TransportStatus.ONLINE);
+        transport.add("metadata", new JsonParser().parse(manifest.toString()));
+        Cluster.getInstance(TestModels.cluster(null, "/root", transport), services);
+        Transport model = Transport.getInstance("/root/1", services);
+
+        JsonObject first = metadata(manifest.toString()).getJson();
+        first.addProperty("driver", "b");
+        model.updateMetadata(first);
+        JsonObject second = metadata(manifest.toString()).getJson();
+        second.addProperty("seats", 2);
+        model.updateMetadata(second);
+
+        JsonParser parser = new JsonParser();
+        Assert.assertTrue(parser.parse(sent.get(0)).getAsJsonObject().getAsJsonObject("value").has("metadataPatch"));
+        JsonObject value = parser.parse(sent.get(1)).getAsJsonObject().getAsJsonObject("value");
+        Assert.assertEquals(second, value.get("metadata"));
+
+        // the echo of the first update doesn't confirm the second
+        JsonObject echo = new JsonObject();
+        echo.add("metadata", metadata(first.toString()).getJson());
+        model.updateFields(echo);
+        model.updateMetadata(second);
+        Assert.assertTrue(parser.parse(sent.get(2)).getAsJsonObject().getAsJsonObject("value").has("metadata"));
+
+        echo.add("metadata", metadata(second.toString()).getJson());
+        model.updateFields(echo);
+        JsonObject third = metadata(second.toString()).getJson();
+        third.addProperty("driver", "c");
+        model.updateMetadata(third);
+        value = parser.parse(sent.get(3)).getAsJsonObject().getAsJsonObject("value");
+        Assert.assertEquals(parser.parse("{\"driver\":\"c\"}"), value.get("metadataPatch"));
+    }
+}
@@ -0,0 +1,120 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+public class ModelRegistryTest {
+
+    private PathfinderServices services;
+
+    @Before
+    public void setupServices() {
+        this.services = new PathfinderServices(new ModelRegistry(), new Connection());
+    }
+
+    @Test
+    public void testDescendants() {
+        Cluster root = Cluster.getInstance("/root", this.services);
+        Cluster.getInstance("/root/cityA", this.services);
+        Cluster.getInstance("/root/cityA/north", this.services);
+        Cluster.getInstance("/root/cityB", this.services);
+        Transport.getInstance("/root/cityA/1", this.services);
+        Transport.getInstance("/root/cityA/north/2", this.services);
+        Transport.getInstance("/root/cityB/3", this.services);
+        Commodity.getInstance("/root/cityA/north/4", this.services);
+
+        Cluster cityA = Cluster.getInstance("/root/cityA", this.services);
+        Assert.assertEquals(2, cityA.descendants(ModelType.TRANSPORT).size());
+        Assert.assertEquals(1, cityA.descendants(ModelType.CLUSTER).size());
+        Assert.assertEquals(4, cityA.descendants(null).size());
+        Assert.assertEquals(3, root.descendants(ModelType.TRANSPORT).size());
+        Assert.assertEquals(7, this.services.getRegistry().countDescendants(root.getPath(), null));
+        Assert.assertEquals(8, this.services.getRegistry().countDescendants(new Path("/", ModelType.CLUSTER), null));
+    }
+
+    @Test
+    public void testDescendantsWithoutRegisteredParent() {
+        Cluster root = Cluster.getInstance("/root", this.services);
+        Transport transport = Transport.getInstance("/root/unknown/deep/7", this.services);
+
+        List<Model> transports = root.descendants(ModelType.TRANSPORT);
+        Assert.assertEquals(1, transports.size());
+        Assert.assertSame(transport, transports.get(0));
+    }
+
+    @Test
+    public void testUnregisterDescendants() {
+        ModelRegistry registry = this.services.getRegistry();
+        Cluster.getInstance("/root", this.services);
+        Cluster.getInstance("/root/cityA", this.services);
+        Transport.getInstance("/root/cityA/1", this.services);
+        Commodity.getInstance("/root/cityA/2", this.services);
+        Transport.getInstance("/root/cityB/3", this.services);
+
+        Path cityA = new Path("/root/cityA", ModelType.CLUSTER);
+        Assert.assertEquals(2, registry.unregisterDescendants(cityA).size());
+        Assert.assertTrue(registry.isModelRegistered(cityA));
+        Assert.assertFalse(registry.isModelRegistered(new Path("/root/cityA/1", ModelType.TRANSPORT)));
+        Assert.assertEquals(0, registry.countDescendants(cityA, null));
+        Assert.assertEquals(2, registry.countDescendants(new Path("/root", ModelType.CLUSTER), null));
+    }
+
+    @Test
+    public void testUnregisterModelKeepsSiblingsOfSamePath() {
+        ModelRegistry registry = this.services.getRegistry();
+        Cluster.getInstance("/root/5", this.services);
+        Transport.getInstance("/root/5", this.services);
+
+        registry.unregisterModel(new Path("/root/5", ModelType.TRANSPORT));
+
+        Path root = new Path("/root", ModelType.CLUSTER);
+        Assert.assertEquals(1, registry.countDescendants(root, null));
+        Assert.assertEquals(1, registry.countDescendants(root, ModelType.CLUSTER));
+    }
+
+    @Test
+    public void testCommodityFollowsTransportLink() {
+        JsonObject carried = TestModels.commodity("/root/cityA", 4, 1, 2, 3, 4, CommodityStatus.PICKED_UP);
+        carried.addProperty("transportId", 3);
+        JsonObject transport = TestModels.transport("/root/cityA", 3, 1, 2, TransportStatus.ONLINE);
+        transport.getAsJsonArray("commodities").add(carried);
+        Cluster.getInstance(TestModels.cluster(null, "/root/cityA", transport, carried), this.services);
+
+        Commodity commodity = Commodity.getInstance("/root/cityA/4", this.services);
+        Transport carrier = commodity.getTransport();
+        Assert.assertEquals("/root/cityA/3", carrier.getPathName());
+        Assert.assertSame(Transport.getInstance("/root/cityA/3", this.services), carrier);
+        Assert.assertSame(carrier, commodity.getTransport());
+        Assert.assertSame(commodity, carrier.getCommodities().get(0));
+
+        this.services.getRegistry().unregisterModel(carrier.getPath());
+        Assert.assertFalse(carrier.isRegistered());
+        Transport replacement = commodity.getTransport();
+        Assert.assertNotSame(carrier, replacement);
+        Assert.assertTrue(replacement.isRegistered());
+
+        JsonObject moved = new JsonObject();
+        moved.addProperty("transportId", 5);
+        commodity.updateFields(moved);
+        Assert.assertEquals("/root/cityA/5", commodity.getTransport().getPathName());
+    }
+
+    @Test
+    public void testParentClusterLinkFollowsRegistry() {
+        Cluster cityA = Cluster.getInstance("/root/cityA", this.services);
+        Transport transport = Transport.getInstance("/root/cityA/1", this.services);
+        Assert.assertSame(cityA, transport.getParentCluster());
+        Assert.assertSame(cityA, transport.getRegisteredParentCluster());
+        Assert.assertNull(Cluster.getInstance("/root", this.services).getParentCluster());
+
+        this.services.getRegistry().unregisterModel(cityA.getPath());
+        Assert.assertNull(transport.getRegisteredParentCluster());
+        Cluster recreated = transport.getParentCluster();
+        Assert.assertNotSame(cityA, recreated);
+        Assert.assertSame(recreated, transport.getRegisteredParentCluster());
+    }
+}
@@ -0,0 +1,102 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class OutboundBatchTest {
+
+    private List<List<OutboundMessage>> flushes;
+
+    private PathfinderServices services;
+
+    @Before
+    public void setupServices() {
+        this.flushes = new ArrayList<List<OutboundMessage>>();
+        this.services = new PathfinderServices(new ModelRegistry(), new Connection() {
+            @Override
+            protected void sendMessages(List<OutboundMessage> messages) {
+                OutboundBatchTest.this.flushes.add(messages);
+            }
+        });
+    }
+
+    private static JsonObject parse(OutboundMessage message) {
+        return new JsonParser().parse(message.getText()).getAsJsonObject();
+    }
+
+    @Test
+    public void testUpdatesOfSameModelAreMerged() {
+        Transport transport = Transport.getInstance("/root/1", this.services);
+        Commodity commodity = Commodity.getInstance("/root/2", this.services);
+        JsonObject metadata = new JsonObject();
+        metadata.addProperty("stops", 3);
+
+        OutboundBatch.begin();
+        commodity.updateDroppedOff();
+        transport.updateStatus(TransportStatus.ONLINE);
+        transport.updateMetadata(metadata);
+        transport.updateLocation(1, 2);
+        transport.updateLocation(3, 4);
+        OutboundBatch.end(true);
+
+        Assert.assertEquals(1, this.flushes.size());
+        List<OutboundMessage> messages = this.flushes.get(0);
+        Assert.assertEquals(2, messages.size());
+        Assert.assertEquals("/root/2", messages.get(0).getKey());
+
+        JsonObject value = parse(messages.get(1)).getAsJsonObject("value");
+        Assert.assertEquals("Online", value.get("status").getAsString());
+        Assert.assertEquals(metadata, value.get("metadata"));
+        Assert.assertEquals(3, value.get("latitude").getAsDouble(), 0);
+        Assert.assertEquals(4, value.get("longitude").getAsDouble(), 0);
+    }
+
+    @Test
+    public void testUpdatesAreNotMergedAcrossOtherMessages() {
+        Transport transport = Transport.getInstance("/root/1", this.services);
+
+        OutboundBatch.begin();
+        transport.updateLocation(1, 2);
+        transport.delete();
+        transport.updateLocation(3, 4);
+        OutboundBatch.end(true);
+
+        List<OutboundMessage> messages = this.flushes.get(0);
+        Assert.assertEquals(3, messages.size());
+        Assert.assertEquals("Delete", parse(messages.get(1)).get("message").getAsString());
+    }
+
+    @Test
+    public void testNestedBatchesFlushOnce() {
+        Transport transport = Transport.getInstance("/root/1", this.services);
+
+        OutboundBatch.begin();
+        OutboundBatch.begin();
+        transport.updateLocation(1, 2);
+        OutboundBatch.end(true);
+        Assert.assertTrue(this.flushes.isEmpty());
+        transport.updateStatus(TransportStatus.OFFLINE);
+        OutboundBatch.end(true);
+
+        Assert.assertEquals(1, this.flushes.size());
+        Assert.assertEquals(1, this.flushes.get(0).size());
+    }
+
+    @Test
+    public void testFailedBatchIsDiscarded() {
+        Transport transport = Transport.getInstance("/root/1", this.services);
+
+        OutboundBatch.begin();
+        transport.updateLocation(1, 2);
+        OutboundBatch.end(false);
+
+        Assert.assertTrue(this.flushes.isEmpty());
+        Assert.assertNull(OutboundBatch.current());
+    }
+}
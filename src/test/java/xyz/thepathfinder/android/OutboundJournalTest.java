@@ -0,0 +1,99 @@
+package xyz.thepathfinder.android;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class OutboundJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String update(int id, String fields) {
+        return "{\"message\":\"Update\",\"model\":\"Transport\",\"id\":" + id + ",\"value\":{" + fields + "}}";
+    }
+
+    @Test
+    public void testRecoverUnacknowledgedMessages() throws IOException {
+        File file = new File(this.folder.getRoot(), "outbound.journal");
+        OutboundJournal journal = new OutboundJournal(file, 1, TimeUnit.HOURS);
+        Assert.assertTrue(journal.open().isEmpty());
+
+        OutboundMessage first = new OutboundMessage(update(1, "\"status\":\"Online\""), "/root/1");
+        OutboundMessage second = new OutboundMessage("{\"message\":\"Subscribe\",\"model\":\"Transport\",\"id\":2}", "/root/2");
+        OutboundMessage third = new OutboundMessage(update(3, "\"latitude\":1"), "/root/3");
+        journal.append(first);
+        journal.append(second);
+        journal.append(third);
+        journal.acknowledge(second);
+        journal.commit();
+
+        List<OutboundMessage> recovered = new OutboundJournal(file).open();
+        Assert.assertEquals(2, recovered.size());
+        Assert.assertEquals(first.getText(), recovered.get(0).getText());
+        Assert.assertEquals("/root/1", recovered.get(0).getKey());
+        Assert.assertEquals(third.getText(), recovered.get(1).getText());
+    }
+
+    @Test
+    public void testSupersededUpdatesAreDropped() throws IOException {
+        File file = new File(this.folder.getRoot(), "outbound.journal");
+        OutboundJournal journal = new OutboundJournal(file, 1, TimeUnit.HOURS);
+        journal.open();
+
+        journal.append(new OutboundMessage(update(1, "\"latitude\":1,\"longitude\":1"), "/root/1"));
+        journal.append(new OutboundMessage(update(1, "\"latitude\":2"), "/root/1"));
+        journal.append(new OutboundMessage(update(1, "\"latitude\":3,\"longitude\":3"), "/root/1"));
+        journal.append(new OutboundMessage("{\"message\":\"Delete\",\"model\":\"Transport\",\"id\":1}", "/root/1"));
+        journal.append(new OutboundMessage(update(1, "\"latitude\":4,\"longitude\":4"), "/root/1"));
+        journal.close();
+
+        List<OutboundMessage> recovered = new OutboundJournal(file).open();
+        Assert.assertEquals(3, recovered.size());
+        Assert.assertEquals(update(1, "\"latitude\":3,\"longitude\":3"), recovered.get(0).getText());
+        Assert.assertTrue(recovered.get(1).getText().contains("Delete"));
+    }
+
+    @Test
+    public void testTornRecordIsIgnored() throws IOException {
+        File file = new File(this.folder.getRoot(), "outbound.journal");
+        OutboundJournal journal = new OutboundJournal(file, 1, TimeUnit.HOURS);
+        journal.open();
+        journal.append(new OutboundMessage(update(1, "\"latitude\":1"), "/root/1"));
+        journal.append(new OutboundMessage(update(2, "\"latitude\":2"), "/root/2"));
+        journal.close();
+
+        RandomAccessFile raw = new RandomAccessFile(file, "rw");
+        raw.setLength(raw.length() - 5);
+        raw.close();
+
+        List<OutboundMessage> recovered = new OutboundJournal(file).open();
+        Assert.assertEquals(1, recovered.size());
+        Assert.assertEquals("/root/1", recovered.get(0).getKey());
+    }
+
+    @Test
+    public void testSequencesContinueAfterRecovery() throws IOException {
+        File file = new File(this.folder.getRoot(), "outbound.journal");
+        OutboundJournal journal = new OutboundJournal(file, 1, TimeUnit.HOURS);
+        journal.open();
+        OutboundMessage first = new OutboundMessage(update(1, "\"latitude\":1"), "/root/1");
+        journal.append(first);
+        journal.close();
+
+        OutboundJournal reopened = new OutboundJournal(file, 1, TimeUnit.HOURS);
+        reopened.open();
+        OutboundMessage second = new OutboundMessage(update(2, "\"latitude\":2"), "/root/2");
+        reopened.append(second);
+        Assert.assertTrue(second.getSequence() > first.getSequence());
+        Assert.assertEquals(2, reopened.getPendingCount());
+        reopened.close();
+    }
+}
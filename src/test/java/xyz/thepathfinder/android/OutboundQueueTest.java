@@ -0,0 +1,267 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class OutboundQueueTest {
+
+    private static String update(int id, String fields) {
+        return "{\"message\":\"Update\",\"model\":\"Transport\",\"id\":" + id + ",\"value\":{" + fields + "}}";
+    }
+
+    private static String subscribe(int id) {
+        return "{\"message\":\"Subscribe\",\"model\":\"Transport\",\"id\":" + id + "}";
+    }
+
+    private static JsonObject value(OutboundMessage message) {
+        return new JsonParser().parse(message.getText()).getAsJsonObject().getAsJsonObject("value");
+    }
+
+    @Test
+    public void testClassifiesMessages() {
+        Assert.assertEquals(MessagePriority.CONTROL, MessagePriority.of("{\"message\":\"Authenticate\",\"value\":\"a@b.c\"}"));
+        Assert.assertEquals(MessagePriority.STATE, MessagePriority.of(update(1, "\"status\":\"Online\"")));
+        Assert.assertEquals(MessagePriority.STATE, MessagePriority.of(update(1, "\"latitude\":1,\"status\":\"Online\"")));
+        Assert.assertEquals(MessagePriority.STATE, MessagePriority.of("{\"message\":\"Create\",\"model\":\"Transport\",\"value\":{}}"));
+        Assert.assertEquals(MessagePriority.SUBSCRIPTION, MessagePriority.of(subscribe(1)));
+        Assert.assertEquals(MessagePriority.TELEMETRY, MessagePriority.of(update(1, "\"latitude\":1,\"longitude\":2")));
+        Assert.assertEquals(MessagePriority.STATE, MessagePriority.of("not json"));
+    }
+
+    @Test
+    public void testHigherPrioritiesFirst() {
+        OutboundQueue queue = new OutboundQueue();
+        queue.offer(new OutboundMessage(update(1, "\"latitude\":1,\"longitude\":1"), "/root/1"));
+        queue.offer(new OutboundMessage(subscribe(2), "/root/2"));
+        queue.offer(new OutboundMessage(update(3, "\"status\":\"Online\""), "/root/3"));
+        queue.offer(new OutboundMessage(update(4, "\"status\":\"Offline\""), "/root/4"));
+
+        Assert.assertEquals(4, queue.size());
+        Assert.assertEquals(2, queue.size(MessagePriority.STATE));
+        List<OutboundMessage> messages = queue.drain();
+        Assert.assertEquals("/root/3", messages.get(0).getKey());
+        Assert.assertEquals("/root/4", messages.get(1).getKey());
+        Assert.assertEquals("/root/2", messages.get(2).getKey());
+        Assert.assertEquals("/root/1", messages.get(3).getKey());
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertNull(queue.poll());
+    }
+
+    @Test
+    public void testConflatesLocationUpdatesPerModel() {
+        OutboundQueue queue = new OutboundQueue();
+        OutboundMessage first = new OutboundMessage(update(1, "\"latitude\":1,\"longitude\":1"), "/root/1");
+        first.setSequence(7);
+        Assert.assertNull(queue.offer(first));
+        queue.offer(new OutboundMessage(update(2, "\"latitude\":2,\"longitude\":2"), "/root/2"));
+        OutboundMessage later = new OutboundMessage(update(1, "\"latitude\":3"), "/root/1");
+        later.setSequence(9);
+        Assert.assertSame(first, queue.offer(later));
+        queue.offer(new OutboundMessage(update(5, "\"latitude\":5,\"longitude\":5"), null));
+        queue.offer(new OutboundMessage(update(5, "\"latitude\":6,\"longitude\":6"), null));
+
+        Assert.assertEquals(4, queue.size());
+        Assert.assertEquals(1, queue.getConflatedCount());
+
+        OutboundMessage merged = queue.poll();
+        Assert.assertEquals("/root/1", merged.getKey());
+        Assert.assertEquals(9, merged.getSequence());
+        Assert.assertEquals(3, value(merged).get("latitude").getAsDouble(), 0);
+        Assert.assertEquals(1, value(merged).get("longitude").getAsDouble(), 0);
+        Assert.assertEquals("/root/2", queue.poll().getKey());
+    }
+
+    @Test
+    public void testConnectionLimitsMessagesInFlight() {
+        final List<String> sent = new ArrayList<String>();
+        final List<SendHandler> handlers = new ArrayList<SendHandler>();
+        final RemoteEndpoint.Async remote = (RemoteEndpoint.Async) Proxy.newProxyInstance(RemoteEndpoint.Async.class.getClassLoader(),
+                new Class<?>[]{RemoteEndpoint.Async.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("sendText")) {
+                            sent.add((String) args[0]);
+                            handlers.add((SendHandler) args[1]);
+                        }
+                        return null;
+                    }
+                });
+        Session session = (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class<?>[]{Session.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("isOpen")) {
+                    return true;
+                } else if (method.getName().equals("getAsyncRemote")) {
+                    return remote;
+                }
+                return null;
+            }
+        });
+
+        Connection connection = new Connection();
+        connection.setMessageHandler(new ModelMessageHandler(TestModels.services()));
+        connection.setMaxInFlight(1);
+        connection.onOpen(session, null);
+
+        connection.sendMessage(update(1, "\"latitude\":1,\"longitude\":1"), "/root/1", MessagePriority.TELEMETRY);
+        connection.sendMessage(update(1, "\"latitude\":2,\"longitude\":2"), "/root/1", MessagePriority.TELEMETRY);
+        connection.sendMessage(update(1, "\"latitude\":3,\"longitude\":3"), "/root/1", MessagePriority.TELEMETRY);
+        connection.sendMessage(update(1, "\"status\":\"Offline\""), "/root/1", MessagePriority.STATE);
+
+        Assert.assertEquals(1, sent.size());
+        Assert.assertEquals(2, connection.getQueuedMessageCount());
+        Assert.assertEquals(1, connection.getConflatedMessageCount());
+
+        handlers.get(0).onResult(new SendResult());
+        Assert.assertEquals(update(1, "\"status\":\"Offline\""), sent.get(1));
+        handlers.get(1).onResult(new SendResult());
+        Assert.assertEquals(update(1, "\"latitude\":3,\"longitude\":3"), sent.get(2));
+        handlers.get(2).onResult(new SendResult());
+        Assert.assertEquals(3, sent.size());
+        Assert.assertEquals(0, connection.getQueuedMessageCount());
+    }
+
+    @Test
+    public void testMergesStateUpdatesPerModel() {
+        OutboundQueue queue = new OutboundQueue();
+        OutboundMessage first = new OutboundMessage(update(1, "\"status\":\"Online\""), "/root/1");
+        first.setSequence(1);
+        OutboundMessage second = new OutboundMessage(update(1, "\"capacity\":3"), "/root/1");
+        second.setSequence(2);
+        OutboundMessage third = new OutboundMessage(update(1, "\"status\":\"Offline\",\"capacity\":4"), "/root/1");
+        third.setSequence(3);
+
+        queue.offer(first, true);
+        queue.offer(new OutboundMessage(update(2, "\"status\":\"Online\""), "/root/2"), true);
+        Assert.assertSame(first, queue.offer(second, true));
+        Assert.assertTrue(queue.takeDiscarded().isEmpty());
+        queue.offer(third, true);
+
+        Assert.assertEquals(2, queue.size());
+        Assert.assertEquals(2, queue.getConflatedCount());
+        List<OutboundMessage> discarded = queue.takeDiscarded();
+        Assert.assertEquals(1, discarded.size());
+        Assert.assertEquals(2, discarded.get(0).getSequence());
+
+        OutboundMessage merged = queue.poll();
+        Assert.assertEquals("/root/1", merged.getKey());
+        Assert.assertEquals(3, merged.getSequence());
+        Assert.assertEquals(1, merged.getMerged().size());
+        Assert.assertSame(first, merged.getMerged().get(0));
+        Assert.assertEquals("Offline", value(merged).get("status").getAsString());
+        Assert.assertEquals(4, value(merged).get("capacity").getAsInt());
+        Assert.assertEquals("/root/2", queue.poll().getKey());
+    }
+
+    @Test
+    public void testDoesNotMergeAcrossOtherMessages() {
+        OutboundQueue queue = new OutboundQueue();
+        queue.offer(new OutboundMessage(update(1, "\"status\":\"Online\""), "/root/1"), true);
+        queue.offer(new OutboundMessage("{\"message\":\"Delete\",\"model\":\"Transport\",\"id\":1}", "/root/1"), true);
+        queue.offer(new OutboundMessage(update(1, "\"status\":\"Offline\""), "/root/1"), true);
+        queue.offer(new OutboundMessage(update(1, "\"status\":\"Online\""), "/root/1"), false);
+
+        Assert.assertEquals(4, queue.size());
+        Assert.assertEquals(0, queue.getConflatedCount());
+    }
+
+    @Test
+    public void testStateUpdateTakesInQueuedLocation() {
+        OutboundQueue queue = new OutboundQueue();
+        queue.offer(new OutboundMessage(update(1, "\"latitude\":1,\"longitude\":1"), "/root/1"));
+        queue.offer(new OutboundMessage(update(1, "\"latitude\":2,\"status\":\"Online\""), "/root/1"), false);
+
+        Assert.assertEquals(1, queue.size());
+        Assert.assertEquals(0, queue.size(MessagePriority.TELEMETRY));
+        OutboundMessage message = queue.poll();
+        Assert.assertEquals(MessagePriority.STATE, message.getPriority());
+        Assert.assertEquals(2, value(message).get("latitude").getAsDouble(), 0);
+        Assert.assertEquals(1, value(message).get("longitude").getAsDouble(), 0);
+        Assert.assertEquals("Online", value(message).get("status").getAsString());
+    }
+
+    @Test
+    public void testQueuedLocationNotSentAfterStateUpdate() {
+        OutboundQueue queue = new OutboundQueue();
+        queue.offer(new OutboundMessage(update(1, "\"latitude\":1,\"longitude\":1"), "/root/1"));
+        queue.offer(new OutboundMessage(update(2, "\"latitude\":5,\"longitude\":5"), "/root/2"));
+        queue.offer(new OutboundMessage(update(1, "\"status\":\"Online\""), "/root/1"), false);
+        queue.offer(new OutboundMessage(update(1, "\"latitude\":2,\"longitude\":2,\"status\":\"Offline\""), "/root/1"), false);
+
+        // the last location of the model sent must be the state update's
+        JsonObject last = null;
+        for (OutboundMessage message : queue.drain()) {
+            if ("/root/1".equals(message.getKey()) && value(message).has("latitude")) {
+                last = value(message);
+            }
+        }
+        Assert.assertNotNull(last);
+        Assert.assertEquals(2, last.get("latitude").getAsDouble(), 0);
+        Assert.assertEquals(2, last.get("longitude").getAsDouble(), 0);
+    }
+
+    @Test
+    public void testDropsOnlyTelemetryOverSize() {
+        OutboundQueue queue = new OutboundQueue();
+        String authenticate = "{\"message\":\"Authenticate\",\"value\":\"a@b.c\"}";
+        queue.offer(new OutboundMessage(authenticate, null));
+        queue.offer(new OutboundMessage(update(1, "\"status\":\"Online\""), "/root/1"));
+        queue.offer(new OutboundMessage(subscribe(2), "/root/2"));
+        queue.offer(new OutboundMessage(update(3, "\"latitude\":1,\"longitude\":1"), "/root/3"));
+        queue.offer(new OutboundMessage(update(4, "\"latitude\":2,\"longitude\":2"), "/root/4"));
+        Assert.assertEquals(0, queue.takeDiscarded().size());
+
+        queue.setMaxBytes(queue.getBytes() - 1);
+        Assert.assertEquals(4, queue.size());
+        Assert.assertEquals(1, queue.size(MessagePriority.TELEMETRY));
+        Assert.assertEquals(1, queue.getDroppedCount());
+        Assert.assertEquals("/root/3", queue.takeDiscarded().get(0).getKey());
+
+        // state, subscription and control messages stay over the size
+        queue.setMaxBytes(1);
+        Assert.assertEquals(3, queue.size());
+        Assert.assertEquals(0, queue.size(MessagePriority.TELEMETRY));
+        Assert.assertEquals(2, queue.getDroppedCount());
+        Assert.assertEquals(1, queue.takeDiscarded().size());
+
+        queue.offer(new OutboundMessage(update(5, "\"status\":\"Offline\""), "/root/5"));
+        Assert.assertEquals(4, queue.size());
+        Assert.assertEquals(0, queue.takeDiscarded().size());
+        Assert.assertEquals(authenticate, queue.poll().getText());
+    }
+
+    @Test
+    public void testConnectionMergesUpdatesWhileDisconnected() {
+        PathfinderServices services = TestModels.services();
+        services.getRequests().setTimeout(0, TimeUnit.MILLISECONDS);
+        Connection connection = services.getConnection();
+        Transport transport = Transport.getInstance("/root/1", services);
+
+        for (int k = 0; k < 100; k++) {
+            transport.updateStatus(k % 2 == 0 ? TransportStatus.ONLINE : TransportStatus.OFFLINE);
+            transport.updateLocation(k, k);
+        }
+        Assert.assertEquals(2, connection.getQueuedMessageCount());
+
+        transport.updateAsync(null, null, TransportStatus.ONLINE, null);
+        transport.updateAsync(null, null, TransportStatus.OFFLINE, null);
+        Assert.assertEquals(4, connection.getQueuedMessageCount());
+
+        connection.setMaxQueuedBytes(1);
+        Assert.assertEquals(3, connection.getQueuedMessageCount());
+        Assert.assertEquals(1, connection.getDroppedMessageCount());
+    }
+}
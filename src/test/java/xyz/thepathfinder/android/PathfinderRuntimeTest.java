@@ -0,0 +1,73 @@
+package xyz.thepathfinder.android;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PathfinderRuntimeTest {
+
+    private TestServer server;
+
+    private List<Pathfinder> sessions;
+
+    @Before
+    public void setupServer() {
+        this.server = new TestServer();
+        this.sessions = new ArrayList<Pathfinder>();
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        for (Pathfinder pathfinder : this.sessions) {
+            pathfinder.close();
+        }
+        this.server.stopServer();
+    }
+
+    private void openSessions(int count) throws Exception {
+        for (int k = 0; k < count; k++) {
+            Pathfinder pathfinder = new Pathfinder("appId", "jwt", new URI("ws://localhost:8025/socket"));
+            pathfinder.connect(false);
+            Assert.assertTrue(pathfinder.isConnected());
+            this.sessions.add(pathfinder);
+        }
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Test(timeout = 60000)
+    public void testThreadsDoNotGrowWithSessions() throws Exception {
+        int sessions = Integer.getInteger("pathfinder.benchmark.sessions", 100);
+
+        this.openSessions(1);
+        int threadsWithOne = ManagementFactory.getThreadMXBean().getThreadCount();
+        long memoryWithOne = usedMemory();
+
+        this.openSessions(sessions - 1);
+        int threadsWithMany = ManagementFactory.getThreadMXBean().getThreadCount();
+        long memoryWithMany = usedMemory();
+
+        System.out.println("Sessions: 1, threads: " + threadsWithOne + ", heap: " + memoryWithOne / 1024 + " KiB");
+        System.out.println("Sessions: " + sessions + ", threads: " + threadsWithMany + ", heap: " + memoryWithMany / 1024 + " KiB");
+
+        // the server's threads are shared as well, the client adds none per session
+        Assert.assertTrue(threadsWithMany - threadsWithOne < 10);
+    }
+
+    @Test(expected = IllegalStateException.class, timeout = 10000)
+    public void testConfigureAfterStart() throws Exception {
+        this.openSessions(1);
+        PathfinderRuntime.configure(1, 4);
+    }
+}
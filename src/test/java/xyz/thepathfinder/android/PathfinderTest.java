@@ -2,6 +2,7 @@ package xyz.thepathfinder.android;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -12,6 +13,11 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 public class PathfinderTest {
 
@@ -47,6 +53,208 @@ public class PathfinderTest {
         }
     }
 
+    private ProtocolServer protocolServer;
+
+    @Before
+    public void startProtocolServer() {
+        this.protocolServer = new ProtocolServer(8030);
+    }
+
+    @After
+    public void stopProtocolServer() {
+        this.protocolServer.stopServer();
+    }
+
+    private Pathfinder connectClient(String email) throws InterruptedException {
+        Pathfinder pathfinder = this.protocolServer.newClient(email);
+        final CountDownLatch authenticated = new CountDownLatch(1);
+        pathfinder.addAuthenticationListener(new AuthenticationListener() {
+            @Override
+            public void authenticationSuccessful() {
+                authenticated.countDown();
+            }
+        });
+
+        pathfinder.connect(false);
+        Assert.assertTrue(authenticated.await(10, TimeUnit.SECONDS));
+        return pathfinder;
+    }
+
+    @Test(timeout = 20000)
+    public void testReadsClusterTree() throws Exception {
+        this.protocolServer.addTransport("/root", 39.48, -87.32, TransportStatus.ONLINE);
+        this.protocolServer.addCluster("/root/cityA");
+        this.protocolServer.addCommodity("/root/cityA", 39.48, -87.32, 39.5, -87.3, CommodityStatus.WAITING);
+
+        Pathfinder pathfinder = this.connectClient("reader@thepathfinder.xyz");
+        Cluster cluster = pathfinder.getDefaultCluster().connectAsync().get(10, TimeUnit.SECONDS);
+
+        Assert.assertEquals(1, cluster.getTransports().size());
+        Assert.assertEquals(1, cluster.getSubcluster("/root/cityA").getCommodities().size());
+        pathfinder.close();
+    }
+
+    @Test(timeout = 20000)
+    public void testSubscribersReceiveChanges() throws Exception {
+        Pathfinder writer = this.connectClient("writer@thepathfinder.xyz");
+        Pathfinder subscriber = this.connectClient("subscriber@thepathfinder.xyz");
+
+        final BlockingQueue<Transport> added = new LinkedBlockingQueue<Transport>();
+        Cluster subscribed = subscriber.getDefaultCluster().connectAsync().get(10, TimeUnit.SECONDS);
+        subscribed.addListener(new ClusterListener() {
+            @Override
+            public void transportAdded(Transport transport) {
+                added.add(transport);
+            }
+        });
+        subscribed.subscribeAsync().get(10, TimeUnit.SECONDS);
+
+        Cluster cluster = writer.getDefaultCluster().connectAsync().get(10, TimeUnit.SECONDS);
+        Transport transport = cluster.createTransport(39.48, -87.32, TransportStatus.ONLINE, null).createAsync().get(10, TimeUnit.SECONDS);
+
+        Transport copy = added.poll(10, TimeUnit.SECONDS);
+        Assert.assertEquals(transport.getPathName(), copy.getPathName());
+
+        final CountDownLatch updated = new CountDownLatch(1);
+        copy.addListener(new TransportListener() {
+            @Override
+            public void updated(Transport model) {
+                updated.countDown();
+            }
+        });
+        transport.updateAsync(39.5, -87.3, null, null).get(10, TimeUnit.SECONDS);
+
+        Assert.assertTrue(updated.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(39.5, copy.getLatitude(), 0);
+        writer.close();
+        subscriber.close();
+    }
+
+    @Test(timeout = 20000)
+    public void testRouteSubscribersReceiveRoutes() throws Exception {
+        this.protocolServer.addTransport("/root", 39.48, -87.32, TransportStatus.ONLINE);
+        Pathfinder pathfinder = this.connectClient("router@thepathfinder.xyz");
+
+        final BlockingQueue<List<Route>> routed = new LinkedBlockingQueue<List<Route>>();
+        Cluster cluster = pathfinder.getDefaultCluster().connectAsync().get(10, TimeUnit.SECONDS);
+        cluster.addListener(new ClusterListener() {
+            @Override
+            public void routed(List<Route> routes) {
+                routed.add(routes);
+            }
+        });
+        cluster.routeSubscribe();
+        Assert.assertEquals(1, routed.poll(10, TimeUnit.SECONDS).get(0).getActions().size());
+
+        Commodity commodity = cluster.createCommodity(39.49, -87.31, 39.5, -87.3, CommodityStatus.WAITING, null).createAsync().get(10, TimeUnit.SECONDS);
+        List<Action> actions = routed.poll(10, TimeUnit.SECONDS).get(0).getActions();
+
+        Assert.assertEquals(3, actions.size());
+        Assert.assertSame(commodity, actions.get(1).getCommodity());
+        Assert.assertEquals(ActionStatus.DROP_OFF, actions.get(2).getStatus());
+        pathfinder.close();
+    }
+
+    @Test(timeout = 20000)
+    public void testMetadataDeltasRoundTrip() throws Exception {
+        Pathfinder pathfinder = this.connectClient("deltas@thepathfinder.xyz");
+        pathfinder.setMetadataDeltas(true);
+
+        JsonObject metadata = new JsonObject();
+        JsonArray manifest = new JsonArray();
+        for (int k = 0; k < 50; k++) {
+            JsonObject parcel = new JsonObject();
+            parcel.addProperty("id", k);
+            parcel.addProperty("destination", "Dock " + k);
+            manifest.add(parcel);
+        }
+        metadata.add("manifest", manifest);
+        metadata.addProperty("driver", "a");
+
+        Cluster cluster = pathfinder.getDefaultCluster().connectAsync().get(10, TimeUnit.SECONDS);
+        Transport transport = cluster.createTransport(39.48, -87.32, TransportStatus.ONLINE, metadata).createAsync().get(10, TimeUnit.SECONDS);
+
+        JsonObject changed = new JsonObject();
+        changed.add("manifest", new JsonParser().parse(manifest.toString()));
+        changed.addProperty("driver", "b");
+        transport.updateAsync(null, null, null, changed).get(10, TimeUnit.SECONDS);
+
+        Assert.assertEquals(changed, transport.getMetadata());
+        Assert.assertEquals(changed, this.protocolServer.getTransport(Long.parseLong(transport.getName())).get("metadata"));
+        Assert.assertTrue(pathfinder.getMetadataBytesSaved() > manifest.toString().length());
+        pathfinder.close();
+    }
+
+    @Test(timeout = 20000)
+    public void testHeartbeatMeasuresRoundTripTime() throws Exception {
+        Pathfinder pathfinder = this.connectClient("heartbeat@thepathfinder.xyz");
+        Assert.assertEquals(-1, pathfinder.getRoundTripTime(TimeUnit.MICROSECONDS));
+        pathfinder.setHeartbeat(20, TimeUnit.MILLISECONDS, 2);
+
+        while (pathfinder.getRoundTripTimes().getCount() < 5) {
+            Thread.sleep(20);
+        }
+
+        Assert.assertTrue(pathfinder.getRoundTripTime(TimeUnit.MICROSECONDS) >= 0);
+        Assert.assertTrue(pathfinder.isConnected());
+        pathfinder.close();
+    }
+
+    @Test(timeout = 20000)
+    public void testReconnectsLostConnection() throws Exception {
+        Pathfinder pathfinder = this.connectClient("reconnect@thepathfinder.xyz");
+        pathfinder.setAutoReconnect(true);
+        final CountDownLatch lost = new CountDownLatch(1);
+        pathfinder.addConnectionListener(new ConnectionListener() {
+            @Override
+            public void connectionLost(String reason) {
+                lost.countDown();
+            }
+        });
+        final CountDownLatch authenticated = new CountDownLatch(1);
+        pathfinder.addAuthenticationListener(new AuthenticationListener() {
+            @Override
+            public void authenticationSuccessful() {
+                authenticated.countDown();
+            }
+        });
+
+        this.protocolServer.dropConnections();
+        Assert.assertTrue(lost.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(authenticated.await(10, TimeUnit.SECONDS));
+
+        Cluster cluster = pathfinder.getDefaultCluster().connectAsync().get(10, TimeUnit.SECONDS);
+        cluster.createTransport(39.48, -87.32, TransportStatus.ONLINE, null).createAsync().get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(1, this.protocolServer.getTransports("/root").size());
+        pathfinder.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testRequestThroughputAndLatency() throws Exception {
+        Pathfinder pathfinder = this.connectClient("bench@thepathfinder.xyz");
+        Cluster cluster = pathfinder.getDefaultCluster().connectAsync().get(10, TimeUnit.SECONDS);
+        Transport transport = cluster.createTransport(39.48, -87.32, TransportStatus.ONLINE, null).createAsync().get(10, TimeUnit.SECONDS);
+
+        int requests = 5000;
+        List<ModelFuture<Transport>> futures = new ArrayList<ModelFuture<Transport>>(requests);
+        long start = System.nanoTime();
+        for (int k = 0; k < requests; k++) {
+            futures.add(transport.updateAsync(39.48 + k * 1e-6, -87.32, null, null));
+        }
+        for (ModelFuture<Transport> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        LatencyHistogram latencies = pathfinder.getRequestLatencies();
+        System.out.println("Bench end-to-end updates: " + requests + " in " + elapsed / 1000000 + " ms, " +
+                requests * 1000000000L / elapsed + " requests/s, latency p50 " + latencies.getPercentile(0.5, TimeUnit.MICROSECONDS) +
+                " us, p99 " + latencies.getPercentile(0.99, TimeUnit.MICROSECONDS) + " us");
+        Assert.assertEquals(0, pathfinder.getPendingRequestCount());
+        Assert.assertEquals(39.48 + (requests - 1) * 1e-6, this.protocolServer.getTransport(Long.parseLong(transport.getName())).get("latitude").getAsDouble(), 1e-9);
+        pathfinder.close();
+    }
+
 
 /*    @Test(timeout = 10000)
     public void testConnection() throws URISyntaxException, IOException, InterruptedException, DeploymentException {
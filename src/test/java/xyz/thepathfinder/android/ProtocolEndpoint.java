@@ -0,0 +1,57 @@
+package xyz.thepathfinder.android;
+
+import javax.websocket.CloseReason;
+import javax.websocket.OnClose;
+import javax.websocket.OnMessage;
+import javax.websocket.OnOpen;
+import javax.websocket.Session;
+import javax.websocket.server.ServerEndpoint;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+/**
+ * Web socket endpoint of {@link ProtocolServer}, hands every event to the running server.
+ */
+@ServerEndpoint(value = "/socket")
+public class ProtocolEndpoint implements ProtocolServer.Peer {
+
+    private static final Logger logger = Logger.getLogger(ProtocolEndpoint.class.getName());
+
+    private Session session;
+
+    @OnOpen
+    public void onOpen(Session session) {
+        this.session = session;
+        ProtocolServer.getRunning().open(this);
+    }
+
+    @OnMessage
+    public void onMessage(String message, Session session) {
+        ProtocolServer.getRunning().receive(message, this);
+    }
+
+    @OnClose
+    public void onClose(Session session, CloseReason closeReason) {
+        ProtocolServer.getRunning().close(this);
+    }
+
+    @Override
+    public void deliver(String message) {
+        try {
+            this.session.getBasicRemote().sendText(message);
+        } catch (IOException e) {
+            logger.warning("Could not send message: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Closes the connection from the server side.
+     */
+    public void close(CloseReason closeReason) {
+        try {
+            this.session.close(closeReason);
+        } catch (IOException e) {
+            logger.warning("Could not close session: " + e.getMessage());
+        }
+    }
+}
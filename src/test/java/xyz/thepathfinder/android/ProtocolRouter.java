@@ -0,0 +1,22 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.List;
+
+/**
+ * Computes the routes {@link ProtocolServer} pushes to route subscribers.
+ */
+public interface ProtocolRouter {
+
+    /**
+     * Routes the transports and commodities of a cluster.
+     *
+     * @param clusterPath path of the cluster.
+     * @param transports  the cluster's transports, as sent to clients.
+     * @param commodities the cluster's commodities, as sent to clients.
+     * @return the routes, each with a <tt>"transport"</tt> and a list of <tt>"actions"</tt>.
+     */
+    JsonArray route(String clusterPath, List<JsonObject> transports, List<JsonObject> commodities);
+}
@@ -0,0 +1,670 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.glassfish.tyrus.core.Base64Utils;
+import org.glassfish.tyrus.server.Server;
+
+import javax.websocket.CloseReason;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * In-process stand-in for the Pathfinder server and its authentication server. It keeps the
+ * cluster tree in memory and speaks the protocol the SDK uses: <tt>ConnectionId</tt> and
+ * <tt>Authenticate</tt>, <tt>Read</tt>, <tt>Create</tt>, <tt>Update</tt> and <tt>Delete</tt>,
+ * <tt>Subscribe</tt> with fan-out of changes to the other subscribers, and
+ * <tt>RouteSubscribe</tt> with <tt>Routed</tt> pushes computed by a pluggable {@link ProtocolRouter}.
+ * Only one web socket server runs at a time, the endpoints Tyrus creates hand their events to
+ * it. Servers constructed without a port run in memory for deterministic simulations.
+ */
+public class ProtocolServer {
+
+    private static final Logger logger = Logger.getLogger(ProtocolServer.class.getName());
+
+    private static volatile ProtocolServer running;
+
+    private final int port;
+
+    private final int authenticationPort;
+
+    // Both null when the server runs in memory, see ProtocolServer()
+    private final Server server;
+
+    private final HttpServer authenticationServer;
+
+    private volatile ProtocolRouter router;
+
+    // The cluster tree, every cluster by path and every transport and commodity by id
+    private final Map<String, JsonObject> clusters = new TreeMap<String, JsonObject>();
+    private final Map<Long, JsonObject> transports = new LinkedHashMap<Long, JsonObject>();
+    private final Map<Long, JsonObject> commodities = new LinkedHashMap<Long, JsonObject>();
+    private long nextId = 1;
+
+    private final Map<Peer, String> connectionIds = new HashMap<Peer, String>();
+    private final Set<String> authorizedConnectionIds = Collections.synchronizedSet(new HashSet<String>());
+    private final Set<Peer> authenticated = new HashSet<Peer>();
+
+    // Subscribers by key, such as "Transport:3" or "Cluster:Commodity:/root"
+    private final Map<String, Set<Peer>> subscriptions = new HashMap<String, Set<Peer>>();
+    private final Map<String, Set<Peer>> routeSubscriptions = new HashMap<String, Set<Peer>>();
+
+    private long receivedMessageCount;
+    private long sentMessageCount;
+
+    /**
+     * Constructs a server that only runs in memory, clients are attached with {@link #attach(Peer)}.
+     */
+    public ProtocolServer() {
+        this.port = -1;
+        this.authenticationPort = -1;
+        this.router = new RoundRobinRouter();
+        this.clusters.put(Path.DEFAULT_PATH, new JsonObject());
+        this.server = null;
+        this.authenticationServer = null;
+    }
+
+    public ProtocolServer(int port) {
+        this.port = port;
+        this.authenticationPort = port + 1;
+        this.router = new RoundRobinRouter();
+        this.clusters.put(Path.DEFAULT_PATH, new JsonObject());
+
+        try {
+            this.authenticationServer = HttpServer.create(new InetSocketAddress("localhost", this.authenticationPort), 0);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        this.authenticationServer.createContext("/connection", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                ProtocolServer.this.authorize(exchange);
+            }
+        });
+        this.authenticationServer.start();
+
+        ProtocolServer.running = this;
+        this.server = new Server("localhost", port, "", null, ProtocolEndpoint.class);
+        try {
+            this.server.start();
+        } catch (Exception e) {
+            this.authenticationServer.stop(0);
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected static ProtocolServer getRunning() {
+        return ProtocolServer.running;
+    }
+
+    public void stopServer() {
+        if (this.server != null) {
+            this.server.stop();
+            this.authenticationServer.stop(0);
+            ProtocolServer.running = null;
+        }
+    }
+
+    public URI getWebSocketUrl() {
+        try {
+            return new URI("ws://localhost:" + this.port + "/socket");
+        } catch (URISyntaxException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public String getAuthenticationUrl() {
+        return "http://localhost:" + this.authenticationPort + "/connection";
+    }
+
+    public Pathfinder newClient(String email) {
+        return new Pathfinder("appId", ProtocolServer.jwt(email), this.getAuthenticationUrl(), this.getWebSocketUrl());
+    }
+
+    /**
+     * Returns an unsigned JWT carrying an email, which is all the SDK reads from the credentials.
+     */
+    public static String jwt(String email) {
+        JsonObject header = new JsonObject();
+        header.addProperty("alg", "none");
+        JsonObject payload = new JsonObject();
+        payload.addProperty("email", email);
+
+        return Base64Utils.encodeToString(header.toString().getBytes(StandardCharsets.UTF_8), false) + "." +
+                Base64Utils.encodeToString(payload.toString().getBytes(StandardCharsets.UTF_8), false) + ".signature";
+    }
+
+    public void setRouter(ProtocolRouter router) {
+        this.router = router;
+    }
+
+    public synchronized long getReceivedMessageCount() {
+        return this.receivedMessageCount;
+    }
+
+    public synchronized long getSentMessageCount() {
+        return this.sentMessageCount;
+    }
+
+    public synchronized void addCluster(String path) {
+        this.clusters.put(path, new JsonObject());
+    }
+
+    public synchronized long addTransport(String clusterPath, double latitude, double longitude, TransportStatus status) {
+        long id = this.nextId++;
+        this.transports.put(id, TestModels.transport(clusterPath, id, latitude, longitude, status));
+        return id;
+    }
+
+    public synchronized long addCommodity(String clusterPath, double startLatitude, double startLongitude, double endLatitude, double endLongitude, CommodityStatus status) {
+        long id = this.nextId++;
+        this.commodities.put(id, TestModels.commodity(clusterPath, id, startLatitude, startLongitude, endLatitude, endLongitude, status));
+        return id;
+    }
+
+    public synchronized JsonObject getTransport(long id) {
+        JsonObject transport = this.transports.get(id);
+        return transport == null ? null : ProtocolServer.copy(transport);
+    }
+
+    public synchronized List<JsonObject> getTransports(String clusterPath) {
+        return ProtocolServer.copies(ProtocolServer.members(this.transports, clusterPath));
+    }
+
+    public synchronized List<JsonObject> getCommodities(String clusterPath) {
+        return ProtocolServer.copies(ProtocolServer.members(this.commodities, clusterPath));
+    }
+
+    private void authorize(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        for (String parameter : query == null ? new String[0] : query.split("&")) {
+            int split = parameter.indexOf('=');
+            if (split > 0 && parameter.substring(0, split).equals("connection_id")) {
+                this.authorizedConnectionIds.add(URLDecoder.decode(parameter.substring(split + 1), StandardCharsets.UTF_8.name()));
+            }
+        }
+
+        exchange.sendResponseHeaders(204, -1);
+        exchange.close();
+    }
+
+    /**
+     * Connects a client that is already authenticated.
+     */
+    public synchronized void attach(Peer peer) {
+        this.authenticated.add(peer);
+    }
+
+    protected synchronized void open(Peer peer) {
+        String connectionId = UUID.randomUUID().toString();
+        this.connectionIds.put(peer, connectionId);
+
+        JsonObject json = new JsonObject();
+        json.addProperty("message", "ConnectionId");
+        json.addProperty("id", connectionId);
+        this.send(peer, json);
+    }
+
+    protected synchronized void close(Peer peer) {
+        this.connectionIds.remove(peer);
+        this.authenticated.remove(peer);
+        for (Set<Peer> peers : this.subscriptions.values()) {
+            peers.remove(peer);
+        }
+        for (Set<Peer> peers : this.routeSubscriptions.values()) {
+            peers.remove(peer);
+        }
+    }
+
+    /**
+     * Closes every web socket connection as if the server went away.
+     */
+    public void dropConnections() {
+        List<Peer> peers;
+        synchronized (this) {
+            peers = new ArrayList<Peer>(this.connectionIds.keySet());
+        }
+
+        for (Peer peer : peers) {
+            if (peer instanceof ProtocolEndpoint) {
+                ((ProtocolEndpoint) peer).close(new CloseReason(CloseReason.CloseCodes.GOING_AWAY, "Server going away"));
+            }
+        }
+    }
+
+    public synchronized void receive(String text, Peer peer) {
+        this.receivedMessageCount++;
+        JsonObject json = new JsonParser().parse(text).getAsJsonObject();
+        String type = json.has("message") ? json.get("message").getAsString() : "";
+
+        if (!this.authenticated.contains(peer)) {
+            JsonObject reply = new JsonObject();
+            if (type.equals("Authenticate") && this.authorizedConnectionIds.contains(this.connectionIds.get(peer))) {
+                this.authenticated.add(peer);
+                reply.addProperty("message", "Authenticated");
+            } else {
+                reply.addProperty("message", "Error");
+                reply.addProperty("reason", "Connection is not authenticated");
+            }
+            this.send(peer, reply);
+            return;
+        }
+
+        String model = json.has("model") ? json.get("model").getAsString() : "";
+        if (type.equals("Read")) {
+            this.read(peer, json, model);
+        } else if (type.equals("Create")) {
+            this.create(peer, json.getAsJsonObject("value"), model);
+        } else if (type.equals("Update")) {
+            this.update(peer, json, model);
+        } else if (type.equals("Delete")) {
+            this.delete(peer, json, model);
+        } else if (type.equals("Subscribe") || type.equals("Unsubscribe")) {
+            this.subscribe(peer, json, model, type.equals("Subscribe"));
+        } else if (type.equals("RouteSubscribe") || type.equals("RouteUnsubscribe")) {
+            this.routeSubscribe(peer, json, model, type.equals("RouteSubscribe"));
+        } else {
+            this.sendError(peer, model, null, "Unknown message: " + type);
+        }
+    }
+
+    private void read(Peer peer, JsonObject json, String model) {
+        if (model.equals("Cluster")) {
+            String path = json.get("id").getAsString();
+            if (this.clusters.containsKey(path)) {
+                this.send(peer, ProtocolServer.message("Model", model, this.toClusterJson(path, false)));
+            } else {
+                this.sendError(peer, model, path, "Cluster not found: " + path);
+            }
+            return;
+        }
+
+        JsonObject value = this.getModels(model).get(json.get("id").getAsLong());
+        if (value == null) {
+            this.sendError(peer, model, null, model + " not found: " + json.get("id"));
+        } else {
+            this.send(peer, ProtocolServer.message("Model", model, value));
+        }
+    }
+
+    private void create(Peer peer, JsonObject value, String model) {
+        if (model.equals("Cluster")) {
+            String path = value.get("id").getAsString();
+            Path parent = new Path(path, ModelType.CLUSTER).getParentPath();
+            if (this.clusters.containsKey(path) || parent == null || !this.clusters.containsKey(parent.getPathName())) {
+                this.sendError(peer, model, path, "Cluster can't be created: " + path);
+            } else {
+                this.clusters.put(path, new JsonObject());
+                this.send(peer, ProtocolServer.message("Created", model, this.toClusterJson(path, false)));
+            }
+            return;
+        }
+
+        String clusterPath = value.get("clusterId").getAsString();
+        if (!this.clusters.containsKey(clusterPath)) {
+            this.sendError(peer, model, null, "Cluster not found: " + clusterPath);
+            return;
+        }
+
+        JsonObject created = ProtocolServer.copy(value);
+        created.remove("model");
+        long id = this.nextId++;
+        created.addProperty("id", id);
+        this.getModels(model).put(id, created);
+
+        this.send(peer, ProtocolServer.message("Created", model, created));
+        this.fanOut(peer, "Created", model, created);
+        this.pushRoutes(clusterPath, null);
+    }
+
+    private void update(Peer peer, JsonObject json, String model) {
+        JsonObject value = model.equals("Cluster") ? null : this.getModels(model).get(json.get("id").getAsLong());
+        if (value == null) {
+            this.sendError(peer, model, null, model + " can't be updated: " + json.get("id"));
+            return;
+        }
+
+        for (Map.Entry<String, JsonElement> field : json.getAsJsonObject("value").entrySet()) {
+            if (field.getKey().equals("metadataPatch")) {
+                JsonObject metadata = value.has("metadata") ? value.getAsJsonObject("metadata") : new JsonObject();
+                value.add("metadata", ModelMetadata.applyPatch(metadata, field.getValue().getAsJsonObject()));
+            } else {
+                value.add(field.getKey(), field.getValue());
+            }
+        }
+
+        this.send(peer, ProtocolServer.message("Updated", model, value));
+        this.fanOut(peer, "Updated", model, value);
+        this.pushRoutes(value.get("clusterId").getAsString(), null);
+    }
+
+    private void delete(Peer peer, JsonObject json, String model) {
+        if (model.equals("Cluster")) {
+            String path = json.get("id").getAsString();
+            if (path.equals(Path.DEFAULT_PATH) || !this.clusters.containsKey(path)) {
+                this.sendError(peer, model, path, "Cluster can't be deleted: " + path);
+                return;
+            }
+
+            this.removeCluster(path);
+            JsonObject reply = new JsonObject();
+            reply.addProperty("message", "Deleted");
+            reply.addProperty("model", model);
+            reply.addProperty("id", path);
+            this.send(peer, reply);
+            return;
+        }
+
+        JsonObject value = this.getModels(model).remove(json.get("id").getAsLong());
+        if (value == null) {
+            this.sendError(peer, model, null, model + " can't be deleted: " + json.get("id"));
+            return;
+        }
+
+        this.send(peer, ProtocolServer.message("Deleted", model, value));
+        this.fanOut(peer, "Deleted", model, value);
+        this.pushRoutes(value.get("clusterId").getAsString(), null);
+    }
+
+    private void removeCluster(String path) {
+        Iterator<String> clusterPaths = this.clusters.keySet().iterator();
+        while (clusterPaths.hasNext()) {
+            String clusterPath = clusterPaths.next();
+            if (clusterPath.equals(path) || clusterPath.startsWith(path + "/")) {
+                clusterPaths.remove();
+                this.transports.values().removeAll(ProtocolServer.members(this.transports, clusterPath));
+                this.commodities.values().removeAll(ProtocolServer.members(this.commodities, clusterPath));
+            }
+        }
+    }
+
+    private void subscribe(Peer peer, JsonObject json, String model, boolean subscribe) {
+        String key;
+        JsonObject reply;
+        if (json.has("clusterId")) {
+            // A cluster subscribes to its transports and its commodities separately
+            String clusterPath = json.get("clusterId").getAsString();
+            if (!this.clusters.containsKey(clusterPath)) {
+                this.sendError(peer, "Cluster", clusterPath, "Cluster not found: " + clusterPath);
+                return;
+            }
+            key = "Cluster:" + model + ":" + clusterPath;
+            reply = new JsonObject();
+            reply.addProperty("model", "Cluster");
+            reply.addProperty("id", clusterPath);
+        } else {
+            JsonObject value = this.getModels(model).get(json.get("id").getAsLong());
+            if (value == null) {
+                this.sendError(peer, model, null, model + " not found: " + json.get("id"));
+                return;
+            }
+            key = model + ":" + value.get("id").getAsLong();
+            reply = ProtocolServer.message(null, model, value);
+        }
+
+        ProtocolServer.register(this.subscriptions, key, peer, subscribe);
+        reply.addProperty("message", subscribe ? "Subscribed" : "Unsubscribed");
+        this.send(peer, reply);
+    }
+
+    private void routeSubscribe(Peer peer, JsonObject json, String model, boolean subscribe) {
+        JsonObject reply;
+        String clusterPath;
+        if (model.equals("Cluster")) {
+            clusterPath = json.get("id").getAsString();
+            if (!this.clusters.containsKey(clusterPath)) {
+                this.sendError(peer, model, clusterPath, "Cluster not found: " + clusterPath);
+                return;
+            }
+            reply = new JsonObject();
+            reply.addProperty("model", model);
+            reply.addProperty("id", clusterPath);
+            ProtocolServer.register(this.routeSubscriptions, "Cluster:" + clusterPath, peer, subscribe);
+        } else {
+            JsonObject value = this.getModels(model).get(json.get("id").getAsLong());
+            if (value == null) {
+                this.sendError(peer, model, null, model + " not found: " + json.get("id"));
+                return;
+            }
+            clusterPath = value.get("clusterId").getAsString();
+            reply = ProtocolServer.message(null, model, value);
+            // Commodity routes aren't pushed, the SDK can't address a commodity's Routed message yet
+            if (model.equals("Transport")) {
+                ProtocolServer.register(this.routeSubscriptions, "Transport:" + value.get("id").getAsLong(), peer, subscribe);
+            }
+        }
+
+        reply.addProperty("message", subscribe ? "RouteSubscribed" : "RouteUnsubscribed");
+        this.send(peer, reply);
+        if (subscribe) {
+            this.pushRoutes(clusterPath, peer);
+        }
+    }
+
+    /**
+     * Sends the cluster's routes to its route subscribers, or only to the specified peer.
+     */
+    private void pushRoutes(String clusterPath, Peer only) {
+        Set<Peer> clusterSubscribers = this.getSubscribers(this.routeSubscriptions, "Cluster:" + clusterPath, only);
+        List<JsonObject> clusterTransports = ProtocolServer.members(this.transports, clusterPath);
+
+        boolean subscribed = !clusterSubscribers.isEmpty();
+        for (JsonObject transport : clusterTransports) {
+            subscribed |= !this.getSubscribers(this.routeSubscriptions, "Transport:" + transport.get("id").getAsLong(), only).isEmpty();
+        }
+        if (!subscribed) {
+            return;
+        }
+
+        JsonArray routes = this.router.route(clusterPath, ProtocolServer.copies(clusterTransports),
+                ProtocolServer.copies(ProtocolServer.members(this.commodities, clusterPath)));
+
+        JsonObject clusterRouted = new JsonObject();
+        clusterRouted.addProperty("message", "Routed");
+        clusterRouted.addProperty("model", "Cluster");
+        clusterRouted.addProperty("id", clusterPath);
+        clusterRouted.add("route", routes);
+        for (Peer peer : clusterSubscribers) {
+            this.send(peer, clusterRouted);
+        }
+
+        for (JsonElement element : routes) {
+            JsonObject route = element.getAsJsonObject();
+            JsonObject transport = route.getAsJsonObject("transport");
+            JsonObject transportRouted = ProtocolServer.message("Routed", "Transport", transport);
+            transportRouted.add("route", route);
+            for (Peer peer : this.getSubscribers(this.routeSubscriptions, "Transport:" + transport.get("id").getAsLong(), only)) {
+                this.send(peer, transportRouted);
+            }
+        }
+    }
+
+    /**
+     * Sends a change to the subscribers of the model and of its cluster, except the peer that made it.
+     */
+    private void fanOut(Peer origin, String type, String model, JsonObject value) {
+        Set<Peer> peers = new LinkedHashSet<Peer>();
+        peers.addAll(this.getSubscribers(this.subscriptions, model + ":" + value.get("id").getAsLong(), null));
+        peers.addAll(this.getSubscribers(this.subscriptions, "Cluster:" + model + ":" + value.get("clusterId").getAsString(), null));
+        peers.remove(origin);
+
+        JsonObject message = ProtocolServer.message(type, model, value);
+        for (Peer peer : peers) {
+            this.send(peer, message);
+        }
+    }
+
+    private Set<Peer> getSubscribers(Map<String, Set<Peer>> subscribers, String key, Peer only) {
+        Set<Peer> peers = subscribers.get(key);
+        if (peers == null) {
+            return Collections.emptySet();
+        } else if (only != null) {
+            return peers.contains(only) ? Collections.singleton(only) : Collections.<Peer>emptySet();
+        }
+        return new LinkedHashSet<Peer>(peers);
+    }
+
+    private static void register(Map<String, Set<Peer>> subscribers, String key, Peer peer, boolean subscribe) {
+        Set<Peer> peers = subscribers.get(key);
+        if (peers == null) {
+            peers = new LinkedHashSet<Peer>();
+            subscribers.put(key, peers);
+        }
+
+        if (subscribe) {
+            peers.add(peer);
+        } else {
+            peers.remove(peer);
+        }
+    }
+
+    private void sendError(Peer peer, String model, String clusterPath, String reason) {
+        logger.info("Replying with error: " + reason);
+        JsonObject value = new JsonObject();
+        if (clusterPath != null) {
+            value = this.clusters.containsKey(clusterPath) ? this.toClusterJson(clusterPath, false) : value;
+            value.addProperty("id", clusterPath);
+        }
+        value.addProperty("reason", reason);
+        this.send(peer, ProtocolServer.message("Error", model, value));
+    }
+
+    private void send(Peer peer, JsonObject json) {
+        this.sentMessageCount++;
+        peer.deliver(json.toString());
+    }
+
+    private Map<Long, JsonObject> getModels(String model) {
+        return model.equals("Transport") ? this.transports : this.commodities;
+    }
+
+    private JsonObject toClusterJson(String path, boolean nested) {
+        JsonObject json = new JsonObject();
+        Path clusterPath = new Path(path, ModelType.CLUSTER);
+        if (nested) {
+            json.addProperty("id", clusterPath.getName());
+            json.addProperty("clusterId", clusterPath.getParentPath().getPathName());
+        } else {
+            json.addProperty("id", path);
+        }
+
+        JsonArray clusterTransports = new JsonArray();
+        for (JsonObject transport : ProtocolServer.members(this.transports, path)) {
+            clusterTransports.add(ProtocolServer.copy(transport));
+        }
+        JsonArray clusterCommodities = new JsonArray();
+        for (JsonObject commodity : ProtocolServer.members(this.commodities, path)) {
+            clusterCommodities.add(ProtocolServer.copy(commodity));
+        }
+        JsonArray subclusters = new JsonArray();
+        for (String subcluster : this.clusters.keySet()) {
+            Path parent = new Path(subcluster, ModelType.CLUSTER).getParentPath();
+            if (parent != null && parent.getPathName().equals(path)) {
+                subclusters.add(this.toClusterJson(subcluster, true));
+            }
+        }
+
+        json.add("transports", clusterTransports);
+        json.add("commodities", clusterCommodities);
+        json.add("subclusters", subclusters);
+        return json;
+    }
+
+    private static List<JsonObject> members(Map<Long, JsonObject> models, String clusterPath) {
+        List<JsonObject> members = new ArrayList<JsonObject>();
+        for (JsonObject model : models.values()) {
+            if (model.get("clusterId").getAsString().equals(clusterPath)) {
+                members.add(model);
+            }
+        }
+        return members;
+    }
+
+    private static JsonObject message(String type, String model, JsonObject value) {
+        JsonObject json = new JsonObject();
+        if (type != null) {
+            json.addProperty("message", type);
+        }
+        json.addProperty("model", model);
+        json.add("value", ProtocolServer.copy(value));
+        return json;
+    }
+
+    private static JsonObject copy(JsonObject json) {
+        return new JsonParser().parse(json.toString()).getAsJsonObject();
+    }
+
+    private static List<JsonObject> copies(List<JsonObject> models) {
+        List<JsonObject> copies = new ArrayList<JsonObject>(models.size());
+        for (JsonObject model : models) {
+            copies.add(ProtocolServer.copy(model));
+        }
+        return copies;
+    }
+
+    /**
+     * Starts every online transport at its location and hands out the waiting commodities in turn.
+     */
+    public static class RoundRobinRouter implements ProtocolRouter {
+
+        @Override
+        public JsonArray route(String clusterPath, List<JsonObject> transports, List<JsonObject> commodities) {
+            List<JsonArray> actions = new ArrayList<JsonArray>();
+            JsonArray routes = new JsonArray();
+            for (JsonObject transport : transports) {
+                if (TransportStatus.ONLINE.equals(transport.get("status").getAsString())) {
+                    JsonArray transportActions = new JsonArray();
+                    transportActions.add(TestModels.action("Start", transport.get("latitude").getAsDouble(), transport.get("longitude").getAsDouble(), null));
+                    actions.add(transportActions);
+                    routes.add(TestModels.route(transport, transportActions));
+                }
+            }
+
+            int next = 0;
+            for (JsonObject commodity : commodities) {
+                if (actions.isEmpty() || !CommodityStatus.WAITING.equals(commodity.get("status").getAsString())) {
+                    continue;
+                }
+
+                JsonArray transportActions = actions.get(next++ % actions.size());
+                transportActions.add(TestModels.action("PickUp", commodity.get("startLatitude").getAsDouble(), commodity.get("startLongitude").getAsDouble(), commodity));
+                transportActions.add(TestModels.action("DropOff", commodity.get("endLatitude").getAsDouble(), commodity.get("endLongitude").getAsDouble(), commodity));
+            }
+
+            return routes;
+        }
+    }
+
+    /**
+     * A client connected to the server.
+     */
+    public interface Peer {
+
+        /**
+         * Delivers a message from the server to the client.
+         */
+        void deliver(String message);
+    }
+}
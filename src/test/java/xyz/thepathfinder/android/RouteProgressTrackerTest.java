@@ -0,0 +1,132 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class RouteProgressTrackerTest {
+
+    private PathfinderServices services;
+
+    private Transport transport;
+
+    private List<String> events;
+
+    @Before
+    public void setupRoute() {
+        this.services = TestModels.services();
+        JsonObject transportJson = TestModels.transport("/root", 100, 39.000, -87.0, TransportStatus.ONLINE);
+
+        // stops every 0.001 degrees of latitude, about 111 m apart
+        JsonArray actions = new JsonArray();
+        actions.add(TestModels.action("Start", 39.000, -87.0, null));
+        for (int k = 1; k <= 5; k++) {
+            JsonObject commodity = TestModels.commodity("/root", k, 39.0, -87.0, 39.0 + 0.001 * k, -87.0, CommodityStatus.PICKED_UP);
+            actions.add(TestModels.action("DropOff", 39.0 + 0.001 * k, -87.0, commodity));
+        }
+
+        this.transport = Transport.getInstance(transportJson, this.services);
+        this.transport.setRoute(new Route(TestModels.route(transportJson, actions), this.services));
+        this.events = new ArrayList<String>();
+    }
+
+    private RouteProgressTracker tracker() {
+        RouteProgressTracker tracker = new RouteProgressTracker(this.transport, 20, 100);
+        tracker.addListener(new RouteProgressListener() {
+            @Override
+            public void actionReached(Route route, Action action, int actionIndex) {
+                RouteProgressTrackerTest.this.events.add("reached " + actionIndex);
+            }
+
+            @Override
+            public void offRoute(Route route, double distance) {
+                RouteProgressTrackerTest.this.events.add("off");
+            }
+
+            @Override
+            public void backOnRoute(Route route) {
+                RouteProgressTrackerTest.this.events.add("on");
+            }
+
+            @Override
+            public void routeCompleted(Route route) {
+                RouteProgressTrackerTest.this.events.add("completed");
+            }
+        });
+        return tracker;
+    }
+
+    private void moveTo(double latitude, double longitude) {
+        JsonObject message = new JsonObject();
+        message.add("value", TestModels.transport("/root", 100, latitude, longitude, TransportStatus.ONLINE));
+        this.transport.notifyUpdate("Updated", message);
+    }
+
+    @Test
+    public void testActionsReachedFromLocationUpdates() {
+        RouteProgressTracker tracker = this.tracker();
+        Assert.assertEquals(1, tracker.getNextActionIndex());
+
+        this.moveTo(39.0005, -87.0);
+        Assert.assertTrue(this.events.isEmpty());
+
+        this.moveTo(39.00095, -87.0);
+        Assert.assertEquals("reached 1", this.events.get(0));
+
+        // skipping ahead reaches the actions passed on the way
+        this.moveTo(39.003, -87.0);
+        Assert.assertEquals("reached 2", this.events.get(1));
+        Assert.assertEquals("reached 3", this.events.get(2));
+        Assert.assertEquals(4, tracker.getNextActionIndex());
+
+        this.moveTo(39.004, -87.0);
+        this.moveTo(39.005, -87.0);
+        Assert.assertEquals("completed", this.events.get(this.events.size() - 1));
+        Assert.assertTrue(tracker.isCompleted());
+        Assert.assertNull(tracker.getNextAction());
+    }
+
+    @Test
+    public void testOffRouteWithHysteresis() {
+        RouteProgressTracker tracker = this.tracker();
+
+        // about 170 m east of the route
+        tracker.update(39.0005, -86.998);
+        tracker.update(39.0005, -86.998);
+        Assert.assertFalse(tracker.isOffRoute());
+        tracker.update(39.0005, -86.998);
+        Assert.assertTrue(tracker.isOffRoute());
+        tracker.update(39.0005, -86.998);
+        Assert.assertEquals(1, this.events.size());
+
+        // about 70 m east, inside the off route distance but not back within half of it
+        tracker.update(39.0005, -86.9992);
+        Assert.assertTrue(tracker.isOffRoute());
+
+        tracker.update(39.0005, -87.0);
+        Assert.assertFalse(tracker.isOffRoute());
+        Assert.assertEquals("on", this.events.get(1));
+    }
+
+    @Test
+    public void testNewRouteRestartsTracker() {
+        RouteProgressTracker tracker = this.tracker();
+        tracker.update(39.001, -87.0);
+        Assert.assertEquals(2, tracker.getNextActionIndex());
+
+        Route route = this.transport.getRoute();
+        for (TransportListener listener : this.transport.getListeners()) {
+            listener.routed(route);
+        }
+        Assert.assertEquals(1, tracker.getNextActionIndex());
+
+        tracker.stop();
+        this.moveTo(39.001, -87.0);
+        Assert.assertEquals(1, tracker.getNextActionIndex());
+    }
+}
@@ -0,0 +1,94 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class RouteTest {
+
+    private static Route route(PathfinderServices services, int stops) {
+        JsonArray actions = new JsonArray();
+        actions.add(TestModels.action("Start", 39.48, -87.32, null));
+        for (int k = 1; k < stops; k++) {
+            double latitude = 39.48 + 0.001 * k;
+            double longitude = -87.32 + 0.002 * (k % 7);
+            JsonObject commodity = TestModels.commodity("/root", k, latitude, longitude, latitude, longitude, CommodityStatus.WAITING);
+            actions.add(TestModels.action(k % 2 == 0 ? "DropOff" : "PickUp", latitude, longitude, commodity));
+        }
+
+        JsonObject transport = TestModels.transport("/root", 1000, 39.48, -87.32, TransportStatus.ONLINE);
+        return new Route(TestModels.route(transport, actions), services);
+    }
+
+    private static double naiveRemainingDistance(List<Action> actions, int from) {
+        double distance = 0;
+        for (int k = from + 1; k < actions.size(); k++) {
+            Action previous = actions.get(k - 1);
+            Action action = actions.get(k);
+            distance += GeoMath.distance(previous.getLatitude(), previous.getLongitude(), action.getLatitude(), action.getLongitude());
+        }
+        return distance;
+    }
+
+    @Test
+    public void testHaversineDistance() {
+        // Terre Haute to Indianapolis, about 110 km
+        double distance = GeoMath.distance(39.4667, -87.4139, 39.7684, -86.1581);
+        Assert.assertEquals(112000, distance, 2000);
+        Assert.assertEquals(0, GeoMath.distance(10, 20, 10, 20), 0);
+    }
+
+    @Test
+    public void testDistancesAndEta() {
+        Route route = route(TestModels.services(), 500);
+        List<Action> actions = route.getActions();
+
+        Assert.assertEquals(naiveRemainingDistance(actions, 0), route.getTotalDistance(), 1e-6);
+        Assert.assertEquals(naiveRemainingDistance(actions, 250), route.remainingDistanceFrom(250), 1e-6);
+        Assert.assertEquals(0, route.remainingDistanceFrom(499), 1e-9);
+        Assert.assertEquals(route.getDistanceTo(10) - route.getDistanceTo(9), route.getLegDistance(10), 1e-9);
+
+        Action action = actions.get(100);
+        Assert.assertEquals(100, route.indexOf(action));
+        Assert.assertEquals(route.getDistanceTo(100) / 10, route.etaFor(action, 10), 1e-9);
+
+        Action start = actions.get(0);
+        Assert.assertEquals(naiveRemainingDistance(actions, 0), route.remainingDistanceFrom(start.getLatitude(), start.getLongitude(), 0), 1e-6);
+
+        try {
+            route.etaFor(action, 0);
+            Assert.fail("Zero speed accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRemainingDistanceBenchmark() {
+        Route route = route(TestModels.services(), 500);
+        List<Action> actions = route.getActions();
+        int ticks = 20000;
+
+        double naive = 0;
+        long start = System.nanoTime();
+        for (int k = 0; k < ticks; k++) {
+            naive += naiveRemainingDistance(actions, k % 500);
+        }
+        long naiveTime = System.nanoTime() - start;
+
+        double cached = 0;
+        start = System.nanoTime();
+        for (int k = 0; k < ticks; k++) {
+            cached += route.remainingDistanceFrom(k % 500);
+        }
+        long cachedTime = System.nanoTime() - start;
+
+        System.out.println("Bench remaining distance on a 500 stop route, " + ticks + " ticks: recomputed " +
+                naiveTime / 1000000 + " ms, cached " + cachedTime / 1000 + " us");
+        Assert.assertEquals(naive, cached, naive * 1e-9);
+        Assert.assertTrue(cachedTime < naiveTime);
+    }
+}
@@ -0,0 +1,106 @@
+package xyz.thepathfinder.android;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class ShardingTest {
+
+    private static PathfinderServices services(int shardCount) {
+        List<Connection> connections = new ArrayList<Connection>();
+        for (int k = 0; k < shardCount; k++) {
+            connections.add(new Connection());
+        }
+
+        PathfinderServices services = TestModels.services();
+        services.setConnections(connections);
+        return services;
+    }
+
+    @Test
+    public void testModelsOfTopLevelClusterShareConnection() {
+        PathfinderServices services = services(4);
+
+        Connection cityA = services.getConnection("/root/cityA", ModelType.CLUSTER);
+        Assert.assertSame(cityA, services.getConnection("/root/cityA/3", ModelType.TRANSPORT));
+        Assert.assertSame(cityA, services.getConnection("/root/cityA/north/7", ModelType.COMMODITY));
+        Assert.assertSame(services.getConnection(), services.getConnection("/root", ModelType.CLUSTER));
+        Assert.assertSame(services.getConnection(), services.getConnection(null, null));
+
+        Set<Connection> used = new HashSet<Connection>();
+        for (int k = 0; k < 100; k++) {
+            used.add(services.getConnection("/root/city" + k + "/1", ModelType.TRANSPORT));
+        }
+        Assert.assertEquals(4, used.size());
+    }
+
+    @Test
+    public void testModelMessagesUseShardConnection() {
+        final List<String> sent = new ArrayList<String>();
+        PathfinderServices services = TestModels.services();
+        List<Connection> connections = new ArrayList<Connection>();
+        for (int k = 0; k < 2; k++) {
+            final int shard = k;
+            connections.add(new Connection() {
+                @Override
+                protected void sendMessage(String message, String key, MessagePriority priority) {
+                    sent.add(shard + ":" + key);
+                }
+            });
+        }
+        services.setConnections(connections);
+
+        String path = "/root/city0/1";
+        Transport.getInstance(path, services).updateLocation(1, 2);
+
+        Assert.assertEquals(PathfinderServices.getShard(path, ModelType.TRANSPORT, 2) + ":" + path, sent.get(0));
+    }
+
+    @Test
+    public void testModelsOfRootClusterUseRootShard() {
+        PathfinderServices services = services(4);
+
+        Set<Connection> used = new HashSet<Connection>();
+        for (int k = 0; k < 100; k++) {
+            used.add(services.getConnection("/root/" + k, ModelType.TRANSPORT));
+            used.add(services.getConnection("/root/" + k, ModelType.COMMODITY));
+            Assert.assertEquals(0, PathfinderServices.getShard("/root/" + k, ModelType.TRANSPORT, 4));
+        }
+        Assert.assertEquals(1, used.size());
+        Assert.assertSame(services.getConnection(), used.iterator().next());
+
+        OutboundMessage update = new OutboundMessage("{\"message\":\"Update\",\"model\":\"Transport\",\"id\":5,\"value\":{\"status\":\"Online\"}}", "/root/5");
+        Assert.assertEquals(ModelType.TRANSPORT, update.getModelType());
+        Assert.assertSame(services.getConnection(), services.getConnection(update.getKey(), update.getModelType()));
+
+        // a subcluster whose name looks like an identifier still has its own shard
+        Assert.assertSame(services.getConnection("/root/5", ModelType.CLUSTER), services.getConnection("/root/5/1", ModelType.TRANSPORT));
+    }
+
+    @Test(timeout = 20000)
+    public void testShardsConnect() throws Exception {
+        TestServer server = new TestServer();
+        try {
+            Pathfinder pathfinder = new Pathfinder("appId", "jwt", new URI("ws://localhost:8025/socket"));
+            pathfinder.setShardCount(3);
+            pathfinder.connect(false);
+            Assert.assertTrue(pathfinder.isConnected());
+
+            try {
+                pathfinder.setShardCount(2);
+                Assert.fail("Shard count changed after connecting");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+
+            pathfinder.close();
+        } finally {
+            server.stopServer();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonObject;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+public class SnapshotStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSaveAndRestore() throws IOException {
+        PathfinderServices services = TestModels.services();
+        JsonObject metadata = new JsonObject();
+        metadata.addProperty("capacity", 4);
+        JsonObject transport = TestModels.transport("/root/cityA", 1, 39.48, -87.32, TransportStatus.ONLINE);
+        transport.add("metadata", metadata);
+
+        Cluster.getInstance(TestModels.cluster(null, "/root",
+                TestModels.cluster("/root", "cityA", transport,
+                        TestModels.commodity("/root/cityA", 2, 1, 2, 3, 4, CommodityStatus.WAITING))), services);
+
+        File file = this.folder.newFile("models.snapshot");
+        new SnapshotStore(file).save(services);
+
+        PathfinderServices restoredServices = TestModels.services();
+        new SnapshotStore(file).load(restoredServices);
+
+        Cluster cityA = Cluster.getInstance("/root/cityA", restoredServices);
+        Assert.assertTrue(cityA.isStale());
+        Assert.assertNotNull(Cluster.getInstance("/root", restoredServices).getSubcluster("/root/cityA"));
+
+        Transport restoredTransport = cityA.getTransport("/root/cityA/1");
+        Assert.assertTrue(restoredTransport.isStale());
+        Assert.assertFalse(restoredTransport.isConnected());
+        Assert.assertEquals(39.48, restoredTransport.getLatitude(), 0);
+        Assert.assertEquals(TransportStatus.ONLINE, restoredTransport.getStatus());
+        Assert.assertEquals(metadata, restoredTransport.getMetadata());
+
+        Commodity restoredCommodity = cityA.getCommodity("/root/cityA/2");
+        Assert.assertEquals(CommodityStatus.WAITING, restoredCommodity.getStatus());
+        Assert.assertEquals(4, restoredCommodity.getEndLongitude(), 0);
+    }
+
+    @Test
+    public void testReconcileEvictsStaleModels() throws IOException {
+        PathfinderServices services = TestModels.services();
+        Cluster.getInstance(TestModels.cluster(null, "/root",
+                TestModels.transport("/root", 1, 0, 0, TransportStatus.ONLINE),
+                TestModels.transport("/root", 2, 0, 0, TransportStatus.ONLINE)), services);
+
+        File file = this.folder.newFile("models.snapshot");
+        new SnapshotStore(file).save(services);
+
+        PathfinderServices restoredServices = TestModels.services();
+        new SnapshotStore(file).load(restoredServices);
+
+        Cluster root = Cluster.getInstance("/root", restoredServices);
+        Assert.assertEquals(2, root.getTransports().size());
+
+        JsonObject message = new JsonObject();
+        message.addProperty("message", "Model");
+        message.addProperty("model", "Cluster");
+        message.add("value", TestModels.cluster(null, "/root", TestModels.transport("/root", 1, 5, 5, TransportStatus.ONLINE)));
+        root.notifyUpdate("Model", message);
+
+        Assert.assertFalse(root.isStale());
+        Assert.assertEquals(1, root.getTransports().size());
+        Assert.assertFalse(root.getTransport("/root/1").isStale());
+        Assert.assertFalse(restoredServices.getRegistry().isModelRegistered(new Path("/root/2", ModelType.TRANSPORT)));
+    }
+
+    @Test
+    public void testMissingSnapshot() throws IOException {
+        File file = new File(this.folder.getRoot(), "missing.snapshot");
+        Assert.assertTrue(new SnapshotStore(file).load(TestModels.services()).isEmpty());
+    }
+}
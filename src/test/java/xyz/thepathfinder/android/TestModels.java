@@ -0,0 +1,80 @@
+package xyz.thepathfinder.android;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+public class TestModels {
+
+    public static PathfinderServices services() {
+        return new PathfinderServices(new ModelRegistry(), new Connection());
+    }
+
+    public static JsonObject transport(String clusterId, long id, double latitude, double longitude, TransportStatus status) {
+        JsonObject json = new JsonObject();
+        json.addProperty("id", id);
+        json.addProperty("clusterId", clusterId);
+        json.addProperty("latitude", latitude);
+        json.addProperty("longitude", longitude);
+        json.addProperty("status", status.toString());
+        json.add("metadata", new JsonObject());
+        json.add("commodities", new JsonArray());
+        return json;
+    }
+
+    public static JsonObject commodity(String clusterId, long id, double startLatitude, double startLongitude, double endLatitude, double endLongitude, CommodityStatus status) {
+        JsonObject json = new JsonObject();
+        json.addProperty("id", id);
+        json.addProperty("clusterId", clusterId);
+        json.addProperty("startLatitude", startLatitude);
+        json.addProperty("startLongitude", startLongitude);
+        json.addProperty("endLatitude", endLatitude);
+        json.addProperty("endLongitude", endLongitude);
+        json.addProperty("status", status.toString());
+        json.add("metadata", new JsonObject());
+        return json;
+    }
+
+    public static JsonObject cluster(String parentId, String name, JsonObject... members) {
+        JsonObject json = new JsonObject();
+        json.addProperty("id", name);
+        if (parentId != null) {
+            json.addProperty("clusterId", parentId);
+        }
+
+        JsonArray transports = new JsonArray();
+        JsonArray commodities = new JsonArray();
+        JsonArray subclusters = new JsonArray();
+        for (JsonObject member : members) {
+            if (member.has("transports")) {
+                subclusters.add(member);
+            } else if (member.has("startLatitude")) {
+                commodities.add(member);
+            } else {
+                transports.add(member);
+            }
+        }
+
+        json.add("transports", transports);
+        json.add("commodities", commodities);
+        json.add("subclusters", subclusters);
+        return json;
+    }
+
+    public static JsonObject action(String type, double latitude, double longitude, JsonObject commodity) {
+        JsonObject json = new JsonObject();
+        json.addProperty("action", type);
+        json.addProperty("latitude", latitude);
+        json.addProperty("longitude", longitude);
+        if (commodity != null) {
+            json.add("commodity", commodity);
+        }
+        return json;
+    }
+
+    public static JsonObject route(JsonObject transport, JsonArray actions) {
+        JsonObject json = new JsonObject();
+        json.add("transport", transport);
+        json.add("actions", actions);
+        return json;
+    }
+}
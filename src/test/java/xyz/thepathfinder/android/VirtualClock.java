@@ -0,0 +1,59 @@
+package xyz.thepathfinder.android;
+
+import java.util.PriorityQueue;
+
+/**
+ * Runs scheduled events in virtual time. Events run in time order, events scheduled for the
+ * same time in the order they were scheduled, so a run is fully reproducible.
+ */
+public class VirtualClock {
+
+    private final PriorityQueue<Event> events = new PriorityQueue<Event>();
+
+    private long now;
+
+    private long scheduledCount;
+
+    public long now() {
+        return this.now;
+    }
+
+    public void schedule(long delayMillis, Runnable task) {
+        this.events.add(new Event(this.now + delayMillis, this.scheduledCount++, task));
+    }
+
+    /**
+     * Runs the events scheduled up to and including the specified time, then sets the clock to it.
+     */
+    public void runUntil(long time) {
+        while (!this.events.isEmpty() && this.events.peek().time <= time) {
+            Event event = this.events.poll();
+            this.now = event.time;
+            event.task.run();
+        }
+        this.now = time;
+    }
+
+    private static class Event implements Comparable<Event> {
+
+        private final long time;
+
+        private final long sequence;
+
+        private final Runnable task;
+
+        private Event(long time, long sequence, Runnable task) {
+            this.time = time;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            if (this.time != other.time) {
+                return this.time < other.time ? -1 : 1;
+            }
+            return this.sequence < other.sequence ? -1 : (this.sequence == other.sequence ? 0 : 1);
+        }
+    }
+}